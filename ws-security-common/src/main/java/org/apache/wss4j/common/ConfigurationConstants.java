@@ -570,6 +570,37 @@ public class ConfigurationConstants {
      */
     public static final String EXPAND_XOP_INCLUDE = "expandXOPInclude";
 
+    /**
+     * Whether to keep the attachments referred to by xop:Include Elements out-of-line when signing or
+     * encrypting (on the outbound side). If this is true, the xop:Include Elements are signed or encrypted
+     * as they are, and the attachments themselves are signed or encrypted as SwA attachments, by streaming
+     * them through the digest or cipher. The encrypted attachments are returned via the attachment
+     * CallbackHandler. This means that the attachment bytes are never BASE-64 encoded into the message.
+     * It takes precedence over EXPAND_XOP_INCLUDE on the outbound side. The default is false.
+     */
+    public static final String STREAM_XOP_ATTACHMENTS = "streamXOPAttachments";
+
+    /**
+     * Whether to run the work that WSS4J hands off to an Executor on virtual threads, where no Executor
+     * has been configured explicitly. On the DOM side this only applies to the pipelined processing of
+     * the security header, which must be enabled separately with PIPELINE_SECURITY_HEADER. On the
+     * streaming side it sets the attachment processing Executor. The inbound processing of the message
+     * itself still runs on the calling thread, so to process messages on virtual threads the caller must
+     * run WSS4J on one. If the JVM does not support virtual threads (before Java 21), a bounded shared
+     * pool of daemon threads is used instead (see VirtualThreads#executor). The default is false.
+     */
+    public static final String USE_VIRTUAL_THREADS = "useVirtualThreads";
+
+    /**
+     * Whether to process the inbound security header in pipelined mode (DOM only), where no header
+     * processing Executor has been configured explicitly (see RequestData#setHeaderProcessingExecutor).
+     * In pipelined mode, the EncryptedKeys are unwrapped on an Executor while the following tokens
+     * of the security header are processed. The Executor runs on virtual threads if USE_VIRTUAL_THREADS
+     * is also true, and on a bounded shared pool of daemon threads otherwise (see
+     * VirtualThreads#platformExecutor). The default is false.
+     */
+    public static final String PIPELINE_SECURITY_HEADER = "pipelineSecurityHeader";
+
     //
     // (Non-boolean) Configuration parameters for the actions/processors
     //
@@ -962,6 +993,20 @@ public class ConfigurationConstants {
      */
     public static final String SAML_ONE_TIME_USE_CACHE_INSTANCE = "samlOneTimeUseCacheInstance";
 
+    /**
+     * This holds a reference to a SecurityContextStore instance used to store the secrets of
+     * SecureConversation sessions, and the keys derived from them, by SecurityContextToken identifier.
+     * There is no default instance, the secret is requested from the CallbackHandler for every message.
+     */
+    public static final String SECURITY_CONTEXT_STORE_INSTANCE = "securityContextStoreInstance";
+
+    /**
+     * This holds a reference to a SamlAssertionCache instance used to reuse outbound sender-vouches
+     * and bearer SAML assertions across messages. There is no default instance, a new assertion is
+     * created (and signed) for every message.
+     */
+    public static final String SAML_ASSERTION_CACHE_INSTANCE = "samlAssertionCacheInstance";
+
     /**
      * This holds a reference to a PasswordEncryptor instance, which is used to encrypt or
      * decrypt passwords in the Merlin Crypto implementation (or any custom Crypto implementations).
@@ -22,6 +22,7 @@ package org.apache.wss4j.common.cache;
 import java.io.File;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.ehcache.Cache;
@@ -49,6 +50,7 @@ public class EHCacheReplayCache implements ReplayCache {
     private final String key;
     private final Path diskstorePath;
     private final boolean persistent;
+    private final ReentrantLock closeLock = new ReentrantLock();
 
     public EHCacheReplayCache(String key) throws WSSecurityException {
         this(key, null);
@@ -145,28 +147,34 @@ public class EHCacheReplayCache implements ReplayCache {
     }
 
     @Override
-    public synchronized void close() {
-        if (cacheManager.getStatus() == Status.AVAILABLE) {
-            cacheManager.removeCache(key);
+    public void close() {
+        // A lock rather than a monitor, as closing a persistent cache manager does disk I/O
+        closeLock.lock();
+        try {
+            if (cacheManager.getStatus() == Status.AVAILABLE) {
+                cacheManager.removeCache(key);
 
-            cacheManager.close();
+                cacheManager.close();
 
-            if (!persistent && cacheManager instanceof PersistentCacheManager) {
-                try {
-                    ((PersistentCacheManager) cacheManager).destroy();
-                } catch (CachePersistenceException e) {
-                    LOG.debug("Error in shutting down persistent cache", e);
-                }
+                if (!persistent && cacheManager instanceof PersistentCacheManager) {
+                    try {
+                        ((PersistentCacheManager) cacheManager).destroy();
+                    } catch (CachePersistenceException e) {
+                        LOG.debug("Error in shutting down persistent cache", e);
+                    }
 
-                // As we're not using a persistent disk store, just delete it - it should be empty after calling
-                // destroy above
-                if (diskstorePath != null) {
-                    File file = diskstorePath.toFile();
-                    if (file.exists() && file.canWrite()) {
-                        file.delete();
+                    // As we're not using a persistent disk store, just delete it - it should be empty after calling
+                    // destroy above
+                    if (diskstorePath != null) {
+                        File file = diskstorePath.toFile();
+                        if (file.exists() && file.canWrite()) {
+                            file.delete();
+                        }
                     }
                 }
             }
+        } finally {
+            closeLock.unlock();
         }
     }
 
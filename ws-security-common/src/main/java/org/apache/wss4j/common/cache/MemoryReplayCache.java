@@ -21,26 +21,25 @@ package org.apache.wss4j.common.cache;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
- * A simple in-memory HashSet based cache to prevent against replay attacks. The default TTL is 5 minutes
- * and the max TTL is 60 minutes.
+ * A simple in-memory cache to prevent against replay attacks. The default TTL is 5 minutes
+ * and the max TTL is 60 minutes. The cache does not take any locks, so that it scales with the
+ * number of concurrent callers (and does not pin virtual threads).
  */
 public class MemoryReplayCache implements ReplayCache {
 
     public static final long DEFAULT_TTL = 60L * 5L;
     public static final long MAX_TTL = DEFAULT_TTL * 12L;
-    private final SortedMap<Instant, List<String>> cache = new TreeMap<>();
-    private final Set<String> ids = Collections.synchronizedSet(new HashSet<>());
+    private final ConcurrentNavigableMap<Instant, Queue<String>> cache = new ConcurrentSkipListMap<>();
+    private final Map<String, Instant> ids = new ConcurrentHashMap<>();
 
     /**
      * Add the given identifier to the cache. It will be cached for a default amount of time.
@@ -66,15 +65,15 @@ public class MemoryReplayCache implements ReplayCache {
             expiry = now.plusSeconds(DEFAULT_TTL);
         }
 
-        synchronized (cache) {
-            List<String> list = cache.get(expiry);
-            if (list == null) {
-                list = new ArrayList<>(1);
-                cache.put(expiry, list);
-            }
-            list.add(identifier);
-        }
-        ids.add(identifier);
+        // Keep the latest expiry if the identifier is added more than once
+        ids.merge(identifier, expiry, (oldExpiry, newExpiry) -> oldExpiry.isAfter(newExpiry) ? oldExpiry : newExpiry);
+
+        // Retry if the queue was expired concurrently, so that the identifier is not left behind in "ids"
+        Queue<String> queue;
+        do {
+            queue = cache.computeIfAbsent(expiry, k -> new ConcurrentLinkedQueue<>());
+            queue.add(identifier);
+        } while (cache.get(expiry) != queue);
     }
 
     /**
@@ -85,31 +84,34 @@ public class MemoryReplayCache implements ReplayCache {
         processTokenExpiry();
 
         if (identifier != null && identifier.length() != 0) {
-            return ids.contains(identifier);
+            // The expiry is checked as well, as an identifier may be added concurrently to an
+            // expiry time that is being removed
+            Instant expiry = ids.get(identifier);
+            if (expiry != null && expiry.isBefore(Instant.now())) {
+                ids.remove(identifier, expiry);
+                return false;
+            }
+            return expiry != null;
         }
         return false;
     }
 
     protected void processTokenExpiry() {
         Instant current = Instant.now();
-        synchronized (cache) {
-            Iterator<Entry<Instant, List<String>>> it = cache.entrySet().iterator();
-            while (it.hasNext()) {
-                Entry<Instant, List<String>> entry = it.next();
-                if (entry.getKey().isBefore(current)) {
-                    for (String id : entry.getValue()) {
-                        ids.remove(id);
-                    }
-                    it.remove();
-                } else {
-                    break;
+        Entry<Instant, Queue<String>> entry = cache.firstEntry();
+        while (entry != null && entry.getKey().isBefore(current)) {
+            if (cache.remove(entry.getKey(), entry.getValue())) {
+                for (String id : entry.getValue()) {
+                    // Only remove the identifier if it was not added again with a later expiry
+                    ids.remove(id, entry.getKey());
                 }
             }
+            entry = cache.firstEntry();
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
+    public void close() throws IOException {
         cache.clear();
         ids.clear();
     }
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A simple in-memory ConcurrentHashMap based SecurityContextStore. The default TTL of a session
+ * is 60 minutes and the max TTL is 24 hours. Expired sessions are removed when they are looked
+ * up, and at most once per minute when a session is added.
+ */
+public class MemorySecurityContextStore implements SecurityContextStore {
+
+    public static final long DEFAULT_TTL = 60L * 60L;
+    public static final long MAX_TTL = DEFAULT_TTL * 24L;
+    private static final long PURGE_INTERVAL = 60L;
+
+    private final ConcurrentMap<String, SecurityContextSession> sessions = new ConcurrentHashMap<>();
+    private volatile Instant nextPurge = Instant.now().plusSeconds(PURGE_INTERVAL);
+
+    @Override
+    public SecurityContextSession getSession(String identifier) {
+        if (identifier == null || identifier.length() == 0) {
+            return null;
+        }
+        SecurityContextSession session = sessions.get(identifier);
+        if (session != null && session.isExpired()) {
+            sessions.remove(identifier, session);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public SecurityContextSession addSession(String identifier, byte[] secret) {
+        return addSession(identifier, secret, Instant.now().plusSeconds(DEFAULT_TTL));
+    }
+
+    @Override
+    public SecurityContextSession addSession(String identifier, byte[] secret, Instant expiry) {
+        if (identifier == null || identifier.length() == 0 || secret == null || secret.length == 0) {
+            return null;
+        }
+
+        Instant now = Instant.now();
+        Instant maxTTL = now.plusSeconds(MAX_TTL);
+        if (expiry == null || expiry.isBefore(now) || expiry.isAfter(maxTTL)) {
+            expiry = now.plusSeconds(DEFAULT_TTL);
+        }
+
+        if (now.isAfter(nextPurge)) {
+            nextPurge = now.plusSeconds(PURGE_INTERVAL);
+            sessions.values().removeIf(SecurityContextSession::isExpired);
+        }
+        SecurityContextSession session = new SecurityContextSession(identifier, secret, expiry);
+        sessions.put(identifier, session);
+        return session;
+    }
+
+    @Override
+    public void removeSession(String identifier) {
+        if (identifier != null) {
+            sessions.remove(identifier);
+        }
+    }
+
+    @Override
+    public void close() {
+        sessions.clear();
+    }
+}
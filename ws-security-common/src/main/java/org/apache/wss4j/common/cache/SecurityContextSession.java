@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * The secret of a WS-SecureConversation session, together with the keys that were derived from it.
+ * A key derived with the same algorithm, label, length, nonce and offset is returned from the memo
+ * instead of being derived again.
+ */
+public class SecurityContextSession {
+
+    /**
+     * The maximum number of derived keys that are memoized per session
+     */
+    public static final int MAX_DERIVED_KEYS = 256;
+
+    private final String identifier;
+    private final byte[] secret;
+    private final Instant expiry;
+    private final Map<DerivedKeyParameters, byte[]> derivedKeys = new ConcurrentHashMap<>();
+
+    public SecurityContextSession(String identifier, byte[] secret, Instant expiry) {
+        this.identifier = identifier;
+        this.secret = secret.clone();
+        this.expiry = expiry;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public byte[] getSecret() {
+        return secret.clone();
+    }
+
+    public Instant getExpiry() {
+        return expiry;
+    }
+
+    public boolean isExpired() {
+        return expiry != null && expiry.isBefore(Instant.now());
+    }
+
+    /**
+     * Return true if the given secret is the secret of this session
+     */
+    public boolean hasSecret(byte[] otherSecret) {
+        return otherSecret != null && MessageDigest.isEqual(secret, otherSecret);
+    }
+
+    /**
+     * Derive a key from the secret of this session
+     *
+     * @see DerivedKeyUtils#deriveKey(String, String, int, byte[], byte[], int)
+     */
+    public byte[] deriveKey(String algorithm, String label, int length, byte[] nonce, int offset)
+        throws WSSecurityException {
+        DerivedKeyParameters parameters = new DerivedKeyParameters(algorithm, label, length, nonce, offset);
+        byte[] key = derivedKeys.get(parameters);
+        if (key == null) {
+            key = DerivedKeyUtils.deriveKey(algorithm, label, length, secret, nonce, offset);
+            if (derivedKeys.size() < MAX_DERIVED_KEYS) {
+                derivedKeys.putIfAbsent(parameters, key);
+            }
+        }
+        return key.clone();
+    }
+
+    private static final class DerivedKeyParameters {
+        private final String algorithm;
+        private final String label;
+        private final int length;
+        private final byte[] nonce;
+        private final int offset;
+
+        DerivedKeyParameters(String algorithm, String label, int length, byte[] nonce, int offset) {
+            this.algorithm = algorithm;
+            this.label = label;
+            this.length = length;
+            this.nonce = nonce.clone();
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DerivedKeyParameters)) {
+                return false;
+            }
+            DerivedKeyParameters that = (DerivedKeyParameters) o;
+            return length == that.length
+                && offset == that.offset
+                && Objects.equals(algorithm, that.algorithm)
+                && Objects.equals(label, that.label)
+                && Arrays.equals(nonce, that.nonce);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Objects.hash(algorithm, label, length, offset);
+            return 31 * result + Arrays.hashCode(nonce);
+        }
+    }
+}
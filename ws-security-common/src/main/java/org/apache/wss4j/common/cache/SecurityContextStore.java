@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.Closeable;
+import java.time.Instant;
+
+/**
+ * A store of the secrets of WS-SecureConversation sessions, keyed by the identifier of the
+ * SecurityContextToken. Once the secret of a session is stored, it is not requested from the
+ * CallbackHandler again for the following messages of the session, and the keys derived from it
+ * are memoized.
+ *
+ * Note that a stored secret bypasses the CallbackHandler for the whole lifetime of the session,
+ * so a secret that the CallbackHandler would no longer return (e.g. as the session was cancelled)
+ * is still accepted until the session expires or is removed via removeSession.
+ */
+public interface SecurityContextStore extends Closeable {
+
+    /**
+     * Get the session with the given SecurityContextToken identifier
+     * @param identifier The identifier of the SecurityContextToken
+     * @return the session, or null if it is not known or has expired
+     */
+    SecurityContextSession getSession(String identifier);
+
+    /**
+     * Add a session with the given SecurityContextToken identifier and secret. It will be stored
+     * for a default amount of time.
+     * @param identifier The identifier of the SecurityContextToken
+     * @param secret The secret of the session
+     * @return the added session, or null if the identifier or the secret is null or empty, in
+     *         which case nothing is stored
+     */
+    SecurityContextSession addSession(String identifier, byte[] secret);
+
+    /**
+     * Add a session with the given SecurityContextToken identifier and secret, to be stored until
+     * the given time.
+     * @param identifier The identifier of the SecurityContextToken
+     * @param secret The secret of the session
+     * @param expiry The time the session expires
+     * @return the added session, or null if the identifier or the secret is null or empty, in
+     *         which case nothing is stored
+     */
+    SecurityContextSession addSession(String identifier, byte[] secret, Instant expiry);
+
+    /**
+     * Remove the session with the given SecurityContextToken identifier, e.g. when the
+     * SecurityContextToken is cancelled
+     * @param identifier The identifier of the SecurityContextToken
+     */
+    void removeSession(String identifier);
+
+}
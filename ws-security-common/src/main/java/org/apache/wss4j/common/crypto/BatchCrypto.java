@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A Crypto implementation that wraps another Crypto instance for the processing of a batch of
+ * messages. The results of certificate lookups, private key retrieval and successful trust
+ * validations are shared between the messages of the batch, so that messages from the same few
+ * clients don't repeat this work. Failed trust validations are not remembered, and so are
+ * repeated (and reported) for every message.
+ *
+ * An instance of this class is safe for use by multiple threads. It should only live as long as
+ * the batch, so that changes to the underlying keystores are picked up by the next batch.
+ */
+public class BatchCrypto implements Crypto {
+
+    private final Crypto crypto;
+    private final Map<List<Object>, X509Certificate[]> certificates = new ConcurrentHashMap<>();
+    private final Map<List<Object>, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+    private final Set<List<Object>> trustedCertificates = ConcurrentHashMap.newKeySet();
+    private final Set<PublicKey> trustedPublicKeys = ConcurrentHashMap.newKeySet();
+
+    public BatchCrypto(Crypto crypto) {
+        Objects.requireNonNull(crypto);
+        // Don't stack the caches of another batch on top of this one
+        this.crypto = crypto instanceof BatchCrypto ? ((BatchCrypto)crypto).getCrypto() : crypto;
+    }
+
+    /**
+     * Get the Crypto instance that is wrapped by this BatchCrypto
+     */
+    public Crypto getCrypto() {
+        return crypto;
+    }
+
+    public String getCryptoProvider() {
+        return crypto.getCryptoProvider();
+    }
+
+    public void setCryptoProvider(String provider) {
+        crypto.setCryptoProvider(provider);
+    }
+
+    public String getTrustProvider() {
+        return crypto.getTrustProvider();
+    }
+
+    public void setTrustProvider(String provider) {
+        crypto.setTrustProvider(provider);
+    }
+
+    public String getDefaultX509Identifier() throws WSSecurityException {
+        return crypto.getDefaultX509Identifier();
+    }
+
+    public void setDefaultX509Identifier(String identifier) {
+        crypto.setDefaultX509Identifier(identifier);
+    }
+
+    public void setCertificateFactory(CertificateFactory certFactory) {
+        crypto.setCertificateFactory(certFactory);
+    }
+
+    public CertificateFactory getCertificateFactory() throws WSSecurityException {
+        return crypto.getCertificateFactory();
+    }
+
+    public X509Certificate loadCertificate(InputStream in) throws WSSecurityException {
+        return crypto.loadCertificate(in);
+    }
+
+    public byte[] getSKIBytesFromCert(X509Certificate cert) throws WSSecurityException {
+        return crypto.getSKIBytesFromCert(cert);
+    }
+
+    public byte[] getBytesFromCertificates(X509Certificate[] certs) throws WSSecurityException {
+        return crypto.getBytesFromCertificates(certs);
+    }
+
+    public X509Certificate[] getCertificatesFromBytes(byte[] data) throws WSSecurityException {
+        return crypto.getCertificatesFromBytes(data);
+    }
+
+    public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+        if (cryptoType == null) {
+            return crypto.getX509Certificates(cryptoType);
+        }
+        List<Object> key = Arrays.asList(
+            cryptoType.getType(), cryptoType.getIssuer(), cryptoType.getSerial(),
+            cryptoType.getBytes() == null ? null : new BigInteger(1, cryptoType.getBytes()),
+            cryptoType.getSubjectDN(), cryptoType.getAlias(), cryptoType.getEndpoint()
+        );
+        X509Certificate[] certs = certificates.get(key);
+        if (certs == null) {
+            certs = crypto.getX509Certificates(cryptoType);
+            if (certs == null) {
+                return null;
+            }
+            certificates.put(key, certs);
+        }
+        return certs.clone();
+    }
+
+    public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
+        return crypto.getX509Identifier(cert);
+    }
+
+    public PrivateKey getPrivateKey(
+        X509Certificate certificate, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        List<Object> key = Arrays.asList(certificate, identity(callbackHandler));
+        PrivateKey privateKey = privateKeys.get(key);
+        if (privateKey == null) {
+            privateKey = crypto.getPrivateKey(certificate, callbackHandler);
+            if (privateKey != null) {
+                privateKeys.put(key, privateKey);
+            }
+        }
+        return privateKey;
+    }
+
+    public PrivateKey getPrivateKey(
+        PublicKey publicKey, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        List<Object> key = Arrays.asList(publicKey, identity(callbackHandler));
+        PrivateKey privateKey = privateKeys.get(key);
+        if (privateKey == null) {
+            privateKey = crypto.getPrivateKey(publicKey, callbackHandler);
+            if (privateKey != null) {
+                privateKeys.put(key, privateKey);
+            }
+        }
+        return privateKey;
+    }
+
+    public PrivateKey getPrivateKey(String identifier, String password) throws WSSecurityException {
+        return crypto.getPrivateKey(identifier, password);
+    }
+
+    public void verifyTrust(
+        X509Certificate[] certs, boolean enableRevocation,
+        Collection<Pattern> subjectCertConstraints, Collection<Pattern> issuerCertConstraints
+    ) throws WSSecurityException {
+        if (certs == null || certs.length == 0) {
+            crypto.verifyTrust(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+            return;
+        }
+        List<Object> key = new ArrayList<>(certs.length + 3);
+        Collections.addAll(key, (Object[])certs);
+        key.add(enableRevocation);
+        key.add(getPatterns(subjectCertConstraints));
+        key.add(getPatterns(issuerCertConstraints));
+        if (!trustedCertificates.contains(key)) {
+            crypto.verifyTrust(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+            trustedCertificates.add(key);
+        }
+    }
+
+    public void verifyTrust(PublicKey publicKey) throws WSSecurityException {
+        if (publicKey == null || !trustedPublicKeys.contains(publicKey)) {
+            crypto.verifyTrust(publicKey);
+            if (publicKey != null) {
+                trustedPublicKeys.add(publicKey);
+            }
+        }
+    }
+
+    private static Object identity(Object object) {
+        if (object == null) {
+            return null;
+        }
+        return new IdentityKey(object);
+    }
+
+    private static List<String> getPatterns(Collection<Pattern> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> patternStrings = new ArrayList<>(patterns.size());
+        for (Pattern pattern : patterns) {
+            patternStrings.add(pattern.pattern() + "/" + pattern.flags());
+        }
+        return patternStrings;
+    }
+
+    /**
+     * Compares the wrapped object by identity, so that e.g. the private key retrieved with one
+     * CallbackHandler is not returned for another CallbackHandler
+     */
+    private static final class IdentityKey {
+        private final Object object;
+
+        IdentityKey(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IdentityKey && ((IdentityKey)other).object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.CRLReason;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertPathValidatorException.BasicReason;
+import java.security.cert.Certificate;
+import java.security.cert.PKIXCertPathChecker;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A PKIXCertPathChecker that checks the revocation status of the certificates of a path against
+ * an index of CRLs, instead of letting the PKIX CertPathValidator search a CertStore of CRLs for
+ * every certificate that is validated.
+ *
+ * The revoked serial numbers are held in a hash index per CRL issuer, and the signature of each
+ * CRL is verified once when it is added. If the issuer certificate of a CRL is not known at that
+ * time, the signature is verified the first time a certificate path contains the issuer. Delta
+ * CRLs are applied incrementally to the complete CRL of their issuer via addCRL.
+ *
+ * The index is shared between the clones that the CertPathValidator makes of this checker, so
+ * that one instance can be added to the PKIXParameters of all validations.
+ */
+public class CRLRevocationChecker extends PKIXCertPathChecker {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(CRLRevocationChecker.class);
+
+    private static final String CRL_NUMBER_OID = "2.5.29.20";
+    private static final String DELTA_CRL_INDICATOR_OID = "2.5.29.27";
+
+    // The tolerated clock skew when checking whether a CRL is out of date
+    private static final long MAX_CLOCK_SKEW = 15L * 60L * 1000L;
+
+    private final Map<X500Principal, IssuerCRLs> index;
+    private final Map<X500Principal, List<X509Certificate>> issuerCertificates;
+    private final String provider;
+
+    // The state of a single validation, the checker is cloned for each validation
+    private X509Certificate previousCertificate;
+
+    /**
+     * Create a CRLRevocationChecker
+     *
+     * @param issuerCertificates The certificates that may have issued the CRLs, e.g. the
+     *        certificates of the keystore and truststore. They are used to verify the CRL signatures.
+     * @param provider The provider used to verify the CRL signatures, or null for the default
+     */
+    public CRLRevocationChecker(Collection<X509Certificate> issuerCertificates, String provider) {
+        this.index = new ConcurrentHashMap<>();
+        this.issuerCertificates = new HashMap<>();
+        if (issuerCertificates != null) {
+            for (X509Certificate certificate : issuerCertificates) {
+                this.issuerCertificates.computeIfAbsent(
+                    certificate.getSubjectX500Principal(), k -> new ArrayList<>(1)
+                ).add(certificate);
+            }
+        }
+        this.provider = provider;
+    }
+
+    /**
+     * Add a complete or a delta CRL to the index. A complete CRL replaces the CRL of the same issuer
+     * unless it is older. A delta CRL is applied to the complete CRL of its issuer, which must have
+     * been added before.
+     *
+     * @param crl the CRL to add
+     * @throws WSSecurityException if the CRL signature is invalid, or the CRL can not be applied
+     */
+    public synchronized void addCRL(X509CRL crl) throws WSSecurityException {
+        checkCriticalExtensions(crl.getCriticalExtensionOIDs());
+        boolean verified = verifyWithIssuerCertificates(crl);
+
+        X500Principal issuer = crl.getIssuerX500Principal();
+        BigInteger crlNumber = getIntegerExtension(crl, CRL_NUMBER_OID);
+        BigInteger baseCRLNumber = getIntegerExtension(crl, DELTA_CRL_INDICATOR_OID);
+        IssuerCRLs current = index.get(issuer);
+
+        IssuerCRLs updated;
+        if (baseCRLNumber == null) {
+            if (current != null && !current.isOlderThan(crlNumber, crl.getThisUpdate())) {
+                LOG.debug("Ignoring CRL of {} as it is not newer than the current CRL", issuer);
+                return;
+            }
+            updated = new IssuerCRLs(crlNumber, crl.getThisUpdate(), crl.getNextUpdate(),
+                                     new HashMap<>(), new ArrayList<>());
+        } else {
+            if (current == null || current.crlNumber == null || crlNumber == null
+                || current.crlNumber.compareTo(baseCRLNumber) < 0) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE, "certpath",
+                    new Object[] {"No complete CRL of " + issuer + " to apply the delta CRL " + crlNumber + " to"}
+                );
+            }
+            if (current.crlNumber.compareTo(crlNumber) >= 0) {
+                LOG.debug("Ignoring delta CRL {} of {} as it is already applied", crlNumber, issuer);
+                return;
+            }
+            updated = new IssuerCRLs(crlNumber, crl.getThisUpdate(), crl.getNextUpdate(),
+                                     new HashMap<>(current.revokedCertificates),
+                                     new ArrayList<>(current.unverifiedCRLs));
+        }
+
+        Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        if (entries != null) {
+            for (X509CRLEntry entry : entries) {
+                checkCriticalExtensions(entry.getCriticalExtensionOIDs());
+                CRLReason reason = entry.getRevocationReason();
+                if (reason == CRLReason.REMOVE_FROM_CRL) {
+                    updated.revokedCertificates.remove(entry.getSerialNumber());
+                } else {
+                    updated.revokedCertificates.put(entry.getSerialNumber(), reason);
+                }
+            }
+        }
+        if (!verified) {
+            updated.unverifiedCRLs.add(crl);
+        }
+        index.put(issuer, updated);
+        LOG.debug("Added the CRL {} of {} with {} revoked certificates",
+                  crlNumber, issuer, updated.revokedCertificates.size());
+    }
+
+    @Override
+    public void init(boolean forward) throws CertPathValidatorException {
+        if (forward) {
+            throw new CertPathValidatorException("Forward checking is not supported");
+        }
+        previousCertificate = null;
+    }
+
+    @Override
+    public boolean isForwardCheckingSupported() {
+        return false;
+    }
+
+    @Override
+    public Set<String> getSupportedExtensions() {
+        return null;
+    }
+
+    @Override
+    public void check(Certificate cert, Collection<String> unresolvedCritExts)
+        throws CertPathValidatorException {
+        X509Certificate certificate = (X509Certificate)cert;
+        X500Principal issuer = certificate.getIssuerX500Principal();
+        IssuerCRLs crls = index.get(issuer);
+        if (crls == null) {
+            throw new CertPathValidatorException(
+                "No CRL found for issuer " + issuer, null, null, -1,
+                BasicReason.UNDETERMINED_REVOCATION_STATUS
+            );
+        }
+        if (!crls.unverifiedCRLs.isEmpty()) {
+            verifyWithPathCertificate(issuer, crls);
+        }
+
+        Date nextUpdate = crls.nextUpdate;
+        if (nextUpdate != null && nextUpdate.getTime() + MAX_CLOCK_SKEW < System.currentTimeMillis()) {
+            throw new CertPathValidatorException(
+                "The CRL of issuer " + issuer + " expired on " + nextUpdate, null, null, -1,
+                BasicReason.UNDETERMINED_REVOCATION_STATUS
+            );
+        }
+
+        BigInteger serialNumber = certificate.getSerialNumber();
+        if (crls.revokedCertificates.containsKey(serialNumber)) {
+            CRLReason reason = crls.revokedCertificates.get(serialNumber);
+            throw new CertPathValidatorException(
+                "Certificate " + serialNumber + " of issuer " + issuer + " has been revoked"
+                + (reason != null ? ", reason: " + reason : ""), null, null, -1, BasicReason.REVOKED
+            );
+        }
+        previousCertificate = certificate;
+    }
+
+    private boolean verifyWithIssuerCertificates(X509CRL crl) throws WSSecurityException {
+        List<X509Certificate> candidates = issuerCertificates.get(crl.getIssuerX500Principal());
+        if (candidates == null) {
+            LOG.debug("No issuer certificate of the CRL of {} found, the signature is verified later",
+                      crl.getIssuerX500Principal());
+            return false;
+        }
+        for (X509Certificate candidate : candidates) {
+            if (verify(crl, candidate)) {
+                return true;
+            }
+        }
+        throw new WSSecurityException(
+            WSSecurityException.ErrorCode.FAILURE, "certpath",
+            new Object[] {"The signature of the CRL of " + crl.getIssuerX500Principal() + " is invalid"}
+        );
+    }
+
+    private void verifyWithPathCertificate(X500Principal issuer, IssuerCRLs crls)
+        throws CertPathValidatorException {
+        // The first certificate checked is issued by the trust anchor, which is one of the issuer
+        // certificates. Every further certificate is issued by the previous one.
+        List<X509Certificate> candidates = issuerCertificates.get(issuer);
+        if (previousCertificate != null && issuer.equals(previousCertificate.getSubjectX500Principal())) {
+            candidates = Collections.singletonList(previousCertificate);
+        }
+        if (candidates != null) {
+            for (X509CRL crl : crls.unverifiedCRLs) {
+                boolean verified = false;
+                for (X509Certificate candidate : candidates) {
+                    if (verify(crl, candidate)) {
+                        verified = true;
+                        break;
+                    }
+                }
+                if (!verified) {
+                    throw new CertPathValidatorException(
+                        "The signature of the CRL of " + issuer + " is invalid", null, null, -1,
+                        BasicReason.INVALID_SIGNATURE
+                    );
+                }
+            }
+            // Don't override a CRL that was added in the meantime. The index is shared with the
+            // clones of this checker, so the replacement must be atomic rather than locking this clone.
+            index.replace(issuer, crls, new IssuerCRLs(crls.crlNumber, crls.thisUpdate, crls.nextUpdate,
+                                                       crls.revokedCertificates, new ArrayList<>()));
+        } else {
+            throw new CertPathValidatorException(
+                "No issuer certificate found to verify the CRL of " + issuer, null, null, -1,
+                BasicReason.UNDETERMINED_REVOCATION_STATUS
+            );
+        }
+    }
+
+    private boolean verify(X509CRL crl, X509Certificate issuerCertificate) {
+        try {
+            if (provider == null || provider.length() == 0) {
+                crl.verify(issuerCertificate.getPublicKey());
+            } else {
+                crl.verify(issuerCertificate.getPublicKey(), provider);
+            }
+            return true;
+        } catch (GeneralSecurityException e) {
+            LOG.debug(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private static void checkCriticalExtensions(Set<String> criticalExtensionOIDs) throws WSSecurityException {
+        if (criticalExtensionOIDs != null) {
+            for (String oid : criticalExtensionOIDs) {
+                if (!DELTA_CRL_INDICATOR_OID.equals(oid)) {
+                    throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.FAILURE, "certpath",
+                        new Object[] {"Unsupported critical CRL extension " + oid}
+                    );
+                }
+            }
+        }
+    }
+
+    private static BigInteger getIntegerExtension(X509CRL crl, String oid) throws WSSecurityException {
+        byte[] derEncodedValue = crl.getExtensionValue(oid);
+        if (derEncodedValue == null) {
+            return null;
+        }
+        // The value is an OCTET STRING wrapping the DER encoded INTEGER
+        DERDecoder extVal = new DERDecoder(derEncodedValue);
+        extVal.expect(DERDecoder.TYPE_OCTET_STRING);
+        extVal.getLength();
+        extVal.expect(0x02);
+        return new BigInteger(extVal.getBytes(extVal.getLength()));
+    }
+
+    /**
+     * The current state of the CRLs of an issuer. It is not modified once it is in the index.
+     */
+    private static final class IssuerCRLs {
+        private final BigInteger crlNumber;
+        private final Date thisUpdate;
+        private final Date nextUpdate;
+        private final Map<BigInteger, CRLReason> revokedCertificates;
+        private final List<X509CRL> unverifiedCRLs;
+
+        IssuerCRLs(BigInteger crlNumber, Date thisUpdate, Date nextUpdate,
+                   Map<BigInteger, CRLReason> revokedCertificates, List<X509CRL> unverifiedCRLs) {
+            this.crlNumber = crlNumber;
+            this.thisUpdate = thisUpdate;
+            this.nextUpdate = nextUpdate;
+            this.revokedCertificates = revokedCertificates;
+            this.unverifiedCRLs = unverifiedCRLs;
+        }
+
+        boolean isOlderThan(BigInteger otherCrlNumber, Date otherThisUpdate) {
+            if (crlNumber != null && otherCrlNumber != null) {
+                return crlNumber.compareTo(otherCrlNumber) < 0;
+            }
+            return thisUpdate.before(otherThisUpdate);
+        }
+    }
+}
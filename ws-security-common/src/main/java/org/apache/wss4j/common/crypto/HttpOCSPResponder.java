@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.Locale;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.GeneralName;
+
+/**
+ * An OCSPResponder that sends the OCSP requests via HTTP POST, either to a configured URL, or to
+ * the OCSP responder named in the Authority Information Access extension of the certificate.
+ * Only http and https URLs are used. The response must have the content type
+ * "application/ocsp-response", and must not be larger than the maximum response size.
+ */
+public class HttpOCSPResponder implements OCSPResponder {
+
+    private static final String AUTHORITY_INFO_ACCESS_OID = "1.3.6.1.5.5.7.1.1";
+    private static final int DEFAULT_TIMEOUT = 10000;
+    private static final int DEFAULT_MAX_RESPONSE_SIZE = 1024 * 1024;
+    private static final String OCSP_RESPONSE_CONTENT_TYPE = "application/ocsp-response";
+
+    private final URL responderURL;
+    private int connectTimeout = DEFAULT_TIMEOUT;
+    private int readTimeout = DEFAULT_TIMEOUT;
+    private int maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+
+    /**
+     * Create an HttpOCSPResponder
+     *
+     * @param responderURL the URL of the OCSP responder, or null to use the URL in the certificate
+     */
+    public HttpOCSPResponder(URL responderURL) {
+        this.responderURL = responderURL;
+    }
+
+    @Override
+    public byte[] sendRequest(X509Certificate certificate, byte[] request) throws IOException {
+        URL url = responderURL != null ? responderURL : getResponderURL(certificate);
+        if (url == null) {
+            throw new IOException("No OCSP responder URL found for " + certificate.getSubjectX500Principal());
+        }
+        String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+        if (!"http".equals(protocol) && !"https".equals(protocol)) {
+            throw new IOException("The OCSP responder URL " + url + " is not an http or https URL");
+        }
+
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/ocsp-request");
+            connection.setFixedLengthStreamingMode(request.length);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(request);
+            }
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("The OCSP responder " + url + " returned HTTP status "
+                                      + connection.getResponseCode());
+            }
+            String contentType = connection.getContentType();
+            if (contentType == null
+                || !OCSP_RESPONSE_CONTENT_TYPE.equals(contentType.split(";")[0].trim().toLowerCase(Locale.ROOT))) {
+                throw new IOException("The OCSP responder " + url + " returned the content type " + contentType);
+            }
+            if (connection.getContentLengthLong() > maxResponseSize) {
+                throw new IOException("The OCSP response of " + url + " exceeds " + maxResponseSize + " bytes");
+            }
+            try (InputStream inputStream = connection.getInputStream()) {
+                byte[] response = inputStream.readNBytes(maxResponseSize + 1);
+                if (response.length > maxResponseSize) {
+                    throw new IOException("The OCSP response of " + url + " exceeds " + maxResponseSize + " bytes");
+                }
+                return response;
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static URL getResponderURL(X509Certificate certificate) throws IOException {
+        byte[] extensionValue = certificate.getExtensionValue(AUTHORITY_INFO_ACCESS_OID);
+        if (extensionValue != null) {
+            AuthorityInformationAccess authorityInformationAccess =
+                AuthorityInformationAccess.getInstance(ASN1OctetString.getInstance(extensionValue).getOctets());
+            for (AccessDescription accessDescription : authorityInformationAccess.getAccessDescriptions()) {
+                GeneralName location = accessDescription.getAccessLocation();
+                if (AccessDescription.id_ad_ocsp.equals(accessDescription.getAccessMethod())
+                    && location.getTagNo() == GeneralName.uniformResourceIdentifier) {
+                    return new URL(location.getName().toString());
+                }
+            }
+        }
+        return null;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
+    /**
+     * Set the maximum size of an OCSP response in bytes. The default is 1 MB.
+     */
+    public void setMaxResponseSize(int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+}
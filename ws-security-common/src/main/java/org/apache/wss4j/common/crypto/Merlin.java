@@ -22,6 +22,7 @@ package org.apache.wss4j.common.crypto;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
@@ -118,6 +119,13 @@ public class Merlin extends CryptoBase {
      * CRL configuration
      */
     public static final String X509_CRL_FILE = "x509crl.file";
+    public static final String X509_CRL_INDEX = "x509crl.index";
+
+    /*
+     * OCSP configuration
+     */
+    public static final String OCSP_ENABLE = "ocsp.enable";
+    public static final String OCSP_RESPONDER_URL = "ocsp.responder.url";
 
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(Merlin.class);
@@ -127,6 +135,8 @@ public class Merlin extends CryptoBase {
     protected KeyStore keystore;
     protected KeyStore truststore;
     protected CertStore crlCertStore;
+    protected CRLRevocationChecker crlRevocationChecker;
+    protected OCSPRevocationChecker ocspRevocationChecker;
     protected boolean loadCACerts;
     protected boolean privatePasswordSet;
     protected PasswordEncryptor passwordEncryptor;
@@ -139,6 +149,25 @@ public class Merlin extends CryptoBase {
         // default constructor
     }
 
+    /**
+     * Create a Merlin instance that shares the keystore, truststore, CRLs, revocation checkers and
+     * private key cache of the given one. The provider settings of CryptoBase are not copied.
+     */
+    Merlin(Merlin merlin) {
+        properties = merlin.properties;
+        keystore = merlin.keystore;
+        truststore = merlin.truststore;
+        crlCertStore = merlin.crlCertStore;
+        crlRevocationChecker = merlin.crlRevocationChecker;
+        ocspRevocationChecker = merlin.ocspRevocationChecker;
+        loadCACerts = merlin.loadCACerts;
+        privatePasswordSet = merlin.privatePasswordSet;
+        passwordEncryptor = merlin.passwordEncryptor;
+        certProviderHandlesNameConstraints = merlin.certProviderHandlesNameConstraints;
+        enablePrivateKeyCaching = merlin.enablePrivateKeyCaching;
+        privateKeyCache = merlin.privateKeyCache;
+    }
+
     public Merlin(boolean loadCACerts, String cacertsPasswd) {
         super();
 
@@ -345,6 +374,62 @@ public class Merlin extends CryptoBase {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "ioError00");
             }
             LOG.debug("The CRL files {} have been loaded", crlLocations);
+
+            if (Boolean.parseBoolean(properties.getProperty(prefix + X509_CRL_INDEX))) {
+                crlRevocationChecker = createCRLRevocationChecker(crls);
+            }
+        }
+
+        //
+        // Set up OCSP
+        //
+        if (Boolean.parseBoolean(properties.getProperty(prefix + OCSP_ENABLE))) {
+            String responderURL = properties.getProperty(prefix + OCSP_RESPONDER_URL);
+            URL url = null;
+            if (responderURL != null && responderURL.trim().length() > 0) {
+                url = new URL(responderURL.trim());
+            }
+            ocspRevocationChecker = new OCSPRevocationChecker(new HttpOCSPResponder(url), getIssuerCertificates());
+            LOG.debug("OCSP revocation checking has been enabled");
+        }
+    }
+
+    /**
+     * Create a CRLRevocationChecker for the given CRLs, using the certificates of the keystore
+     * and truststore to verify the CRL signatures
+     */
+    protected CRLRevocationChecker createCRLRevocationChecker(List<X509CRL> crls) throws WSSecurityException {
+        CRLRevocationChecker checker = new CRLRevocationChecker(getIssuerCertificates(), getCryptoProvider());
+        for (X509CRL crl : crls) {
+            checker.addCRL(crl);
+        }
+        return checker;
+    }
+
+    /**
+     * Get the certificates of the keystore and truststore, which may have issued the CRLs and
+     * the certificates that are checked for revocation
+     */
+    private List<X509Certificate> getIssuerCertificates() throws WSSecurityException {
+        List<X509Certificate> issuerCertificates = new ArrayList<>();
+        try {
+            addX509Certificates(issuerCertificates, keystore);
+            addX509Certificates(issuerCertificates, truststore);
+        } catch (KeyStoreException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
+        }
+        return issuerCertificates;
+    }
+
+    private static void addX509Certificates(List<X509Certificate> certificates, KeyStore keyStore)
+        throws KeyStoreException {
+        if (keyStore != null) {
+            for (Enumeration<String> e = keyStore.aliases(); e.hasMoreElements();) {
+                Certificate cert = keyStore.getCertificate(e.nextElement());
+                if (cert instanceof X509Certificate) {
+                    certificates.add((X509Certificate) cert);
+                }
+            }
         }
     }
 
@@ -444,6 +529,40 @@ public class Merlin extends CryptoBase {
         return crlCertStore;
     }
 
+    /**
+     * Set the CRLRevocationChecker used for Certificate Revocation checking. If it is set, it
+     * is used instead of the CertStore of CRLs.
+     * @param crlRevocationChecker the CRLRevocationChecker used for Certificate Revocation checking
+     */
+    public void setCRLRevocationChecker(CRLRevocationChecker crlRevocationChecker) {
+        this.crlRevocationChecker = crlRevocationChecker;
+    }
+
+    /**
+     * Get the CRLRevocationChecker used for Certificate Revocation checking.
+     * @return the CRLRevocationChecker used for Certificate Revocation checking
+     */
+    public CRLRevocationChecker getCRLRevocationChecker() {
+        return crlRevocationChecker;
+    }
+
+    /**
+     * Set the OCSPRevocationChecker used for Certificate Revocation checking. If it is set,
+     * the revocation status of the certificates is checked via OCSP, in addition to the CRLs.
+     * @param ocspRevocationChecker the OCSPRevocationChecker used for Certificate Revocation checking
+     */
+    public void setOCSPRevocationChecker(OCSPRevocationChecker ocspRevocationChecker) {
+        this.ocspRevocationChecker = ocspRevocationChecker;
+    }
+
+    /**
+     * Get the OCSPRevocationChecker used for Certificate Revocation checking.
+     * @return the OCSPRevocationChecker used for Certificate Revocation checking
+     */
+    public OCSPRevocationChecker getOCSPRevocationChecker() {
+        return ocspRevocationChecker;
+    }
+
     /**
      * Singleton certificate factory for this Crypto instance.
      * <p/>
@@ -914,9 +1033,22 @@ public class Merlin extends CryptoBase {
         Set<TrustAnchor> trustAnchors, boolean enableRevocation
     ) throws InvalidAlgorithmParameterException {
         PKIXParameters param = new PKIXParameters(trustAnchors);
-        param.setRevocationEnabled(enableRevocation);
-        if (enableRevocation && crlCertStore != null) {
-            param.addCertStore(crlCertStore);
+        if (enableRevocation && crlRevocationChecker != null) {
+            // The CRLs are checked via the index instead of the CertStore
+            param.setRevocationEnabled(false);
+            param.addCertPathChecker(crlRevocationChecker);
+        } else if (enableRevocation && crlCertStore == null && ocspRevocationChecker != null) {
+            // There are no CRLs to check, only OCSP
+            param.setRevocationEnabled(false);
+        } else {
+            param.setRevocationEnabled(enableRevocation);
+            if (enableRevocation && crlCertStore != null) {
+                param.addCertStore(crlCertStore);
+            }
+        }
+        if (enableRevocation && ocspRevocationChecker != null) {
+            // OCSP is checked in addition to the CRLs
+            param.addCertPathChecker(ocspRevocationChecker);
         }
 
         return param;
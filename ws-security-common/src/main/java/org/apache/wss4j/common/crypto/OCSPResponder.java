@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+
+/**
+ * The endpoint an OCSPRevocationChecker sends its OCSP requests to.
+ */
+public interface OCSPResponder {
+
+    /**
+     * Send an OCSP request and return the response.
+     *
+     * @param certificate the certificate of which the revocation status is requested
+     * @param request the DER encoded OCSP request
+     * @return the DER encoded OCSP response
+     * @throws IOException if the responder could not be reached
+     */
+    byte[] sendRequest(X509Certificate certificate, byte[] request) throws IOException;
+
+}
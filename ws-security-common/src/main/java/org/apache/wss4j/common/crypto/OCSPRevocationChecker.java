@@ -0,0 +1,434 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertPathValidatorException.BasicReason;
+import java.security.cert.Certificate;
+import java.security.cert.PKIXCertPathChecker;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * A PKIXCertPathChecker that checks the revocation status of the certificates of a path via OCSP.
+ * It requires BouncyCastle to create the OCSP requests and parse the responses.
+ *
+ * The responses are cached by certificate ID until their nextUpdate time, so that validating a
+ * certificate does not block on a call to the OCSP responder each time. A cached response is
+ * refreshed in the background once it is about to expire, while the cached response is still
+ * used. Concurrent lookups of the same certificate wait for a single request to the responder.
+ * Responses without a nextUpdate time are not cached, as such a response means that newer
+ * revocation information is available at any time (RFC 6960, section 4.2.2.1), and so every
+ * validation of the certificate sends a request to the responder. Once the cache is full, the
+ * expired responses are evicted, and then the responses that expire first.
+ *
+ * The OCSP responses must be signed by the issuer of the certificate, or by a responder
+ * certificate that was issued for OCSP signing by the issuer. The cache is shared between the
+ * clones that the CertPathValidator makes of this checker, so that one instance can be added to
+ * the PKIXParameters of all validations.
+ */
+public class OCSPRevocationChecker extends PKIXCertPathChecker {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(OCSPRevocationChecker.class);
+
+    private static final String OCSP_SIGNING_OID = "1.3.6.1.5.5.7.3.9";
+    private static final long MAX_CLOCK_SKEW = 15L * 60L * 1000L;
+    private static final long DEFAULT_REFRESH_AHEAD = 5L * 60L * 1000L;
+    private static final int DEFAULT_MAX_CACHE_SIZE = 10000;
+
+    private final OCSPResponder responder;
+    private final Map<X500Principal, List<X509Certificate>> issuerCertificates;
+    private final ConcurrentMap<CertificateID, OCSPStatus> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CertificateID, CompletableFuture<OCSPStatus>> pendingRequests =
+        new ConcurrentHashMap<>();
+    private Executor executor;
+    private long refreshAhead = DEFAULT_REFRESH_AHEAD;
+    private int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+    // The state of a single validation, the checker is cloned for each validation
+    private X509Certificate previousCertificate;
+
+    /**
+     * Create an OCSPRevocationChecker
+     *
+     * @param responder The OCSP responder to send the requests to
+     * @param issuerCertificates The certificates that may have issued the certificates that are
+     *        checked, e.g. the certificates of the keystore and truststore. The issuer of the first
+     *        certificate of a path must be among them.
+     */
+    public OCSPRevocationChecker(OCSPResponder responder, Collection<X509Certificate> issuerCertificates) {
+        this.responder = responder;
+        this.issuerCertificates = new HashMap<>();
+        if (issuerCertificates != null) {
+            for (X509Certificate certificate : issuerCertificates) {
+                this.issuerCertificates.computeIfAbsent(
+                    certificate.getSubjectX500Principal(), k -> new ArrayList<>(1)
+                ).add(certificate);
+            }
+        }
+    }
+
+    @Override
+    public void init(boolean forward) throws CertPathValidatorException {
+        if (forward) {
+            throw new CertPathValidatorException("Forward checking is not supported");
+        }
+        previousCertificate = null;
+    }
+
+    @Override
+    public boolean isForwardCheckingSupported() {
+        return false;
+    }
+
+    @Override
+    public Set<String> getSupportedExtensions() {
+        return null;
+    }
+
+    @Override
+    public void check(Certificate cert, Collection<String> unresolvedCritExts)
+        throws CertPathValidatorException {
+        X509Certificate certificate = (X509Certificate)cert;
+        X509Certificate issuerCertificate = getIssuerCertificate(certificate);
+        if (issuerCertificate == null) {
+            throw new CertPathValidatorException(
+                "No issuer certificate found for " + certificate.getSubjectX500Principal(), null, null, -1,
+                BasicReason.UNDETERMINED_REVOCATION_STATUS
+            );
+        }
+
+        OCSPStatus status = getStatus(certificate, issuerCertificate);
+        if (status.certificateStatus instanceof RevokedStatus) {
+            RevokedStatus revokedStatus = (RevokedStatus)status.certificateStatus;
+            throw new CertPathValidatorException(
+                "Certificate " + certificate.getSerialNumber() + " of issuer " + certificate.getIssuerX500Principal()
+                + " has been revoked" + (revokedStatus.hasRevocationReason()
+                    ? ", reason: " + revokedStatus.getRevocationReason() : ""),
+                null, null, -1, BasicReason.REVOKED
+            );
+        } else if (status.certificateStatus != CertificateStatus.GOOD) {
+            throw new CertPathValidatorException(
+                "The OCSP responder does not know the status of certificate " + certificate.getSerialNumber()
+                + " of issuer " + certificate.getIssuerX500Principal(), null, null, -1,
+                BasicReason.UNDETERMINED_REVOCATION_STATUS
+            );
+        }
+        previousCertificate = certificate;
+    }
+
+    private X509Certificate getIssuerCertificate(X509Certificate certificate) {
+        X500Principal issuer = certificate.getIssuerX500Principal();
+        // The first certificate checked is issued by the trust anchor, which is one of the issuer
+        // certificates. Every further certificate is issued by the previous one.
+        if (previousCertificate != null && issuer.equals(previousCertificate.getSubjectX500Principal())) {
+            return previousCertificate;
+        }
+        List<X509Certificate> candidates = issuerCertificates.get(issuer);
+        if (candidates == null) {
+            return null;
+        } else if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        for (X509Certificate candidate : candidates) {
+            try {
+                certificate.verify(candidate.getPublicKey());
+                return candidate;
+            } catch (GeneralSecurityException e) {
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    private OCSPStatus getStatus(X509Certificate certificate, X509Certificate issuerCertificate)
+        throws CertPathValidatorException {
+        CertificateID certificateID;
+        try {
+            certificateID = new JcaCertificateID(
+                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                issuerCertificate, certificate.getSerialNumber()
+            );
+        } catch (Exception e) {
+            throw new CertPathValidatorException(e);
+        }
+
+        long now = System.currentTimeMillis();
+        OCSPStatus cachedStatus = cache.get(certificateID);
+        if (cachedStatus != null) {
+            if (now < cachedStatus.expiry) {
+                if (now >= cachedStatus.expiry - refreshAhead) {
+                    LOG.debug("Refreshing the OCSP response for certificate {}", certificate.getSerialNumber());
+                    requestStatus(certificateID, certificate, issuerCertificate, true);
+                }
+                return cachedStatus;
+            }
+            cache.remove(certificateID, cachedStatus);
+        }
+
+        try {
+            return requestStatus(certificateID, certificate, issuerCertificate, false).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CertPathValidatorException(
+                "Interrupted while waiting for the OCSP response", e, null, -1,
+                BasicReason.UNDETERMINED_REVOCATION_STATUS
+            );
+        } catch (ExecutionException e) {
+            throw new CertPathValidatorException(
+                "Error retrieving the OCSP response: " + e.getCause().getMessage(), e.getCause(), null, -1,
+                BasicReason.UNDETERMINED_REVOCATION_STATUS
+            );
+        }
+    }
+
+    /**
+     * Request the status of the given certificate, unless a request for it is already pending. The
+     * request is sent in the calling thread, or on the Executor for a background refresh.
+     */
+    private CompletableFuture<OCSPStatus> requestStatus(
+        CertificateID certificateID, X509Certificate certificate, X509Certificate issuerCertificate,
+        boolean background
+    ) {
+        CompletableFuture<OCSPStatus> future = new CompletableFuture<>();
+        CompletableFuture<OCSPStatus> pendingRequest = pendingRequests.putIfAbsent(certificateID, future);
+        if (pendingRequest != null) {
+            return pendingRequest;
+        }
+
+        Runnable request = () -> {
+            try {
+                OCSPStatus status = sendRequest(certificateID, certificate, issuerCertificate);
+                if (status.expiry > System.currentTimeMillis()) {
+                    if (cache.size() >= maxCacheSize && !cache.containsKey(certificateID)) {
+                        evict();
+                    }
+                    cache.put(certificateID, status);
+                }
+                future.complete(status);
+            } catch (Exception e) {
+                LOG.debug(e.getMessage(), e);
+                future.completeExceptionally(e);
+            } finally {
+                pendingRequests.remove(certificateID, future);
+            }
+        };
+
+        if (background) {
+            try {
+                getExecutor().execute(request);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("The OCSP refresh was rejected, the cached response is used until it expires", e);
+                pendingRequests.remove(certificateID, future);
+                future.completeExceptionally(e);
+            }
+        } else {
+            request.run();
+        }
+        return future;
+    }
+
+    /**
+     * Make room for a new response, by evicting the expired responses, or otherwise the responses
+     * that expire first
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(cachedStatus -> cachedStatus.expiry <= now);
+
+        int excess = cache.size() - maxCacheSize + 1;
+        if (excess > 0) {
+            List<Map.Entry<CertificateID, OCSPStatus>> entries = new ArrayList<>(cache.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().expiry));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                cache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+        }
+    }
+
+    private OCSPStatus sendRequest(
+        CertificateID certificateID, X509Certificate certificate, X509Certificate issuerCertificate
+    ) throws Exception {
+        OCSPReq request = new OCSPReqBuilder().addRequest(certificateID).build();
+        OCSPResp response = new OCSPResp(responder.sendRequest(certificate, request.getEncoded()));
+        if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+            throw new CertPathValidatorException("The OCSP responder returned status " + response.getStatus());
+        }
+
+        BasicOCSPResp basicResponse = (BasicOCSPResp)response.getResponseObject();
+        verifyResponseSignature(basicResponse, issuerCertificate);
+
+        for (SingleResp singleResponse : basicResponse.getResponses()) {
+            if (certificateID.equals(singleResponse.getCertID())) {
+                long now = System.currentTimeMillis();
+                Date thisUpdate = singleResponse.getThisUpdate();
+                Date nextUpdate = singleResponse.getNextUpdate();
+                if (thisUpdate.getTime() > now + MAX_CLOCK_SKEW) {
+                    throw new CertPathValidatorException("The OCSP response is not yet valid: " + thisUpdate);
+                } else if (nextUpdate != null && nextUpdate.getTime() + MAX_CLOCK_SKEW < now) {
+                    throw new CertPathValidatorException("The OCSP response expired on " + nextUpdate);
+                }
+                return new OCSPStatus(singleResponse.getCertStatus(), nextUpdate != null ? nextUpdate.getTime() : 0L);
+            }
+        }
+        throw new CertPathValidatorException("The OCSP response does not contain the requested certificate");
+    }
+
+    private static void verifyResponseSignature(BasicOCSPResp response, X509Certificate issuerCertificate)
+        throws Exception {
+        JcaContentVerifierProviderBuilder verifierProviderBuilder = new JcaContentVerifierProviderBuilder();
+        if (response.isSignatureValid(verifierProviderBuilder.build(issuerCertificate.getPublicKey()))) {
+            return;
+        }
+
+        // Otherwise the response must be signed by a delegated responder certificate of the issuer
+        JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+        for (X509CertificateHolder certificateHolder : response.getCerts()) {
+            X509Certificate responderCertificate = converter.getCertificate(certificateHolder);
+            List<String> extendedKeyUsage = responderCertificate.getExtendedKeyUsage();
+            if (responderCertificate.getIssuerX500Principal().equals(issuerCertificate.getSubjectX500Principal())
+                && extendedKeyUsage != null && extendedKeyUsage.contains(OCSP_SIGNING_OID)) {
+                try {
+                    responderCertificate.verify(issuerCertificate.getPublicKey());
+                    responderCertificate.checkValidity();
+                } catch (GeneralSecurityException e) {
+                    LOG.debug(e.getMessage(), e);
+                    continue;
+                }
+                if (response.isSignatureValid(verifierProviderBuilder.build(responderCertificate))) {
+                    return;
+                }
+            }
+        }
+        throw new CertPathValidatorException(
+            "The signature of the OCSP response is invalid", null, null, -1, BasicReason.INVALID_SIGNATURE
+        );
+    }
+
+    /**
+     * Remove all cached OCSP responses
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Get the number of cached OCSP responses
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public Executor getExecutor() {
+        return executor != null ? executor : RefreshExecutor.INSTANCE;
+    }
+
+    /**
+     * Set the Executor on which the cached OCSP responses are refreshed ahead of their expiry. The
+     * default is a small shared pool of daemon threads.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public long getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Set how many milliseconds before the nextUpdate time of a cached OCSP response it is refreshed.
+     * The default is 5 minutes.
+     */
+    public void setRefreshAhead(long refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Set the maximum number of cached OCSP responses. The default is 10000.
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    private static final class OCSPStatus {
+        private final CertificateStatus certificateStatus;
+        private final long expiry;
+
+        OCSPStatus(CertificateStatus certificateStatus, long expiry) {
+            this.certificateStatus = certificateStatus;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final class RefreshExecutor {
+        private static final ThreadPoolExecutor INSTANCE;
+
+        static {
+            INSTANCE = new ThreadPoolExecutor(4, 4, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "wss4j-ocsp-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            INSTANCE.allowCoreThreadTimeOut(true);
+        }
+
+        private RefreshExecutor() {
+            // complete
+        }
+    }
+}
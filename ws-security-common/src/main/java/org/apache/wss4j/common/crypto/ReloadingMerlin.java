@@ -0,0 +1,615 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+
+/**
+ * A Crypto implementation that loads its keystore, truststore and CRLs in the same way as Merlin,
+ * and reloads them when the files they are loaded from are modified. This allows certificates to
+ * be rotated and CRLs to be refreshed without a restart.
+ *
+ * Every load creates a new snapshot (a Merlin instance that is never modified afterwards, together
+ * with its trust anchors), which is published by replacing a single reference. Every method call
+ * uses the snapshot that is current when it starts, so that it never sees a partially updated
+ * state, and never waits for a reload. If a reload fails, the previous snapshot stays in use.
+ * Setting a property also publishes a new snapshot, which shares the loaded files of the current one.
+ *
+ * The files are checked for modifications every "reload.interval" seconds (60 by default) by a
+ * shared background thread. Only locations on the file system are watched. An interval of 0
+ * disables the checks, in which case reload() can be called to reload the files.
+ *
+ * The crypto provider, trust provider, default X.509 identifier and CertificateFactory can be set,
+ * and are carried into every new snapshot. The keystore, truststore and CRL CertStore are only ever
+ * loaded from the configured files. The setters of the Merlin returned by getMerlin() throw an
+ * UnsupportedOperationException.
+ */
+public class ReloadingMerlin implements Crypto {
+
+    public static final String RELOAD_INTERVAL = "reload.interval";
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ReloadingMerlin.class);
+
+    private static final long DEFAULT_RELOAD_INTERVAL = 60L;
+
+    private final Properties properties;
+    private final ClassLoader loader;
+    private final PasswordEncryptor passwordEncryptor;
+    private final List<Path> watchedFiles;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final ScheduledFuture<?> reloadTask;
+
+    public ReloadingMerlin(Properties properties, ClassLoader loader, PasswordEncryptor passwordEncryptor)
+        throws WSSecurityException, IOException {
+        this.properties = properties;
+        this.loader = loader;
+        this.passwordEncryptor = passwordEncryptor;
+
+        String prefix = getPrefix(properties);
+        watchedFiles = getWatchedFiles(properties, prefix, loader);
+        reload();
+
+        long reloadInterval = DEFAULT_RELOAD_INTERVAL;
+        String reloadIntervalProp = properties.getProperty(prefix + RELOAD_INTERVAL);
+        if (reloadIntervalProp != null) {
+            reloadInterval = Long.parseLong(reloadIntervalProp.trim());
+        }
+        if (reloadInterval > 0 && !watchedFiles.isEmpty()) {
+            reloadTask = ReloadScheduler.schedule(this, reloadInterval);
+        } else {
+            reloadTask = null;
+        }
+    }
+
+    /**
+     * Load the keystore, truststore and CRLs again, and publish them once they are all loaded
+     *
+     * @throws WSSecurityException if the files could not be loaded, in which case the previous
+     *         files stay in use
+     */
+    public synchronized void reload() throws WSSecurityException, IOException {
+        Snapshot loadedSnapshot = new Snapshot(properties, loader, passwordEncryptor, getFileVersions());
+        Snapshot currentSnapshot;
+        Snapshot newSnapshot;
+        do {
+            currentSnapshot = snapshot.get();
+            Settings settings = currentSnapshot != null ? currentSnapshot.getSettings() : Settings.NONE;
+            newSnapshot = new Snapshot(loadedSnapshot, settings);
+        } while (!snapshot.compareAndSet(currentSnapshot, newSnapshot));
+        LOG.debug("The keystore, truststore and CRLs have been loaded");
+    }
+
+    /**
+     * Reload the keystore, truststore and CRLs if one of the files they are loaded from was
+     * modified since they were last loaded
+     *
+     * @return whether the files were reloaded
+     */
+    public synchronized boolean reloadIfModified() throws WSSecurityException, IOException {
+        if (getFileVersions().equals(snapshot.get().getFileVersions())) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    /**
+     * Stop checking the files for modifications
+     */
+    public void close() {
+        if (reloadTask != null) {
+            reloadTask.cancel(false);
+        }
+    }
+
+    /**
+     * Get the Merlin instance of the current snapshot. It must not be modified, and its setters for
+     * the keystore, truststore and CRL CertStore throw an UnsupportedOperationException.
+     */
+    public Merlin getMerlin() {
+        return snapshot.get();
+    }
+
+    public KeyStore getKeyStore() {
+        return snapshot.get().getKeyStore();
+    }
+
+    public KeyStore getTrustStore() {
+        return snapshot.get().getTrustStore();
+    }
+
+    public CertStore getCRLCertStore() {
+        return snapshot.get().getCRLCertStore();
+    }
+
+    public String getCryptoProvider() {
+        return snapshot.get().getCryptoProvider();
+    }
+
+    public void setCryptoProvider(String provider) {
+        update(settings -> settings.withCryptoProvider(provider));
+    }
+
+    public String getTrustProvider() {
+        return snapshot.get().getTrustProvider();
+    }
+
+    public void setTrustProvider(String provider) {
+        update(settings -> settings.withTrustProvider(provider));
+    }
+
+    public String getDefaultX509Identifier() throws WSSecurityException {
+        return snapshot.get().getDefaultX509Identifier();
+    }
+
+    public void setDefaultX509Identifier(String identifier) {
+        update(settings -> settings.withDefaultX509Identifier(identifier));
+    }
+
+    public void setCertificateFactory(CertificateFactory certFactory) {
+        update(settings -> settings.withCertificateFactory(certFactory));
+    }
+
+    public CertificateFactory getCertificateFactory() throws WSSecurityException {
+        return snapshot.get().getCertificateFactory();
+    }
+
+    public X509Certificate loadCertificate(InputStream in) throws WSSecurityException {
+        return snapshot.get().loadCertificate(in);
+    }
+
+    public byte[] getSKIBytesFromCert(X509Certificate cert) throws WSSecurityException {
+        return snapshot.get().getSKIBytesFromCert(cert);
+    }
+
+    public byte[] getBytesFromCertificates(X509Certificate[] certs) throws WSSecurityException {
+        return snapshot.get().getBytesFromCertificates(certs);
+    }
+
+    public X509Certificate[] getCertificatesFromBytes(byte[] data) throws WSSecurityException {
+        return snapshot.get().getCertificatesFromBytes(data);
+    }
+
+    public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+        return snapshot.get().getX509Certificates(cryptoType);
+    }
+
+    public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
+        return snapshot.get().getX509Identifier(cert);
+    }
+
+    public PrivateKey getPrivateKey(
+        X509Certificate certificate, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        return snapshot.get().getPrivateKey(certificate, callbackHandler);
+    }
+
+    public PrivateKey getPrivateKey(
+        PublicKey publicKey, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        return snapshot.get().getPrivateKey(publicKey, callbackHandler);
+    }
+
+    public PrivateKey getPrivateKey(String identifier, String password) throws WSSecurityException {
+        return snapshot.get().getPrivateKey(identifier, password);
+    }
+
+    public void verifyTrust(
+        X509Certificate[] certs, boolean enableRevocation,
+        Collection<Pattern> subjectCertConstraints, Collection<Pattern> issuerCertConstraints
+    ) throws WSSecurityException {
+        snapshot.get().verifyTrust(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+    }
+
+    public void verifyTrust(PublicKey publicKey) throws WSSecurityException {
+        snapshot.get().verifyTrust(publicKey);
+    }
+
+    /**
+     * Publish a new snapshot with the changed settings, which shares the loaded files of the current
+     * snapshot. If another thread publishes a snapshot in the meantime, e.g. after a reload, the
+     * change is applied again to that snapshot, so that neither update is lost.
+     */
+    private void update(UnaryOperator<Settings> change) {
+        Snapshot currentSnapshot;
+        Snapshot newSnapshot;
+        do {
+            currentSnapshot = snapshot.get();
+            newSnapshot = new Snapshot(currentSnapshot, change.apply(currentSnapshot.getSettings()));
+        } while (!snapshot.compareAndSet(currentSnapshot, newSnapshot));
+    }
+
+    /**
+     * Get the last modified time and size of each of the watched files
+     */
+    private List<Object> getFileVersions() {
+        List<Object> fileVersions = new ArrayList<>(watchedFiles.size() * 2);
+        for (Path watchedFile : watchedFiles) {
+            try {
+                fileVersions.add(Files.getLastModifiedTime(watchedFile));
+                fileVersions.add(Files.size(watchedFile));
+            } catch (IOException e) {
+                // e.g. the file is being replaced
+                fileVersions.add(null);
+                fileVersions.add(null);
+            }
+        }
+        return fileVersions;
+    }
+
+    private static String getPrefix(Properties properties) {
+        for (Object key : properties.keySet()) {
+            if (key instanceof String) {
+                String propKey = (String)key;
+                if (propKey.startsWith(Merlin.PREFIX)) {
+                    return Merlin.PREFIX;
+                } else if (propKey.startsWith(Merlin.OLD_PREFIX)) {
+                    return Merlin.OLD_PREFIX;
+                }
+            }
+        }
+        return Merlin.PREFIX;
+    }
+
+    private static List<Path> getWatchedFiles(Properties properties, String prefix, ClassLoader loader) {
+        List<String> locations = new ArrayList<>();
+        String keyStoreLocation = properties.getProperty(prefix + Merlin.KEYSTORE_FILE);
+        if (keyStoreLocation == null) {
+            keyStoreLocation = properties.getProperty(prefix + Merlin.OLD_KEYSTORE_FILE);
+        }
+        if (keyStoreLocation != null) {
+            locations.add(keyStoreLocation.trim());
+        }
+        String trustStoreLocation = properties.getProperty(prefix + Merlin.TRUSTSTORE_FILE);
+        if (trustStoreLocation != null) {
+            locations.add(trustStoreLocation.trim());
+        }
+        String crlLocations = properties.getProperty(prefix + Merlin.X509_CRL_FILE);
+        if (crlLocations != null) {
+            for (String crlLocation : crlLocations.split(",")) {
+                locations.add(crlLocation.trim());
+            }
+        }
+
+        List<Path> watchedFiles = new ArrayList<>(locations.size());
+        for (String location : locations) {
+            Path path = getPath(location, loader);
+            if (path != null) {
+                watchedFiles.add(path);
+            } else {
+                LOG.debug("{} is not a file, and so is not checked for modifications", location);
+            }
+        }
+        return watchedFiles;
+    }
+
+    /**
+     * Get the file that Merlin loads the given location from, if it is a file
+     */
+    private static Path getPath(String location, ClassLoader loader) {
+        URL url = null;
+        try {
+            url = new URL(location);
+        } catch (MalformedURLException ex) { //NOPMD
+            // skip
+        }
+        if (url == null) {
+            url = Loader.getResource(loader, location);
+        }
+        try {
+            Path path = url != null ? Paths.get(url.toURI()) : Paths.get(location);
+            if (Files.isRegularFile(path)) {
+                return path;
+            }
+        } catch (Exception e) {
+            LOG.debug(e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * The properties that were set on the ReloadingMerlin. A null value means that the value loaded
+     * from the properties file is used.
+     */
+    private static final class Settings {
+
+        static final Settings NONE = new Settings(null, null, null, null);
+
+        private final String cryptoProvider;
+        private final String trustProvider;
+        private final String defaultX509Identifier;
+        private final CertificateFactory certificateFactory;
+
+        Settings(String cryptoProvider, String trustProvider, String defaultX509Identifier,
+                 CertificateFactory certificateFactory) {
+            this.cryptoProvider = cryptoProvider;
+            this.trustProvider = trustProvider;
+            this.defaultX509Identifier = defaultX509Identifier;
+            this.certificateFactory = certificateFactory;
+        }
+
+        Settings withCryptoProvider(String provider) {
+            return new Settings(provider, trustProvider, defaultX509Identifier, certificateFactory);
+        }
+
+        Settings withTrustProvider(String provider) {
+            return new Settings(cryptoProvider, provider, defaultX509Identifier, certificateFactory);
+        }
+
+        Settings withDefaultX509Identifier(String identifier) {
+            return new Settings(cryptoProvider, trustProvider, identifier, certificateFactory);
+        }
+
+        Settings withCertificateFactory(CertificateFactory certFactory) {
+            return new Settings(cryptoProvider, trustProvider, defaultX509Identifier, certFactory);
+        }
+    }
+
+    /**
+     * An immutable set of the loaded keystore, truststore and CRLs, together with the settings that
+     * apply to them. The trust anchors are computed once, when the files are loaded. All setters
+     * throw an UnsupportedOperationException once the snapshot is constructed.
+     */
+    private static final class Snapshot extends Merlin {
+
+        private final List<Object> fileVersions;
+        private final Map<KeyStore, Set<TrustAnchor>> trustAnchors;
+        private final Settings loadedSettings;
+        private final Settings settings;
+        private boolean constructed;
+
+        /**
+         * Load the files
+         */
+        Snapshot(Properties properties, ClassLoader loader, PasswordEncryptor passwordEncryptor,
+                 List<Object> fileVersions) throws WSSecurityException, IOException {
+            super(properties, loader, passwordEncryptor);
+            this.fileVersions = fileVersions;
+            trustAnchors = loadTrustAnchors();
+            // Resolves the default identifier from the keystore, if it contains a single alias
+            String loadedIdentifier = super.getDefaultX509Identifier();
+            loadedSettings = new Settings(getCryptoProvider(), getTrustProvider(), loadedIdentifier, certificateFactory);
+            settings = Settings.NONE;
+            constructed = true;
+        }
+
+        /**
+         * Share the loaded files of the given snapshot, and apply the given settings to them
+         */
+        Snapshot(Snapshot loadedSnapshot, Settings settings) {
+            super(loadedSnapshot);
+            fileVersions = loadedSnapshot.fileVersions;
+            trustAnchors = loadedSnapshot.trustAnchors;
+            loadedSettings = loadedSnapshot.loadedSettings;
+            this.settings = settings;
+            super.setCryptoProvider(select(settings.cryptoProvider, loadedSettings.cryptoProvider));
+            super.setTrustProvider(select(settings.trustProvider, loadedSettings.trustProvider));
+            super.setDefaultX509Identifier(
+                select(settings.defaultX509Identifier, loadedSettings.defaultX509Identifier));
+            certificateFactory = select(settings.certificateFactory, loadedSettings.certificateFactory);
+            constructed = true;
+        }
+
+        List<Object> getFileVersions() {
+            return fileVersions;
+        }
+
+        Settings getSettings() {
+            return settings;
+        }
+
+        private Map<KeyStore, Set<TrustAnchor>> loadTrustAnchors() throws WSSecurityException {
+            Map<KeyStore, Set<TrustAnchor>> anchorsByKeyStore = new IdentityHashMap<>();
+            try {
+                for (KeyStore keyStore : new KeyStore[] {truststore, keystore}) {
+                    if (keyStore != null) {
+                        Set<TrustAnchor> anchors = new HashSet<>();
+                        super.addTrustAnchors(anchors, keyStore);
+                        anchorsByKeyStore.put(keyStore, Collections.unmodifiableSet(anchors));
+                    }
+                }
+            } catch (KeyStoreException e) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "certpath");
+            }
+            return Collections.unmodifiableMap(anchorsByKeyStore);
+        }
+
+        private static <T> T select(T value, T loadedValue) {
+            return value != null ? value : loadedValue;
+        }
+
+        private void checkNotConstructed() {
+            if (constructed) {
+                throw new UnsupportedOperationException("A snapshot of a ReloadingMerlin can't be modified");
+            }
+        }
+
+        @Override
+        protected void addTrustAnchors(Set<TrustAnchor> set, KeyStore keyStore)
+            throws KeyStoreException, WSSecurityException {
+            Set<TrustAnchor> anchors = trustAnchors != null ? trustAnchors.get(keyStore) : null;
+            if (anchors != null) {
+                set.addAll(anchors);
+            } else {
+                super.addTrustAnchors(set, keyStore);
+            }
+        }
+
+        @Override
+        public void loadProperties(Properties properties, ClassLoader loader, PasswordEncryptor passwordEncryptor)
+            throws WSSecurityException, IOException {
+            checkNotConstructed();
+            super.loadProperties(properties, loader, passwordEncryptor);
+        }
+
+        @Override
+        public void setCryptoProvider(String provider) {
+            checkNotConstructed();
+            super.setCryptoProvider(provider);
+        }
+
+        @Override
+        public void setTrustProvider(String provider) {
+            checkNotConstructed();
+            super.setTrustProvider(provider);
+        }
+
+        @Override
+        public void setDefaultX509Identifier(String identifier) {
+            checkNotConstructed();
+            super.setDefaultX509Identifier(identifier);
+        }
+
+        @Override
+        public void setCertificateFactory(CertificateFactory certFactory) {
+            checkNotConstructed();
+            super.setCertificateFactory(certFactory);
+        }
+
+        @Override
+        public void setCRLRevocationChecker(CRLRevocationChecker crlRevocationChecker) {
+            checkNotConstructed();
+            super.setCRLRevocationChecker(crlRevocationChecker);
+        }
+
+        @Override
+        public void setOCSPRevocationChecker(OCSPRevocationChecker ocspRevocationChecker) {
+            checkNotConstructed();
+            super.setOCSPRevocationChecker(ocspRevocationChecker);
+        }
+
+        @Override
+        public void setPasswordEncryptor(PasswordEncryptor passwordEncryptor) {
+            checkNotConstructed();
+            super.setPasswordEncryptor(passwordEncryptor);
+        }
+
+        @Override
+        public void setEnablePrivateKeyCaching(boolean enablePrivateKeyCaching) {
+            checkNotConstructed();
+            super.setEnablePrivateKeyCaching(enablePrivateKeyCaching);
+        }
+
+        @Override
+        public void setKeyStore(KeyStore keyStore) {
+            throw new UnsupportedOperationException("The KeyStore of a ReloadingMerlin can't be replaced");
+        }
+
+        @Override
+        public void setTrustStore(KeyStore trustStore) {
+            throw new UnsupportedOperationException("The TrustStore of a ReloadingMerlin can't be replaced");
+        }
+
+        @Override
+        public void setCRLCertStore(CertStore crlCertStore) {
+            throw new UnsupportedOperationException("The CRL CertStore of a ReloadingMerlin can't be replaced");
+        }
+    }
+
+    /**
+     * Checks the files of all ReloadingMerlin instances for modifications, on a single daemon
+     * thread. The scheduled tasks don't keep the instances from being garbage collected.
+     */
+    private static final class ReloadScheduler {
+
+        private static final ScheduledExecutorService EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wss4j-crypto-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        private ReloadScheduler() {
+            // complete
+        }
+
+        static ScheduledFuture<?> schedule(ReloadingMerlin crypto, long reloadInterval) {
+            ReloadTask task = new ReloadTask(crypto);
+            task.future = EXECUTOR.scheduleWithFixedDelay(task, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+            return task.future;
+        }
+    }
+
+    private static final class ReloadTask implements Runnable {
+
+        private final WeakReference<ReloadingMerlin> crypto;
+        private volatile ScheduledFuture<?> future;
+
+        ReloadTask(ReloadingMerlin crypto) {
+            this.crypto = new WeakReference<>(crypto);
+        }
+
+        @Override
+        public void run() {
+            ReloadingMerlin reloadingMerlin = crypto.get();
+            if (reloadingMerlin == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                if (reloadingMerlin.reloadIfModified()) {
+                    LOG.info("Reloaded the keystore, truststore and CRLs after a modification");
+                }
+            } catch (Exception e) {
+                LOG.warn("Reloading the keystore, truststore and CRLs failed, the previous ones stay in use: "
+                    + e.getMessage(), e);
+            }
+        }
+    }
+}
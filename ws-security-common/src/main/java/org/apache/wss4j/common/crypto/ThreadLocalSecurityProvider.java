@@ -20,19 +20,31 @@ package org.apache.wss4j.common.crypto;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.security.Provider;
 import java.security.Security;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class ThreadLocalSecurityProvider extends Provider {
 
     private static final long serialVersionUID = 3556396671069994931L;
     private static final String NAME = "TLSP";
-    private static final ThreadLocal<Provider> PROVIDER = new ThreadLocal<>();
+    private static final ThreadLocal<Binding> PROVIDER = new ThreadLocal<>();
+    // The ServiceCaches are kept for as long as their Provider is alive, also while it is not bound to
+    // any thread. The Providers are weakly referenced, and a ServiceCache only references the Services
+    // of its Provider weakly, so that the caches do not keep a Provider or its ClassLoader alive.
+    private static final ConcurrentMap<ProviderKey, ServiceCache> CACHES = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Provider> STALE_PROVIDERS = new ReferenceQueue<>();
     private static boolean installed = false;
 
     public static synchronized void install() {
@@ -44,6 +56,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     public static synchronized void uninstall() {
         Security.removeProvider(NAME);
         installed = false;
+        CACHES.clear();
     }
 
     public static boolean isInstalled() {
@@ -55,43 +68,74 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     public static void setProvider(Provider p) {
-        PROVIDER.set(p);
+        if (p == null) {
+            PROVIDER.remove();
+        } else {
+            PROVIDER.set(new Binding(p, getServiceCache(p)));
+        }
     }
 
     public static void unsetProvider() {
         PROVIDER.remove();
     }
 
+    private static ServiceCache getServiceCache(Provider p) {
+        expungeStaleCaches();
+        ServiceCache cache = CACHES.get(new ProviderKey(p, null));
+        if (cache != null) {
+            return cache;
+        }
+        return CACHES.computeIfAbsent(new ProviderKey(p, STALE_PROVIDERS), key -> new ServiceCache());
+    }
+
+    private static void expungeStaleCaches() {
+        Reference<? extends Provider> staleProvider;
+        while ((staleProvider = STALE_PROVIDERS.poll()) != null) {
+            CACHES.remove(staleProvider);
+        }
+    }
+
     private Provider getProvider() {
-        return PROVIDER.get();
+        Binding binding = PROVIDER.get();
+        return binding != null ? binding.provider : null;
+    }
+
+    private void clearServiceCache() {
+        Binding binding = PROVIDER.get();
+        if (binding != null) {
+            binding.cache.clear();
+        }
     }
 
     @Override
-    public synchronized void clear() {
+    public void clear() {
         Provider p = getProvider();
         if (p != null) {
             p.clear();
+            clearServiceCache();
         }
     }
 
     @Override
-    public synchronized void load(InputStream inStream) throws IOException {
+    public void load(InputStream inStream) throws IOException {
         Provider p = getProvider();
         if (p != null) {
             p.load(inStream);
+            clearServiceCache();
         }
     }
 
     @Override
-    public synchronized void putAll(Map<?, ?> t) {
+    public void putAll(Map<?, ?> t) {
         Provider p = getProvider();
         if (p != null) {
             p.putAll(t);
+            clearServiceCache();
         }
     }
 
     @Override
-    public synchronized Set<Map.Entry<Object, Object>> entrySet() {
+    public Set<Map.Entry<Object, Object>> entrySet() {
         Provider p = getProvider();
         if (p != null) {
             return p.entrySet();
@@ -121,20 +165,24 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized Object put(Object key, Object value) {
+    public Object put(Object key, Object value) {
         Provider p = getProvider();
         if (p != null) {
-            return p.put(key, value);
+            Object previous = p.put(key, value);
+            clearServiceCache();
+            return previous;
         } else {
             return null;
         }
     }
 
     @Override
-    public synchronized Object remove(Object key) {
+    public Object remove(Object key) {
         Provider p = getProvider();
         if (p != null) {
-            return p.remove(key);
+            Object previous = p.remove(key);
+            clearServiceCache();
+            return previous;
         } else {
             return null;
         }
@@ -181,17 +229,17 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized Service getService(String type, String algorithm) {
-        Provider p = getProvider();
-        if (p != null) {
-            return p.getService(type, algorithm);
+    public Service getService(String type, String algorithm) {
+        Binding binding = PROVIDER.get();
+        if (binding != null) {
+            return binding.cache.getService(binding.provider, type, algorithm);
         } else {
             return null;
         }
     }
 
     @Override
-    public synchronized Set<Service> getServices() {
+    public Set<Service> getServices() {
         Provider p = getProvider();
         if (p != null) {
             return p.getServices();
@@ -200,4 +248,92 @@ public final class ThreadLocalSecurityProvider extends Provider {
         }
     }
 
+    /**
+     * The Provider bound to a thread, together with its ServiceCache
+     */
+    private static final class Binding {
+        private final Provider provider;
+        private final ServiceCache cache;
+
+        Binding(Provider provider, ServiceCache cache) {
+            this.provider = provider;
+            this.cache = cache;
+        }
+    }
+
+    /**
+     * A read-mostly cache of the Services of a Provider. Lookups read an immutable map without
+     * locking, a Service that is not cached yet is added to a copy of the map. Services that are
+     * not found are not cached. The cache is cleared when the Provider is modified through the
+     * ThreadLocalSecurityProvider. As for Provider.getService, algorithm names are not case
+     * sensitive.
+     *
+     * The Services are weakly referenced, as a Service references its Provider. The Provider keeps
+     * the Services it returns alive, so a cached Service is only cleared together with the Provider,
+     * or when the Provider replaced it, in which case it is looked up again.
+     */
+    private static final class ServiceCache {
+        private static final int MAX_SIZE = 512;
+
+        private volatile Map<String, WeakReference<Service>> services = Collections.emptyMap();
+
+        Service getService(Provider provider, String type, String algorithm) {
+            String key = type + '.' + algorithm.toUpperCase(Locale.ENGLISH);
+            WeakReference<Service> serviceReference = services.get(key);
+            Service service = serviceReference != null ? serviceReference.get() : null;
+            if (service == null) {
+                service = provider.getService(type, algorithm);
+                if (service != null) {
+                    addService(key, service);
+                }
+            }
+            return service;
+        }
+
+        private synchronized void addService(String key, Service service) {
+            WeakReference<Service> serviceReference = services.get(key);
+            if (serviceReference != null && serviceReference.get() != null) {
+                return;
+            }
+            if (serviceReference != null || services.size() < MAX_SIZE) {
+                Map<String, WeakReference<Service>> newServices = new HashMap<>(services);
+                newServices.put(key, new WeakReference<>(service));
+                services = newServices;
+            }
+        }
+
+        synchronized void clear() {
+            services = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * A weak reference to a Provider, which is compared by identity
+     */
+    private static final class ProviderKey extends WeakReference<Provider> {
+        private final int hash;
+
+        ProviderKey(Provider provider, ReferenceQueue<Provider> queue) {
+            super(provider, queue);
+            hash = System.identityHashCode(provider);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ProviderKey)) {
+                return false;
+            }
+            Provider provider = get();
+            return provider != null && provider == ((ProviderKey)obj).get();
+        }
+    }
+
 }
\ No newline at end of file
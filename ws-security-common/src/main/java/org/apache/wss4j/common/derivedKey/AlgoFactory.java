@@ -23,12 +23,15 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 
 public final class AlgoFactory {
 
+    private static final DerivationAlgorithm P_SHA1_ALGORITHM = new P_SHA1();
+
     private AlgoFactory() {
         // Complete
     }
 
     /**
-     * This gives a DerivationAlgorithm instance from the default set of algorithms provided
+     * This gives a DerivationAlgorithm instance from the default set of algorithms provided. The
+     * instances are shared, and are safe for use by concurrent threads.
      *
      * @param algorithm The algorithm identifier
      * @return A derivation algorithm
@@ -38,7 +41,7 @@ public final class AlgoFactory {
     public static DerivationAlgorithm getInstance(String algorithm) throws WSSecurityException {
         if (ConversationConstants.DerivationAlgorithm.P_SHA_1_2005_12.equals(algorithm)
             || ConversationConstants.DerivationAlgorithm.P_SHA_1.equals(algorithm)) {
-            return new P_SHA1();
+            return P_SHA1_ALGORITHM;
         } else {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
                                           "unknownAlgorithm", new Object[] {algorithm});
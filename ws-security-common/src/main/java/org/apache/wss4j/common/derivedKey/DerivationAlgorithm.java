@@ -26,4 +26,22 @@ public interface DerivationAlgorithm {
 
     byte[] createKey(byte[] secret, byte[] seed, int offset,
             long length) throws WSSecurityException;
+
+    /**
+     * Create a key of the given length, starting at the given offset of the derived key material,
+     * and write it into the given output buffer.
+     *
+     * @param secret The secret to derive the key from
+     * @param seed The seed of the derivation (label + nonce)
+     * @param offset The offset of the key in the derived key material
+     * @param out The buffer to write the key into
+     * @param outOffset The offset in the buffer to write the key at
+     * @param length The length of the key
+     * @throws WSSecurityException
+     */
+    default void createKey(byte[] secret, byte[] seed, int offset, byte[] out, int outOffset, int length)
+            throws WSSecurityException {
+        byte[] key = createKey(secret, seed, offset, length);
+        System.arraycopy(key, 0, out, outOffset, length);
+    }
 }
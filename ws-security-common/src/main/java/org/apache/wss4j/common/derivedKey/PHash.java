@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * P_hash as defined in RFC 2246 for TLS, for a given HMAC algorithm.
+ *
+ * The Mac instances and the working buffers are reused from a small pool, which is bounded by
+ * the number of processors rather than by the number of threads, e.g. when every message is
+ * processed on its own virtual thread. Before a Mac is returned to the pool, it is initialized
+ * with a fixed key, so that a pooled Mac never holds the secret it was last used with. The key is
+ * written directly into the output buffer. The blocks before the requested offset are skipped,
+ * only the A(i) chain is computed for them.
+ */
+public abstract class PHash implements DerivationAlgorithm {
+
+    private static final int MAX_POOLED_CONTEXTS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final String macAlgorithm;
+    private final SecretKeySpec clearKey;
+    private final Queue<MacContext> macContexts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledContexts = new AtomicInteger();
+
+    protected PHash(String macAlgorithm) {
+        this.macAlgorithm = macAlgorithm;
+        this.clearKey = new SecretKeySpec(new byte[1], macAlgorithm);
+    }
+
+    @Override
+    public byte[] createKey(byte[] secret, byte[] seed, int offset, long length)
+            throws WSSecurityException {
+        byte[] key = new byte[(int) length];
+        createKey(secret, seed, offset, key, 0, key.length);
+        return key;
+    }
+
+    @Override
+    public void createKey(byte[] secret, byte[] seed, int offset, byte[] out, int outOffset, int length)
+            throws WSSecurityException {
+        if (offset < 0 || length < 0 || outOffset < 0 || out.length - outOffset < length) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "errorInKeyDerivation");
+        }
+
+        MacContext context = null;
+        try {
+            context = getMacContext();
+            Mac mac = context.mac;
+            byte[] a = context.a;
+            byte[] block = context.block;
+            int macLength = a.length;
+
+            mac.init(new SecretKeySpec(secret, macAlgorithm));
+
+            // A(1)
+            mac.update(seed);
+            mac.doFinal(a, 0);
+
+            // Only the A(i) chain is needed for the blocks before the offset
+            int blocksToSkip = offset / macLength;
+            for (int i = 0; i < blocksToSkip; i++) {
+                mac.update(a);
+                mac.doFinal(a, 0);
+            }
+
+            int blockOffset = offset % macLength;
+            int written = 0;
+            while (written < length) {
+                mac.update(a);
+                mac.update(seed);
+                int toCopy = Math.min(length - written, macLength - blockOffset);
+                if (toCopy == macLength) {
+                    mac.doFinal(out, outOffset + written);
+                } else {
+                    mac.doFinal(block, 0);
+                    System.arraycopy(block, blockOffset, out, outOffset + written, toCopy);
+                }
+                written += toCopy;
+                blockOffset = 0;
+
+                if (written < length) {
+                    mac.update(a);
+                    mac.doFinal(a, 0);
+                }
+            }
+        } catch (NoSuchAlgorithmException | InvalidKeyException | ShortBufferException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "errorInKeyDerivation");
+        } finally {
+            if (context != null) {
+                releaseMacContext(context);
+            }
+        }
+    }
+
+    private MacContext getMacContext() throws NoSuchAlgorithmException {
+        MacContext context = macContexts.poll();
+        if (context == null) {
+            return new MacContext(Mac.getInstance(macAlgorithm));
+        }
+        pooledContexts.decrementAndGet();
+        return context;
+    }
+
+    private void releaseMacContext(MacContext context) {
+        Arrays.fill(context.a, (byte) 0);
+        Arrays.fill(context.block, (byte) 0);
+        try {
+            // Replaces the secret and resets any partial computation
+            context.mac.init(clearKey);
+        } catch (InvalidKeyException e) {
+            return;
+        }
+        if (pooledContexts.incrementAndGet() <= MAX_POOLED_CONTEXTS) {
+            macContexts.offer(context);
+        } else {
+            pooledContexts.decrementAndGet();
+        }
+    }
+
+    /**
+     * A Mac instance and its working buffers, used by one thread at a time
+     */
+    private static final class MacContext {
+        private final Mac mac;
+        private final byte[] a;
+        private final byte[] block;
+
+        MacContext(Mac mac) {
+            this.mac = mac;
+            this.a = new byte[mac.getMacLength()];
+            this.block = new byte[mac.getMacLength()];
+        }
+    }
+}
@@ -38,79 +38,10 @@ package org.apache.wss4j.common.derivedKey;
  Section 5. HMAC and the pseudorandom function</i>
  </pre>
  */
+public class P_SHA1 extends PHash {
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import javax.security.auth.DestroyFailedException;
-
-import org.apache.wss4j.common.ext.WSSecurityException;
-
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-
-public class P_SHA1 implements DerivationAlgorithm {
-
-    private static final org.slf4j.Logger LOG =
-        org.slf4j.LoggerFactory.getLogger(P_SHA1.class);
-
-    @Override
-    public byte[] createKey(byte[] secret, byte[] seed, int offset, long length)
-            throws WSSecurityException {
-
-        try {
-            Mac mac = Mac.getInstance("HmacSHA1");
-
-            byte[] tempBytes = pHash(secret, seed, mac, offset + (int) length);
-
-            byte[] key = new byte[(int) length];
-
-            System.arraycopy(tempBytes, offset, key, 0, key.length);
-
-            return key;
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "errorInKeyDerivation");
-        }
+    public P_SHA1() {
+        super("HmacSHA1");
     }
 
-    /**
-     * P_hash as defined in RFC 2246 for TLS.
-     *
-     * @param secret is the key for the HMAC
-     * @param seed the seed value to start the generation - A(0)
-     * @param mac the HMAC algorithm
-     * @param required number of bytes to generate
-     * @return a byte array that contains a secret key
-     * @throws InvalidKeyException
-     */
-    private static byte[] pHash(byte[] secret, byte[] seed, Mac mac, int required)
-            throws InvalidKeyException {
-
-        byte[] out = new byte[required];
-        int offset = 0, tocpy;
-        byte[] a = seed; // a(0) is the seed
-        byte[] tmp;
-
-        SecretKeySpec key = new SecretKeySpec(secret, "HMACSHA1");
-        mac.init(key);
-
-        int bytesRequired = required;
-        while (bytesRequired > 0) {
-            mac.update(a);
-            a = mac.doFinal();
-            mac.update(a);
-            mac.update(seed);
-            tmp = mac.doFinal();
-            tocpy = Math.min(bytesRequired, tmp.length);
-            System.arraycopy(tmp, 0, out, offset, tocpy);
-            offset += tocpy;
-            bytesRequired -= tocpy;
-        }
-
-        try {
-            key.destroy();
-        } catch (DestroyFailedException e) {
-            LOG.debug("Error destroying key: {}", e.getMessage());
-        }
-        return out;
-    }
 }
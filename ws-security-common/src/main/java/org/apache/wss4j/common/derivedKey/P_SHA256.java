@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+/**
+ *
+ <pre>
+ P_SHA256 DEFINITION
+ ===================
+ <b>P_SHA256(secret, seed)</b> =
+ HMAC_SHA256(secret, A(1) + seed) +
+ HMAC_SHA256(secret, A(2) + seed) +
+ HMAC_SHA256(secret, A(3) + seed) + ...
+ <i>Where + indicates concatenation.</i>
+ <br>
+ A() is defined as:
+ A(0) = seed
+ A(i) = HMAC_SHA256(secret, A(i-1))
+ <br>
+ <i>Source : RFC 5246 - The TLS Protocol Version 1.2
+ Section 5. HMAC and the Pseudorandom Function</i>
+ </pre>
+ WS-SecureConversation does not define an algorithm URI for P_SHA256, so it is not available via
+ AlgoFactory, and has to be instantiated directly.
+ */
+public class P_SHA256 extends PHash {
+
+    public P_SHA256() {
+        super("HmacSHA256");
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.ext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+/**
+ * A CallbackHandler that handles the callbacks (for example WSPasswordCallbacks) asynchronously, for
+ * example by querying a remote secret store. The callbacks are populated when the returned
+ * CompletionStage completes, and it completes exceptionally with an IOException or an
+ * UnsupportedCallbackException if the callbacks cannot be handled.
+ * <p/>
+ * An AsyncCallbackHandler can be used anywhere a CallbackHandler is accepted. The synchronous
+ * <code>handle</code> method waits for the CompletionStage to complete. When the security header is
+ * processed on a virtual thread (see WSSecurityEngine#processSecurityHeaderAsync, or a virtual thread
+ * Executor set as the header processing Executor), waiting suspends the virtual thread rather than
+ * blocking a platform thread, and processing resumes once the callbacks are handled.
+ * <p/>
+ * Implementations must not call <code>handle</code> from <code>handleAsync</code>, and are responsible
+ * for timing out requests that do not complete.
+ */
+public interface AsyncCallbackHandler extends CallbackHandler {
+
+    /**
+     * Start handling the given callbacks.
+     * @param callbacks the callbacks to handle
+     * @return a CompletionStage that completes when the callbacks have been handled
+     */
+    CompletionStage<Void> handleAsync(Callback[] callbacks);
+
+    /**
+     * Handle the given callbacks, waiting for {@link #handleAsync} to complete.
+     */
+    @Override
+    default void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+        try {
+            handleAsync(callbacks).toCompletableFuture().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the callbacks to be handled");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof UnsupportedCallbackException) {
+                throw (UnsupportedCallbackException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.ext;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.wss4j.common.util.VirtualThreads;
+
+/**
+ * An AsyncCallbackHandler that adapts a (blocking) CallbackHandler, by running it on an Executor. By
+ * default, the CallbackHandler is run on a virtual thread where these are available (Java 21 and later).
+ * <p/>
+ * The synchronous <code>handle</code> method also runs the CallbackHandler on the Executor, and waits for
+ * it to complete.
+ */
+public class ExecutorCallbackHandler implements AsyncCallbackHandler {
+
+    private final CallbackHandler callbackHandler;
+    private final Executor executor;
+
+    public ExecutorCallbackHandler(CallbackHandler callbackHandler) {
+        this(callbackHandler, VirtualThreads.executor());
+    }
+
+    public ExecutorCallbackHandler(CallbackHandler callbackHandler, Executor executor) {
+        if (callbackHandler == null || executor == null) {
+            throw new IllegalArgumentException("A CallbackHandler and an Executor are required");
+        }
+        this.callbackHandler = callbackHandler;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletionStage<Void> handleAsync(Callback[] callbacks) {
+        if (callbackHandler instanceof AsyncCallbackHandler) {
+            return ((AsyncCallbackHandler)callbackHandler).handleAsync(callbacks);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                callbackHandler.handle(callbacks);
+            } catch (IOException | UnsupportedCallbackException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    public CallbackHandler getCallbackHandler() {
+        return callbackHandler;
+    }
+
+}
@@ -21,14 +21,32 @@ package org.apache.wss4j.common.saml;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.wss4j.common.util.StartupTasks;
+import org.apache.xml.security.parser.XMLParserException;
+import org.apache.xml.security.utils.XMLUtils;
 import org.opensaml.core.config.Configuration;
 import org.opensaml.core.xml.config.XMLConfigurationException;
 import org.opensaml.core.xml.config.XMLConfigurator;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 /**
  * This class intializes the Opensaml library.
+ *
+ * The configuration files can be parsed in parallel on an Executor, and the classes they reference
+ * are loaded at the same time, but they are registered one after another in the order below, as some
+ * of them override the registrations of the earlier ones. The XACML and SAML metadata configurations
+ * can be deferred, in which case they are loaded in the background on the Executor, and every SAML
+ * assertion that is created or unmarshalled through OpenSAMLUtil waits until they are loaded.
  */
 public final class OpenSAMLBootstrap {
 
@@ -67,6 +85,12 @@ public final class OpenSAMLBootstrap {
         "/saml2-xacml2-profile.xml",
     };
 
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(OpenSAMLBootstrap.class);
+
+    private static List<String> deferredConfigs = Collections.emptyList();
+    private static volatile boolean configsDeferred;
+
     private OpenSAMLBootstrap() {
         // complete
     }
@@ -80,29 +104,109 @@ public final class OpenSAMLBootstrap {
         bootstrap(true);
     }
 
+    /**
+     * Initializes the OpenSAML library, parsing the configuration files in the calling thread.
+     *
+     * @param includeXacml whether to load the XACML configurations
+     * @throws XMLConfigurationException thrown if there is a problem initializing the OpenSAML library
+     */
     public static synchronized void bootstrap(boolean includeXacml) throws XMLConfigurationException {
+        bootstrap(includeXacml, false, null);
+    }
+
+    /**
+     * Initializes the OpenSAML library, loading default configurations.
+     *
+     * @param includeXacml whether to load the XACML configurations
+     * @param deferOptionalConfigs whether to defer loading the XACML and SAML metadata configurations
+     *        until this method has returned, see {@link #loadDeferredConfigs()}
+     * @param executor the Executor to parse the configuration files on, and to load the deferred
+     *        configurations on, or null to parse them in the calling thread
+     * @throws XMLConfigurationException thrown if there is a problem initializing the OpenSAML library
+     */
+    public static synchronized void bootstrap(
+        boolean includeXacml, boolean deferOptionalConfigs, Executor executor
+    ) throws XMLConfigurationException {
+        List<String> configs = new ArrayList<>(XML_CONFIGS.length);
+        List<String> deferred = new ArrayList<>();
+        for (String config : XML_CONFIGS) {
+            boolean xacml = config.contains("xacml");
+            if (includeXacml || !xacml) {
+                if (deferOptionalConfigs && (xacml || config.contains("metadata"))) {
+                    deferred.add(config);
+                } else {
+                    configs.add(config);
+                }
+            }
+        }
+
+        load(configs, executor);
+        deferredConfigs = deferred;
+        configsDeferred = !deferred.isEmpty();
+
+        if (configsDeferred && executor != null) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        loadDeferredConfigs();
+                    } catch (XMLConfigurationException ex) {
+                        LOG.debug("Loading the deferred OpenSAML configurations failed, they are loaded on first use", ex);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                LOG.debug("The deferred OpenSAML configurations are loaded on first use", ex);
+            }
+        }
+    }
+
+    /**
+     * Load the configurations that were deferred when the library was initialized, or wait until
+     * they are loaded by another thread. This is called before a SAML assertion is created or
+     * unmarshalled through OpenSAMLUtil, so that the XACML and SAML metadata content of an
+     * assertion is never lost. Applications that build XACML or SAML metadata objects without
+     * OpenSAMLUtil must call it first.
+     *
+     * @throws XMLConfigurationException thrown if there is a problem loading the configurations
+     */
+    public static synchronized void loadDeferredConfigs() throws XMLConfigurationException {
+        if (configsDeferred) {
+            load(deferredConfigs, null);
+            deferredConfigs = Collections.emptyList();
+            configsDeferred = false;
+        }
+    }
+
+    /**
+     * @return whether some configurations were deferred and are not loaded yet
+     */
+    public static boolean hasDeferredConfigs() {
+        return configsDeferred;
+    }
+
+    private static void load(List<String> configs, Executor executor) throws XMLConfigurationException {
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
         try {
             XMLConfigurator configurator = new XMLConfigurator();
 
             Thread.currentThread().setContextClassLoader(XMLObjectProviderRegistrySupport.class.getClassLoader());
 
-            for (String config : XML_CONFIGS) {
-                if (includeXacml || !config.contains("xacml")) {
-                    //most are found in the Configuration.class classloader
-                    InputStream ins = Configuration.class.getResourceAsStream(config);  //NOPMD
-                    if (ins == null) {
-                        //some are from us
-                        ins = OpenSAMLBootstrap.class.getResourceAsStream(config);
-                    }
-                    if (ins != null) {
-                        configurator.load(ins);
-                        try {
-                            ins.close();
-                        } catch (IOException ex) { //NOPMD
-                            // Do nothing
-                        }
-                    }
+            Document[] documents = new Document[configs.size()];
+            List<StartupTasks.Task> tasks = new ArrayList<>(configs.size());
+            for (int i = 0; i < configs.size(); i++) {
+                final int index = i;
+                tasks.add(() -> documents[index] = parse(configs.get(index)));
+            }
+            try {
+                StartupTasks.runAll(executor, tasks);
+            } catch (XMLConfigurationException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new XMLConfigurationException(ex);
+            }
+
+            for (Document document : documents) {
+                if (document != null) {
+                    configurator.load(document);
                 }
             }
         } finally {
@@ -110,4 +214,47 @@ public final class OpenSAMLBootstrap {
         }
     }
 
+    /**
+     * Parse the given configuration file, and load the classes it references
+     */
+    private static Document parse(String config) throws XMLConfigurationException {
+        //most are found in the Configuration.class classloader
+        InputStream ins = Configuration.class.getResourceAsStream(config);  //NOPMD
+        if (ins == null) {
+            //some are from us
+            ins = OpenSAMLBootstrap.class.getResourceAsStream(config);
+        }
+        if (ins == null) {
+            return null;
+        }
+
+        Document document;
+        try {
+            document = XMLUtils.read(ins, true);
+        } catch (XMLParserException ex) {
+            throw new XMLConfigurationException("Unable to parse " + config, ex);
+        } finally {
+            try {
+                ins.close();
+            } catch (IOException ex) { //NOPMD
+                // Do nothing
+            }
+        }
+
+        ClassLoader classLoader = XMLObjectProviderRegistrySupport.class.getClassLoader();
+        NodeList elements = document.getElementsByTagNameNS("*", "*");
+        for (int i = 0; i < elements.getLength(); i++) {
+            NamedNodeMap attributes = elements.item(i).getAttributes();
+            Node className = attributes.getNamedItemNS(null, "className");
+            if (className != null) {
+                try {
+                    Class.forName(className.getNodeValue().trim(), true, classLoader);
+                } catch (ClassNotFoundException | LinkageError ex) { //NOPMD
+                    // The configurator reports this when the configuration is loaded
+                }
+            }
+        }
+        return document;
+    }
+
 }
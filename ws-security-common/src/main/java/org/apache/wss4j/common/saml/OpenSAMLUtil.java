@@ -19,6 +19,9 @@
 
 package org.apache.wss4j.common.saml;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
 import javax.xml.namespace.QName;
 
 import net.shibboleth.shared.xml.impl.BasicParserPool;
@@ -63,7 +66,8 @@ public final class OpenSAMLUtil {
     private static XMLObjectBuilderFactory builderFactory;
     private static MarshallerFactory marshallerFactory;
     private static UnmarshallerFactory unmarshallerFactory;
-    private static boolean samlEngineInitialized = false;
+    private static final ReentrantLock INIT_LOCK = new ReentrantLock();
+    private static volatile boolean samlEngineInitialized = false;
 
     private OpenSAMLUtil() {
         // Complete
@@ -72,14 +76,52 @@ public final class OpenSAMLUtil {
     /**
      * Initialise the SAML library
      */
-    public static synchronized void initSamlEngine() {
+    public static void initSamlEngine() {
         initSamlEngine(true);
     }
 
-    public static synchronized void initSamlEngine(boolean includeXacml) {
+    public static void initSamlEngine(boolean includeXacml) {
+        initSamlEngine(includeXacml, false, null);
+    }
+
+    /**
+     * Initialise the SAML library
+     *
+     * @param includeXacml whether to load the XACML configurations
+     * @param deferOptionalConfigs whether to defer loading the XACML and SAML metadata configurations
+     *        until the library is initialized. They are then loaded in the background on the
+     *        Executor, or otherwise by the first call without deferOptionalConfigs, e.g. when the
+     *        first SamlAssertionWrapper is created.
+     * @param executor the Executor to parse the OpenSAML configuration files on, or null to parse
+     *        them in the calling thread
+     * @see OpenSAMLBootstrap#bootstrap(boolean, boolean, Executor)
+     */
+    public static void initSamlEngine(
+        boolean includeXacml, boolean deferOptionalConfigs, Executor executor
+    ) {
+        // This is called for every SamlAssertionWrapper, so check without locking first
+        if (!samlEngineInitialized) {
+            INIT_LOCK.lock();
+            try {
+                bootstrapSamlEngine(includeXacml, deferOptionalConfigs, executor);
+            } finally {
+                INIT_LOCK.unlock();
+            }
+        }
+        if (!deferOptionalConfigs && OpenSAMLBootstrap.hasDeferredConfigs()) {
+            try {
+                OpenSAMLBootstrap.loadDeferredConfigs();
+            } catch (XMLConfigurationException ex) {
+                LOG.error("Unable to load the XACML and SAML metadata configurations of the opensaml3 library", ex);
+            }
+        }
+    }
+
+    private static void bootstrapSamlEngine(
+        boolean includeXacml, boolean deferOptionalConfigs, Executor executor
+    ) {
         if (!samlEngineInitialized) {
             LOG.debug("Initializing the opensaml2 library...");
-            WSProviderConfig.init();
 
             Configuration configuration = new MapBasedConfiguration();
             ConfigurationService.setConfiguration(configuration);
@@ -89,7 +131,7 @@ public final class OpenSAMLUtil {
                                    ConfigurationService.DEFAULT_PARTITION_NAME);
 
             try {
-                OpenSAMLBootstrap.bootstrap(includeXacml);
+                OpenSAMLBootstrap.bootstrap(includeXacml, deferOptionalConfigs, executor);
 
                 SAMLConfiguration samlConfiguration = new SAMLConfiguration();
 
@@ -116,6 +158,8 @@ public final class OpenSAMLUtil {
             } catch (XMLConfigurationException ex) {
                 LOG.error("Unable to bootstrap the opensaml3 library - all SAML operations will fail", ex);
             }
+            // This is done after bootstrapping OpenSAML, so that both can be initialized in parallel
+            WSProviderConfig.init();
         }
     }
 
@@ -148,6 +192,15 @@ public final class OpenSAMLUtil {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
                                           new Object[] {"Error unmarshalling a SAML assertion"});
         }
+        // The XACML or SAML metadata content may be anywhere in the assertion
+        if (OpenSAMLBootstrap.hasDeferredConfigs()) {
+            try {
+                OpenSAMLBootstrap.loadDeferredConfigs();
+            } catch (XMLConfigurationException ex) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex, "empty",
+                                              new Object[] {"Error unmarshalling a SAML assertion"});
+            }
+        }
         Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(root);
         if (unmarshaller == null) {
             LOG.debug("Unable to find an unmarshaller for element: " + root.getLocalName());
@@ -305,6 +358,18 @@ public final class OpenSAMLUtil {
                 && confirmMethod.endsWith(":cm:sender-vouches");
     }
 
+    /**
+     * Method isMethodBearer ...
+     *
+     * @param confirmMethod of type String
+     * @return boolean
+     */
+    public static boolean isMethodBearer(String confirmMethod) {
+        return
+            confirmMethod != null && confirmMethod.startsWith("urn:oasis:names:tc:SAML:")
+                && confirmMethod.endsWith(":cm:bearer");
+    }
+
     /**
      * Method isMethodHolderOfKey ...
      *
@@ -0,0 +1,366 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.saml;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.bean.AudienceRestrictionBean;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.saml.bean.SubjectConfirmationDataBean;
+import org.w3c.dom.Element;
+
+/**
+ * A cache of outbound SAML assertions, so that a self-issued sender-vouches or bearer assertion
+ * is not created, signed and marshalled again for every message. The assertions are cached by
+ * all the content of the SAMLCallback that goes into the assertion, except for the validity
+ * instants of the Conditions and the SubjectConfirmationData. So a CallbackHandler that returns
+ * another Recipient, audience, statement or signature algorithm gets another assertion.
+ *
+ * A cached assertion is used until the refresh fraction of its validity period has elapsed.
+ * After that a new assertion is issued in the background, while the cached one is still used
+ * for up to 90% of its validity period. Assertions without a NotOnOrAfter condition, one-time
+ * use assertions, assertions with a ProxyRestriction, and assertions with other subject
+ * confirmation methods, are not cached.
+ *
+ * Each message gets its own SamlAssertionWrapper, which is parsed from a copy of the cached
+ * (signed) DOM Element.
+ */
+public class SamlAssertionCache {
+
+    /**
+     * Creates and (if required) signs a new SAML assertion for a SAMLCallback
+     */
+    public interface Issuer {
+        SamlAssertionWrapper issue(SAMLCallback samlCallback) throws WSSecurityException;
+    }
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SamlAssertionCache.class);
+
+    private static final double DEFAULT_REFRESH_FRACTION = 0.5;
+    private static final double MAX_USE_FRACTION = 0.9;
+    private static final int MAX_CACHE_SIZE = 256;
+
+    private final ConcurrentMap<List<Object>, CachedAssertion> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<Object>, CompletableFuture<CachedAssertion>> pendingIssues =
+        new ConcurrentHashMap<>();
+    private Executor executor;
+    private double refreshFraction = DEFAULT_REFRESH_FRACTION;
+
+    /**
+     * Get a SAML assertion for the given SAMLCallback. It is parsed from a copy of a cached
+     * assertion if possible. Otherwise it is created by the Issuer, and cached if it qualifies.
+     *
+     * @param samlCallback The SAMLCallback, after it was handled by the SAML CallbackHandler
+     * @param samlCallbackHandler The SAML CallbackHandler, which is called again in the calling thread
+     *        for the SAMLCallback of a background refresh
+     * @param issuer Creates and signs a new assertion for the SAMLCallback
+     * @return the SAML assertion to be used for the message
+     * @throws WSSecurityException
+     */
+    public SamlAssertionWrapper getAssertion(
+        SAMLCallback samlCallback, CallbackHandler samlCallbackHandler, Issuer issuer
+    ) throws WSSecurityException {
+        List<Object> key = getCacheKey(samlCallback);
+        if (key == null) {
+            return issuer.issue(samlCallback);
+        }
+
+        Instant now = Instant.now();
+        CachedAssertion cachedAssertion = cache.get(key);
+        if (cachedAssertion != null) {
+            if (now.isBefore(cachedAssertion.expiry)) {
+                if (!now.isBefore(cachedAssertion.refreshTime) && !pendingIssues.containsKey(key)) {
+                    refreshAssertion(key, samlCallbackHandler, issuer);
+                }
+                return cachedAssertion.newAssertion();
+            }
+            cache.remove(key, cachedAssertion);
+        }
+
+        try {
+            cachedAssertion = issueAssertion(key, samlCallback, issuer, false).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof WSSecurityException) {
+                throw (WSSecurityException)e.getCause();
+            }
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e.getCause());
+        }
+        if (cachedAssertion.element == null) {
+            // The assertion is not cached, it can only be used for one message
+            SamlAssertionWrapper samlAssertion = cachedAssertion.takeAssertion();
+            return samlAssertion != null ? samlAssertion : issuer.issue(samlCallback);
+        }
+        return cachedAssertion.newAssertion();
+    }
+
+    /**
+     * Issue a new assertion in the background. The SAMLCallback of the message belongs to the calling
+     * thread, so a new one is created for the refresh.
+     */
+    private void refreshAssertion(List<Object> key, CallbackHandler samlCallbackHandler, Issuer issuer) {
+        SAMLCallback refreshCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(samlCallbackHandler, refreshCallback);
+        if (key.equals(getCacheKey(refreshCallback))) {
+            LOG.debug("Issuing a new SAML assertion for subject {}", refreshCallback.getSubject().getSubjectName());
+            issueAssertion(key, refreshCallback, issuer, true);
+        }
+    }
+
+    /**
+     * Issue a new assertion, unless it is already being issued for the same key. The assertion is
+     * issued in the calling thread, or on the Executor for a background refresh.
+     */
+    private CompletableFuture<CachedAssertion> issueAssertion(
+        List<Object> key, SAMLCallback samlCallback, Issuer issuer, boolean background
+    ) {
+        CompletableFuture<CachedAssertion> future = new CompletableFuture<>();
+        CompletableFuture<CachedAssertion> pendingIssue = pendingIssues.putIfAbsent(key, future);
+        if (pendingIssue != null) {
+            return pendingIssue;
+        }
+
+        Runnable request = () -> {
+            try {
+                future.complete(createCachedAssertion(key, issuer.issue(samlCallback)));
+            } catch (Exception e) {
+                LOG.debug(e.getMessage(), e);
+                future.completeExceptionally(e);
+            } finally {
+                pendingIssues.remove(key, future);
+            }
+        };
+
+        if (background) {
+            try {
+                getExecutor().execute(request);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Issuing a new SAML assertion was rejected, the cached one is used until it expires", e);
+                pendingIssues.remove(key, future);
+                future.completeExceptionally(e);
+            }
+        } else {
+            request.run();
+        }
+        return future;
+    }
+
+    private CachedAssertion createCachedAssertion(List<Object> key, SamlAssertionWrapper samlAssertion)
+        throws WSSecurityException {
+        Instant notOnOrAfter = null;
+        Instant notBefore = null;
+        if (samlAssertion.getSaml2() != null && samlAssertion.getSaml2().getConditions() != null) {
+            notOnOrAfter = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
+            notBefore = samlAssertion.getSaml2().getConditions().getNotBefore();
+        } else if (samlAssertion.getSaml1() != null && samlAssertion.getSaml1().getConditions() != null) {
+            notOnOrAfter = samlAssertion.getSaml1().getConditions().getNotOnOrAfter();
+            notBefore = samlAssertion.getSaml1().getConditions().getNotBefore();
+        }
+
+        Instant now = Instant.now();
+        if (notBefore == null || notBefore.isAfter(now)) {
+            notBefore = now;
+        }
+        if (notOnOrAfter == null || !notOnOrAfter.isAfter(notBefore)) {
+            return new CachedAssertion(samlAssertion);
+        }
+
+        // Sign and marshal the assertion once, in its own document
+        Element element = samlAssertion.toDOM(null);
+        Duration validity = Duration.between(notBefore, notOnOrAfter);
+        CachedAssertion cachedAssertion = new CachedAssertion(
+            element,
+            notBefore.plusMillis((long)(validity.toMillis() * refreshFraction)),
+            notBefore.plusMillis((long)(validity.toMillis() * MAX_USE_FRACTION))
+        );
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.values().removeIf(cached -> !now.isBefore(cached.expiry));
+        }
+        if (cache.size() < MAX_CACHE_SIZE || cache.containsKey(key)) {
+            cache.put(key, cachedAssertion);
+        }
+        return cachedAssertion;
+    }
+
+    /**
+     * Return the cache key of the assertion for a SAMLCallback, or null if it must not be cached.
+     * The key holds all the content of the SAMLCallback that goes into the assertion, except for
+     * the validity instants, which are taken from the assertion when it is cached.
+     */
+    private static List<Object> getCacheKey(SAMLCallback samlCallback) {
+        SubjectBean subject = samlCallback.getSubject();
+        if (samlCallback.getAssertionElement() != null || subject == null
+            || !(OpenSAMLUtil.isMethodSenderVouches(subject.getSubjectConfirmationMethod())
+                || OpenSAMLUtil.isMethodBearer(subject.getSubjectConfirmationMethod()))) {
+            return null;
+        }
+
+        List<Object> audiences = new ArrayList<>();
+        Object delegates = null;
+        ConditionsBean conditions = samlCallback.getConditions();
+        if (conditions != null) {
+            // A one-time use assertion must not be sent again, and a ProxyRestriction limits the reuse
+            if (conditions.isOneTimeUse() || conditions.getProxyRestriction() != null) {
+                return null;
+            }
+            if (conditions.getAudienceRestrictions() != null) {
+                for (AudienceRestrictionBean audienceRestriction : conditions.getAudienceRestrictions()) {
+                    audiences.add(audienceRestriction.getAudienceURIs());
+                }
+            }
+            delegates = conditions.getDelegates();
+        }
+
+        List<Object> subjectConfirmationData = null;
+        SubjectConfirmationDataBean confirmationData = subject.getSubjectConfirmationData();
+        if (confirmationData != null) {
+            subjectConfirmationData = Arrays.asList(
+                confirmationData.getRecipient(), confirmationData.getAddress(),
+                confirmationData.getInResponseTo(), confirmationData.getAny()
+            );
+        }
+
+        return Arrays.asList(
+            samlCallback.getSamlVersion(), samlCallback.getIssuer(), samlCallback.getIssuerFormat(),
+            samlCallback.getIssuerQualifier(), subject.getSubjectName(), subject.getSubjectNameQualifier(),
+            subject.getSubjectNameIDFormat(), subject.getSubjectNameSPNameQualifier(),
+            subject.getSubjectNameSPProvidedID(), subject.getSubjectConfirmationMethod(), subject.getKeyInfo(),
+            subject.getSubjectConfirmationNameID(), subjectConfirmationData, audiences, delegates,
+            samlCallback.getAdvice(), samlCallback.getAttributeStatementData(),
+            samlCallback.getAuthenticationStatementData(), samlCallback.getAuthDecisionStatementData(),
+            samlCallback.isSignAssertion(), samlCallback.getIssuerCrypto(), samlCallback.getIssuerKeyName(),
+            samlCallback.isSendKeyValue(), samlCallback.getSignatureAlgorithm(),
+            samlCallback.getSignatureDigestAlgorithm(), samlCallback.getCanonicalizationAlgorithm()
+        );
+    }
+
+    /**
+     * Remove all cached assertions
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Get the number of cached assertions
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public Executor getExecutor() {
+        return executor != null ? executor : RefreshExecutor.INSTANCE;
+    }
+
+    /**
+     * Set the Executor on which new assertions are issued when the cached ones are due to be
+     * refreshed. The default is a small shared pool of daemon threads.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public double getRefreshFraction() {
+        return refreshFraction;
+    }
+
+    /**
+     * Set the fraction of the validity period of a cached assertion after which a new assertion
+     * is issued. It must be greater than 0 and at most 0.9. The default is 0.5.
+     */
+    public void setRefreshFraction(double refreshFraction) {
+        if (refreshFraction <= 0 || refreshFraction > MAX_USE_FRACTION) {
+            throw new IllegalArgumentException("The refresh fraction must be in (0, " + MAX_USE_FRACTION + "]");
+        }
+        this.refreshFraction = refreshFraction;
+    }
+
+    private static final class CachedAssertion {
+        private final Element element;
+        private final Instant refreshTime;
+        private final Instant expiry;
+        private SamlAssertionWrapper assertion;
+
+        CachedAssertion(Element element, Instant refreshTime, Instant expiry) {
+            this.element = element;
+            this.refreshTime = refreshTime;
+            this.expiry = expiry;
+        }
+
+        // An assertion that is not cached
+        CachedAssertion(SamlAssertionWrapper assertion) {
+            this.element = null;
+            this.refreshTime = null;
+            this.expiry = null;
+            this.assertion = assertion;
+        }
+
+        synchronized SamlAssertionWrapper takeAssertion() {
+            SamlAssertionWrapper samlAssertion = assertion;
+            assertion = null;
+            return samlAssertion;
+        }
+
+        SamlAssertionWrapper newAssertion() throws WSSecurityException {
+            Element copy;
+            // The DOM is not thread-safe, not even for reading
+            synchronized (this) {
+                copy = (Element)element.cloneNode(true);
+            }
+            return new SamlAssertionWrapper(copy);
+        }
+    }
+
+    private static final class RefreshExecutor {
+        private static final ThreadPoolExecutor INSTANCE;
+
+        static {
+            INSTANCE = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "wss4j-saml-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            INSTANCE.allowCoreThreadTimeOut(true);
+        }
+
+        private RefreshExecutor() {
+            // complete
+        }
+    }
+}
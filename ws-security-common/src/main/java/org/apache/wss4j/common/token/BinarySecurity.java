@@ -191,12 +191,11 @@ public class BinarySecurity {
         if (data != null) {
             return data;
         }
-        String text = XMLUtils.getElementText(element);
-        if (text == null) {
+        byte[] token = XMLUtils.getDecodedElementText(element);
+        if (token == null) {
             return new byte[0];
         }
-
-        return org.apache.xml.security.utils.XMLUtils.decode(text);
+        return token;
     }
 
     /**
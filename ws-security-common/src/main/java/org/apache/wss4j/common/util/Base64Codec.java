@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A base64 decoder that works directly on the character content of a message, e.g. the Text nodes
+ * of a DOM Element, the character chunks of a StAX event stream or a StringBuilder. The content
+ * is not first concatenated into a String and converted to bytes, as for java.util.Base64, and
+ * the decoded bytes are written directly to a byte array or to a ByteBuffer.
+ *
+ * The content is decoded as by the MIME decoder of java.util.Base64, which is what
+ * org.apache.xml.security.utils.XMLUtils.decode uses: characters that are not in the base64
+ * alphabet, such as line breaks, are ignored.
+ */
+public final class Base64Codec {
+
+    private static final int IGNORED = -1;
+    private static final int PADDING = -2;
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int[] DECODE_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, IGNORED);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = i;
+        }
+        DECODE_TABLE['='] = PADDING;
+    }
+
+    private Base64Codec() {
+        // complete
+    }
+
+    /**
+     * Decode base64 encoded content
+     *
+     * @throws IllegalArgumentException if the content is not valid base64
+     */
+    public static byte[] decode(CharSequence encoded) {
+        return decode(Collections.singletonList(encoded));
+    }
+
+    /**
+     * Decode base64 encoded characters
+     *
+     * @throws IllegalArgumentException if the content is not valid base64
+     */
+    public static byte[] decode(char[] encoded, int offset, int length) {
+        return decode(CharBuffer.wrap(encoded, offset, length));
+    }
+
+    /**
+     * Decode base64 encoded content, that is split into several parts
+     *
+     * @throws IllegalArgumentException if the content is not valid base64
+     */
+    public static byte[] decode(List<? extends CharSequence> encoded) {
+        int maxLength = 0;
+        for (CharSequence part : encoded) {
+            maxLength += part.length();
+        }
+        // Line breaks and other ignored characters are rare enough not to count them upfront
+        Decoder decoder = new Decoder(new byte[(maxLength / 4) * 3 + 2], null);
+        decoder.decode(encoded);
+        return decoder.pos == decoder.out.length ? decoder.out : Arrays.copyOf(decoder.out, decoder.pos);
+    }
+
+    /**
+     * Decode base64 encoded content, that is split into several parts, into the given ByteBuffer.
+     * The bytes are written directly to the array of a heap ByteBuffer, and in chunks to a direct
+     * ByteBuffer.
+     *
+     * @return the number of bytes that were written to the ByteBuffer
+     * @throws IllegalArgumentException if the content is not valid base64
+     * @throws java.nio.BufferOverflowException if the ByteBuffer is too small
+     */
+    public static int decode(List<? extends CharSequence> encoded, ByteBuffer out) {
+        if (out.hasArray()) {
+            int maxLength = 0;
+            for (CharSequence part : encoded) {
+                maxLength += part.length();
+            }
+            if ((maxLength / 4) * 3 + 2 <= out.remaining()) {
+                Decoder decoder = new Decoder(out.array(), null);
+                decoder.pos = out.arrayOffset() + out.position();
+                int start = decoder.pos;
+                decoder.decode(encoded);
+                int written = decoder.pos - start;
+                out.position(out.position() + written);
+                return written;
+            }
+        }
+        int start = out.position();
+        Decoder decoder = new Decoder(new byte[CHUNK_SIZE], out);
+        decoder.decode(encoded);
+        decoder.flush();
+        return out.position() - start;
+    }
+
+    /**
+     * Decodes the parts into a byte array, which is flushed to the ByteBuffer when it is full
+     */
+    private static final class Decoder {
+        private final byte[] out;
+        private final ByteBuffer sink;
+        private int pos;
+        private int bits;
+        private int count;
+        private boolean padded;
+        private boolean secondPadding;
+
+        Decoder(byte[] out, ByteBuffer sink) {
+            this.out = out;
+            this.sink = sink;
+        }
+
+        void decode(List<? extends CharSequence> encoded) {
+            for (CharSequence part : encoded) {
+                update(part);
+            }
+            finish();
+        }
+
+        private void update(CharSequence part) {
+            byte[] buffer = out;
+            int limit = buffer.length - 3;
+            int p = pos;
+            int b = bits;
+            int c = count;
+            for (int i = 0, length = part.length(); i < length; i++) {
+                char ch = part.charAt(i);
+                int value = ch < DECODE_TABLE.length ? DECODE_TABLE[ch] : IGNORED;
+                if (secondPadding) {
+                    // As for the MIME decoder, a single padding character must be followed directly by another one
+                    if (value != PADDING) {
+                        throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+                    }
+                    secondPadding = false;
+                } else if (value >= 0 && !padded) {
+                    b = (b << 6) | value;
+                    if (++c == 4) {
+                        if (p > limit) {
+                            pos = p;
+                            flush();
+                            p = pos;
+                        }
+                        buffer[p++] = (byte)(b >> 16);
+                        buffer[p++] = (byte)(b >> 8);
+                        buffer[p++] = (byte)b;
+                        b = 0;
+                        c = 0;
+                    }
+                } else if (value == PADDING && !padded) {
+                    if (c < 2) {
+                        throw new IllegalArgumentException("Illegal base64 character 3d");
+                    }
+                    secondPadding = c == 2;
+                    padded = true;
+                } else if (value >= 0) {
+                    throw new IllegalArgumentException("Input byte array has incorrect ending byte");
+                }
+            }
+            pos = p;
+            bits = b;
+            count = c;
+        }
+
+        private void finish() {
+            if (secondPadding) {
+                throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+            }
+            if (count == 1) {
+                throw new IllegalArgumentException("Last unit does not have enough valid bits");
+            }
+            if (count > 1 && pos + count - 1 > out.length) {
+                flush();
+            }
+            if (count == 2) {
+                out[pos++] = (byte)(bits >> 4);
+            } else if (count == 3) {
+                out[pos++] = (byte)(bits >> 10);
+                out[pos++] = (byte)(bits >> 2);
+            }
+        }
+
+        void flush() {
+            if (sink == null) {
+                throw new BufferOverflowException();
+            }
+            sink.put(out, 0, pos);
+            pos = 0;
+        }
+    }
+
+}
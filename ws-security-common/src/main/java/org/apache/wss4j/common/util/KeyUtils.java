@@ -47,7 +47,7 @@ public final class KeyUtils {
     /**
      * A cached MessageDigest object
      */
-    private static MessageDigest digest;
+    private static volatile MessageDigest sha1Prototype;
 
     static {
         DEFAULT_DERIVED_KEY_LENGTHS.put(XMLSignature.ALGO_ID_MAC_HMAC_NOT_RECOMMENDED_MD5, 128);
@@ -127,13 +127,13 @@ public final class KeyUtils {
             KeyGenerator keyGen = KeyGenerator.getInstance(keyAlgorithm);
             if (algorithm.equalsIgnoreCase(XMLCipher.AES_128)
                 || algorithm.equalsIgnoreCase(XMLCipher.AES_128_GCM)) {
-                keyGen.init(128);
+                keyGen.init(128, RandomUtils.getSecureRandom());
             } else if (algorithm.equalsIgnoreCase(XMLCipher.AES_192)
                 || algorithm.equalsIgnoreCase(XMLCipher.AES_192_GCM)) {
-                keyGen.init(192);
+                keyGen.init(192, RandomUtils.getSecureRandom());
             } else if (algorithm.equalsIgnoreCase(XMLCipher.AES_256)
                 || algorithm.equalsIgnoreCase(XMLCipher.AES_256_GCM)) {
-                keyGen.init(256);
+                keyGen.init(256, RandomUtils.getSecureRandom());
             }
             return keyGen;
         } catch (NoSuchAlgorithmException e) {
@@ -227,22 +227,33 @@ public final class KeyUtils {
     }
 
     /**
-     * Generate a (SHA1) digest of the input bytes. The MessageDigest instance that backs this
-     * method is cached for efficiency.
+     * Generate a (SHA1) digest of the input bytes. Each call digests with a clone of a cached
+     * MessageDigest instance, so that concurrent callers do not contend on a lock.
      * @param inputBytes the bytes to digest
      * @return the digest of the input bytes
      * @throws WSSecurityException
      */
-    public static synchronized byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+    public static byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
         try {
-            if (digest == null) {
-                digest = MessageDigest.getInstance("SHA-1");
-            }
-            return digest.digest(inputBytes);
+            return newSHA1Digest().digest(inputBytes);
         } catch (Exception e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
                                           new Object[] {"Error in generating digest"}
             );
         }
     }
+
+    private static MessageDigest newSHA1Digest() throws NoSuchAlgorithmException {
+        MessageDigest prototype = sha1Prototype;
+        if (prototype == null) {
+            prototype = MessageDigest.getInstance("SHA-1");
+            sha1Prototype = prototype;
+        }
+        try {
+            // The prototype itself is never updated, so it can be cloned concurrently
+            return (MessageDigest)prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return MessageDigest.getInstance("SHA-1");
+        }
+    }
 }
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates the random values of outbound messages, such as nonces, salts, IVs and symmetric keys,
+ * from a pluggable SecureRandomProvider. The default provider is a StripedSecureRandomProvider.
+ */
+public final class RandomUtils {
+
+    private static final SecureRandomProvider DEFAULT_PROVIDER = new StripedSecureRandomProvider();
+
+    private static volatile SecureRandomProvider secureRandomProvider = DEFAULT_PROVIDER;
+
+    private RandomUtils() {
+        // complete
+    }
+
+    public static SecureRandomProvider getSecureRandomProvider() {
+        return secureRandomProvider;
+    }
+
+    /**
+     * Set the SecureRandomProvider, or null to restore the default StripedSecureRandomProvider
+     */
+    public static void setSecureRandomProvider(SecureRandomProvider provider) {
+        secureRandomProvider = provider != null ? provider : DEFAULT_PROVIDER;
+    }
+
+    /**
+     * Get a SecureRandom for the calling thread
+     */
+    public static SecureRandom getSecureRandom() {
+        return secureRandomProvider.getSecureRandom();
+    }
+
+    /**
+     * Generate the given number of random bytes
+     */
+    public static byte[] generateBytes(int length) {
+        return secureRandomProvider.generateBytes(length);
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * An InputStream that can be read twice, e.g. once to digest an attachment and once more by the
+ * application. If the wrapped stream supports mark/reset, it is marked and reset as long as no more
+ * than the memory threshold was read, as the wrapped stream may buffer the marked content in memory.
+ * Otherwise the bytes read are copied into a buffer in memory, which spills to a temporary file once
+ * it exceeds the memory threshold. Unlike a BufferedInputStream this is not limited to 2 GB, and
+ * the heap usage is bounded by the threshold. The temporary file is encrypted with a key that only
+ * exists in memory, as the content may be (decrypted) confidential data.
+ *
+ * Once the content was read, replay() returns a stream of the full content. Closing the returned
+ * stream closes the wrapped stream and deletes the temporary file. Closing this stream releases
+ * the resources if replay() was not called (e.g. because verifying the digest failed), and does
+ * nothing otherwise, so that it can be used in a try-with-resources statement. A temporary file
+ * which is never closed is deleted once the stream owning it is garbage collected.
+ */
+public class ReplayableInputStream extends FilterInputStream {
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final String SPILL_FILE_CIPHER = "AES/CTR/NoPadding";
+
+    private final int memoryThreshold;
+    private boolean sourceMarked;
+    private int markedCount;
+    private final byte[] singleByte = new byte[1];
+    private byte[] memory;
+    private int memoryCount;
+    private Cleaner.Cleanable spillFileCleanable;
+    private Path spillFile;
+    private SecretKey spillFileKey;
+    private OutputStream spillOutputStream;
+    private boolean replayed;
+
+    public ReplayableInputStream(InputStream in) {
+        this(in, DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    public ReplayableInputStream(InputStream in, int memoryThreshold) {
+        super(in);
+        this.memoryThreshold = memoryThreshold;
+        sourceMarked = in.markSupported();
+        if (sourceMarked) {
+            //reuse the inputStream, as long as it doesn't have to keep more than the threshold
+            in.mark(memoryThreshold);
+        } else {
+            memory = new byte[Math.max(1, Math.min(memoryThreshold, INITIAL_BUFFER_SIZE))];
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkNotReplayed();
+        checkMarkLimit(1);
+        int b = in.read();
+        if (b != -1) {
+            if (sourceMarked) {
+                markedCount++;
+            } else {
+                singleByte[0] = (byte)b;
+                cache(singleByte, 0, 1);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkNotReplayed();
+        int numBytes = in.read(b, off, checkMarkLimit(len));
+        if (numBytes > 0) {
+            if (sourceMarked) {
+                markedCount += numBytes;
+            } else {
+                cache(b, off, numBytes);
+            }
+        }
+        return numBytes;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkNotReplayed();
+        // Skipped bytes must be cached or counted against the mark limit as well
+        byte[] buf = new byte[(int)Math.min(n, INITIAL_BUFFER_SIZE)];
+        long remaining = n;
+        while (remaining > 0) {
+            int numBytes = read(buf, 0, (int)Math.min(remaining, buf.length));
+            if (numBytes == -1) {
+                break;
+            }
+            remaining -= numBytes;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Get a stream of the full content of the wrapped stream, starting from where this stream was
+     * created. The returned stream takes over the resources of this stream, which must not be used
+     * any more.
+     */
+    public InputStream replay() throws IOException {
+        checkNotReplayed();
+        replayed = true;
+        if (sourceMarked) {
+            in.reset();
+            return in;
+        }
+
+        List<InputStream> streams = new ArrayList<>(3);
+        streams.add(new ByteArrayInputStream(memory, 0, memoryCount));
+        if (spillOutputStream != null) {
+            spillOutputStream.close();
+            spillOutputStream = null;
+            try {
+                streams.add(new CipherInputStream(Files.newInputStream(spillFile),
+                                                  createSpillFileCipher(Cipher.DECRYPT_MODE)));
+            } catch (IOException e) {
+                deleteSpillFile();
+                throw e;
+            }
+        }
+        streams.add(in);
+        memory = null;
+
+        spillFile = null;
+        spillFileKey = null;
+        return new ReplayedInputStream(new SequenceInputStream(Collections.enumeration(streams)), this);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (replayed) {
+            // The resources belong to the replayed stream
+            return;
+        }
+        replayed = true;
+        memory = null;
+        try {
+            in.close();
+        } finally {
+            try {
+                if (spillOutputStream != null) {
+                    spillOutputStream.close();
+                }
+            } finally {
+                deleteSpillFile();
+            }
+        }
+    }
+
+    private void cache(byte[] b, int off, int len) throws IOException {
+        int toMemory = 0;
+        if (spillOutputStream == null) {
+            toMemory = Math.min(len, memoryThreshold - memoryCount);
+            if (toMemory > 0) {
+                if (memoryCount + toMemory > memory.length) {
+                    long newLength = Math.max((long)memory.length * 2, memoryCount + toMemory);
+                    byte[] newMemory = new byte[(int)Math.min(newLength, memoryThreshold)];
+                    System.arraycopy(memory, 0, newMemory, 0, memoryCount);
+                    memory = newMemory;
+                }
+                System.arraycopy(b, off, memory, memoryCount, toMemory);
+                memoryCount += toMemory;
+            }
+        }
+        if (toMemory < len) {
+            if (spillOutputStream == null) {
+                spillFile = Files.createTempFile("wss4j-attachment", ".tmp");
+                spillFileCleanable = CLEANER.register(this, new SpillFileCleanup(spillFile));
+                spillFileKey = generateSpillFileKey();
+                spillOutputStream =
+                    new CipherOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)),
+                                           createSpillFileCipher(Cipher.ENCRYPT_MODE));
+            }
+            spillOutputStream.write(b, off + toMemory, len - toMemory);
+        }
+    }
+
+    private static SecretKey generateSpillFileKey() throws IOException {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(128);
+            return keyGenerator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * A new key is generated for each temporary file, and so the counter can start at zero
+     */
+    private Cipher createSpillFileCipher(int mode) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(SPILL_FILE_CIPHER);
+            cipher.init(mode, spillFileKey, new IvParameterSpec(new byte[16]));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void deleteSpillFile() {
+        spillFile = null;
+        spillFileKey = null;
+        if (spillFileCleanable != null) {
+            spillFileCleanable.clean();
+        }
+    }
+
+    /**
+     * Limit the number of bytes to read, so that the mark of the wrapped stream stays valid. Once the
+     * memory threshold was read, switch from the mark to caching the content.
+     */
+    private int checkMarkLimit(int len) throws IOException {
+        if (!sourceMarked || len <= 0) {
+            return len;
+        }
+        if (markedCount < memoryThreshold) {
+            return Math.min(len, memoryThreshold - markedCount);
+        }
+        in.reset();
+        sourceMarked = false;
+        memory = new byte[Math.max(1, Math.min(memoryThreshold, INITIAL_BUFFER_SIZE))];
+        byte[] buf = new byte[Math.max(1, Math.min(markedCount, INITIAL_BUFFER_SIZE))];
+        int remaining = markedCount;
+        while (remaining > 0) {
+            int numBytes = in.read(buf, 0, Math.min(remaining, buf.length));
+            if (numBytes == -1) {
+                throw new IOException("Unexpected end of stream after reset");
+            }
+            cache(buf, 0, numBytes);
+            remaining -= numBytes;
+        }
+        return len;
+    }
+
+    private void checkNotReplayed() throws IOException {
+        if (replayed) {
+            throw new IOException("Stream was already replayed or closed");
+        }
+    }
+
+    /**
+     * The stream returned by replay(). It keeps the ReplayableInputStream reachable, so that the
+     * temporary file is only deleted by the Cleaner once the replayed stream is unreachable as well.
+     */
+    private static final class ReplayedInputStream extends FilterInputStream {
+
+        private final ReplayableInputStream owner;
+
+        ReplayedInputStream(InputStream in, ReplayableInputStream owner) {
+            super(in);
+            this.owner = owner;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                owner.deleteSpillFile();
+            }
+        }
+    }
+
+    private static final class SpillFileCleanup implements Runnable {
+
+        private final Path file;
+
+        SpillFileCleanup(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+}
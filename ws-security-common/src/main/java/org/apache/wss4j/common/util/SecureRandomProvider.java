@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.security.SecureRandom;
+
+/**
+ * Provides the SecureRandom instances from which nonces, salts, IVs and symmetric keys are generated.
+ *
+ * @see RandomUtils#setSecureRandomProvider(SecureRandomProvider)
+ */
+public interface SecureRandomProvider {
+
+    /**
+     * Get a SecureRandom for the calling thread. It may be a different instance for every thread,
+     * so it should not be handed over to other threads.
+     */
+    SecureRandom getSecureRandom();
+
+    /**
+     * Generate the given number of random bytes
+     */
+    default byte[] generateBytes(int length) {
+        byte[] bytes = new byte[length];
+        getSecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs independent parts of the initialization of WSS4J in parallel. The first task runs in the
+ * calling thread, and the others are started on an Executor. A task that the Executor did not start
+ * by the time the calling thread waits for it is run in the calling thread instead, so the tasks
+ * can be started on a bounded Executor, or on the same Executor as the tasks themselves, without
+ * deadlocking.
+ */
+public final class StartupTasks {
+
+    /**
+     * A part of the initialization
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private static final Executor THREAD_PER_TASK = task -> {
+        Thread thread = new Thread(task, "wss4j-startup");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    private StartupTasks() {
+        // Complete
+    }
+
+    /**
+     * Get an Executor for initializing WSS4J in parallel, which applications can pass to the
+     * initialization methods that take an Executor. WSS4J never uses it by itself. It starts a
+     * short-lived daemon thread per task if there is more than one processor, and is null otherwise,
+     * in which case the tasks run one after another in the calling thread.
+     */
+    public static Executor getDefaultExecutor() {
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            return THREAD_PER_TASK;
+        }
+        return null;
+    }
+
+    /**
+     * Run the given tasks, and wait until all of them have finished.
+     * @param executor The Executor to run the tasks on, or null to run them in the calling thread
+     * @param tasks The tasks to run
+     * @throws Exception the exception thrown by the first task that failed
+     */
+    public static void runAll(Executor executor, Task... tasks) throws Exception {
+        runAll(executor, Arrays.asList(tasks));
+    }
+
+    /**
+     * Run the given tasks, and wait until all of them have finished.
+     * @param executor The Executor to run the tasks on, or null to run them in the calling thread
+     * @param tasks The tasks to run
+     * @throws Exception the exception thrown by the first task that failed
+     */
+    public static void runAll(Executor executor, List<? extends Task> tasks) throws Exception {
+        if (executor == null || tasks.size() < 2) {
+            for (Task task : tasks) {
+                task.run();
+            }
+            return;
+        }
+
+        List<FutureTask<Void>> futures = new ArrayList<>(tasks.size() - 1);
+        for (Task task : tasks.subList(1, tasks.size())) {
+            FutureTask<Void> future = new FutureTask<>(() -> {
+                task.run();
+                return null;
+            });
+            futures.add(future);
+            try {
+                executor.execute(future);
+            } catch (RejectedExecutionException ex) { //NOPMD
+                // The task is run in the calling thread below
+            }
+        }
+
+        Exception failure = null;
+        try {
+            tasks.get(0).run();
+        } catch (Exception ex) {
+            failure = ex;
+        }
+        for (FutureTask<Void> future : futures) {
+            // This does nothing if the task was already started by the Executor
+            future.run();
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                if (failure == null) {
+                    failure = (Exception) ex.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
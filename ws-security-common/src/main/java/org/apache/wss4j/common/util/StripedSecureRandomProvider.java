@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A SecureRandomProvider that spreads the calling threads over a small, fixed number of DRBG
+ * instances (stripes), so that threads rarely contend for the same SecureRandom. Unlike an instance
+ * per thread, the number of instances does not grow with the number of threads. When every message
+ * is processed on its own virtual thread, a DRBG is therefore not instantiated and seeded from the
+ * entropy source for every message. The DRBG instances are thread safe, and a thread always uses
+ * the same stripe.
+ *
+ * Each instance is reseeded from the entropy source after a number of uses, and when a period of
+ * time has elapsed since it was last seeded. If the DRBG algorithm is not available, a default
+ * SecureRandom is used per stripe.
+ */
+public class StripedSecureRandomProvider implements SecureRandomProvider {
+
+    public static final int DEFAULT_RESEED_INTERVAL = 1 << 16;
+    public static final long DEFAULT_RESEED_PERIOD = TimeUnit.MINUTES.toMillis(10L);
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(StripedSecureRandomProvider.class);
+
+    private final int reseedInterval;
+    private final long reseedPeriodNanos;
+    private final AtomicReferenceArray<SeededRandom> stripes;
+
+    public StripedSecureRandomProvider() {
+        this(DEFAULT_RESEED_INTERVAL, DEFAULT_RESEED_PERIOD);
+    }
+
+    /**
+     * @param reseedInterval the number of uses after which the SecureRandom of a stripe is reseeded
+     * @param reseedPeriod the time in milliseconds after which the SecureRandom of a stripe is reseeded
+     */
+    public StripedSecureRandomProvider(int reseedInterval, long reseedPeriod) {
+        this(reseedInterval, reseedPeriod, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param reseedInterval the number of uses after which the SecureRandom of a stripe is reseeded
+     * @param reseedPeriod the time in milliseconds after which the SecureRandom of a stripe is reseeded
+     * @param stripes the minimum number of SecureRandom instances, rounded up to a power of two
+     */
+    public StripedSecureRandomProvider(int reseedInterval, long reseedPeriod, int stripes) {
+        if (reseedInterval <= 0 || reseedPeriod <= 0 || stripes <= 0) {
+            throw new IllegalArgumentException("The reseed interval and period and the stripes must be positive");
+        }
+        this.reseedInterval = reseedInterval;
+        this.reseedPeriodNanos = TimeUnit.MILLISECONDS.toNanos(reseedPeriod);
+        int stripeCount = 1;
+        while (stripeCount < stripes && stripeCount < 1 << 16) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new AtomicReferenceArray<>(stripeCount);
+    }
+
+    @Override
+    public SecureRandom getSecureRandom() {
+        int index = getStripeIndex();
+        SeededRandom seededRandom = stripes.get(index);
+        if (seededRandom == null) {
+            SeededRandom newRandom = newSeededRandom();
+            seededRandom = stripes.compareAndSet(index, null, newRandom) ? newRandom : stripes.get(index);
+        }
+        if (seededRandom.uses.incrementAndGet() >= reseedInterval
+            || System.nanoTime() - seededRandom.seedTime >= reseedPeriodNanos) {
+            seededRandom = reseed(index, seededRandom);
+        }
+        return seededRandom.random;
+    }
+
+    private SeededRandom reseed(int index, SeededRandom seededRandom) {
+        synchronized (seededRandom) {
+            // Another thread of the same stripe may have reseeded it in the meantime
+            if (seededRandom.uses.get() < reseedInterval
+                && System.nanoTime() - seededRandom.seedTime < reseedPeriodNanos) {
+                return seededRandom;
+            }
+            try {
+                seededRandom.random.reseed();
+                seededRandom.reseeded();
+                return seededRandom;
+            } catch (UnsupportedOperationException e) {
+                SeededRandom newRandom = newSeededRandom();
+                stripes.set(index, newRandom);
+                seededRandom.reseeded();
+                return newRandom;
+            }
+        }
+    }
+
+    private int getStripeIndex() {
+        int hash = System.identityHashCode(Thread.currentThread()) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (stripes.length() - 1);
+    }
+
+    private SeededRandom newSeededRandom() {
+        SecureRandom random;
+        try {
+            random = SecureRandom.getInstance(
+                "DRBG", DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null)
+            );
+        } catch (NoSuchAlgorithmException e) {
+            LOG.debug("DRBG is not available, using the default SecureRandom", e);
+            random = new SecureRandom();
+        }
+        return new SeededRandom(random);
+    }
+
+    private static final class SeededRandom {
+        private final SecureRandom random;
+        private final AtomicInteger uses = new AtomicInteger();
+        private volatile long seedTime;
+
+        SeededRandom(SecureRandom random) {
+            this.random = random;
+            reseeded();
+        }
+
+        void reseeded() {
+            uses.set(0);
+            seedTime = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates IDs that are unique, but not unpredictable, e.g. for wsu:Id attributes. An ID consists of
+ * a random identifier of the JVM, which is generated once, and a sequence number. Every thread takes
+ * a block of sequence numbers at a time, so generating an ID neither draws from a SecureRandom nor
+ * contends with other threads. Use a random (UUID based) ID where the ID must not be guessable.
+ */
+public final class UniqueIdGenerator {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private static final String NODE_ID = createNodeId();
+    private static final AtomicLong NEXT_BLOCK = new AtomicLong();
+    private static final ThreadLocal<long[]> SEQUENCE = ThreadLocal.withInitial(() -> new long[2]);
+
+    private UniqueIdGenerator() {
+        // complete
+    }
+
+    /**
+     * Generate a unique ID with the given prefix. An ID without a prefix does not start with a digit,
+     * so that it is a valid NCName.
+     */
+    public static String generateID(String prefix) {
+        long[] sequence = SEQUENCE.get();
+        // sequence[0] is the next number of the block of the thread, sequence[1] is the end of the block
+        if (sequence[0] == sequence[1]) {
+            sequence[0] = NEXT_BLOCK.getAndAdd(BLOCK_SIZE);
+            sequence[1] = sequence[0] + BLOCK_SIZE;
+        }
+        String id = NODE_ID + Long.toHexString(sequence[0]++);
+        if (prefix != null) {
+            return prefix + id;
+        }
+        return "G" + id;
+    }
+
+    private static String createNodeId() {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : RandomUtils.generateBytes(12)) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.append('-').toString();
+    }
+}
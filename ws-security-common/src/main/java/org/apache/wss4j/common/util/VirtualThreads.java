@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Access to virtual threads, which are available from Java 21. As WSS4J runs on Java 17, the
+ * virtual thread Executor is looked up reflectively. On older JVMs, a bounded pool of daemon platform
+ * threads is used instead.
+ */
+public final class VirtualThreads {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(VirtualThreads.class);
+
+    /**
+     * The maximum number of platform threads used if virtual threads are not available
+     */
+    public static final int MAX_PLATFORM_THREADS = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+
+    private VirtualThreads() {
+        // complete
+    }
+
+    /**
+     * Return whether virtual threads are available on this JVM
+     */
+    public static boolean isSupported() {
+        return Holder.SUPPORTED;
+    }
+
+    /**
+     * Return a shared Executor that runs each task on a new virtual thread. If virtual threads are not
+     * available, then each task runs on one of at most MAX_PLATFORM_THREADS daemon platform threads. When
+     * all of these are busy, the task runs on the calling thread instead, so that a task which waits for
+     * another task on this Executor cannot deadlock. The Executor must not be shut down.
+     */
+    public static Executor executor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Return a shared Executor that runs each task on one of at most MAX_PLATFORM_THREADS daemon platform
+     * threads, whether or not virtual threads are available. When all of these are busy, the task runs on
+     * the calling thread instead. The Executor must not be shut down.
+     */
+    public static Executor platformExecutor() {
+        return PlatformHolder.EXECUTOR;
+    }
+
+    private static final class Holder {
+        private static final boolean SUPPORTED;
+        private static final Executor EXECUTOR;
+
+        static {
+            ExecutorService executorService = null;
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                executorService = (ExecutorService)method.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                LOG.debug("Virtual threads are not available, using platform threads instead");
+            }
+            SUPPORTED = executorService != null;
+            EXECUTOR = executorService != null ? executorService : PlatformHolder.EXECUTOR;
+        }
+
+        private Holder() {
+            // complete
+        }
+    }
+
+    private static final class PlatformHolder {
+        private static final Executor EXECUTOR = createPlatformExecutor();
+
+        private PlatformHolder() {
+            // complete
+        }
+
+        private static Executor createPlatformExecutor() {
+            AtomicInteger count = new AtomicInteger();
+            return new ThreadPoolExecutor(0, MAX_PLATFORM_THREADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread thread = new Thread(r, "wss4j-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+}
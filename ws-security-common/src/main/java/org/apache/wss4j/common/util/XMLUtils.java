@@ -39,6 +39,7 @@ import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.CDATASection;
+import org.w3c.dom.CharacterData;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -112,6 +113,34 @@ public final class XMLUtils {
         return null;
     }
 
+    /**
+     * Decode the base64 encoded text of an Element. The Text and CDATA nodes of the Element are
+     * decoded in place, without concatenating them first.
+     *
+     * @return the decoded bytes, or null if the Element has no text
+     * @throws IllegalArgumentException if the text is not valid base64
+     */
+    public static byte[] getDecodedElementText(Element e) {
+        if (e != null) {
+            List<String> parts = null;
+            Node node = e.getFirstChild();
+            while (node != null) {
+                if (Node.TEXT_NODE == node.getNodeType() || Node.CDATA_SECTION_NODE == node.getNodeType()) {
+                    if (parts == null) {
+                        parts = new ArrayList<>(1);
+                    }
+                    parts.add(((CharacterData)node).getData());
+                }
+                node = node.getNextSibling();
+            }
+
+            if (parts != null) {
+                return Base64Codec.decode(parts);
+            }
+        }
+        return null;
+    }
+
     public static String getNamespace(String prefix, Node e) {
         while (e != null && e.getNodeType() == Node.ELEMENT_NODE) {
             Attr attr = null;
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.attachment;
+
+import org.apache.wss4j.common.util.ReplayableInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplayableInputStreamTest {
+
+    @Test
+    public void testInMemory() throws Exception {
+        byte[] data = createData(100);
+        ReplayableInputStream inputStream = new ReplayableInputStream(new UnmarkableInputStream(data), 1024);
+        assertArrayEquals(data, readFully(inputStream));
+        assertArrayEquals(data, readFully(inputStream.replay()));
+    }
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        byte[] data = createData(100 * 1024);
+        ReplayableInputStream inputStream = new ReplayableInputStream(new UnmarkableInputStream(data), 1024);
+        assertEquals(data[0], (byte)inputStream.read());
+        assertEquals(1000, inputStream.skip(1000));
+        assertArrayEquals(Arrays.copyOfRange(data, 1001, data.length), readFully(inputStream));
+        try (InputStream replayed = inputStream.replay()) {
+            assertArrayEquals(data, readFully(replayed));
+        }
+        assertThrows(IOException.class, inputStream::read);
+    }
+
+    @Test
+    public void testSpillFileIsEncrypted() throws Exception {
+        byte[] data = createData(10 * 1024);
+        Set<Path> spillFiles = getSpillFiles();
+        ReplayableInputStream inputStream = new ReplayableInputStream(new UnmarkableInputStream(data), 1024);
+        assertArrayEquals(data, readFully(inputStream));
+        try (InputStream replayed = inputStream.replay()) {
+            Set<Path> newSpillFiles = getSpillFiles();
+            newSpillFiles.removeAll(spillFiles);
+            assertEquals(1, newSpillFiles.size());
+            Path spillFile = newSpillFiles.iterator().next();
+
+            // The spilled content is there, but not in plain text
+            byte[] spilled = Files.readAllBytes(spillFile);
+            assertEquals(data.length - 1024, spilled.length);
+            assertFalse(Arrays.equals(Arrays.copyOfRange(data, 1024, data.length), spilled));
+
+            assertArrayEquals(data, readFully(replayed));
+            replayed.close();
+            assertFalse(Files.exists(spillFile));
+        }
+    }
+
+    @Test
+    public void testPartiallyRead() throws Exception {
+        byte[] data = createData(10 * 1024);
+        ReplayableInputStream inputStream = new ReplayableInputStream(new UnmarkableInputStream(data), 1024);
+        byte[] buf = new byte[4096];
+        assertTrue(inputStream.read(buf) > 0);
+        // The unread remainder of the wrapped stream is appended to the cached content
+        assertArrayEquals(data, readFully(inputStream.replay()));
+    }
+
+    @Test
+    public void testMarkSupported() throws Exception {
+        byte[] data = createData(4096);
+        ByteArrayInputStream source = new ByteArrayInputStream(data);
+        ReplayableInputStream inputStream = new ReplayableInputStream(source, 8192);
+        assertArrayEquals(data, readFully(inputStream));
+        InputStream replayed = inputStream.replay();
+        assertSame(source, replayed);
+        assertArrayEquals(data, readFully(replayed));
+    }
+
+    @Test
+    public void testMarkSupportedAboveThreshold() throws Exception {
+        byte[] data = createData(100 * 1024);
+        BufferedInputStream source = new BufferedInputStream(new UnmarkableInputStream(data), 64);
+        ReplayableInputStream inputStream = new ReplayableInputStream(source, 1024);
+        assertEquals(data[0], (byte)inputStream.read());
+        assertEquals(1000, inputStream.skip(1000));
+        assertArrayEquals(Arrays.copyOfRange(data, 1001, data.length), readFully(inputStream));
+        // The content is cached instead of being buffered by the marked source
+        try (InputStream replayed = inputStream.replay()) {
+            assertNotSame(source, replayed);
+            assertArrayEquals(data, readFully(replayed));
+        }
+    }
+
+    private static Set<Path> getSpillFiles() throws IOException {
+        Set<Path> spillFiles = new HashSet<>();
+        Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tmpDir, "wss4j-attachment*.tmp")) {
+            for (Path path : stream) {
+                spillFiles.add(path);
+            }
+        }
+        return spillFiles;
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[777];
+        int numBytes;
+        while ((numBytes = inputStream.read(buf)) != -1) {
+            baos.write(buf, 0, numBytes);
+        }
+        return baos.toByteArray();
+    }
+
+    private static final class UnmarkableInputStream extends FilterInputStream {
+        UnmarkableInputStream(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -23,7 +23,13 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -50,6 +56,41 @@ public class ReplayCacheTest {
         }
     }
 
+    @Test
+    public void testMemoryReplayCacheConcurrentAccess() throws Exception {
+        int threads = 8;
+        int idsPerThread = 1000;
+        try (ReplayCache replayCache = new MemoryReplayCache()) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Boolean>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    String prefix = Integer.toString(t) + "-";
+                    futures.add(executor.submit(() -> {
+                        boolean replayed = false;
+                        for (int i = 0; i < idsPerThread; i++) {
+                            String id = prefix + i;
+                            replayed |= replayCache.contains(id);
+                            replayCache.add(id, Instant.now().plusSeconds(60L + i % 10));
+                        }
+                        return replayed;
+                    }));
+                }
+                for (Future<Boolean> future : futures) {
+                    assertFalse(future.get(60L, TimeUnit.SECONDS));
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < idsPerThread; i++) {
+                    assertTrue(replayCache.contains(t + "-" + i));
+                }
+            }
+        }
+    }
+
     @Test
     public void testEhCacheReplayCache() throws Exception {
         try (ReplayCache replayCache = new EHCacheReplayCache("xyz", tempDir)) {
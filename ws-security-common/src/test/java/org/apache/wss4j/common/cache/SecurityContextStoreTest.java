@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import org.apache.wss4j.common.derivedKey.ConversationConstants;
+import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some unit tests for the MemorySecurityContextStore
+ */
+public class SecurityContextStoreTest {
+
+    private static final byte[] SECRET = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NONCE = "fedcba9876543210".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testAddAndRemoveSession() throws Exception {
+        try (SecurityContextStore store = new MemorySecurityContextStore()) {
+            String identifier = "urn:uuid:" + UUID.randomUUID();
+            assertNull(store.getSession(identifier));
+
+            byte[] secret = SECRET.clone();
+            store.addSession(identifier, secret);
+            // The stored secret is a copy
+            secret[0] = 0;
+
+            SecurityContextSession session = store.getSession(identifier);
+            assertNotNull(session);
+            assertArrayEquals(SECRET, session.getSecret());
+            assertTrue(session.hasSecret(SECRET));
+            assertFalse(session.hasSecret(secret));
+
+            store.removeSession(identifier);
+            assertNull(store.getSession(identifier));
+        }
+    }
+
+    @Test
+    public void testExpiredSession() throws Exception {
+        try (SecurityContextStore store = new MemorySecurityContextStore()) {
+            String identifier = "urn:uuid:" + UUID.randomUUID();
+            store.addSession(identifier, SECRET, Instant.now().plus(500L, ChronoUnit.MILLIS));
+            assertNotNull(store.getSession(identifier));
+
+            Thread.sleep(1000L);
+            assertNull(store.getSession(identifier));
+        }
+    }
+
+    @Test
+    public void testEmptySecretIsNotStored() throws Exception {
+        try (SecurityContextStore store = new MemorySecurityContextStore()) {
+            String identifier = "urn:uuid:" + UUID.randomUUID();
+            assertNull(store.addSession(identifier, new byte[0]));
+            assertNull(store.getSession(identifier));
+
+            assertNull(store.addSession(identifier, null));
+            assertNull(store.addSession(identifier, null, Instant.now().plusSeconds(60L)));
+            assertNull(store.getSession(identifier));
+        }
+    }
+
+    @Test
+    public void testEmptyIdentifierIsNotStored() throws Exception {
+        try (SecurityContextStore store = new MemorySecurityContextStore()) {
+            assertNull(store.addSession(null, SECRET));
+            assertNull(store.addSession("", SECRET));
+            assertNull(store.getSession(""));
+        }
+    }
+
+    @Test
+    public void testMemoizedDerivedKeys() throws Exception {
+        try (SecurityContextStore store = new MemorySecurityContextStore()) {
+            SecurityContextSession session = store.addSession("urn:uuid:" + UUID.randomUUID(), SECRET);
+
+            byte[] expected =
+                DerivedKeyUtils.deriveKey(ConversationConstants.DerivationAlgorithm.P_SHA_1, null, 32, SECRET, NONCE, 0);
+            byte[] key =
+                session.deriveKey(ConversationConstants.DerivationAlgorithm.P_SHA_1, null, 32, NONCE, 0);
+            assertArrayEquals(expected, key);
+
+            // A memoized key is returned as a copy
+            key[0]++;
+            byte[] memoizedKey =
+                session.deriveKey(ConversationConstants.DerivationAlgorithm.P_SHA_1, null, 32, NONCE, 0);
+            assertArrayEquals(expected, memoizedKey);
+            assertNotSame(key, memoizedKey);
+
+            byte[] otherKey =
+                session.deriveKey(ConversationConstants.DerivationAlgorithm.P_SHA_1, null, 32, NONCE, 16);
+            assertArrayEquals(
+                DerivedKeyUtils.deriveKey(ConversationConstants.DerivationAlgorithm.P_SHA_1, null, 32, SECRET, NONCE, 16),
+                otherKey
+            );
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Properties;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Some tests for checking the revocation status of certificates with a CRLRevocationChecker
+ */
+public class CRLRevocationCheckerTest {
+
+    private static final X500Principal CA_NAME = new X500Principal("CN=Test CA, O=Apache WSS4J");
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    private static KeyPair caKeyPair;
+    private static X509Certificate caCert;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        WSProviderConfig.init();
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        caKeyPair = keyPairGenerator.generateKeyPair();
+        caCert = createCertificate(CA_NAME, BigInteger.ONE);
+    }
+
+    @Test
+    public void testRevokedCertificate() throws Exception {
+        CRLRevocationChecker checker = new CRLRevocationChecker(Collections.singletonList(caCert), null);
+        X509v2CRLBuilder crlBuilder = createCRLBuilder(1);
+        crlBuilder.addCRLEntry(BigInteger.valueOf(10), new Date(), CRLReason.keyCompromise);
+        checker.addCRL(createCRL(crlBuilder, caKeyPair.getPrivate()));
+
+        validate(checker, BigInteger.valueOf(11));
+        CertPathValidatorException ex =
+            assertThrows(CertPathValidatorException.class, () -> validate(checker, BigInteger.valueOf(10)));
+        assertEquals(CertPathValidatorException.BasicReason.REVOKED, ex.getReason());
+    }
+
+    @Test
+    public void testDeltaCRL() throws Exception {
+        CRLRevocationChecker checker = new CRLRevocationChecker(Collections.singletonList(caCert), null);
+        X509v2CRLBuilder crlBuilder = createCRLBuilder(1);
+        crlBuilder.addCRLEntry(BigInteger.valueOf(10), new Date(), CRLReason.certificateHold);
+        checker.addCRL(createCRL(crlBuilder, caKeyPair.getPrivate()));
+
+        X509v2CRLBuilder deltaBuilder = createCRLBuilder(2);
+        deltaBuilder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.ONE));
+        deltaBuilder.addCRLEntry(BigInteger.valueOf(10), new Date(), CRLReason.removeFromCRL);
+        deltaBuilder.addCRLEntry(BigInteger.valueOf(11), new Date(), CRLReason.superseded);
+        X509CRL deltaCRL = createCRL(deltaBuilder, caKeyPair.getPrivate());
+        checker.addCRL(deltaCRL);
+        // Applying the same delta CRL again has no effect
+        checker.addCRL(deltaCRL);
+
+        validate(checker, BigInteger.valueOf(10));
+        assertThrows(CertPathValidatorException.class, () -> validate(checker, BigInteger.valueOf(11)));
+    }
+
+    @Test
+    public void testDeltaCRLWithoutBaseCRL() throws Exception {
+        CRLRevocationChecker checker = new CRLRevocationChecker(Collections.singletonList(caCert), null);
+        X509v2CRLBuilder deltaBuilder = createCRLBuilder(2);
+        deltaBuilder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.ONE));
+        X509CRL deltaCRL = createCRL(deltaBuilder, caKeyPair.getPrivate());
+        assertThrows(WSSecurityException.class, () -> checker.addCRL(deltaCRL));
+    }
+
+    @Test
+    public void testInvalidCRLSignature() throws Exception {
+        CRLRevocationChecker checker = new CRLRevocationChecker(Collections.singletonList(caCert), null);
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        X509CRL crl = createCRL(createCRLBuilder(1), keyPairGenerator.generateKeyPair().getPrivate());
+        assertThrows(WSSecurityException.class, () -> checker.addCRL(crl));
+    }
+
+    @Test
+    public void testNoCRLForIssuer() throws Exception {
+        CRLRevocationChecker checker = new CRLRevocationChecker(Collections.singletonList(caCert), null);
+        CertPathValidatorException ex =
+            assertThrows(CertPathValidatorException.class, () -> validate(checker, BigInteger.valueOf(10)));
+        assertEquals(CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS, ex.getReason());
+    }
+
+    @Test
+    public void testMerlinCRLIndex() throws Exception {
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.merlin.truststore.file", "keys/wss40CA.jks");
+        properties.put("org.apache.wss4j.crypto.merlin.truststore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.x509crl.file", "keys/wss40CACRL.pem");
+        properties.put("org.apache.wss4j.crypto.merlin.x509crl.index", "true");
+        Merlin crypto = (Merlin)CryptoFactory.getInstance(properties);
+        assertNotNull(crypto.getCRLRevocationChecker());
+
+        crypto.verifyTrust(new X509Certificate[] {loadCertificate("keys/wss40.crt")}, true,
+                           Collections.emptyList(), Collections.emptyList());
+
+        X509Certificate[] revokedCerts = new X509Certificate[] {loadCertificate("keys/wss40rev.crt")};
+        crypto.verifyTrust(revokedCerts, false, Collections.emptyList(), Collections.emptyList());
+        assertThrows(WSSecurityException.class,
+            () -> crypto.verifyTrust(revokedCerts, true, Collections.emptyList(), Collections.emptyList()));
+    }
+
+    private static void validate(CRLRevocationChecker checker, BigInteger serialNumber) throws Exception {
+        X509Certificate cert = createCertificate(new X500Principal("CN=Test " + serialNumber), serialNumber);
+        PKIXParameters param = new PKIXParameters(Collections.singleton(new TrustAnchor(caCert, null)));
+        param.setRevocationEnabled(false);
+        param.addCertPathChecker(checker);
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        CertPathValidator.getInstance("PKIX").validate(
+            certificateFactory.generateCertPath(Collections.singletonList(cert)), param
+        );
+    }
+
+    private static X509Certificate createCertificate(X500Principal subject, BigInteger serialNumber)
+        throws Exception {
+        long now = System.currentTimeMillis();
+        JcaX509v3CertificateBuilder certBuilder =
+            new JcaX509v3CertificateBuilder(CA_NAME, serialNumber, new Date(now - DAY), new Date(now + DAY),
+                                            subject, caKeyPair.getPublic());
+        if (CA_NAME.equals(subject)) {
+            certBuilder.addExtension(Extension.basicConstraints, true,
+                                     new BasicConstraints(true));
+        }
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(caKeyPair.getPrivate());
+        return new JcaX509CertificateConverter().getCertificate(certBuilder.build(signer));
+    }
+
+    private static X509v2CRLBuilder createCRLBuilder(int crlNumber) throws Exception {
+        long now = System.currentTimeMillis();
+        X509v2CRLBuilder crlBuilder = new JcaX509v2CRLBuilder(CA_NAME, new Date(now - 1000L));
+        crlBuilder.setNextUpdate(new Date(now + DAY));
+        crlBuilder.addExtension(Extension.cRLNumber, false,
+                                new CRLNumber(BigInteger.valueOf(crlNumber)));
+        return crlBuilder;
+    }
+
+    private static X509CRL createCRL(X509v2CRLBuilder crlBuilder, PrivateKey signingKey) throws Exception {
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(signingKey);
+        return new JcaX509CRLConverter().getCRL(crlBuilder.build(signer));
+    }
+
+    private static X509Certificate loadCertificate(String location) throws Exception {
+        try (InputStream inputStream = Loader.getResourceAsStream(location)) {
+            return (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+        }
+    }
+}
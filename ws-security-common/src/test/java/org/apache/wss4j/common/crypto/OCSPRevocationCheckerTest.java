@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import com.sun.net.httpserver.HttpServer;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for checking the revocation status of certificates with an OCSPRevocationChecker,
+ * using an OCSP responder that runs in the test.
+ */
+public class OCSPRevocationCheckerTest {
+
+    private static final X500Principal CA_NAME = new X500Principal("CN=Test CA, O=Apache WSS4J");
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    private static KeyPair caKeyPair;
+    private static X509Certificate caCert;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        WSProviderConfig.init();
+        caKeyPair = generateKeyPair();
+        caCert = createCertificate(CA_NAME, BigInteger.ONE);
+    }
+
+    @Test
+    public void testCachedResponses() throws Exception {
+        LocalOCSPResponder responder = new LocalOCSPResponder(caKeyPair.getPrivate(), HOUR);
+        responder.revokedSerials.add(BigInteger.valueOf(11));
+        OCSPRevocationChecker checker = new OCSPRevocationChecker(responder, Collections.singletonList(caCert));
+
+        validate(checker, BigInteger.valueOf(10));
+        validate(checker, BigInteger.valueOf(10));
+        assertEquals(1, responder.requests.get());
+
+        for (int i = 0; i < 2; i++) {
+            CertPathValidatorException ex =
+                assertThrows(CertPathValidatorException.class, () -> validate(checker, BigInteger.valueOf(11)));
+            assertEquals(CertPathValidatorException.BasicReason.REVOKED, ex.getReason());
+        }
+        assertEquals(2, responder.requests.get());
+        assertEquals(2, checker.getCacheSize());
+    }
+
+    @Test
+    public void testCacheSizeIsBounded() throws Exception {
+        LocalOCSPResponder responder = new LocalOCSPResponder(caKeyPair.getPrivate(), HOUR);
+        OCSPRevocationChecker checker = new OCSPRevocationChecker(responder, Collections.singletonList(caCert));
+        checker.setMaxCacheSize(2);
+
+        for (int i = 10; i < 15; i++) {
+            validate(checker, BigInteger.valueOf(i));
+            assertTrue(checker.getCacheSize() <= 2);
+        }
+        assertEquals(2, checker.getCacheSize());
+
+        // The latest response is still cached
+        validate(checker, BigInteger.valueOf(14));
+        assertEquals(5, responder.requests.get());
+    }
+
+    @Test
+    public void testResponsesWithoutNextUpdateAreNotCached() throws Exception {
+        LocalOCSPResponder responder = new LocalOCSPResponder(caKeyPair.getPrivate(), 0L);
+        OCSPRevocationChecker checker = new OCSPRevocationChecker(responder, Collections.singletonList(caCert));
+
+        validate(checker, BigInteger.valueOf(10));
+        validate(checker, BigInteger.valueOf(10));
+        assertEquals(2, responder.requests.get());
+        assertEquals(0, checker.getCacheSize());
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        LocalOCSPResponder responder = new LocalOCSPResponder(caKeyPair.getPrivate(), HOUR);
+        OCSPRevocationChecker checker = new OCSPRevocationChecker(responder, Collections.singletonList(caCert));
+        // Refresh in the calling thread, for every cached response
+        checker.setExecutor(Runnable::run);
+        checker.setRefreshAhead(2 * HOUR);
+
+        validate(checker, BigInteger.valueOf(10));
+        assertEquals(1, responder.requests.get());
+
+        // The certificate is revoked in the meantime, the refreshed response is used afterwards
+        responder.revokedSerials.add(BigInteger.valueOf(10));
+        validate(checker, BigInteger.valueOf(10));
+        assertEquals(2, responder.requests.get());
+        assertThrows(CertPathValidatorException.class, () -> validate(checker, BigInteger.valueOf(10)));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        LocalOCSPResponder responder = new LocalOCSPResponder(caKeyPair.getPrivate(), HOUR) {
+            @Override
+            public byte[] sendRequest(X509Certificate certificate, byte[] request) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.sendRequest(certificate, request);
+            }
+        };
+        OCSPRevocationChecker checker = new OCSPRevocationChecker(responder, Collections.singletonList(caCert));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> {
+                    validate(checker, BigInteger.valueOf(10));
+                    return null;
+                }));
+            }
+            Thread.sleep(100L);
+            release.countDown();
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, responder.requests.get());
+    }
+
+    @Test
+    public void testInvalidResponseSignature() throws Exception {
+        LocalOCSPResponder responder = new LocalOCSPResponder(generateKeyPair().getPrivate(), HOUR);
+        OCSPRevocationChecker checker = new OCSPRevocationChecker(responder, Collections.singletonList(caCert));
+
+        CertPathValidatorException ex =
+            assertThrows(CertPathValidatorException.class, () -> validate(checker, BigInteger.valueOf(10)));
+        assertEquals(CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS, ex.getReason());
+        assertEquals(0, checker.getCacheSize());
+    }
+
+    @Test
+    public void testResponderNotAvailable() throws Exception {
+        OCSPRevocationChecker checker = new OCSPRevocationChecker((certificate, request) -> {
+            throw new IOException("Connection refused");
+        }, Collections.singletonList(caCert));
+
+        CertPathValidatorException ex =
+            assertThrows(CertPathValidatorException.class, () -> validate(checker, BigInteger.valueOf(10)));
+        assertEquals(CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS, ex.getReason());
+    }
+
+    @Test
+    public void testHttpResponderOnlyUsesHttpURLs() throws Exception {
+        HttpOCSPResponder responder = new HttpOCSPResponder(new URL("file:///etc/passwd"));
+        IOException ex = assertThrows(IOException.class, () -> responder.sendRequest(caCert, new byte[1]));
+        assertTrue(ex.getMessage().contains("not an http or https URL"));
+    }
+
+    @Test
+    public void testHttpResponderChecksResponse() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ocsp", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] response = new byte[1000];
+            exchange.getResponseHeaders().add("Content-Type", "application/ocsp-response");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        });
+        server.createContext("/html", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String address = "http://localhost:" + server.getAddress().getPort();
+            HttpOCSPResponder responder = new HttpOCSPResponder(new URL(address + "/ocsp"));
+            assertEquals(1000, responder.sendRequest(caCert, new byte[1]).length);
+
+            responder.setMaxResponseSize(999);
+            IOException ex = assertThrows(IOException.class, () -> responder.sendRequest(caCert, new byte[1]));
+            assertTrue(ex.getMessage().contains("exceeds 999 bytes"));
+
+            HttpOCSPResponder htmlResponder = new HttpOCSPResponder(new URL(address + "/html"));
+            ex = assertThrows(IOException.class, () -> htmlResponder.sendRequest(caCert, new byte[1]));
+            assertTrue(ex.getMessage().contains("text/html"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testMerlinOCSPConfiguration() throws Exception {
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.merlin.truststore.file", "keys/wss40CA.jks");
+        properties.put("org.apache.wss4j.crypto.merlin.truststore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.ocsp.enable", "true");
+        properties.put("org.apache.wss4j.crypto.merlin.ocsp.responder.url", "http://localhost:8080/ocsp");
+        Merlin crypto = (Merlin)CryptoFactory.getInstance(properties);
+        assertNotNull(crypto.getOCSPRevocationChecker());
+    }
+
+    @Test
+    public void testMerlinOCSPWithCRLs() throws Exception {
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.merlin.truststore.file", "keys/wss40CA.jks");
+        properties.put("org.apache.wss4j.crypto.merlin.truststore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.x509crl.file", "keys/wss40CACRL.pem");
+        properties.put("org.apache.wss4j.crypto.merlin.ocsp.enable", "true");
+        properties.put("org.apache.wss4j.crypto.merlin.ocsp.responder.url", "http://localhost:8080/ocsp");
+        Merlin crypto = (Merlin)CryptoFactory.getInstance(properties);
+
+        // The CRLs are checked by the PKIX CertPathValidator, and OCSP in addition
+        PKIXParameters param =
+            crypto.createPKIXParameters(Collections.singleton(new TrustAnchor(caCert, null)), true);
+        assertTrue(param.isRevocationEnabled());
+        assertTrue(param.getCertStores().contains(crypto.getCRLCertStore()));
+        assertEquals(1, param.getCertPathCheckers().size());
+        assertTrue(param.getCertPathCheckers().get(0) instanceof OCSPRevocationChecker);
+    }
+
+    private static void validate(OCSPRevocationChecker checker, BigInteger serialNumber) throws Exception {
+        X509Certificate cert = createCertificate(new X500Principal("CN=Test " + serialNumber), serialNumber);
+        PKIXParameters param = new PKIXParameters(Collections.singleton(new TrustAnchor(caCert, null)));
+        param.setRevocationEnabled(false);
+        param.addCertPathChecker(checker);
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        CertPathValidator.getInstance("PKIX").validate(
+            certificateFactory.generateCertPath(Collections.singletonList(cert)), param
+        );
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    private static X509Certificate createCertificate(X500Principal subject, BigInteger serialNumber)
+        throws Exception {
+        long now = System.currentTimeMillis();
+        JcaX509v3CertificateBuilder certBuilder =
+            new JcaX509v3CertificateBuilder(CA_NAME, serialNumber, new Date(now - HOUR), new Date(now + HOUR),
+                                            subject, caKeyPair.getPublic());
+        if (CA_NAME.equals(subject)) {
+            certBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        }
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(caKeyPair.getPrivate());
+        return new JcaX509CertificateConverter().getCertificate(certBuilder.build(signer));
+    }
+
+    /**
+     * An OCSP responder that answers the requests in the calling thread
+     */
+    private static class LocalOCSPResponder implements OCSPResponder {
+        private final PrivateKey signingKey;
+        private final long validity;
+        private final Set<BigInteger> revokedSerials = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        LocalOCSPResponder(PrivateKey signingKey, long validity) {
+            this.signingKey = signingKey;
+            this.validity = validity;
+        }
+
+        @Override
+        public byte[] sendRequest(X509Certificate certificate, byte[] request) throws IOException {
+            requests.incrementAndGet();
+            try {
+                OCSPReq ocspRequest = new OCSPReq(request);
+                BasicOCSPRespBuilder responseBuilder = new JcaBasicOCSPRespBuilder(
+                    caKeyPair.getPublic(), new JcaDigestCalculatorProviderBuilder().build().get(RespID.HASH_SHA1)
+                );
+                Date now = new Date();
+                Date nextUpdate = validity > 0 ? new Date(now.getTime() + validity) : null;
+                for (Req req : ocspRequest.getRequestList()) {
+                    CertificateStatus status = CertificateStatus.GOOD;
+                    if (revokedSerials.contains(req.getCertID().getSerialNumber())) {
+                        status = new RevokedStatus(now, CRLReason.keyCompromise);
+                    }
+                    responseBuilder.addResponse(req.getCertID(), status, now, nextUpdate);
+                }
+                ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(signingKey);
+                return new OCSPRespBuilder().build(
+                    OCSPRespBuilder.SUCCESSFUL, responseBuilder.build(signer, null, now)
+                ).getEncoded();
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Properties;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for reloading the keystore of a ReloadingMerlin
+ */
+public class ReloadingMerlinTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        WSProviderConfig.init();
+    }
+
+    @Test
+    public void testReloadModifiedKeyStore() throws Exception {
+        Path keyStoreFile = tempDir.resolve("keystore.jks");
+        copyKeyStore("keys/rsa1024.jks", keyStoreFile);
+
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.provider", ReloadingMerlin.class.getName());
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.type", "jks");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.file", keyStoreFile.toString());
+        properties.put("org.apache.wss4j.crypto.merlin.reload.interval", "0");
+
+        Crypto crypto = CryptoFactory.getInstance(properties);
+        assertTrue(crypto instanceof ReloadingMerlin);
+        ReloadingMerlin reloadingMerlin = (ReloadingMerlin)crypto;
+
+        assertEquals(1024, getKeySize(crypto, "wss40"));
+        assertEquals(0, getCertificates(crypto, "wss40dsa").length);
+        assertFalse(reloadingMerlin.reloadIfModified());
+
+        // Rotate the keys
+        Merlin previousSnapshot = reloadingMerlin.getMerlin();
+        copyKeyStore("keys/wss40.jks", keyStoreFile);
+        Files.setLastModifiedTime(keyStoreFile, FileTime.fromMillis(System.currentTimeMillis() + 10000L));
+        assertTrue(reloadingMerlin.reloadIfModified());
+
+        assertNotSame(previousSnapshot, reloadingMerlin.getMerlin());
+        assertEquals(2048, getKeySize(crypto, "wss40"));
+        assertTrue(getCertificates(crypto, "wss40dsa").length > 0);
+        assertNotNull(crypto.getPrivateKey("wss40", "security"));
+        assertFalse(reloadingMerlin.reloadIfModified());
+    }
+
+    @Test
+    public void testFailedReloadKeepsPreviousKeyStore() throws Exception {
+        Path keyStoreFile = tempDir.resolve("keystore.jks");
+        copyKeyStore("keys/wss40.jks", keyStoreFile);
+
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.type", "jks");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.file", keyStoreFile.toString());
+
+        ReloadingMerlin crypto = new ReloadingMerlin(properties, Loader.getClassLoader(ReloadingMerlin.class), null);
+        try {
+            Merlin snapshot = crypto.getMerlin();
+
+            Files.write(keyStoreFile, new byte[] {1, 2, 3});
+            assertThrows(WSSecurityException.class, crypto::reload);
+
+            assertEquals(snapshot, crypto.getMerlin());
+            assertTrue(getCertificates(crypto, "wss40").length > 0);
+        } finally {
+            crypto.close();
+        }
+    }
+
+    @Test
+    public void testSettersAfterReload() throws Exception {
+        Path keyStoreFile = tempDir.resolve("keystore.jks");
+        copyKeyStore("keys/wss40.jks", keyStoreFile);
+
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.type", "jks");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.file", keyStoreFile.toString());
+        properties.put("org.apache.wss4j.crypto.merlin.reload.interval", "0");
+
+        ReloadingMerlin crypto = new ReloadingMerlin(properties, Loader.getClassLoader(ReloadingMerlin.class), null);
+        try {
+            crypto.setCryptoProvider("SUN");
+            crypto.setDefaultX509Identifier("wss40");
+            assertEquals("SUN", crypto.getCryptoProvider());
+
+            // The properties are carried into the new snapshot
+            crypto.reload();
+            assertEquals("SUN", crypto.getCryptoProvider());
+            assertEquals("SUN", crypto.getMerlin().getCryptoProvider());
+            assertEquals("wss40", crypto.getDefaultX509Identifier());
+
+            // The keystore is only ever loaded from the configured file
+            assertThrows(UnsupportedOperationException.class, () -> crypto.getMerlin().setKeyStore(null));
+            assertThrows(UnsupportedOperationException.class, () -> crypto.getMerlin().setTrustStore(null));
+            assertThrows(UnsupportedOperationException.class, () -> crypto.getMerlin().setCRLCertStore(null));
+        } finally {
+            crypto.close();
+        }
+    }
+
+    @Test
+    public void testSettersPublishNewSnapshot() throws Exception {
+        Path keyStoreFile = tempDir.resolve("keystore.jks");
+        copyKeyStore("keys/wss40.jks", keyStoreFile);
+
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.type", "jks");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.file", keyStoreFile.toString());
+        properties.put("org.apache.wss4j.crypto.merlin.reload.interval", "0");
+
+        ReloadingMerlin crypto = new ReloadingMerlin(properties, Loader.getClassLoader(ReloadingMerlin.class), null);
+        try {
+            Merlin previousSnapshot = crypto.getMerlin();
+            crypto.setTrustProvider("SUN");
+
+            // The published snapshot is never modified
+            assertNotSame(previousSnapshot, crypto.getMerlin());
+            assertNull(previousSnapshot.getTrustProvider());
+            assertEquals("SUN", crypto.getMerlin().getTrustProvider());
+            assertSame(previousSnapshot.getKeyStore(), crypto.getMerlin().getKeyStore());
+            assertThrows(UnsupportedOperationException.class, () -> crypto.getMerlin().setTrustProvider(null));
+            assertThrows(UnsupportedOperationException.class, () -> crypto.getMerlin().setCryptoProvider(null));
+
+            // Settings made concurrently are all kept
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    crypto.setCryptoProvider("SUN");
+                }
+            });
+            thread.start();
+            for (int i = 0; i < 1000; i++) {
+                crypto.setDefaultX509Identifier("wss40");
+            }
+            thread.join();
+            assertEquals("SUN", crypto.getCryptoProvider());
+            assertEquals("wss40", crypto.getDefaultX509Identifier());
+            assertEquals("SUN", crypto.getTrustProvider());
+        } finally {
+            crypto.close();
+        }
+    }
+
+    private static void copyKeyStore(String resource, Path target) throws Exception {
+        try (InputStream inputStream = Loader.getResourceAsStream(resource)) {
+            Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static X509Certificate[] getCertificates(Crypto crypto, String alias) throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        return crypto.getX509Certificates(cryptoType);
+    }
+
+    private static int getKeySize(Crypto crypto, String alias) throws Exception {
+        return ((RSAPublicKey)getCertificates(crypto, alias)[0].getPublicKey()).getModulus().bitLength();
+    }
+}
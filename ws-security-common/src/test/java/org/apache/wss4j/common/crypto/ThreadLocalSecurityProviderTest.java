@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.lang.ref.WeakReference;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Some tests for looking up algorithms through the ThreadLocalSecurityProvider
+ */
+public class ThreadLocalSecurityProviderTest {
+
+    private static final int THREADS = 32;
+    private static final int LOOKUPS = 1000;
+
+    private static boolean installed;
+
+    @BeforeAll
+    public static void setup() {
+        installed = ThreadLocalSecurityProvider.isInstalled();
+        if (!installed) {
+            ThreadLocalSecurityProvider.install();
+        }
+    }
+
+    @AfterAll
+    public static void cleanup() {
+        if (!installed) {
+            ThreadLocalSecurityProvider.uninstall();
+        }
+    }
+
+    @Test
+    public void testLookupsDelegateToBoundProvider() throws Exception {
+        Provider tlsp = Security.getProvider("TLSP");
+        assertThrows(NoSuchAlgorithmException.class, () -> Signature.getInstance("SHA256withRSA", tlsp));
+
+        Provider provider = new BouncyCastleProvider();
+        ThreadLocalSecurityProvider.setProvider(provider);
+        try {
+            assertSame(provider, Signature.getInstance("SHA256withRSA", tlsp).getProvider());
+            // The second lookup is served from the cache
+            assertSame(provider, Signature.getInstance("SHA256withRSA", tlsp).getProvider());
+            assertSame(provider, Cipher.getInstance("AES/GCM/NoPadding", tlsp).getProvider());
+        } finally {
+            ThreadLocalSecurityProvider.unsetProvider();
+        }
+        assertThrows(NoSuchAlgorithmException.class, () -> Signature.getInstance("SHA256withRSA", tlsp));
+    }
+
+    @Test
+    public void testAlgorithmNamesAreNotCaseSensitive() throws Exception {
+        Provider tlsp = Security.getProvider("TLSP");
+        Provider provider = new BouncyCastleProvider();
+        ThreadLocalSecurityProvider.setProvider(provider);
+        try {
+            Provider.Service service = tlsp.getService("Signature", "SHA256withRSA");
+            assertNotNull(service);
+            assertSame(service, tlsp.getService("Signature", "sha256WITHrsa"));
+            assertSame(provider, service.getProvider());
+        } finally {
+            ThreadLocalSecurityProvider.unsetProvider();
+        }
+    }
+
+    @Test
+    public void testUnboundProviderIsNotRetained() throws Exception {
+        // Not a BouncyCastleProvider, which is kept alive by the static state of BouncyCastle
+        Provider provider = new CountingProvider();
+        WeakReference<Provider> providerReference = new WeakReference<>(provider);
+        ThreadLocalSecurityProvider.setProvider(provider);
+        try {
+            assertNotNull(Security.getProvider("TLSP").getService("MessageDigest", "SHA-256"));
+        } finally {
+            ThreadLocalSecurityProvider.unsetProvider();
+        }
+
+        provider = null;
+        for (int i = 0; i < 50 && providerReference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20L);
+        }
+        assertNull(providerReference.get());
+    }
+
+    @Test
+    public void testCacheIsReusedAcrossBindings() throws Exception {
+        Provider tlsp = Security.getProvider("TLSP");
+        CountingProvider provider = new CountingProvider();
+        for (int i = 0; i < 10; i++) {
+            ThreadLocalSecurityProvider.setProvider(provider);
+            try {
+                assertSame(provider, tlsp.getService("MessageDigest", "SHA-256").getProvider());
+            } finally {
+                ThreadLocalSecurityProvider.unsetProvider();
+            }
+            // The cache of the Provider is kept while it is not bound, also after a GC
+            System.gc();
+        }
+        assertEquals(1, provider.lookups.get());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        Provider tlsp = Security.getProvider("TLSP");
+        Provider[] providers = {new BouncyCastleProvider(), new BouncyCastleProvider()};
+
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                Provider provider = providers[i % providers.length];
+                futures.add(executorService.submit(() -> {
+                    ThreadLocalSecurityProvider.setProvider(provider);
+                    try {
+                        start.await();
+                        for (int j = 0; j < LOOKUPS; j++) {
+                            assertSame(provider, Cipher.getInstance("AES/CBC/PKCS5Padding", tlsp).getProvider());
+                            assertSame(provider, Signature.getInstance("SHA256withRSA", tlsp).getProvider());
+                        }
+                    } finally {
+                        ThreadLocalSecurityProvider.unsetProvider();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * A Provider that counts the lookups of its Services
+     */
+    private static final class CountingProvider extends Provider {
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        CountingProvider() {
+            super("Counting", "1.0", "Counts the lookups of its Services");
+            putService(new Service(this, "MessageDigest", "SHA-256", "sun.security.provider.SHA2$SHA256", null, null));
+        }
+
+        @Override
+        public Service getService(String type, String algorithm) {
+            lookups.incrementAndGet();
+            return super.getService(type, algorithm);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the P_SHA1 and P_SHA256 key derivation algorithms
+ */
+public class DerivationAlgorithmTest {
+
+    @Test
+    public void testPSHA256() throws Exception {
+        // The P_SHA256 test vector of the TLS 1.2 PRF
+        byte[] secret = hex("9bbe436ba940f017b17652849a71db35");
+        byte[] seed = concat("test label".getBytes(StandardCharsets.UTF_8), hex("a0ba9f936cda311827a6f796ffd5198c"));
+        byte[] expected = hex(
+            "e3f229ba727be17b8d122620557cd453c2aab21d07c3d495329b52d4e61edb5a"
+            + "6b301791e90d35c9c9a46b4e14baf9af0fa022f7077def17abfd3797c0564bab"
+            + "4fbc91666e9def9b97fce34f796789baa48082d122ee42c5a72e5a5110fff701"
+            + "87347b66"
+        );
+
+        DerivationAlgorithm algorithm = new P_SHA256();
+        assertArrayEquals(expected, algorithm.createKey(secret, seed, 0, expected.length));
+        assertArrayEquals(
+            Arrays.copyOfRange(expected, 40, 72), algorithm.createKey(secret, seed, 40, 32)
+        );
+    }
+
+    @Test
+    public void testPSHA1() throws Exception {
+        DerivationAlgorithm algorithm = AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_1);
+        assertTrue(algorithm instanceof P_SHA1);
+        checkAgainstDefinition(algorithm, "HmacSHA1");
+    }
+
+    @Test
+    public void testPSHA256AgainstDefinition() throws Exception {
+        checkAgainstDefinition(new P_SHA256(), "HmacSHA256");
+    }
+
+    @Test
+    public void testCreateKeyIntoBuffer() throws Exception {
+        byte[] secret = "secret".getBytes(StandardCharsets.UTF_8);
+        byte[] seed = "WS-SecureConversationWS-SecureConversation".getBytes(StandardCharsets.UTF_8);
+        DerivationAlgorithm algorithm = new P_SHA1();
+
+        byte[] out = new byte[40];
+        algorithm.createKey(secret, seed, 16, out, 4, 32);
+        assertArrayEquals(algorithm.createKey(secret, seed, 16, 32), Arrays.copyOfRange(out, 4, 36));
+        assertEquals(0, out[0]);
+        assertEquals(0, out[39]);
+
+        assertThrows(WSSecurityException.class, () -> algorithm.createKey(secret, seed, 0, out, 16, 32));
+    }
+
+    @Test
+    public void testUnknownAlgorithm() {
+        assertThrows(WSSecurityException.class, () -> AlgoFactory.getInstance("http://unknown/p_md5"));
+        // WS-SecureConversation defines no URI for P_SHA256
+        assertThrows(WSSecurityException.class, () -> AlgoFactory.getInstance(
+            "http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512/dk/p_sha256"));
+    }
+
+    private static void checkAgainstDefinition(DerivationAlgorithm algorithm, String macAlgorithm)
+        throws Exception {
+        Random random = new Random(42L);
+        for (int i = 0; i < 200; i++) {
+            byte[] secret = new byte[1 + random.nextInt(32)];
+            byte[] seed = new byte[random.nextInt(64)];
+            random.nextBytes(secret);
+            random.nextBytes(seed);
+            int offset = random.nextInt(80);
+            int length = random.nextInt(80);
+
+            assertArrayEquals(
+                pHash(macAlgorithm, secret, seed, offset, length),
+                algorithm.createKey(secret, seed, offset, length)
+            );
+        }
+    }
+
+    /**
+     * P_hash as defined in RFC 2246, computed from the start of the key material
+     */
+    private static byte[] pHash(String macAlgorithm, byte[] secret, byte[] seed, int offset, int length)
+        throws Exception {
+        Mac mac = Mac.getInstance(macAlgorithm);
+        mac.init(new SecretKeySpec(secret, macAlgorithm));
+
+        byte[] out = new byte[offset + length];
+        byte[] a = seed;
+        int written = 0;
+        while (written < out.length) {
+            a = mac.doFinal(a);
+            mac.update(a);
+            mac.update(seed);
+            byte[] block = mac.doFinal();
+            int toCopy = Math.min(block.length, out.length - written);
+            System.arraycopy(block, 0, out, written, toCopy);
+            written += toCopy;
+        }
+        return Arrays.copyOfRange(out, offset, out.length);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] hex(String value) {
+        byte[] result = new byte[value.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+}
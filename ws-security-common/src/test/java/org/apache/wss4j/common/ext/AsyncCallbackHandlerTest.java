@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.ext;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the AsyncCallbackHandler SPI and the ExecutorCallbackHandler adapter.
+ */
+public class AsyncCallbackHandlerTest {
+
+    private static final CallbackHandler PASSWORD_HANDLER = callbacks -> {
+        for (Callback callback : callbacks) {
+            if (callback instanceof WSPasswordCallback) {
+                ((WSPasswordCallback)callback).setPassword("security");
+            } else {
+                throw new UnsupportedCallbackException(callback, "Unrecognized Callback");
+            }
+        }
+    };
+
+    @Test
+    public void testLegacyHandlerOnExecutor() throws Exception {
+        AtomicReference<Thread> handlerThread = new AtomicReference<>();
+        CallbackHandler legacyHandler = callbacks -> {
+            handlerThread.set(Thread.currentThread());
+            PASSWORD_HANDLER.handle(callbacks);
+        };
+        AsyncCallbackHandler handler = new ExecutorCallbackHandler(legacyHandler);
+
+        WSPasswordCallback callback = new WSPasswordCallback("wss40", WSPasswordCallback.DECRYPT);
+        handler.handleAsync(new Callback[] {callback}).toCompletableFuture().get(10L, TimeUnit.SECONDS);
+        assertEquals("security", callback.getPassword());
+        assertNotSame(Thread.currentThread(), handlerThread.get());
+
+        // The synchronous method also runs the handler on the Executor
+        handlerThread.set(null);
+        callback = new WSPasswordCallback("wss40", WSPasswordCallback.DECRYPT);
+        handler.handle(new Callback[] {callback});
+        assertEquals("security", callback.getPassword());
+        assertNotSame(Thread.currentThread(), handlerThread.get());
+    }
+
+    @Test
+    public void testSynchronousHandleWaitsForCompletion() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            // Populate the callbacks a little later, as a remote secret store would
+            AsyncCallbackHandler handler = callbacks -> {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                scheduler.schedule(() -> {
+                    try {
+                        PASSWORD_HANDLER.handle(callbacks);
+                        future.complete(null);
+                    } catch (IOException | UnsupportedCallbackException ex) {
+                        future.completeExceptionally(ex);
+                    }
+                }, 100L, TimeUnit.MILLISECONDS);
+                return future;
+            };
+
+            WSPasswordCallback callback = new WSPasswordCallback("wss40", WSPasswordCallback.SIGNATURE);
+            handler.handle(new Callback[] {callback});
+            assertEquals("security", callback.getPassword());
+
+            Callback unknownCallback = new Callback() { };
+            assertThrows(UnsupportedCallbackException.class, () ->
+                handler.handle(new Callback[] {unknownCallback}));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExceptionsArePropagated() throws Exception {
+        AsyncCallbackHandler handler = new ExecutorCallbackHandler(callbacks -> {
+            throw new IOException("The secret store is not available");
+        }, Runnable::run);
+
+        CompletionStage<Void> stage = handler.handleAsync(new Callback[0]);
+        ExecutionException ex =
+            assertThrows(ExecutionException.class, () -> stage.toCompletableFuture().get());
+        assertTrue(ex.getCause() instanceof IOException);
+
+        AsyncCallbackHandler failingHandler = callbacks ->
+            CompletableFuture.failedFuture(new IOException("The secret store is not available"));
+        assertThrows(IOException.class, () -> failingHandler.handle(new Callback[0]));
+
+        AsyncCallbackHandler brokenHandler = callbacks ->
+            CompletableFuture.failedFuture(new IllegalStateException());
+        assertThrows(IllegalStateException.class, () -> brokenHandler.handle(new Callback[0]));
+    }
+
+    @Test
+    public void testInterruptedWhileWaiting() {
+        AsyncCallbackHandler handler = callbacks -> new CompletableFuture<>();
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IOException.class, () -> handler.handle(new Callback[0]));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Some unit tests for decoding base64 content with the Base64Codec
+ */
+public class Base64CodecTest {
+
+    private final Random random = new Random(42L);
+
+    @Test
+    public void testDecode() throws Exception {
+        for (int length = 0; length < 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = Base64.getEncoder().encodeToString(data);
+            assertArrayEquals(data, Base64Codec.decode(encoded));
+            assertArrayEquals(data, Base64Codec.decode(encoded.toCharArray(), 0, encoded.length()));
+        }
+    }
+
+    @Test
+    public void testDecodeWithLineBreaks() throws Exception {
+        byte[] data = new byte[5000];
+        random.nextBytes(data);
+        String encoded = "\n  " + Base64.getMimeEncoder().encodeToString(data) + "\n";
+        assertArrayEquals(Base64.getMimeDecoder().decode(encoded), Base64Codec.decode(encoded));
+        assertArrayEquals(data, Base64Codec.decode(new StringBuilder(encoded)));
+    }
+
+    @Test
+    public void testDecodeParts() throws Exception {
+        byte[] data = new byte[1000];
+        random.nextBytes(data);
+        String encoded = Base64.getMimeEncoder().encodeToString(data);
+        for (int i = 0; i < 20; i++) {
+            int split1 = random.nextInt(encoded.length());
+            int split2 = split1 + random.nextInt(encoded.length() - split1);
+            assertArrayEquals(data, Base64Codec.decode(Arrays.asList(
+                encoded.substring(0, split1), CharBuffer.wrap(encoded, split1, split2), encoded.substring(split2)
+            )));
+        }
+    }
+
+    @Test
+    public void testDecodeToByteBuffer() throws Exception {
+        byte[] data = new byte[30000];
+        random.nextBytes(data);
+        String encoded = Base64.getMimeEncoder().encodeToString(data);
+
+        // A direct ByteBuffer is written in chunks
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        assertEquals(data.length, Base64Codec.decode(Arrays.asList(encoded), buffer));
+        buffer.flip();
+        byte[] decoded = new byte[buffer.remaining()];
+        buffer.get(decoded);
+        assertArrayEquals(data, decoded);
+
+        // The array of a heap ByteBuffer is written directly
+        buffer = ByteBuffer.allocate(data.length + 50000);
+        buffer.position(10);
+        assertEquals(data.length, Base64Codec.decode(Arrays.asList(encoded), buffer));
+        assertEquals(data.length + 10, buffer.position());
+        assertArrayEquals(data, Arrays.copyOfRange(buffer.array(), 10, data.length + 10));
+
+        assertThrows(BufferOverflowException.class,
+            () -> Base64Codec.decode(Arrays.asList(encoded), ByteBuffer.allocate(100)));
+    }
+
+    @Test
+    public void testInvalidContent() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> Base64Codec.decode("QUJDR"));
+        assertThrows(IllegalArgumentException.class, () -> Base64Codec.decode("Q==="));
+        assertThrows(IllegalArgumentException.class, () -> Base64Codec.decode("QQ==QUJD"));
+    }
+
+    @Test
+    public void testPaddingAsMimeDecoder() throws Exception {
+        String[] invalid = {"QQ=", "QQ= =", "QQ=\n=", "QQ=QQ", "=", "Q=", "QUJD="};
+        for (String encoded : invalid) {
+            assertThrows(IllegalArgumentException.class, () -> Base64.getMimeDecoder().decode(encoded), encoded);
+            assertThrows(IllegalArgumentException.class, () -> Base64Codec.decode(encoded), encoded);
+            assertThrows(IllegalArgumentException.class,
+                () -> Base64Codec.decode(Arrays.asList(encoded.split("(?<==)")), ByteBuffer.allocate(10)), encoded);
+        }
+
+        String[] valid = {"QQ==", "QQ== ", "QQ===", "QUI=", "QUI= =", "QUJD", "QUI=\n"};
+        for (String encoded : valid) {
+            byte[] expected = Base64.getMimeDecoder().decode(encoded);
+            assertArrayEquals(expected, Base64Codec.decode(encoded), encoded);
+            ByteBuffer buffer = ByteBuffer.allocate(10);
+            Base64Codec.decode(Arrays.asList(encoded.split("(?<==)")), buffer);
+            assertArrayEquals(expected, Arrays.copyOf(buffer.array(), buffer.position()), encoded);
+        }
+    }
+
+    @Test
+    public void testDecodeElementText() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().newDocument();
+        Element element = doc.createElementNS(null, "CipherValue");
+        assertNull(XMLUtils.getDecodedElementText(element));
+
+        byte[] data = new byte[300];
+        random.nextBytes(data);
+        String encoded = Base64.getMimeEncoder().encodeToString(data);
+        element.appendChild(doc.createTextNode(encoded.substring(0, 101)));
+        element.appendChild(doc.createCDATASection(encoded.substring(101, 207)));
+        element.appendChild(doc.createTextNode(encoded.substring(207)));
+        assertArrayEquals(data, XMLUtils.getDecodedElementText(element));
+    }
+}
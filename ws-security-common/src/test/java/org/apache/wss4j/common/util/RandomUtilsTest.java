@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.impl.util.IDGenerator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Some unit tests for the SecureRandomProvider and the UniqueIdGenerator, including a contention
+ * benchmark against the shared SecureRandom and the UUID based IDGenerator of Santuario.
+ */
+public class RandomUtilsTest {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(RandomUtilsTest.class);
+
+    private static final int THREADS = 64;
+    private static final int ITERATIONS = 20000;
+
+    @Test
+    public void testStripedSecureRandom() throws Exception {
+        StripedSecureRandomProvider provider =
+            new StripedSecureRandomProvider(StripedSecureRandomProvider.DEFAULT_RESEED_INTERVAL,
+                                            StripedSecureRandomProvider.DEFAULT_RESEED_PERIOD, 4);
+        SecureRandom random = provider.getSecureRandom();
+        assertSame(random, provider.getSecureRandom());
+
+        // A new thread per task, as with virtual threads, does not create a SecureRandom per thread
+        Set<SecureRandom> randoms = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 100; i++) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                randoms.add(executor.submit(provider::getSecureRandom).get());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        assertTrue(randoms.size() <= 4);
+    }
+
+    @Test
+    public void testReseed() throws Exception {
+        StripedSecureRandomProvider provider = new StripedSecureRandomProvider(2, 60000L);
+        Set<String> nonces = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(nonces.add(Base64.getEncoder().encodeToString(provider.generateBytes(16))));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new StripedSecureRandomProvider(0, 60000L));
+    }
+
+    @Test
+    public void testSecureRandomProvider() throws Exception {
+        byte[] fixedBytes = new byte[] {1, 2, 3, 4};
+        RandomUtils.setSecureRandomProvider(new SecureRandomProvider() {
+            @Override
+            public SecureRandom getSecureRandom() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public byte[] generateBytes(int length) {
+                return fixedBytes.clone();
+            }
+        });
+        try {
+            assertEquals(4, UsernameTokenUtil.generateNonce(4).length);
+            assertEquals(fixedBytes[3], UsernameTokenUtil.generateNonce(4)[3]);
+        } finally {
+            RandomUtils.setSecureRandomProvider(null);
+        }
+        assertTrue(RandomUtils.getSecureRandomProvider() instanceof StripedSecureRandomProvider);
+    }
+
+    @Test
+    public void testUniqueIds() throws Exception {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        runConcurrently(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                ids.add(UniqueIdGenerator.generateID(null));
+            }
+        });
+        assertEquals(THREADS * ITERATIONS, ids.size());
+        for (String id : ids) {
+            assertFalse(Character.isDigit(id.charAt(0)));
+        }
+        assertTrue(UniqueIdGenerator.generateID("EK-").startsWith("EK-"));
+    }
+
+    /**
+     * Compare the time to generate nonces and IDs at a high thread count. The results are only
+     * logged, as they depend on the machine.
+     */
+    @Test
+    public void testContention() throws Exception {
+        long sharedRandom = runConcurrently(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                XMLSecurityConstants.generateBytes(16);
+            }
+        });
+        long stripedRandom = runConcurrently(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                RandomUtils.generateBytes(16);
+            }
+        });
+        long uuidIds = runConcurrently(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                IDGenerator.generateID(null);
+            }
+        });
+        long sequentialIds = runConcurrently(() -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                UniqueIdGenerator.generateID(null);
+            }
+        });
+        LOG.info("{} threads x {} nonces: shared SecureRandom {} ms, striped DRBGs {} ms",
+                 THREADS, ITERATIONS, sharedRandom, stripedRandom);
+        LOG.info("{} threads x {} IDs: UUID {} ms, sequential {} ms",
+                 THREADS, ITERATIONS, uuidIds, sequentialIds);
+    }
+
+    /**
+     * Measure the lock contention on the DRBGs, as the number of times and the time that the threads
+     * were blocked on a monitor while generating nonces, with a single stripe and with a stripe per
+     * thread. A DRBG generates its bytes under its own lock.
+     */
+    @Test
+    public void testStripedSecureRandomContention() throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadContentionMonitoringSupported());
+        boolean contentionMonitoring = threadMXBean.isThreadContentionMonitoringEnabled();
+        threadMXBean.setThreadContentionMonitoringEnabled(true);
+        try {
+            long[] singleStripe = measureContention(threadMXBean,
+                new StripedSecureRandomProvider(StripedSecureRandomProvider.DEFAULT_RESEED_INTERVAL,
+                                                StripedSecureRandomProvider.DEFAULT_RESEED_PERIOD, 1));
+            long[] striped = measureContention(threadMXBean,
+                new StripedSecureRandomProvider(StripedSecureRandomProvider.DEFAULT_RESEED_INTERVAL,
+                                                StripedSecureRandomProvider.DEFAULT_RESEED_PERIOD, THREADS));
+            LOG.info("{} threads x {} nonces: a single DRBG was blocked {} times for {} ms in {} ms, "
+                     + "{} striped DRBGs were blocked {} times for {} ms in {} ms", THREADS, ITERATIONS,
+                     singleStripe[0], singleStripe[1], singleStripe[2], THREADS, striped[0], striped[1], striped[2]);
+
+            // Only compare if the single DRBG was contended enough to tell a difference
+            if (singleStripe[0] >= THREADS) {
+                assertTrue(striped[0] < singleStripe[0]);
+            }
+        } finally {
+            threadMXBean.setThreadContentionMonitoringEnabled(contentionMonitoring);
+        }
+    }
+
+    /**
+     * Generate nonces in all threads at once, and return the number of times and the time in milliseconds
+     * that the threads were blocked, and the elapsed time in milliseconds
+     */
+    private static long[] measureContention(ThreadMXBean threadMXBean, SecureRandomProvider provider)
+        throws Exception {
+        AtomicLong blockedCount = new AtomicLong();
+        AtomicLong blockedTime = new AtomicLong();
+        long elapsedTime = runConcurrently(() -> {
+            ThreadInfo before = threadMXBean.getThreadInfo(Thread.currentThread().getId());
+            for (int i = 0; i < ITERATIONS; i++) {
+                provider.generateBytes(16);
+            }
+            ThreadInfo after = threadMXBean.getThreadInfo(Thread.currentThread().getId());
+            blockedCount.addAndGet(after.getBlockedCount() - before.getBlockedCount());
+            blockedTime.addAndGet(after.getBlockedTime() - before.getBlockedTime());
+        });
+        return new long[] {blockedCount.get(), blockedTime.get(), elapsedTime};
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run the task in all threads at once, and return the elapsed time in milliseconds
+     */
+    private static long runConcurrently(Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            long startTime = System.nanoTime();
+            start.countDown();
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+            return (System.nanoTime() - startTime) / 1000000L;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Some unit tests for running the parts of the initialization in parallel
+ */
+public class StartupTasksTest {
+
+    @Test
+    public void testRunAll() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<String> threads = Collections.synchronizedList(new ArrayList<>());
+            StartupTasks.Task task = () -> threads.add(Thread.currentThread().getName());
+            StartupTasks.runAll(executor, task, task, task, task, task);
+            assertEquals(5, threads.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRunAllWithoutExecutor() throws Exception {
+        List<String> threads = new ArrayList<>();
+        StartupTasks.Task task = () -> threads.add(Thread.currentThread().getName());
+        StartupTasks.runAll(null, task, task, task);
+        assertEquals(Collections.nCopies(3, Thread.currentThread().getName()), threads);
+    }
+
+    /**
+     * Tasks that start other tasks on the same single thread Executor do not deadlock, as the
+     * nested tasks are run by the thread that waits for them.
+     */
+    @Test
+    public void testNestedTasks() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<String> results = Collections.synchronizedList(new ArrayList<>());
+            StartupTasks.Task nested = () -> StartupTasks.runAll(executor,
+                () -> results.add("a"), () -> results.add("b"), () -> results.add("c")
+            );
+            StartupTasks.runAll(executor, nested, nested);
+            assertEquals(6, results.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedTasks() throws Exception {
+        List<String> results = new ArrayList<>();
+        StartupTasks.runAll(command -> {
+            throw new RejectedExecutionException();
+        }, () -> results.add("a"), () -> results.add("b"));
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<String> results = Collections.synchronizedList(new ArrayList<>());
+            IOException ex = assertThrows(IOException.class, () -> StartupTasks.runAll(executor,
+                () -> results.add("a"),
+                () -> {
+                    throw new IOException("failed");
+                },
+                () -> results.add("c")
+            ));
+            assertEquals("failed", ex.getMessage());
+            // The other tasks still ran
+            assertEquals(2, results.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
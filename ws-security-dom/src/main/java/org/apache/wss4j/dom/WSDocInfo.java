@@ -223,6 +223,20 @@ public class WSDocInfo {
         }
     }
 
+    /**
+     * Replace the stored WSSecurityEngineResults with the given results, in the given order. This is
+     * used by the pipelined mode of the WSSecurityEngine, which may complete a token after subsequent
+     * tokens, to store the results in security header order.
+     * @param orderedResults the stored results in the new order
+     */
+    public void setResults(List<WSSecurityEngineResult> orderedResults) {
+        results.clear();
+        actionResults.clear();
+        for (WSSecurityEngineResult result : orderedResults) {
+            addResult(result);
+        }
+    }
+
     /**
      * Get a copy of the security results list. Modifying the subsequent list does not
      * change the internal results list.
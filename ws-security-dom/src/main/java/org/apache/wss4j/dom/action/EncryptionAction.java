@@ -45,6 +45,7 @@ public class EncryptionAction implements Action {
         wsEncrypt.setIdAllocator(reqData.getWssConfig().getIdAllocator());
         wsEncrypt.setWsDocInfo(reqData.getWsDocInfo());
         wsEncrypt.setExpandXopInclude(reqData.isExpandXopInclude());
+        wsEncrypt.setStreamXopAttachments(reqData.isStreamXopAttachments());
 
         EncryptionActionToken encryptionToken = null;
         if (actionToken instanceof EncryptionActionToken) {
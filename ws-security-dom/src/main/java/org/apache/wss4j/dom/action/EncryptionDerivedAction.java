@@ -65,6 +65,7 @@ public class EncryptionDerivedAction extends AbstractDerivedAction implements Ac
         wsEncrypt.setIdAllocator(reqData.getWssConfig().getIdAllocator());
         wsEncrypt.setWsDocInfo(reqData.getWsDocInfo());
         wsEncrypt.setExpandXopInclude(reqData.isExpandXopInclude());
+        wsEncrypt.setStreamXopAttachments(reqData.isStreamXopAttachments());
 
         if (encryptionToken.getKeyIdentifierId() != 0) {
             wsEncrypt.setKeyIdentifierType(encryptionToken.getKeyIdentifierId());
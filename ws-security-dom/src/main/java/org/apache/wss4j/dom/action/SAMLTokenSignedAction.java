@@ -26,6 +26,7 @@ import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
@@ -68,23 +69,21 @@ public class SAMLTokenSignedAction implements Action {
         SAMLCallback samlCallback = new SAMLCallback();
         SAMLUtil.doSAMLCallback(samlCallbackHandler, samlCallback);
 
-        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
-        if (samlCallback.isSignAssertion()) {
-            samlAssertion.signAssertion(
-                samlCallback.getIssuerKeyName(),
-                samlCallback.getIssuerKeyPassword(),
-                samlCallback.getIssuerCrypto(),
-                samlCallback.isSendKeyValue(),
-                samlCallback.getCanonicalizationAlgorithm(),
-                samlCallback.getSignatureAlgorithm(),
-                samlCallback.getSignatureDigestAlgorithm()
+        SamlAssertionCache samlAssertionCache = reqData.getSamlAssertionCache();
+        SamlAssertionWrapper samlAssertion;
+        if (samlAssertionCache != null) {
+            samlAssertion = samlAssertionCache.getAssertion(
+                samlCallback, samlCallbackHandler, SAMLTokenSignedAction::createSamlAssertion
             );
+        } else {
+            samlAssertion = createSamlAssertion(samlCallback);
         }
         WSSecSignatureSAML wsSign = new WSSecSignatureSAML(reqData.getSecHeader());
         wsSign.setIdAllocator(reqData.getWssConfig().getIdAllocator());
         wsSign.setAddInclusivePrefixes(reqData.isAddInclusivePrefixes());
         wsSign.setWsDocInfo(reqData.getWsDocInfo());
         wsSign.setExpandXopInclude(reqData.isExpandXopInclude());
+        wsSign.setStreamXopAttachments(reqData.isStreamXopAttachments());
         wsSign.setSignatureProvider(reqData.getSignatureProvider());
 
         CallbackHandler callbackHandler =
@@ -141,4 +140,20 @@ public class SAMLTokenSignedAction implements Action {
         }
     }
 
+    private static SamlAssertionWrapper createSamlAssertion(SAMLCallback samlCallback) throws WSSecurityException {
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+        if (samlCallback.isSignAssertion()) {
+            samlAssertion.signAssertion(
+                samlCallback.getIssuerKeyName(),
+                samlCallback.getIssuerKeyPassword(),
+                samlCallback.getIssuerCrypto(),
+                samlCallback.isSendKeyValue(),
+                samlCallback.getCanonicalizationAlgorithm(),
+                samlCallback.getSignatureAlgorithm(),
+                samlCallback.getSignatureDigestAlgorithm()
+            );
+        }
+        return samlAssertion;
+    }
+
 }
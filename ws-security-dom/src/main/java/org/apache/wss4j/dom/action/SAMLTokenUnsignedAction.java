@@ -23,6 +23,7 @@ import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.wss4j.common.SecurityActionToken;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
@@ -55,6 +56,26 @@ public class SAMLTokenUnsignedAction implements Action {
         SAMLCallback samlCallback = new SAMLCallback();
         SAMLUtil.doSAMLCallback(samlCallbackHandler, samlCallback);
 
+        SamlAssertionCache samlAssertionCache = reqData.getSamlAssertionCache();
+        SamlAssertionWrapper samlAssertion;
+        if (samlAssertionCache != null) {
+            samlAssertion = samlAssertionCache.getAssertion(
+                samlCallback, samlCallbackHandler, SAMLTokenUnsignedAction::createSamlAssertion
+            );
+        } else {
+            samlAssertion = createSamlAssertion(samlCallback);
+        }
+
+        // add the SAMLAssertion Token to the SOAP Envelope
+        builder.build(samlAssertion);
+
+        byte[] signatureValue = samlAssertion.getSignatureValue();
+        if (signatureValue != null) {
+            reqData.getSignatureValues().add(signatureValue);
+        }
+    }
+
+    private static SamlAssertionWrapper createSamlAssertion(SAMLCallback samlCallback) throws WSSecurityException {
         SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
         if (samlCallback.isSignAssertion()) {
             samlAssertion.signAssertion(
@@ -66,13 +87,6 @@ public class SAMLTokenUnsignedAction implements Action {
                 samlCallback.getSignatureAlgorithm()
             );
         }
-
-        // add the SAMLAssertion Token to the SOAP Envelope
-        builder.build(samlAssertion);
-
-        byte[] signatureValue = samlAssertion.getSignatureValue();
-        if (signatureValue != null) {
-            reqData.getSignatureValues().add(signatureValue);
-        }
+        return samlAssertion;
     }
 }
@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.engine;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.w3c.dom.Document;
+
+/**
+ * The result of processing the security header of one message of a batch. Either the handler
+ * result or the exception that processing the message failed with is set.
+ */
+public class BatchProcessingResult {
+
+    private final Document document;
+    private final WSHandlerResult handlerResult;
+    private final WSSecurityException exception;
+
+    public BatchProcessingResult(Document document, WSHandlerResult handlerResult) {
+        this.document = document;
+        this.handlerResult = handlerResult;
+        this.exception = null;
+    }
+
+    public BatchProcessingResult(Document document, WSSecurityException exception) {
+        this.document = document;
+        this.handlerResult = null;
+        this.exception = exception;
+    }
+
+    /**
+     * @return the processed message
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return the result of processing the security header, which is null if processing failed
+     *         or if the message has no security header for the configured actor
+     */
+    public WSHandlerResult getHandlerResult() {
+        return handlerResult;
+    }
+
+    /**
+     * @return the exception that processing the message failed with, or null on success
+     */
+    public WSSecurityException getException() {
+        return exception;
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+}
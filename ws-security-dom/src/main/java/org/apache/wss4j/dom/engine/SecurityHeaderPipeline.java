@@ -0,0 +1,335 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.callback.CallbackLookup;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.metrics.SecurityHeaderMetrics;
+import org.apache.wss4j.dom.processor.PipelinedProcessor;
+import org.apache.wss4j.dom.processor.PipelinedProcessor.PendingResults;
+import org.apache.wss4j.dom.processor.Processor;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The state of the pipelined processing of a security header. Tokens processed by a PipelinedProcessor
+ * (for example an EncryptedKey) are started, and their DOM-independent work runs on an Executor, while
+ * the engine moves on to subsequent tokens that do not depend on them. Tokens that may depend on an
+ * outstanding token cause all outstanding tokens to be completed first, in header order.
+ *
+ * The results are collected per header position, so that the final list of results is in the same
+ * order as when the header is processed sequentially. The results stored on the WSDocInfo (and so the
+ * action results of the WSHandlerResult) are put back into header order when the outstanding tokens
+ * are completed.
+ *
+ * If metrics are collected, then the time recorded for a PipelinedProcessor is from the start of the
+ * token until its results are complete, which includes the work done on the Executor.
+ */
+class SecurityHeaderPipeline {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SecurityHeaderPipeline.class);
+
+    /**
+     * The tokens that may be processed while other tokens are outstanding, as long as they do not refer
+     * to any element that is still to be decrypted or produced.
+     */
+    private static final Set<QName> INDEPENDENT_TOKENS = new HashSet<>();
+
+    static {
+        INDEPENDENT_TOKENS.add(WSConstants.BINARY_TOKEN);
+        INDEPENDENT_TOKENS.add(WSConstants.USERNAME_TOKEN);
+        INDEPENDENT_TOKENS.add(WSConstants.TIMESTAMP);
+        INDEPENDENT_TOKENS.add(WSConstants.SIGNATURE);
+        INDEPENDENT_TOKENS.add(WSConstants.ENCRYPTED_KEY);
+        INDEPENDENT_TOKENS.add(WSConstants.SAML_TOKEN);
+        INDEPENDENT_TOKENS.add(WSConstants.SAML2_TOKEN);
+    }
+
+    private final Executor executor;
+    private final CallbackLookup callbackLookup;
+    private final WSDocInfo wsDocInfo;
+    private final SecurityHeaderMetrics metrics;
+    // The header position of the token that stored each of the results on the WSDocInfo
+    private final List<Integer> storedResultPositions = new ArrayList<>();
+    private final List<List<WSSecurityEngineResult>> results = new ArrayList<>();
+    private final Map<Integer, PendingResults> pendingResults = new LinkedHashMap<>();
+    // The token name and start time of each outstanding token, if metrics are collected
+    private final Map<Integer, QName> pendingTokenNames = new HashMap<>();
+    private final Map<Integer, Long> pendingStartTimes = new HashMap<>();
+    private final Set<String> pendingIds = new HashSet<>();
+    private final List<Element> pendingElements = new ArrayList<>();
+
+    SecurityHeaderPipeline(
+        Executor executor, CallbackLookup callbackLookup, WSDocInfo wsDocInfo, SecurityHeaderMetrics metrics
+    ) {
+        this.executor = executor;
+        this.callbackLookup = callbackLookup;
+        this.wsDocInfo = wsDocInfo;
+        this.metrics = metrics;
+    }
+
+    boolean hasPendingResults() {
+        return !pendingResults.isEmpty();
+    }
+
+    /**
+     * Returns true if the given token may be processed before the outstanding tokens are completed
+     */
+    boolean isIndependent(Element elem, QName el) {
+        if (pendingResults.isEmpty()) {
+            return true;
+        }
+        if (!INDEPENDENT_TOKENS.contains(el)) {
+            return false;
+        }
+        try {
+            return !refersToPendingElement(elem);
+        } catch (WSSecurityException ex) {
+            LOG.debug(ex.getMessage(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Process the given token with the given Processor
+     */
+    void process(
+        Processor processor, Element elem, QName el, RequestData requestData
+    ) throws WSSecurityException {
+        int position = results.size();
+        results.add(Collections.<WSSecurityEngineResult>emptyList());
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        if (processor instanceof PipelinedProcessor) {
+            PendingResults pending =
+                ((PipelinedProcessor)processor).startToken(elem, requestData, executor);
+            recordStoredResults(position);
+            pendingResults.put(position, pending);
+            if (metrics != null) {
+                pendingTokenNames.put(position, el);
+                pendingStartTimes.put(position, start);
+            }
+            for (String id : pending.getDependentIds()) {
+                if (pendingIds.add(id)) {
+                    Element pendingElement = callbackLookup.getElement(id, null, false);
+                    if (pendingElement != null) {
+                        pendingElements.add(pendingElement);
+                    }
+                }
+            }
+        } else {
+            try {
+                results.set(position, processor.handleToken(elem, requestData));
+            } catch (WSSecurityException ex) {
+                // An error in an outstanding token would have been reported first in sequential mode
+                if (!pendingResults.isEmpty()) {
+                    complete();
+                }
+                throw ex;
+            }
+            recordStoredResults(position);
+            if (metrics != null) {
+                metrics.recordProcessor(el, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Complete all outstanding tokens, in header order
+     */
+    void complete() throws WSSecurityException {
+        if (pendingResults.isEmpty()) {
+            return;
+        }
+        Set<Integer> completed = new HashSet<>();
+        try {
+            for (Map.Entry<Integer, PendingResults> entry : pendingResults.entrySet()) {
+                completed.add(entry.getKey());
+                results.set(entry.getKey(), entry.getValue().complete());
+                recordStoredResults(entry.getKey());
+                if (metrics != null) {
+                    metrics.recordProcessor(pendingTokenNames.get(entry.getKey()),
+                                            System.nanoTime() - pendingStartTimes.get(entry.getKey()));
+                }
+            }
+        } finally {
+            // If a token failed, then the tokens after it are not completed
+            for (Map.Entry<Integer, PendingResults> entry : pendingResults.entrySet()) {
+                if (!completed.contains(entry.getKey())) {
+                    entry.getValue().cancel();
+                }
+            }
+            pendingResults.clear();
+            pendingTokenNames.clear();
+            pendingStartTimes.clear();
+            pendingIds.clear();
+            pendingElements.clear();
+            restoreHeaderOrder();
+        }
+    }
+
+    /**
+     * Cancel all outstanding tokens, as the processing of the security header has failed
+     */
+    void cancel() {
+        for (PendingResults pending : pendingResults.values()) {
+            pending.cancel();
+        }
+        pendingResults.clear();
+        pendingTokenNames.clear();
+        pendingStartTimes.clear();
+        pendingIds.clear();
+        pendingElements.clear();
+    }
+
+    /**
+     * Get the results of processing the header, most recently processed token first, as for the
+     * sequential mode.
+     */
+    List<WSSecurityEngineResult> getResults() {
+        List<WSSecurityEngineResult> returnResults = new LinkedList<>();
+        for (List<WSSecurityEngineResult> tokenResults : results) {
+            if (!tokenResults.isEmpty()) {
+                returnResults.addAll(0, tokenResults);
+            }
+        }
+        return returnResults;
+    }
+
+    private void recordStoredResults(int position) {
+        int storedResults = wsDocInfo.getResults().size();
+        while (storedResultPositions.size() < storedResults) {
+            storedResultPositions.add(position);
+        }
+    }
+
+    /**
+     * Store the results on the WSDocInfo in header order, as the outstanding tokens stored their results
+     * after the tokens that were processed in the meantime
+     */
+    private void restoreHeaderOrder() {
+        List<WSSecurityEngineResult> storedResults = wsDocInfo.getResults();
+        if (storedResults.size() != storedResultPositions.size()) {
+            LOG.debug("The stored results can't be matched to their tokens, leaving them as they are");
+            return;
+        }
+        List<Integer> order = new ArrayList<>(storedResults.size());
+        boolean inHeaderOrder = true;
+        for (int i = 0; i < storedResults.size(); i++) {
+            order.add(i);
+            if (i > 0 && storedResultPositions.get(i) < storedResultPositions.get(i - 1)) {
+                inHeaderOrder = false;
+            }
+        }
+        if (inHeaderOrder) {
+            return;
+        }
+        // A stable sort, so that the results of each token stay in the order they were stored
+        order.sort(Comparator.comparingInt(storedResultPositions::get));
+
+        List<WSSecurityEngineResult> orderedResults = new ArrayList<>(storedResults.size());
+        List<Integer> orderedPositions = new ArrayList<>(storedResults.size());
+        for (Integer index : order) {
+            orderedResults.add(storedResults.get(index));
+            orderedPositions.add(storedResultPositions.get(index));
+        }
+        wsDocInfo.setResults(orderedResults);
+        storedResultPositions.clear();
+        storedResultPositions.addAll(orderedPositions);
+    }
+
+    private boolean refersToPendingElement(Element elem) throws WSSecurityException {
+        Node node = elem.getFirstChild();
+        while (node != null) {
+            if (Node.ELEMENT_NODE == node.getNodeType()) {
+                Element child = (Element)node;
+                if (refersToPendingElement(child)) {
+                    return true;
+                }
+                String localName = child.getLocalName();
+                String namespace = child.getNamespaceURI();
+                if ("Reference".equals(localName)
+                    && (WSConstants.SIG_NS.equals(namespace) || WSConstants.WSSE_NS.equals(namespace))
+                    && isPendingReference(child.getAttributeNS(null, "URI"))) {
+                    return true;
+                }
+                if ("KeyIdentifier".equals(localName) && WSConstants.WSSE_NS.equals(namespace)) {
+                    String valueType = child.getAttributeNS(null, "ValueType");
+                    if (valueType.endsWith(WSConstants.ENC_KEY_SHA1_URI)) {
+                        return true;
+                    }
+                }
+            }
+            node = node.getNextSibling();
+        }
+        return false;
+    }
+
+    private boolean isPendingReference(String uri) throws WSSecurityException {
+        if (uri == null || uri.isEmpty() || uri.charAt(0) != '#') {
+            // The whole document, an attachment or an external reference
+            return true;
+        }
+        String id = XMLUtils.getIDFromReference(uri);
+        if (pendingIds.contains(id)) {
+            return true;
+        }
+        Element target = callbackLookup.getElement(id, null, false);
+        if (target == null) {
+            // Possibly still encrypted
+            return true;
+        }
+        for (Element pendingElement : pendingElements) {
+            if (isAncestorOrSelf(pendingElement, target) || isAncestorOrSelf(target, pendingElement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAncestorOrSelf(Node ancestor, Node node) {
+        for (Node current = node; current != null; current = current.getParentNode()) {
+            if (current == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -24,6 +24,8 @@ import java.security.PrivilegedAction;
 import java.security.Security;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -34,6 +36,9 @@ import org.apache.wss4j.dom.WsuIdAllocator;
 import org.apache.wss4j.dom.action.Action;
 import org.apache.wss4j.common.crypto.WSProviderConfig;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.util.StartupTasks;
+import org.apache.wss4j.common.util.UniqueIdGenerator;
 import org.apache.wss4j.common.util.WSCurrentTimeSource;
 import org.apache.wss4j.common.util.WSTimeSource;
 import org.apache.wss4j.dom.processor.Processor;
@@ -251,7 +256,8 @@ public final class WSSConfig {
      * initialized.  This flag prevents repeated and unnecessary calls
      * to static initialization code at construction time.
      */
-    private static boolean staticallyInitialized = false;
+    private static volatile boolean staticallyInitialized = false;
+    private static final ReentrantLock INIT_LOCK = new ReentrantLock();
 
     /**
      * This allows the user to specify a different time than that of the current System time.
@@ -272,6 +278,26 @@ public final class WSSConfig {
             return IDGenerator.generateID(prefix);
         }
     };
+
+    /**
+     * A WsuIdAllocator that creates unique, but not unpredictable, IDs with a sequence number
+     * instead of a random UUID, so that it does not contend for a SecureRandom under load. Secure
+     * IDs are still random UUIDs.
+     */
+    public static final WsuIdAllocator SEQUENTIAL_ID_ALLOCATOR = new WsuIdAllocator() {
+
+        public String createId(String prefix, Object o) {
+            if (prefix == null) {
+                return UniqueIdGenerator.generateID("_");
+            }
+
+            return UniqueIdGenerator.generateID(prefix);
+        }
+
+        public String createSecureId(String prefix, Object o) {
+            return IDGenerator.generateID(prefix);
+        }
+    };
     protected WsuIdAllocator idAllocator = DEFAULT_ID_ALLOCATOR;
 
     /**
@@ -313,7 +339,20 @@ public final class WSSConfig {
         // complete
     }
 
-    public static synchronized void init() {
+    public static void init() {
+        // This is called for every new WSSConfig instance, so check without locking first
+        if (staticallyInitialized) {
+            return;
+        }
+        INIT_LOCK.lock();
+        try {
+            initProviders();
+        } finally {
+            INIT_LOCK.unlock();
+        }
+    }
+
+    private static void initProviders() {
         if (!staticallyInitialized) {
             if (addJceProviders) {
                 AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
@@ -345,16 +384,44 @@ public final class WSSConfig {
         }
     }
 
-    public static synchronized void cleanUp() {
-        if (staticallyInitialized) {
-            if (addJceProviders) {
-                Security.removeProvider("STRTransform");
-                Security.removeProvider("AttachmentContentSignatureTransform");
-                Security.removeProvider("AttachmentCompleteSignatureTransform");
-            }
-            WSProviderConfig.cleanUp();
+    /**
+     * Initialize WSS4J together with the OpenSAML library, so that the first message does not
+     * wait for either of them. OpenSAML is initialized in parallel to the security providers, and
+     * parses its configuration files on the given Executor. Its XACML and SAML metadata
+     * configurations are loaded afterwards in the background on the Executor, and the first SAML
+     * assertion that is created or unmarshalled waits until they are loaded.
+     *
+     * @param executor the Executor to initialize WSS4J on, or null to initialize it in the calling thread
+     * @throws WSSecurityException if the initialization was interrupted
+     */
+    public static void init(Executor executor) throws WSSecurityException {
+        try {
+            StartupTasks.runAll(executor,
+                WSSConfig::init,
+                () -> OpenSAMLUtil.initSamlEngine(true, true, executor)
+            );
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+    }
 
-            staticallyInitialized = false;
+    public static void cleanUp() {
+        INIT_LOCK.lock();
+        try {
+            if (staticallyInitialized) {
+                if (addJceProviders) {
+                    Security.removeProvider("STRTransform");
+                    Security.removeProvider("AttachmentContentSignatureTransform");
+                    Security.removeProvider("AttachmentCompleteSignatureTransform");
+                }
+                WSProviderConfig.cleanUp();
+
+                staticallyInitialized = false;
+            }
+        } finally {
+            INIT_LOCK.unlock();
         }
     }
 
@@ -19,23 +19,35 @@
 
 package org.apache.wss4j.dom.engine;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.crypto.BatchCrypto;
 import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.ext.AsyncCallbackHandler;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.VirtualThreads;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
 import org.apache.wss4j.dom.callback.DOMCallbackLookup;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.metrics.SecurityHeaderMetrics;
 import org.apache.wss4j.dom.processor.Processor;
 import org.apache.wss4j.dom.saml.DOMSAMLUtil;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
@@ -253,6 +265,126 @@ public class WSSecurityEngine {
         return wsResult;
     }
 
+    /**
+     * Process the security header given the soap envelope as W3C document, on a virtual thread
+     * where these are available.
+     *
+     * @see WSSecurityEngine#processSecurityHeaderAsync(Document, RequestData, Executor)
+     */
+    public CompletableFuture<WSHandlerResult> processSecurityHeaderAsync(
+        Document doc, RequestData requestData
+    ) {
+        return processSecurityHeaderAsync(doc, requestData, VirtualThreads.executor());
+    }
+
+    /**
+     * Process the security header given the soap envelope as W3C document, on the given Executor.
+     * <p/>
+     * The calling thread is not blocked while the security header is processed. If the Executor runs
+     * the processing on a virtual thread, then waiting for an {@link AsyncCallbackHandler} (for example
+     * one which retrieves passwords from a remote secret store) suspends the virtual thread, rather than
+     * blocking a platform thread, and the processing resumes when the callbacks have been handled.
+     *
+     * @param doc            the SOAP envelope as {@link Document}
+     * @param requestData    the RequestData associated with the request
+     * @param executor       the Executor to process the security header on
+     * @return a CompletableFuture which completes with the result of processing the security header,
+     *         or exceptionally with a WSSecurityException
+     */
+    public CompletableFuture<WSHandlerResult> processSecurityHeaderAsync(
+        Document doc, RequestData requestData, Executor executor
+    ) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return processSecurityHeader(doc, requestData);
+            } catch (WSSecurityException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Process the security headers of a batch of messages, given as W3C documents.
+     * <p/>
+     * The messages are processed concurrently on the given Executor. The Crypto instances of the
+     * RequestData objects are wrapped in a {@link BatchCrypto} while each message is processed (one per
+     * distinct Crypto instance), so that certificate lookups, private key retrieval and trust
+     * validations are shared between messages from the same clients. The original Crypto instances
+     * are set on the RequestData objects again once their message is processed, so that nothing
+     * cached by the batch outlives it. The messages are processed independently, a failure to process
+     * one message does not affect the others.
+     *
+     * @param documents      the SOAP envelopes to process
+     * @param requestData    the RequestData for each of the documents, in the same order. Each message
+     *                       must have its own RequestData instance.
+     * @param executor       the Executor to process the messages on
+     * @return the result of processing each document, in the same order as the documents
+     */
+    public List<BatchProcessingResult> processSecurityHeaders(
+        List<Document> documents, List<RequestData> requestData, Executor executor
+    ) {
+        if (documents.size() != requestData.size()) {
+            throw new IllegalArgumentException("A RequestData instance is required for each document");
+        }
+        final WSSConfig cfg = getWssConfig();
+        Map<Crypto, Crypto> batchCryptos = new IdentityHashMap<>();
+
+        List<FutureTask<BatchProcessingResult>> tasks = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            final Document doc = documents.get(i);
+            final RequestData data = requestData.get(i);
+            final Crypto sigVerCrypto = data.getSigVerCrypto();
+            final Crypto decCrypto = data.getDecCrypto();
+            final Crypto batchSigVerCrypto = getBatchCrypto(sigVerCrypto, batchCryptos);
+            final Crypto batchDecCrypto = getBatchCrypto(decCrypto, batchCryptos);
+
+            FutureTask<BatchProcessingResult> task = new FutureTask<>(() -> {
+                WSSecurityEngine engine = new WSSecurityEngine();
+                engine.setWssConfig(cfg);
+                data.setSigVerCrypto(batchSigVerCrypto);
+                data.setDecCrypto(batchDecCrypto);
+                try {
+                    return new BatchProcessingResult(doc, engine.processSecurityHeader(doc, data));
+                } catch (WSSecurityException ex) {
+                    LOG.debug(ex.getMessage(), ex);
+                    return new BatchProcessingResult(doc, ex);
+                } finally {
+                    data.setSigVerCrypto(sigVerCrypto);
+                    data.setDecCrypto(decCrypto);
+                }
+            });
+            tasks.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                LOG.debug("Executor rejected the message, processing it on the calling thread");
+                task.run();
+            }
+        }
+
+        List<BatchProcessingResult> results = new ArrayList<>(documents.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                results.add(tasks.get(i).get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                results.add(new BatchProcessingResult(documents.get(i),
+                    new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex)));
+            } catch (ExecutionException ex) {
+                results.add(new BatchProcessingResult(documents.get(i),
+                    new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex)));
+            }
+        }
+        return results;
+    }
+
+    private static Crypto getBatchCrypto(Crypto crypto, Map<Crypto, Crypto> batchCryptos) {
+        if (crypto == null || crypto instanceof BatchCrypto) {
+            return crypto;
+        }
+        return batchCryptos.computeIfAbsent(crypto, BatchCrypto::new);
+    }
+
     /**
      * Process the security header given the <code>wsse:Security</code> DOM
      * Element.
@@ -299,6 +431,26 @@ public class WSSecurityEngine {
             requestData.setWssConfig(getWssConfig());
         }
 
+        if (requestData.getSecurityMetrics() == null) {
+            return processSecurityHeader(securityHeader, requestData, null);
+        }
+        SecurityHeaderMetrics metrics = new SecurityHeaderMetrics(requestData.getSecurityMetrics());
+        requestData.setSecurityHeaderMetrics(metrics);
+        boolean success = false;
+        try {
+            WSHandlerResult handlerResult = processSecurityHeader(securityHeader, requestData, metrics);
+            success = true;
+            return handlerResult;
+        } finally {
+            metrics.complete(success);
+        }
+    }
+
+    private WSHandlerResult processSecurityHeader(
+        Element securityHeader,
+        RequestData requestData,
+        SecurityHeaderMetrics metrics
+    ) throws WSSecurityException {
         //
         // Gather some info about the document to process and store
         // it for retrieval. Store the implementation of signature crypto
@@ -315,11 +467,75 @@ public class WSSecurityEngine {
         requestData.setWsDocInfo(wsDocInfo);
 
         final WSSConfig cfg = getWssConfig();
-        Node node = securityHeader.getFirstChild();
 
+        //
+        // In pipelined mode, expensive work which doesn't touch the DOM is run on the Executor, while
+        // processing moves on to tokens which don't depend on it. This is not possible if EncryptedData
+        // elements must be signed, as this is checked against the Signatures processed so far.
+        //
+        SecurityHeaderPipeline pipeline = null;
+        if (requestData.getHeaderProcessingExecutor() != null
+            && !requestData.isRequireSignedEncryptedDataElements()) {
+            pipeline =
+                new SecurityHeaderPipeline(
+                    requestData.getHeaderProcessingExecutor(), callbackLookupToUse, wsDocInfo, metrics
+                );
+        }
+
+        List<WSSecurityEngineResult> returnResults;
+        try {
+            returnResults = processTokens(securityHeader, requestData, cfg, pipeline, metrics);
+        } catch (WSSecurityException | RuntimeException ex) {
+            if (pipeline != null) {
+                // Don't leave any outstanding work running on the Executor
+                pipeline.cancel();
+            }
+            throw ex;
+        }
+
+        WSHandlerResult handlerResult =
+            new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.getActionResults());
+
+        // Validate SAML Subject Confirmation requirements
+        if (requestData.isValidateSamlSubjectConfirmation()) {
+            Element bodyElement = callbackLookupToUse.getSOAPBody();
+            DOMSAMLUtil.validateSAMLResults(handlerResult, requestData.getTlsCerts(), bodyElement);
+        }
+
+        wsDocInfo.clear();
+
+        return handlerResult;
+    }
+
+    /**
+     * Process the tokens of the security header in turn, returning the results with the most recently
+     * processed token first
+     */
+    private List<WSSecurityEngineResult> processTokens(
+        Element securityHeader,
+        RequestData requestData,
+        WSSConfig cfg,
+        SecurityHeaderPipeline pipeline,
+        SecurityHeaderMetrics metrics
+    ) throws WSSecurityException {
+        Node node = securityHeader.getFirstChild();
         List<WSSecurityEngineResult> returnResults = new LinkedList<>();
         boolean foundTimestamp = false;
+        Node previousNode = null;
         while (node != null) {
+            if (pipeline != null && pipeline.hasPendingResults() && Node.ELEMENT_NODE == node.getNodeType()
+                && !pipeline.isIndependent((Element) node,
+                                           new QName(node.getNamespaceURI(), node.getLocalName()))) {
+                //
+                // Complete the outstanding tokens first. This may decrypt EncryptedData elements in the
+                // security header, so start again from the last node that was processed
+                //
+                pipeline.complete();
+                node = previousNode == null ? securityHeader.getFirstChild() : previousNode.getNextSibling();
+                if (node == null) {
+                    break;
+                }
+            }
             Node nextSibling = node.getNextSibling();
             if (Node.ELEMENT_NODE == node.getNodeType()) {
                 QName el = new QName(node.getNamespaceURI(), node.getLocalName());
@@ -337,9 +553,18 @@ public class WSSecurityEngine {
                 //
                 Processor p = cfg.getProcessor(el);
                 if (p != null) {
-                    List<WSSecurityEngineResult> results = p.handleToken((Element) node, requestData);
-                    if (!results.isEmpty()) {
-                        returnResults.addAll(0, results);
+                    if (pipeline != null) {
+                        // The pipeline records the time taken when the token is complete
+                        pipeline.process(p, (Element) node, el, requestData);
+                    } else {
+                        long start = metrics != null ? System.nanoTime() : 0L;
+                        List<WSSecurityEngineResult> results = p.handleToken((Element) node, requestData);
+                        if (!results.isEmpty()) {
+                            returnResults.addAll(0, results);
+                        }
+                        if (metrics != null) {
+                            metrics.recordProcessor(el, System.nanoTime() - start);
+                        }
                     }
                 } else {
                     if (doDebug) {
@@ -355,6 +580,7 @@ public class WSSecurityEngine {
             // of the current node is null. In that case, go on to the previously stored next
             // sibling
             //
+            previousNode = node;
             if (node.getNextSibling() == null && nextSibling != null
                 && nextSibling.getParentNode() != null) {
                 node = nextSibling;
@@ -363,17 +589,10 @@ public class WSSecurityEngine {
             }
         }
 
-        WSHandlerResult handlerResult =
-            new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.getActionResults());
-
-        // Validate SAML Subject Confirmation requirements
-        if (requestData.isValidateSamlSubjectConfirmation()) {
-            Element bodyElement = callbackLookupToUse.getSOAPBody();
-            DOMSAMLUtil.validateSAMLResults(handlerResult, requestData.getTlsCerts(), bodyElement);
+        if (pipeline != null) {
+            pipeline.complete();
+            returnResults = pipeline.getResults();
         }
-
-        wsDocInfo.clear();
-
-        return handlerResult;
+        return returnResults;
     }
 }
@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
@@ -37,15 +38,19 @@ import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.metrics.SecurityHeaderMetrics;
+import org.apache.wss4j.dom.metrics.SecurityMetrics;
 import org.apache.wss4j.dom.validate.Validator;
 import org.apache.xml.security.encryption.Serializer;
 
@@ -75,6 +80,8 @@ public class RequestData {
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private SecurityContextStore securityContextStore;
+    private SamlAssertionCache samlAssertionCache;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
     private final List<BSPRule> ignoredBSPRules = new LinkedList<>();
@@ -196,6 +203,23 @@ public class RequestData {
     private boolean validateSamlSubjectConfirmation = true;
 
     private boolean expandXopInclude;
+    private boolean streamXopAttachments;
+
+    /**
+     * If this is not null, then the security header is processed in pipelined mode. Expensive work that
+     * does not touch the DOM (such as the RSA unwrap of an EncryptedKey) is run on this Executor, while
+     * processing continues with the tokens that do not depend on it. The results are the same as for
+     * sequential processing. The default is null (sequential processing).
+     */
+    private Executor headerProcessingExecutor;
+
+    /**
+     * If this is not null, then the time taken by the Processors and Validators, and the work done to
+     * verify Signatures, is recorded for each security header that is processed. The default is null,
+     * in which case no timings are taken.
+     */
+    private SecurityMetrics securityMetrics;
+    private SecurityHeaderMetrics securityHeaderMetrics;
 
     public Object getMsgContext() {
         return msgContext;
@@ -392,15 +416,22 @@ public class RequestData {
             Map<QName, Validator> validatorMap =
                 (Map<QName, Validator>)((Map<?,?>)getMsgContext()).get(ConfigurationConstants.VALIDATOR_MAP);
             if (validatorMap != null && validatorMap.containsKey(qName)) {
-                return validatorMap.get(qName);
+                return timeValidator(qName, validatorMap.get(qName));
             }
         }
         if (wssConfig != null) {
-            return wssConfig.getValidator(qName);
+            return timeValidator(qName, wssConfig.getValidator(qName));
         }
         return null;
     }
 
+    private Validator timeValidator(QName qName, Validator validator) {
+        if (securityHeaderMetrics != null) {
+            return securityHeaderMetrics.timeValidator(qName, validator);
+        }
+        return validator;
+    }
+
     /**
      * Set the replay cache for Timestamps
      */
@@ -446,6 +477,35 @@ public class RequestData {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the store for SecureConversation sessions. The secret of a stored session is not requested
+     * from the CallbackHandler again until the session expires or is removed from the store.
+     */
+    public void setSecurityContextStore(SecurityContextStore securityContextStore) {
+        this.securityContextStore = securityContextStore;
+    }
+
+    /**
+     * Get the store for SecureConversation sessions
+     */
+    public SecurityContextStore getSecurityContextStore() {
+        return securityContextStore;
+    }
+
+    /**
+     * Set the cache of outbound SAML assertions
+     */
+    public void setSamlAssertionCache(SamlAssertionCache samlAssertionCache) {
+        this.samlAssertionCache = samlAssertionCache;
+    }
+
+    /**
+     * Get the cache of outbound SAML assertions
+     */
+    public SamlAssertionCache getSamlAssertionCache() {
+        return samlAssertionCache;
+    }
+
     /**
      * Set the Signature Subject Cert Constraints
      */
@@ -737,6 +797,14 @@ public class RequestData {
         this.expandXopInclude = expandXopInclude;
     }
 
+    public boolean isStreamXopAttachments() {
+        return streamXopAttachments;
+    }
+
+    public void setStreamXopAttachments(boolean streamXopAttachments) {
+        this.streamXopAttachments = streamXopAttachments;
+    }
+
     public Serializer getEncryptionSerializer() {
         return encryptionSerializer;
     }
@@ -779,4 +847,32 @@ public class RequestData {
     public void setSignatureProvider(Provider signatureProvider) {
         this.signatureProvider = signatureProvider;
     }
+
+    public Executor getHeaderProcessingExecutor() {
+        return headerProcessingExecutor;
+    }
+
+    public void setHeaderProcessingExecutor(Executor headerProcessingExecutor) {
+        this.headerProcessingExecutor = headerProcessingExecutor;
+    }
+
+    public SecurityMetrics getSecurityMetrics() {
+        return securityMetrics;
+    }
+
+    public void setSecurityMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics;
+    }
+
+    /**
+     * Get the metrics for the security header that is being (or was last) processed, or null if no
+     * SecurityMetrics implementation is configured
+     */
+    public SecurityHeaderMetrics getSecurityHeaderMetrics() {
+        return securityHeaderMetrics;
+    }
+
+    public void setSecurityHeaderMetrics(SecurityHeaderMetrics securityHeaderMetrics) {
+        this.securityHeaderMetrics = securityHeaderMetrics;
+    }
 }
@@ -44,6 +44,7 @@ import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.common.util.VirtualThreads;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.token.SignatureConfirmation;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
@@ -123,6 +124,12 @@ public abstract class WSHandler {
             reqData.setStoreBytesInAttachment(storeBytesInAttachment);
         }
 
+        if (!reqData.isStreamXopAttachments()) {
+            boolean streamXopAttachments =
+                decodeBooleanConfigValue(mc, WSHandlerConstants.STREAM_XOP_ATTACHMENTS, false);
+            reqData.setStreamXopAttachments(streamXopAttachments);
+        }
+
         // Perform configuration
         boolean encryptionFound = false;
         for (HandlerAction actionToDo : actions) {
@@ -364,6 +371,14 @@ public abstract class WSHandler {
         reqData.setRequireTimestampExpires(
             decodeBooleanConfigValue(mc, WSHandlerConstants.REQUIRE_TIMESTAMP_EXPIRES, false)
         );
+        if (reqData.getHeaderProcessingExecutor() == null
+            && decodeBooleanConfigValue(mc, WSHandlerConstants.PIPELINE_SECURITY_HEADER, false)) {
+            if (decodeBooleanConfigValue(mc, WSHandlerConstants.USE_VIRTUAL_THREADS, false)) {
+                reqData.setHeaderProcessingExecutor(VirtualThreads.executor());
+            } else {
+                reqData.setHeaderProcessingExecutor(VirtualThreads.platformExecutor());
+            }
+        }
     }
 
     protected boolean checkReceiverResults(
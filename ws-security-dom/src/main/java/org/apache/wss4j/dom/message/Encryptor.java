@@ -23,8 +23,10 @@ import java.io.IOException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -40,6 +42,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.RandomUtils;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -56,7 +59,6 @@ import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.keys.KeyInfo;
-import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.utils.EncryptionConstants;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -78,6 +80,7 @@ public class Encryptor {
     private boolean storeBytesInAttachment;
     private Serializer encryptionSerializer;
     private boolean expandXopInclude;
+    private boolean streamXopAttachments;
     private WSDocInfo wsDocInfo;
 
     public List<String> doEncryption(
@@ -103,6 +106,7 @@ public class Encryptor {
 
         List<String> encDataRef = new ArrayList<>();
         WSEncryptionPart attachmentEncryptionPart = null;
+        Set<String> xopURIs = new LinkedHashSet<>();
         for (WSEncryptionPart encPart : references) {
             if (encPart.getId() != null && encPart.getId().startsWith("cid:")) {
                 attachmentEncryptionPart = encPart;
@@ -127,7 +131,13 @@ public class Encryptor {
                     new Object[] {"{" + encPart.getNamespace() + "}" + encPart.getName()});
             }
 
-            if (expandXopInclude) {
+            if (streamXopAttachments) {
+                for (Element elementToEncrypt : elementsToEncrypt) {
+                    addXopURIs(elementToEncrypt, xopURIs);
+                }
+            }
+
+            if (expandXopInclude && !streamXopAttachments) {
                 for (Element elementToEncrypt : elementsToEncrypt) {
                     Element encrElement = elementToEncrypt;
 
@@ -208,9 +218,35 @@ public class Encryptor {
                               attachmentEncryptedDataElements);
         }
 
+        // The attachments referred to by xop:Include Elements are encrypted as SwA attachments,
+        // unless they have been encrypted above
+        String encryptedAttachmentsId = attachmentEncryptionPart != null ? attachmentEncryptionPart.getId() : null;
+        if (!"cid:Attachments".equals(encryptedAttachmentsId)) {
+            for (String xopURI : xopURIs) {
+                if (!xopURI.equals(encryptedAttachmentsId)) {
+                    encryptAttachment(keyInfo, secretKey, encryptionAlgorithm, new WSEncryptionPart(xopURI, "Content"),
+                                      encDataRef, attachmentEncryptedDataElements);
+                }
+            }
+        }
+
         return encDataRef;
     }
 
+    /**
+     * Add the URIs of the attachments referred to by xop:Include Elements in the given Element
+     */
+    private static void addXopURIs(Element element, Set<String> xopURIs) {
+        List<Element> includeElements =
+            XMLUtils.findElements(element.getFirstChild(), "Include", WSConstants.XOP_NS);
+        for (Element includeElement : includeElements) {
+            String xopURI = includeElement.getAttributeNS(null, "href");
+            if (xopURI.startsWith("cid:")) {
+                xopURIs.add(xopURI);
+            }
+        }
+    }
+
     private Element findMatchingExpandedElement(Element element) {
         Element matchingElement = null;
 
@@ -423,7 +459,7 @@ public class Encryptor {
             Cipher cipher = Cipher.getInstance(jceAlgorithm);
 
             int ivLen = JCEMapper.getIVLengthFromURI(encryptionAlgorithm) / 8;
-            byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
+            byte[] iv = RandomUtils.generateBytes(ivLen);
             AlgorithmParameterSpec paramSpec =
                 XMLCipherUtil.constructBlockCipherParameters(encryptionAlgorithm, iv);
             cipher.init(Cipher.ENCRYPT_MODE, secretKey, paramSpec);
@@ -583,6 +619,14 @@ public class Encryptor {
         this.expandXopInclude = expandXopInclude;
     }
 
+    public boolean isStreamXopAttachments() {
+        return streamXopAttachments;
+    }
+
+    public void setStreamXopAttachments(boolean streamXopAttachments) {
+        this.streamXopAttachments = streamXopAttachments;
+    }
+
     public WSDocInfo getWsDocInfo() {
         return wsDocInfo;
     }
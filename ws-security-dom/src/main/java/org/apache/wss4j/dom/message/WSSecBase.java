@@ -48,6 +48,7 @@ public class WSSecBase {
     protected CallbackHandler attachmentCallbackHandler;
     protected boolean storeBytesInAttachment;
     protected boolean expandXopInclude;
+    protected boolean streamXopAttachments;
     protected boolean addWSUNamespace;
 
     private WsuIdAllocator idAllocator;
@@ -234,6 +235,20 @@ public class WSSecBase {
         this.expandXopInclude = expandXopInclude;
     }
 
+    public boolean isStreamXopAttachments() {
+        return streamXopAttachments;
+    }
+
+    /**
+     * Set whether to keep the attachments referred to by xop:Include Elements out-of-line. If this
+     * is true, the xop:Include Elements are signed or encrypted as they are, and the attachments
+     * are signed or encrypted by streaming them, as for SwA attachments. This takes precedence
+     * over expandXopInclude.
+     */
+    public void setStreamXopAttachments(boolean streamXopAttachments) {
+        this.streamXopAttachments = streamXopAttachments;
+    }
+
     public WSDocInfo getWsDocInfo() {
         return wsDocInfo;
     }
@@ -19,7 +19,6 @@
 
 package org.apache.wss4j.dom.message;
 
-import java.security.NoSuchProviderException;
 import java.security.Provider;
 import java.util.List;
 
@@ -51,6 +50,7 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.transform.STRTransform;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.wss4j.dom.util.XMLSignatureFactoryRegistry;
 
 /**
  * Builder to sign with derived keys
@@ -92,17 +92,7 @@ public class WSSecDKSign extends WSSecDerivedKeyBase {
     }
 
     private void init(Provider provider) {
-        if (provider == null) {
-            // Try to install the Santuario Provider - fall back to the JDK provider if this does
-            // not work
-            try {
-                signatureFactory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
-            } catch (NoSuchProviderException ex) {
-                signatureFactory = XMLSignatureFactory.getInstance("DOM");
-            }
-        } else {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", provider);
-        }
+        signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(provider);
     }
 
     public Document build(byte[] ephemeralKey) throws WSSecurityException {
@@ -170,7 +160,7 @@ public class WSSecDKSign extends WSSecDerivedKeyBase {
 
         XMLStructure structure = new DOMStructure(secRef.getElement());
         wsDocInfo.addTokenElement(secRef.getElement(), false);
-        KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+        KeyInfoFactory keyInfoFactory = XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory);
         keyInfo =
             keyInfoFactory.newKeyInfo(
                 java.util.Collections.singletonList(structure), keyInfoUri
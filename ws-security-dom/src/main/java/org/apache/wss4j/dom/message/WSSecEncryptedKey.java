@@ -26,8 +26,10 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.token.*;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.RandomUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.wss4j.dom.util.XMLSignatureFactoryRegistry;
 import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.encryption.keys.content.AgreementMethodImpl;
@@ -36,7 +38,6 @@ import org.apache.xml.security.encryption.params.HKDFParams;
 import org.apache.xml.security.encryption.params.KeyAgreementParameters;
 import org.apache.xml.security.encryption.params.KeyDerivationParameters;
 import org.apache.xml.security.exceptions.XMLSecurityException;
-import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.XMLUtils;
@@ -504,20 +505,9 @@ public class WSSecEncryptedKey extends WSSecBase {
                                                       new Object[] {keyIdentifierType});
                     }
                     try {
-                        XMLSignatureFactory signatureFactory;
-                        if (provider == null) {
-                            // Try to install the Santuario Provider - fall back to the JDK provider if this does
-                            // not work
-                            try {
-                                signatureFactory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
-                            } catch (NoSuchProviderException ex) {
-                                signatureFactory = XMLSignatureFactory.getInstance("DOM");
-                            }
-                        } else {
-                            signatureFactory = XMLSignatureFactory.getInstance("DOM", provider);
-                        }
-
-                        KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+                        XMLSignatureFactory signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(provider);
+
+                        KeyInfoFactory keyInfoFactory = XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory);
                         KeyValue keyValue = keyInfoFactory.newKeyValue((PublicKey)key);
                         String keyInfoUri = getIdAllocator().createSecureId("KI-", null);
                         KeyInfo keyInfo =
@@ -633,7 +623,7 @@ public class WSSecEncryptedKey extends WSSecBase {
                 byte[] semiRandom;
                 try { 
                     int length = keyBitLength / 8;
-                    semiRandom = XMLSecurityConstants.generateBytes(length);
+                    semiRandom = RandomUtils.generateBytes(length);
                 } catch (Exception ex) {
                     throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
                             "empty", new Object[] {"Error in generating secret bytes " }
@@ -19,7 +19,6 @@
 
 package org.apache.wss4j.dom.message;
 
-import java.security.NoSuchProviderException;
 import java.security.Provider;
 import java.security.PublicKey;
 import java.security.cert.CertificateEncodingException;
@@ -64,6 +63,7 @@ import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.message.token.KerberosSecurity;
 import org.apache.wss4j.dom.transform.STRTransform;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.wss4j.dom.util.XMLSignatureFactoryRegistry;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -111,6 +111,7 @@ public class WSSecSignature extends WSSecSignatureBase {
     private boolean addInclusivePrefixes = true;
     private Element customKeyInfoElement;
     private Provider signatureProvider;
+    private WSSecSignatureTemplate signatureTemplate;
 
     public WSSecSignature(WSSecHeader securityHeader) {
         this(securityHeader, null);
@@ -131,17 +132,7 @@ public class WSSecSignature extends WSSecSignatureBase {
     }
 
     private void init(Provider provider) {
-        if (provider == null) {
-            // Try to install the Santuario Provider - fall back to the JDK provider if this does
-            // not work
-            try {
-                signatureFactory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
-            } catch (NoSuchProviderException ex) {
-                signatureFactory = XMLSignatureFactory.getInstance("DOM");
-            }
-        } else {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", provider);
-        }
+        signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(provider);
     }
 
     /**
@@ -232,11 +223,21 @@ public class WSSecSignature extends WSSecSignatureBase {
                     break;
 
                 case WSConstants.X509_KEY_IDENTIFIER:
-                secRef.setKeyIdentifier(certs[0]);
+                if (signatureTemplate != null) {
+                    secRef.setKeyIdentifier(X509Security.X509_V3_TYPE, signatureTemplate.getEncodedCertificate(), true);
+                } else {
+                    secRef.setKeyIdentifier(certs[0]);
+                }
                 break;
 
             case WSConstants.SKI_KEY_IDENTIFIER:
-                secRef.setKeyIdentifierSKI(certs[0], crypto);
+                if (signatureTemplate != null && signatureTemplate.getSubjectKeyIdentifier() != null) {
+                    secRef.setKeyIdentifier(
+                        SecurityTokenReference.SKI_URI, signatureTemplate.getSubjectKeyIdentifier(), true
+                    );
+                } else {
+                    secRef.setKeyIdentifierSKI(certs[0], crypto);
+                }
 
                 if (includeSignatureToken) {
                     addBST(certs);
@@ -244,7 +245,11 @@ public class WSSecSignature extends WSSecSignatureBase {
                 break;
 
             case WSConstants.THUMBPRINT_IDENTIFIER:
-                secRef.setKeyIdentifierThumb(certs[0]);
+                if (signatureTemplate != null) {
+                    secRef.setKeyIdentifier(SecurityTokenReference.THUMB_URI, signatureTemplate.getThumbprint(), true);
+                } else {
+                    secRef.setKeyIdentifierThumb(certs[0]);
+                }
 
                 if (includeSignatureToken) {
                     addBST(certs);
@@ -324,7 +329,7 @@ public class WSSecSignature extends WSSecSignatureBase {
                 java.security.PublicKey publicKey = certs[0].getPublicKey();
 
                 try {
-                    KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+                    KeyInfoFactory keyInfoFactory = XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory);
                     KeyValue keyValue = keyInfoFactory.newKeyValue(publicKey);
                     keyInfo =
                         keyInfoFactory.newKeyInfo(Collections.singletonList(keyValue), keyInfoUri);
@@ -374,7 +379,7 @@ public class WSSecSignature extends WSSecSignatureBase {
             }
         }
 
-        KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+        KeyInfoFactory keyInfoFactory = XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory);
         keyInfo = keyInfoFactory.newKeyInfo(kiChildren, keyInfoUri);
     }
 
@@ -474,7 +479,14 @@ public class WSSecSignature extends WSSecSignatureBase {
             byte[] certBytes = null;
             if (!useSingleCert) {
                 bstToken.setAttributeNS(null, "ValueType", PKIPathSecurity.PKI_TYPE);
-                certBytes = crypto.getBytesFromCertificates(certs);
+                if (signatureTemplate != null) {
+                    certBytes = signatureTemplate.getPKIPathBytes();
+                } else {
+                    certBytes = crypto.getBytesFromCertificates(certs);
+                }
+            } else if (signatureTemplate != null) {
+                bstToken.setAttributeNS(null, "ValueType", X509Security.X509_V3_TYPE);
+                certBytes = signatureTemplate.getCertificateBytes();
             } else {
                 bstToken.setAttributeNS(null, "ValueType", X509Security.X509_V3_TYPE);
                 try {
@@ -492,7 +504,20 @@ public class WSSecSignature extends WSSecSignatureBase {
             getWsDocInfo().addTokenElement(bstToken, false);
         } else {
             BinarySecurity binarySecurity = null;
-            if (!useSingleCert) {
+            if (signatureTemplate != null) {
+                // The certificates are already encoded in the template
+                if (!useSingleCert) {
+                    binarySecurity = new PKIPathSecurity(getDocument());
+                    binarySecurity.getElement().appendChild(
+                        getDocument().createTextNode(signatureTemplate.getEncodedPKIPath())
+                    );
+                } else {
+                    binarySecurity = new X509Security(getDocument());
+                    binarySecurity.getElement().appendChild(
+                        getDocument().createTextNode(signatureTemplate.getEncodedCertificate())
+                    );
+                }
+            } else if (!useSingleCert) {
                 binarySecurity = new PKIPathSecurity(getDocument());
                 ((PKIPathSecurity) binarySecurity).setX509Certificates(certs, crypto);
             } else {
@@ -859,7 +884,10 @@ public class WSSecSignature extends WSSecSignatureBase {
             || keyIdentifierType == WSConstants.CUSTOM_SYMM_SIGNING_DIRECT
             || keyIdentifierType == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER
             || keyIdentifierType == WSConstants.CUSTOM_KEY_IDENTIFIER)) {
-            if (useThisCert == null) {
+            if (signatureTemplate != null && useThisCert == null
+                && user != null && user.equals(signatureTemplate.getAlias())) {
+                certs = signatureTemplate.getCertificates();
+            } else if (useThisCert == null) {
                 CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
                 cryptoType.setAlias(user);
                 if (crypto == null) {
@@ -875,37 +903,58 @@ public class WSSecSignature extends WSSecSignatureBase {
                         "noUserCertsFound",
                         new Object[] {user, "signature"});
             }
+            if (signatureTemplate != null) {
+                // The encoded certificates and key identifiers of the template must be those of
+                // the signing certificate
+                X509Certificate[] templateCerts = signatureTemplate.getCertificates();
+                if (!templateCerts[0].equals(certs[0])) {
+                    throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.FAILURE, "invalidSignatureTemplate"
+                    );
+                }
+                certs = templateCerts;
+            }
             certUri = getIdAllocator().createSecureId("X509-", certs[0]);
             //
             // If no signature algorithm was set try to detect it according to the
             // data stored in the certificate.
             //
             if (sigAlgo == null) {
-                String pubKeyAlgo = certs[0].getPublicKey().getAlgorithm();
-                LOG.debug("Automatic signature algorithm detection: {}", pubKeyAlgo);
-                if (pubKeyAlgo.equalsIgnoreCase("DSA")) {
-                    sigAlgo = WSConstants.DSA;
-                } else if (pubKeyAlgo.equalsIgnoreCase("RSA")) {
-                    sigAlgo = WSConstants.RSA;
-                } else if (pubKeyAlgo.equalsIgnoreCase("EC")) {
-                    sigAlgo = WSConstants.ECDSA_SHA256;
-                } else if (pubKeyAlgo.equalsIgnoreCase("Ed25519")) {
-                    sigAlgo = WSConstants.ED25519;
-                } else if (pubKeyAlgo.equalsIgnoreCase("ED448")) {
-                    sigAlgo = WSConstants.ED448;
-                } else if (pubKeyAlgo.equalsIgnoreCase("EdDSA")) {
-                    sigAlgo = getSigAlgorithmForEdDSAKey(certs[0].getPublicKey());
+                if (signatureTemplate != null) {
+                    sigAlgo = signatureTemplate.getSignatureAlgorithm();
                 } else {
-                    throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.FAILURE,
-                        "unknownSignatureAlgorithm",
-                        new Object[] {pubKeyAlgo});
+                    sigAlgo = getDefaultSignatureAlgorithm(certs[0]);
                 }
             }
         }
         return certs;
     }
 
+    /**
+     * Detect the signature algorithm according to the public key of the certificate.
+     */
+    static String getDefaultSignatureAlgorithm(X509Certificate cert) throws WSSecurityException {
+        String pubKeyAlgo = cert.getPublicKey().getAlgorithm();
+        LOG.debug("Automatic signature algorithm detection: {}", pubKeyAlgo);
+        if (pubKeyAlgo.equalsIgnoreCase("DSA")) {
+            return WSConstants.DSA;
+        } else if (pubKeyAlgo.equalsIgnoreCase("RSA")) {
+            return WSConstants.RSA;
+        } else if (pubKeyAlgo.equalsIgnoreCase("EC")) {
+            return WSConstants.ECDSA_SHA256;
+        } else if (pubKeyAlgo.equalsIgnoreCase("Ed25519")) {
+            return WSConstants.ED25519;
+        } else if (pubKeyAlgo.equalsIgnoreCase("ED448")) {
+            return WSConstants.ED448;
+        } else if (pubKeyAlgo.equalsIgnoreCase("EdDSA")) {
+            return getSigAlgorithmForEdDSAKey(cert.getPublicKey());
+        }
+        throw new WSSecurityException(
+            WSSecurityException.ErrorCode.FAILURE,
+            "unknownSignatureAlgorithm",
+            new Object[] {pubKeyAlgo});
+    }
+
     /**
      * The method returns EdDSA signature algorithm URI for public key type (Ed25519 or Ed448).
      *
@@ -983,6 +1032,21 @@ public class WSSecSignature extends WSSecSignatureBase {
         this.signatureProvider = signatureProvider;
     }
 
+    public WSSecSignatureTemplate getSignatureTemplate() {
+        return signatureTemplate;
+    }
+
+    /**
+     * Set the precompiled parts of the signature for the signing certificate. The BinarySecurityToken
+     * and key identifiers are created from the encoded values of the template. The certificates of the
+     * user are not looked up if the template was created for the alias of the user. Signing fails if
+     * the template is not for the signing certificate, i.e. the certificate of the user or the one set
+     * with setX509Certificate.
+     */
+    public void setSignatureTemplate(WSSecSignatureTemplate signatureTemplate) {
+        this.signatureTemplate = signatureTemplate;
+    }
+
     public String getKeyInfoUri() {
         return keyInfoUri;
     }
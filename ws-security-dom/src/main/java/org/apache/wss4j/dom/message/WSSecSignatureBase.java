@@ -23,7 +23,10 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.security.auth.callback.Callback;
 import javax.xml.crypto.XMLStructure;
@@ -48,6 +51,7 @@ import org.apache.wss4j.dom.transform.AttachmentTransformParameterSpec;
 import org.apache.wss4j.dom.transform.STRTransform;
 import org.apache.wss4j.dom.util.SignatureUtils;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.wss4j.dom.util.XMLSignatureFactoryRegistry;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -91,7 +95,7 @@ public class WSSecSignatureBase extends WSSecBase {
     ) throws WSSecurityException {
         DigestMethod digestMethod;
         try {
-            digestMethod = signatureFactory.newDigestMethod(digestAlgo, null);
+            digestMethod = XMLSignatureFactoryRegistry.getDigestMethod(signatureFactory, digestAlgo);
         } catch (Exception ex) {
             LOG.error("", ex);
             throw new WSSecurityException(
@@ -103,6 +107,9 @@ public class WSSecSignatureBase extends WSSecBase {
         //are processed.
         List<javax.xml.crypto.dsig.Reference> attachmentReferenceList = null;
         List<javax.xml.crypto.dsig.Reference> referenceList = new ArrayList<>();
+        Set<String> xopURIs = new LinkedHashSet<>();
+        boolean allAttachmentsSigned = false;
+        Set<String> signedAttachmentURIs = new HashSet<>();
 
         for (WSEncryptionPart encPart : references) {
             String idToSign = encPart.getId();
@@ -114,9 +121,23 @@ public class WSSecSignatureBase extends WSSecBase {
             // names: "STRTransform": Setup the ds:Reference to use STR Transform
             //
             try {
-                if ("cid:Attachments".equals(idToSign) && attachmentReferenceList == null) {
-                    attachmentReferenceList =
-                        addAttachmentReferences(encPart, digestMethod, signatureFactory);
+                // "cid:Attachments" signs all attachments, "cid:<id>" signs the attachment with that id
+                if (idToSign != null && idToSign.startsWith("cid:")) {
+                    if ("cid:Attachments".equals(idToSign)) {
+                        if (allAttachmentsSigned) {
+                            continue;
+                        }
+                        allAttachmentsSigned = true;
+                    }
+                    if (attachmentReferenceList == null) {
+                        attachmentReferenceList = new ArrayList<>();
+                    }
+                    for (javax.xml.crypto.dsig.Reference reference
+                        : addAttachmentReferences(encPart, digestMethod, signatureFactory)) {
+                        if (signedAttachmentURIs.add(reference.getURI())) {
+                            attachmentReferenceList.add(reference);
+                        }
+                    }
                     continue;
                 }
                 if (idToSign != null) {
@@ -152,6 +173,7 @@ public class WSSecSignatureBase extends WSSecBase {
                     }
                     if (element != null) {
                         cloneElement(element);
+                        addXopURIs(element, xopURIs);
 
                         wsDocInfo.addTokenElement(element, false);
                     } else if (!encPart.isRequired()) {
@@ -190,6 +212,7 @@ public class WSSecSignatureBase extends WSSecBase {
                         String wsuId = setWsuId(elementToSign);
 
                         cloneElement(elementToSign);
+                        addXopURIs(elementToSign, xopURIs);
 
                         TransformParameterSpec transformSpec = null;
                         if (addInclusivePrefixes) {
@@ -223,6 +246,19 @@ public class WSSecSignatureBase extends WSSecBase {
             }
         }
 
+        //the attachments referred to by xop:Include Elements are signed as SwA attachments, unless
+        //all attachments are signed anyway, or the attachment is signed as an explicit "cid:" part
+        if (!allAttachmentsSigned) {
+            for (String xopURI : xopURIs) {
+                if (signedAttachmentURIs.add(xopURI)) {
+                    if (attachmentReferenceList == null) {
+                        attachmentReferenceList = new ArrayList<>(xopURIs.size());
+                    }
+                    attachmentReferenceList.add(addXopAttachmentReference(xopURI, digestMethod, signatureFactory));
+                }
+            }
+        }
+
         //append attachment references now
         if (attachmentReferenceList != null) {
             referenceList.addAll(attachmentReferenceList);
@@ -231,7 +267,7 @@ public class WSSecSignatureBase extends WSSecBase {
     }
 
     private void cloneElement(Element element) throws WSSecurityException {
-        if (expandXopInclude) {
+        if (expandXopInclude && !streamXopAttachments) {
             // Look for xop:Include Nodes
             List<Element> includeElements =
                 XMLUtils.findElements(element.getFirstChild(), "Include", WSConstants.XOP_NS);
@@ -248,6 +284,59 @@ public class WSSecSignatureBase extends WSSecBase {
         }
     }
 
+    /**
+     * Add the URIs of the attachments referred to by xop:Include Elements in the given Element, if
+     * these attachments are to be kept out-of-line
+     */
+    private void addXopURIs(Element element, Set<String> xopURIs) {
+        if (streamXopAttachments) {
+            List<Element> includeElements =
+                XMLUtils.findElements(element.getFirstChild(), "Include", WSConstants.XOP_NS);
+            for (Element includeElement : includeElements) {
+                String xopURI = includeElement.getAttributeNS(null, "href");
+                if (xopURI.startsWith("cid:")) {
+                    xopURIs.add(xopURI);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a Reference to the attachment referred to by the given xop:Include URI. The attachment
+     * is streamed through the digest when the Signature is computed.
+     */
+    private javax.xml.crypto.dsig.Reference addXopAttachmentReference(
+        String xopURI,
+        DigestMethod digestMethod,
+        XMLSignatureFactory signatureFactory
+    ) throws WSSecurityException {
+
+        if (attachmentCallbackHandler == null) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE,
+                "empty", new Object[] {"no attachment callbackhandler supplied"}
+            );
+        }
+
+        String id = AttachmentUtils.getAttachmentId(xopURI);
+        AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
+        attachmentRequestCallback.setAttachmentId(id);
+        try {
+            attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+
+        List<Attachment> attachments = attachmentRequestCallback.getAttachments();
+        if (attachments == null || attachments.isEmpty() || !id.equals(attachments.get(0).getId())) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE,
+                "empty", new Object[] {"Attachment not found: " + xopURI}
+            );
+        }
+        return createAttachmentReference(attachments.get(0), "Content", digestMethod, signatureFactory);
+    }
+
     private List<javax.xml.crypto.dsig.Reference> addAttachmentReferences(
         WSEncryptionPart encPart,
         DigestMethod digestMethod,
@@ -275,37 +364,45 @@ public class WSSecSignatureBase extends WSSecBase {
         List<javax.xml.crypto.dsig.Reference> attachmentReferenceList = new ArrayList<>();
         if (attachmentRequestCallback.getAttachments() != null) {
             for (Attachment attachment : attachmentRequestCallback.getAttachments()) {
-                try {
-                    List<Transform> transforms = new ArrayList<>();
-
-                    AttachmentTransformParameterSpec attachmentTransformParameterSpec =
-                        new AttachmentTransformParameterSpec(
-                            attachmentCallbackHandler, attachment
-                        );
+                attachmentReferenceList.add(
+                    createAttachmentReference(attachment, encPart.getEncModifier(), digestMethod, signatureFactory)
+                );
+            }
+        }
 
-                    String attachmentSignatureTransform = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
-                    if ("Element".equals(encPart.getEncModifier())) {
-                        attachmentSignatureTransform = WSConstants.SWA_ATTACHMENT_COMPLETE_SIG_TRANS;
-                    }
+        return attachmentReferenceList;
+    }
 
-                    transforms.add(
-                        signatureFactory.newTransform(
-                            attachmentSignatureTransform, attachmentTransformParameterSpec)
-                        );
+    private javax.xml.crypto.dsig.Reference createAttachmentReference(
+        Attachment attachment,
+        String encModifier,
+        DigestMethod digestMethod,
+        XMLSignatureFactory signatureFactory
+    ) throws WSSecurityException {
+        try {
+            List<Transform> transforms = new ArrayList<>();
 
-                    javax.xml.crypto.dsig.Reference reference =
-                        signatureFactory.newReference(
-                            "cid:" + attachment.getId(), digestMethod, transforms, null, null
-                        );
+            AttachmentTransformParameterSpec attachmentTransformParameterSpec =
+                new AttachmentTransformParameterSpec(
+                    attachmentCallbackHandler, attachment
+                );
 
-                    attachmentReferenceList.add(reference);
-                } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException e) {
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
-                }
+            String attachmentSignatureTransform = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
+            if ("Element".equals(encModifier)) {
+                attachmentSignatureTransform = WSConstants.SWA_ATTACHMENT_COMPLETE_SIG_TRANS;
             }
-        }
 
-        return attachmentReferenceList;
+            transforms.add(
+                signatureFactory.newTransform(
+                    attachmentSignatureTransform, attachmentTransformParameterSpec)
+                );
+
+            return signatureFactory.newReference(
+                "cid:" + attachment.getId(), digestMethod, transforms, null, null
+            );
+        } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
     }
 
     /**
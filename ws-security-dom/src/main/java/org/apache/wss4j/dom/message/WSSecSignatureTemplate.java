@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.message;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.xml.security.utils.XMLUtils;
+
+/**
+ * The parts of a Signature that only depend on the signing certificate, and so are the same for every
+ * message signed with it: the certificates, their encoded forms, the values of the key identifiers and
+ * the default signature algorithm. A template is immutable, and can be shared by the WSSecSignature
+ * instances of an endpoint via <code>WSSecSignature.setSignatureTemplate()</code>, so that only the
+ * Ids, digests and signature value are computed for each message.
+ */
+public class WSSecSignatureTemplate {
+
+    private final String alias;
+    private final X509Certificate[] certificates;
+    private final String signatureAlgorithm;
+    private final byte[] certificateBytes;
+    private final byte[] pkiPathBytes;
+    private final String encodedCertificate;
+    private final String encodedPKIPath;
+    private final String thumbprint;
+    private final String subjectKeyIdentifier;
+
+    /**
+     * Create a template for the certificates of the given alias
+     * @param crypto The Crypto instance to load the certificates from
+     * @param alias The alias of the signing key
+     * @throws WSSecurityException
+     */
+    public WSSecSignatureTemplate(Crypto crypto, String alias) throws WSSecurityException {
+        this(crypto, getCertificates(crypto, alias), alias);
+    }
+
+    /**
+     * Create a template for the given certificates
+     * @param crypto The Crypto instance used to encode the certificates
+     * @param certificates The signing certificate, followed by its issuers
+     * @throws WSSecurityException
+     */
+    public WSSecSignatureTemplate(Crypto crypto, X509Certificate[] certificates) throws WSSecurityException {
+        this(crypto, certificates, null);
+    }
+
+    private WSSecSignatureTemplate(
+        Crypto crypto, X509Certificate[] certificates, String alias
+    ) throws WSSecurityException {
+        if (certificates == null || certificates.length == 0 || certificates[0] == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noCert");
+        }
+        this.alias = alias;
+        this.certificates = certificates.clone();
+        X509Certificate certificate = certificates[0];
+        signatureAlgorithm = WSSecSignature.getDefaultSignatureAlgorithm(certificate);
+
+        try {
+            certificateBytes = certificate.getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+            );
+        }
+        pkiPathBytes = crypto.getBytesFromCertificates(this.certificates);
+        encodedCertificate = XMLUtils.encodeToString(certificateBytes);
+        encodedPKIPath = XMLUtils.encodeToString(pkiPathBytes);
+        thumbprint = XMLUtils.encodeToString(KeyUtils.generateDigest(certificateBytes));
+
+        // As per the 1.1 specification, SKI can only be used for a V3 certificate
+        if (certificate.getVersion() == 3) {
+            subjectKeyIdentifier =
+                XMLUtils.encodeToString(crypto.getSKIBytesFromCert(certificate));
+        } else {
+            subjectKeyIdentifier = null;
+        }
+    }
+
+    private static X509Certificate[] getCertificates(Crypto crypto, String alias) throws WSSecurityException {
+        if (crypto == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noSigCryptoFile");
+        }
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        if (certs == null || certs.length <= 0) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE,
+                "noUserCertsFound",
+                new Object[] {alias, "signature"});
+        }
+        return certs;
+    }
+
+    /**
+     * Get the alias the certificates were loaded for, or null if the template was created for
+     * the given certificates
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * Get the signing certificate, followed by its issuers
+     */
+    public X509Certificate[] getCertificates() {
+        return certificates.clone();
+    }
+
+    /**
+     * Get the signature algorithm detected from the public key of the signing certificate
+     */
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * Get the DER encoded signing certificate
+     */
+    public byte[] getCertificateBytes() {
+        return certificateBytes.clone();
+    }
+
+    /**
+     * Get the certificates encoded as a PkiPath
+     */
+    public byte[] getPKIPathBytes() {
+        return pkiPathBytes.clone();
+    }
+
+    /**
+     * Get the base64 encoded signing certificate
+     */
+    public String getEncodedCertificate() {
+        return encodedCertificate;
+    }
+
+    /**
+     * Get the base64 encoded PkiPath of the certificates
+     */
+    public String getEncodedPKIPath() {
+        return encodedPKIPath;
+    }
+
+    /**
+     * Get the base64 encoded SHA-1 thumbprint of the signing certificate
+     */
+    public String getThumbprint() {
+        return thumbprint;
+    }
+
+    /**
+     * Get the base64 encoded Subject Key Identifier of the signing certificate, or null if it is
+     * not a V3 certificate
+     */
+    public String getSubjectKeyIdentifier() {
+        return subjectKeyIdentifier;
+    }
+}
@@ -30,6 +30,7 @@ import javax.xml.namespace.QName;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
+import org.apache.wss4j.common.cache.SecurityContextSession;
 import org.apache.wss4j.common.derivedKey.ConversationConstants;
 import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
 import org.apache.wss4j.common.principal.WSDerivedKeyTokenPrincipal;
@@ -576,6 +577,24 @@ public class DerivedKeyToken {
         }
     }
 
+    /**
+     * Derive a key from this DerivedKeyToken instance, using the secret of the given
+     * SecureConversation session. The key is memoized in the session.
+     * @param length
+     * @param session
+     * @throws WSSecurityException
+     */
+    public byte[] deriveKey(int length, SecurityContextSession session) throws WSSecurityException {
+        try {
+            byte[] nonce = org.apache.xml.security.utils.XMLUtils.decode(getNonce());
+            return session.deriveKey(getAlgorithm(), getLabel(), length, nonce, getOffset());
+        } catch (Exception e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e
+            );
+        }
+    }
+
     @Override
     public int hashCode() {
         int result = 17;
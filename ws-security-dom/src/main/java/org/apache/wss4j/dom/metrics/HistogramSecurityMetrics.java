@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.namespace.QName;
+
+/**
+ * A simple in-memory SecurityMetrics implementation, that keeps a Histogram of the recorded values
+ * per metric name. The names are "processor:" or "validator:" followed by the QName of the token
+ * (for example "processor:{http://www.w3.org/2000/09/xmldsig#}Signature"), as well as the fixed names
+ * below. Durations are recorded in nanoseconds.
+ */
+public class HistogramSecurityMetrics implements SecurityMetrics {
+
+    public static final String SECURITY_HEADER = "securityHeader";
+    public static final String SECURITY_HEADER_FAILED = "securityHeaderFailed";
+    public static final String SIGNATURE_VERIFICATION = "signatureVerification";
+    public static final String SIGNATURE_REFERENCES = "signatureReferences";
+    public static final String CANONICALIZED_BYTES = "canonicalizedBytes";
+
+    private static final String PROCESSOR_PREFIX = "processor:";
+    private static final String VALIDATOR_PREFIX = "validator:";
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void processorCompleted(QName tokenName, long durationNanos) {
+        getOrCreateHistogram(PROCESSOR_PREFIX + tokenName).record(durationNanos);
+    }
+
+    @Override
+    public void validatorCompleted(QName tokenName, long durationNanos) {
+        getOrCreateHistogram(VALIDATOR_PREFIX + tokenName).record(durationNanos);
+    }
+
+    @Override
+    public void signatureVerified(int references, long canonicalizedBytes, long durationNanos) {
+        getOrCreateHistogram(SIGNATURE_VERIFICATION).record(durationNanos);
+        getOrCreateHistogram(SIGNATURE_REFERENCES).record(references);
+        getOrCreateHistogram(CANONICALIZED_BYTES).record(canonicalizedBytes);
+    }
+
+    @Override
+    public void securityHeaderCompleted(SecurityHeaderMetrics metrics) {
+        String name = metrics.isSuccessful() ? SECURITY_HEADER : SECURITY_HEADER_FAILED;
+        getOrCreateHistogram(name).record(metrics.getDurationNanos());
+    }
+
+    /**
+     * Get the Histogram for the given name, or null if nothing was recorded for it
+     */
+    public Histogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    public Histogram getProcessorHistogram(QName tokenName) {
+        return histograms.get(PROCESSOR_PREFIX + tokenName);
+    }
+
+    public Histogram getValidatorHistogram(QName tokenName) {
+        return histograms.get(VALIDATOR_PREFIX + tokenName);
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    public void clear() {
+        histograms.clear();
+    }
+
+    private Histogram getOrCreateHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(name, k -> new Histogram());
+        }
+        return histogram;
+    }
+
+    /**
+     * A lock-free histogram of non-negative values, with one bucket per power of two. Bucket i holds
+     * the values v with 2^(i-1) <= v < 2^i (bucket 0 holds 0), so percentiles are accurate to a
+     * factor of two, which is enough to tell where the time goes.
+     */
+    public static final class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+        public void record(long value) {
+            long v = Math.max(value, 0L);
+            buckets.incrementAndGet(Math.min(BUCKETS - Long.numberOfLeadingZeros(v), BUCKETS - 1));
+            count.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long c = getCount();
+            return c == 0 ? 0.0 : (double) getSum() / c;
+        }
+
+        /**
+         * Get an upper bound for the given percentile (between 0 and 100) of the recorded values.
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0.0 || percentile > 100.0) {
+                throw new IllegalArgumentException("The percentile must be between 0 and 100");
+            }
+            long total = 0;
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.min(i == 0 ? 0L : (1L << i) - 1, getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+}
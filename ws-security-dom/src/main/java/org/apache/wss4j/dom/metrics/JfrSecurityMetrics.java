@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.metrics;
+
+import javax.xml.namespace.QName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A SecurityMetrics implementation that emits Java Flight Recorder events. The events are only created
+ * while a recording is running (for example one started with "-XX:StartFlightRecording"), and can be
+ * disabled per event type in the recording settings. As the events are emitted once a phase has
+ * finished, the time taken is given by the "processingTime" field rather than by the duration of
+ * the event.
+ */
+public class JfrSecurityMetrics implements SecurityMetrics {
+
+    @Override
+    public void processorCompleted(QName tokenName, long durationNanos) {
+        ProcessorEvent event = new ProcessorEvent();
+        if (event.isEnabled()) {
+            event.token = tokenName.toString();
+            event.processingTime = durationNanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void validatorCompleted(QName tokenName, long durationNanos) {
+        ValidatorEvent event = new ValidatorEvent();
+        if (event.isEnabled()) {
+            event.token = tokenName.toString();
+            event.processingTime = durationNanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void signatureVerified(int references, long canonicalizedBytes, long durationNanos) {
+        SignatureEvent event = new SignatureEvent();
+        if (event.isEnabled()) {
+            event.references = references;
+            event.canonicalizedBytes = canonicalizedBytes;
+            event.processingTime = durationNanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void securityHeaderCompleted(SecurityHeaderMetrics metrics) {
+        SecurityHeaderEvent event = new SecurityHeaderEvent();
+        if (event.isEnabled()) {
+            event.successful = metrics.isSuccessful();
+            event.signatures = metrics.getSignatureCount();
+            event.references = metrics.getReferenceCount();
+            event.canonicalizedBytes = metrics.getCanonicalizedBytes();
+            event.processingTime = metrics.getDurationNanos();
+            event.commit();
+        }
+    }
+
+    @Name("org.apache.wss4j.Processor")
+    @Label("WSS4J Processor")
+    @Description("The processing of a token of a security header")
+    @Category({"Apache WSS4J"})
+    @StackTrace(false)
+    static class ProcessorEvent extends Event {
+        @Label("Token")
+        String token;
+
+        @Label("Processing Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long processingTime;
+    }
+
+    @Name("org.apache.wss4j.Validator")
+    @Label("WSS4J Validator")
+    @Description("The validation of a credential extracted from a token of a security header")
+    @Category({"Apache WSS4J"})
+    @StackTrace(false)
+    static class ValidatorEvent extends Event {
+        @Label("Token")
+        String token;
+
+        @Label("Processing Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long processingTime;
+    }
+
+    @Name("org.apache.wss4j.Signature")
+    @Label("WSS4J Signature Verification")
+    @Description("The verification of the References and the SignatureValue of an XML Signature")
+    @Category({"Apache WSS4J"})
+    @StackTrace(false)
+    static class SignatureEvent extends Event {
+        @Label("References")
+        int references;
+
+        @Label("Canonicalized Bytes")
+        @DataAmount
+        long canonicalizedBytes;
+
+        @Label("Processing Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long processingTime;
+    }
+
+    @Name("org.apache.wss4j.SecurityHeader")
+    @Label("WSS4J Security Header")
+    @Description("The processing of an inbound security header")
+    @Category({"Apache WSS4J"})
+    @StackTrace(false)
+    static class SecurityHeaderEvent extends Event {
+        @Label("Successful")
+        boolean successful;
+
+        @Label("Signatures")
+        long signatures;
+
+        @Label("References")
+        long references;
+
+        @Label("Canonicalized Bytes")
+        @DataAmount
+        long canonicalizedBytes;
+
+        @Label("Processing Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long processingTime;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.dom.validate.Validator;
+
+/**
+ * The metrics collected while processing a single security header. An instance is created by the
+ * WSSecurityEngine for each message when a SecurityMetrics implementation is configured, and is
+ * available to Processors via RequestData#getSecurityHeaderMetrics. Each recorded value is aggregated
+ * here and passed on to the SecurityMetrics implementation.
+ *
+ * This class is thread-safe, as tokens may be processed on the header processing Executor.
+ */
+public class SecurityHeaderMetrics {
+
+    private final SecurityMetrics securityMetrics;
+    private final long startTime = System.nanoTime();
+    private final Map<QName, Timing> processorTimings = new ConcurrentHashMap<>();
+    private final Map<QName, Timing> validatorTimings = new ConcurrentHashMap<>();
+    private final LongAdder signatures = new LongAdder();
+    private final LongAdder references = new LongAdder();
+    private final LongAdder canonicalizedBytes = new LongAdder();
+    private final LongAdder signatureNanos = new LongAdder();
+    private volatile long durationNanos = -1L;
+    private volatile boolean successful;
+
+    public SecurityHeaderMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics;
+    }
+
+    /**
+     * Record the time taken by a Processor to process a token.
+     */
+    public void recordProcessor(QName tokenName, long nanos) {
+        processorTimings.computeIfAbsent(tokenName, k -> new Timing()).add(nanos);
+        securityMetrics.processorCompleted(tokenName, nanos);
+    }
+
+    /**
+     * Record the time taken by a Validator to validate a credential.
+     */
+    public void recordValidator(QName tokenName, long nanos) {
+        validatorTimings.computeIfAbsent(tokenName, k -> new Timing()).add(nanos);
+        securityMetrics.validatorCompleted(tokenName, nanos);
+    }
+
+    /**
+     * Record the verification of an XML Signature.
+     */
+    public void recordSignature(int referenceCount, long bytes, long nanos) {
+        signatures.increment();
+        references.add(referenceCount);
+        canonicalizedBytes.add(bytes);
+        signatureNanos.add(nanos);
+        securityMetrics.signatureVerified(referenceCount, bytes, nanos);
+    }
+
+    /**
+     * Return a Validator that records the time taken by the given Validator
+     */
+    public Validator timeValidator(QName tokenName, Validator validator) {
+        if (validator == null || validator instanceof TimedValidator) {
+            return validator;
+        }
+        return new TimedValidator(tokenName, validator, this);
+    }
+
+    /**
+     * Called by the WSSecurityEngine when the processing of the security header has finished.
+     */
+    public void complete(boolean success) {
+        durationNanos = System.nanoTime() - startTime;
+        successful = success;
+        securityMetrics.securityHeaderCompleted(this);
+    }
+
+    /**
+     * The time taken per Processor, keyed by the QName of the processed token
+     */
+    public Map<QName, Timing> getProcessorTimings() {
+        return Collections.unmodifiableMap(processorTimings);
+    }
+
+    /**
+     * The time taken per Validator, keyed by the QName the Validator was retrieved for
+     */
+    public Map<QName, Timing> getValidatorTimings() {
+        return Collections.unmodifiableMap(validatorTimings);
+    }
+
+    public long getSignatureCount() {
+        return signatures.sum();
+    }
+
+    public long getReferenceCount() {
+        return references.sum();
+    }
+
+    public long getCanonicalizedBytes() {
+        return canonicalizedBytes.sum();
+    }
+
+    public long getSignatureVerificationNanos() {
+        return signatureNanos.sum();
+    }
+
+    /**
+     * The time taken to process the security header, or -1 if the processing has not finished yet
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * The number of invocations and the total time taken for a Processor or Validator
+     */
+    public static final class Timing {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+    }
+}
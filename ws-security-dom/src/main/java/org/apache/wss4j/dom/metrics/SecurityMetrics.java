@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.metrics;
+
+import javax.xml.namespace.QName;
+
+/**
+ * An SPI to record metrics about the processing of inbound security headers by the DOM engine. An
+ * implementation is set on the RequestData (see RequestData#setSecurityMetrics). When no implementation is
+ * set (the default), the engine does not take any timings.
+ *
+ * All durations are in nanoseconds. The methods may be called concurrently, from the thread that processes
+ * the security header as well as from the threads of the header processing Executor, and so implementations
+ * must be thread-safe. They should also be cheap, as they are called on the processing path.
+ */
+public interface SecurityMetrics {
+
+    /**
+     * A Processor has processed a token of the security header. In pipelined mode, this is the time
+     * taken on the thread that processes the security header.
+     * @param tokenName the QName of the processed token
+     * @param durationNanos the time taken by the Processor, including the Validator
+     */
+    default void processorCompleted(QName tokenName, long durationNanos) {
+        // Do nothing
+    }
+
+    /**
+     * A Validator has validated the credential extracted from a token.
+     * @param tokenName the QName the Validator was retrieved for
+     * @param durationNanos the time taken by the Validator
+     */
+    default void validatorCompleted(QName tokenName, long durationNanos) {
+        // Do nothing
+    }
+
+    /**
+     * An XML Signature has been verified.
+     * @param references the number of References of the Signature
+     * @param canonicalizedBytes the number of bytes digested over all of the References, plus the
+     *                           bytes of the canonicalized SignedInfo
+     * @param durationNanos the time taken to verify the References and the SignatureValue
+     */
+    default void signatureVerified(int references, long canonicalizedBytes, long durationNanos) {
+        // Do nothing
+    }
+
+    /**
+     * The processing of a security header has finished, successfully or not.
+     * @param metrics the metrics collected for the security header
+     */
+    default void securityHeaderCompleted(SecurityHeaderMetrics metrics) {
+        // Do nothing
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.metrics;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.validate.Credential;
+import org.apache.wss4j.dom.validate.Validator;
+
+/**
+ * A Validator that records the time taken by the Validator it delegates to.
+ */
+final class TimedValidator implements Validator {
+
+    private final QName tokenName;
+    private final Validator delegate;
+    private final SecurityHeaderMetrics metrics;
+
+    TimedValidator(QName tokenName, Validator delegate, SecurityHeaderMetrics metrics) {
+        this.tokenName = tokenName;
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Credential validate(Credential credential, RequestData data) throws WSSecurityException {
+        long start = System.nanoTime();
+        try {
+            return delegate.validate(credential, data);
+        } finally {
+            metrics.recordValidator(tokenName, System.nanoTime() - start);
+        }
+    }
+
+}
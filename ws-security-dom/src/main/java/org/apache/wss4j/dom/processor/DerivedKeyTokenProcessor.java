@@ -25,6 +25,7 @@ import java.util.List;
 import org.w3c.dom.Element;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.common.cache.SecurityContextSession;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -58,6 +59,7 @@ public class DerivedKeyTokenProcessor implements Processor {
         }
 
         byte[] secret = null;
+        SecurityContextSession session = null;
         Element secRefElement = dkt.getSecurityTokenReferenceElement();
         if (secRefElement != null) {
             STRParserParameters parameters = new STRParserParameters();
@@ -67,6 +69,7 @@ public class DerivedKeyTokenProcessor implements Processor {
             STRParser strParser = new DerivedKeyTokenSTRParser();
             STRParserResult parserResult = strParser.parseSecurityTokenReference(parameters);
             secret = parserResult.getSecretKey();
+            session = parserResult.getSecurityContextSession();
         } else {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, "noReference");
         }
@@ -77,7 +80,13 @@ public class DerivedKeyTokenProcessor implements Processor {
                                           new Object[] {"Missing wsc:Nonce value"});
         }
         int length = dkt.getLength();
-        byte[] keyBytes = dkt.deriveKey(length, secret);
+        byte[] keyBytes = null;
+        if (session != null) {
+            // Use the keys memoized for the SecureConversation session
+            keyBytes = dkt.deriveKey(length, session);
+        } else {
+            keyBytes = dkt.deriveKey(length, secret);
+        }
         WSSecurityEngineResult result =
             new WSSecurityEngineResult(WSConstants.DKT, null, keyBytes, null);
         data.getWsDocInfo().addTokenElement(elem);
@@ -25,8 +25,13 @@ import java.io.InputStream;
 import java.security.*;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -68,10 +73,11 @@ import org.apache.wss4j.dom.util.EncryptionUtils;
 import org.apache.wss4j.dom.util.SignatureUtils;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.wss4j.dom.util.X509Util;
+import org.apache.wss4j.dom.util.XMLSignatureFactoryRegistry;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.XMLCipher;
 
-public class EncryptedKeyProcessor implements Processor {
+public class EncryptedKeyProcessor implements PipelinedProcessor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(EncryptedKeyProcessor.class);
 
@@ -96,6 +102,28 @@ public class EncryptedKeyProcessor implements Processor {
         Element elem,
         RequestData data,
         AlgorithmSuite algorithmSuite
+    ) throws WSSecurityException {
+        return startToken(elem, data, algorithmSuite, null).complete();
+    }
+
+    public PendingResults startToken(
+        Element elem,
+        RequestData data,
+        Executor executor
+    ) throws WSSecurityException {
+        return startToken(elem, data, data.getAlgorithmSuite(), executor);
+    }
+
+    /**
+     * Start processing the EncryptedKey. If an Executor is supplied, then the (RSA) unwrapping of the
+     * ephemeral key is submitted to it, otherwise it is done on the calling thread. All DOM work, including
+     * the decryption of the referenced EncryptedData elements, is done on the calling thread.
+     */
+    private PendingResults startToken(
+        Element elem,
+        RequestData data,
+        AlgorithmSuite algorithmSuite,
+        Executor executor
     ) throws WSSecurityException {
         LOG.debug("Found encrypted key element");
 
@@ -106,7 +134,7 @@ public class EncryptedKeyProcessor implements Processor {
              if (result != null
                  && WSConstants.ENCR == (Integer)result.get(WSSecurityEngineResult.TAG_ACTION)
              ) {
-                 return Collections.singletonList(result);
+                 return new CompletedResults(Collections.singletonList(result));
              }
         }
 
@@ -195,7 +223,6 @@ public class EncryptedKeyProcessor implements Processor {
         }
 
         byte[] encryptedEphemeralKey = null;
-        byte[] decryptedBytes = null;
         Element refList =
             XMLUtils.getDirectChildElement(elem, "ReferenceList", WSConstants.ENC_NS);
 
@@ -207,46 +234,44 @@ public class EncryptedKeyProcessor implements Processor {
             encryptedEphemeralKey = EncryptionUtils.getDecodedBase64EncodedData(xencCipherValue);
         }
 
+        DeferredEncryptedKey deferredKey =
+            new DeferredEncryptedKey(elem, refList, data, encryptedKeyTransportMethod,
+                                     encryptedEphemeralKey, certs, publicKey, referenceType);
         if (isDHKeyWrap) {
             PrivateKey privateKey = getPrivateKey(data, certs, publicKey);
-            decryptedBytes = getDiffieHellmanDecryptedBytes(data, agreementMethod,
+            deferredKey.decryptedBytes = getDiffieHellmanDecryptedBytes(data, agreementMethod,
                     encryptedKeyTransportMethod, encryptedEphemeralKey, privateKey);
         } else if (symmetricKeyWrap) {
-            decryptedBytes = getSymmetricDecryptedBytes(data, data.getWsDocInfo(), keyInfoChildElement, refList);
+            deferredKey.decryptedBytes =
+                getSymmetricDecryptedBytes(data, data.getWsDocInfo(), keyInfoChildElement, refList);
         } else {
-            PrivateKey privateKey = getPrivateKey(data, certs, publicKey);
-            decryptedBytes = getAsymmetricDecryptedBytes(data, data.getWsDocInfo(), encryptedKeyTransportMethod,
-                                                         encryptedEphemeralKey, refList,
-                                                         elem, privateKey);
+            if (data.getDecCrypto() == null) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noDecCryptoFile");
+            }
+            // Read the OAEP parameters from the DOM here, so that the unwrap itself doesn't touch the DOM
+            OAEPParameterSpec oaepParameterSpec = getOAEPParameterSpec(encryptedKeyTransportMethod, elem);
+            final X509Certificate[] unwrapCerts = certs;
+            final PublicKey unwrapPublicKey = publicKey;
+            final byte[] unwrapBytes = encryptedEphemeralKey;
+            if (executor == null) {
+                deferredKey.decryptedBytes =
+                    getAsymmetricDecryptedBytes(data, encryptedKeyTransportMethod, unwrapBytes,
+                                                oaepParameterSpec, getPrivateKey(data, certs, publicKey));
+            } else {
+                deferredKey.unwrapTask = new FutureTask<>(() ->
+                    getAsymmetricDecryptedBytes(data, encryptedKeyTransportMethod, unwrapBytes, oaepParameterSpec,
+                                                getPrivateKey(data, unwrapCerts, unwrapPublicKey))
+                );
+                try {
+                    executor.execute(deferredKey.unwrapTask);
+                } catch (RejectedExecutionException ex) {
+                    LOG.debug("Executor rejected the key unwrap, running it on the calling thread");
+                    deferredKey.unwrapTask.run();
+                }
+            }
         }
 
-        List<WSDataRef> dataRefs = decryptDataRefs(refList, data.getWsDocInfo(), decryptedBytes, data);
-
-        WSSecurityEngineResult result = new WSSecurityEngineResult(
-                WSConstants.ENCR,
-                decryptedBytes,
-                encryptedEphemeralKey,
-                dataRefs,
-                certs
-            );
-        result.put(
-            WSSecurityEngineResult.TAG_ENCRYPTED_KEY_TRANSPORT_METHOD,
-            encryptedKeyTransportMethod
-        );
-        result.put(WSSecurityEngineResult.TAG_TOKEN_ELEMENT, elem);
-        String tokenId = elem.getAttributeNS(null, "Id");
-        if (tokenId.length() != 0) {
-            result.put(WSSecurityEngineResult.TAG_ID, tokenId);
-        }
-        if (referenceType != null) {
-            result.put(WSSecurityEngineResult.TAG_X509_REFERENCE_TYPE, referenceType);
-        }
-        if (publicKey != null) {
-            result.put(WSSecurityEngineResult.TAG_PUBLIC_KEY, publicKey);
-        }
-        data.getWsDocInfo().addResult(result);
-        data.getWsDocInfo().addTokenElement(elem);
-        return Collections.singletonList(result);
+        return deferredKey;
     }
 
     /**
@@ -276,18 +301,7 @@ public class EncryptedKeyProcessor implements Processor {
             X509Certificate[] certs = getCertificatesFromX509Data(keyValueElement, data);
             builder.certificates(certs);
             if (certs == null || certs.length == 0) {
-                XMLSignatureFactory signatureFactory;
-                if (provider == null) {
-                    // Try to install the Santuario Provider - fall back to the JDK provider if this does
-                    // not work
-                    try {
-                        signatureFactory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
-                    } catch (NoSuchProviderException ex) {
-                        signatureFactory = XMLSignatureFactory.getInstance("DOM");
-                    }
-                } else {
-                    signatureFactory = XMLSignatureFactory.getInstance("DOM", provider);
-                }
+                XMLSignatureFactory signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(provider);
 
                 PublicKey publicKey = X509Util.parseKeyValue((Element) keyValueElement.getParentNode(),
                         signatureFactory);
@@ -327,32 +341,42 @@ public class EncryptedKeyProcessor implements Processor {
         return X509Util.getSecretKey(keyInfoChildElement, algorithmURI, data.getCallbackHandler());
     }
 
-    private static byte[] getAsymmetricDecryptedBytes(
-        RequestData data,
-        WSDocInfo wsDocInfo,
+    private static OAEPParameterSpec getOAEPParameterSpec(
         String encryptedKeyTransportMethod,
-        byte[] encryptedEphemeralKey,
-        Element refList,
-        Element encryptedKeyElement,
-        PrivateKey privateKey
+        Element encryptedKeyElement
     ) throws WSSecurityException {
-        if (data.getDecCrypto() == null) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noDecCryptoFile");
-        }
-        String cryptoProvider = data.getDecCrypto().getCryptoProvider();
-        Cipher cipher = KeyUtils.getCipherInstance(encryptedKeyTransportMethod, cryptoProvider);
-        try {
-            OAEPParameterSpec oaepParameterSpec = null;
-            if (WSConstants.KEYTRANSPORT_RSAOAEP.equals(encryptedKeyTransportMethod)
-                || WSConstants.KEYTRANSPORT_RSAOAEP_XENC11.equals(encryptedKeyTransportMethod)) {
+        if (WSConstants.KEYTRANSPORT_RSAOAEP.equals(encryptedKeyTransportMethod)
+            || WSConstants.KEYTRANSPORT_RSAOAEP_XENC11.equals(encryptedKeyTransportMethod)) {
+            try {
                 // Get the DigestMethod if it exists
                 String digestAlgorithm = EncryptionUtils.getDigestAlgorithm(encryptedKeyElement);
                 String mgfAlgorithm = EncryptionUtils.getMGFAlgorithm(encryptedKeyElement);
                 byte[] pSourceBytes = EncryptionUtils.getPSource(encryptedKeyElement);
-                oaepParameterSpec = XMLCipherUtil.constructOAEPParameters(encryptedKeyTransportMethod,
+                return XMLCipherUtil.constructOAEPParameters(encryptedKeyTransportMethod,
                         digestAlgorithm, mgfAlgorithm, pSourceBytes);
+            } catch (Exception ex) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
             }
+        }
+        return null;
+    }
 
+    /**
+     * Unwrap the ephemeral key. This method does not access the DOM, so that it can be called from
+     * another thread in pipelined mode.
+     * @return the unwrapped key bytes, or null if the unwrap failed, in which case the caller must fall
+     *         back to a random key
+     */
+    private static byte[] getAsymmetricDecryptedBytes(
+        RequestData data,
+        String encryptedKeyTransportMethod,
+        byte[] encryptedEphemeralKey,
+        OAEPParameterSpec oaepParameterSpec,
+        PrivateKey privateKey
+    ) throws WSSecurityException {
+        String cryptoProvider = data.getDecCrypto().getCryptoProvider();
+        Cipher cipher = KeyUtils.getCipherInstance(encryptedKeyTransportMethod, cryptoProvider);
+        try {
             if (oaepParameterSpec == null) {
                 cipher.init(Cipher.UNWRAP_MODE, privateKey);
             } else {
@@ -368,7 +392,7 @@ public class EncryptedKeyProcessor implements Processor {
         } catch (IllegalStateException ex) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
         } catch (Exception ex) {
-            return getRandomKey(refList, wsDocInfo);
+            return null;
         }
     }
 
@@ -782,4 +806,135 @@ public class EncryptedKeyProcessor implements Processor {
             }
         }
     }
+
+    /**
+     * The outstanding part of the processing of an EncryptedKey: waiting for the key unwrap (if it was
+     * submitted to an Executor), decrypting the references and building the result.
+     */
+    private final class DeferredEncryptedKey implements PendingResults {
+        private final Element elem;
+        private final Element refList;
+        private final RequestData data;
+        private final String encryptedKeyTransportMethod;
+        private final byte[] encryptedEphemeralKey;
+        private final X509Certificate[] certs;
+        private final PublicKey publicKey;
+        private final STRParser.REFERENCE_TYPE referenceType;
+        private byte[] decryptedBytes;
+        private FutureTask<byte[]> unwrapTask;
+
+        DeferredEncryptedKey(
+            Element elem, Element refList, RequestData data, String encryptedKeyTransportMethod,
+            byte[] encryptedEphemeralKey, X509Certificate[] certs, PublicKey publicKey,
+            STRParser.REFERENCE_TYPE referenceType
+        ) {
+            this.elem = elem;
+            this.refList = refList;
+            this.data = data;
+            this.encryptedKeyTransportMethod = encryptedKeyTransportMethod;
+            this.encryptedEphemeralKey = encryptedEphemeralKey;
+            this.certs = certs;
+            this.publicKey = publicKey;
+            this.referenceType = referenceType;
+        }
+
+        @Override
+        public Collection<String> getDependentIds() {
+            List<String> ids = new ArrayList<>();
+            String tokenId = elem.getAttributeNS(null, "Id");
+            if (tokenId.length() != 0) {
+                ids.add(tokenId);
+            }
+            if (refList != null) {
+                for (Node node = refList.getFirstChild(); node != null; node = node.getNextSibling()) {
+                    if (Node.ELEMENT_NODE == node.getNodeType()
+                        && WSConstants.ENC_NS.equals(node.getNamespaceURI())
+                        && "DataReference".equals(node.getLocalName())) {
+                        ids.add(XMLUtils.getIDFromReference(((Element) node).getAttributeNS(null, "URI")));
+                    }
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public List<WSSecurityEngineResult> complete() throws WSSecurityException {
+            if (unwrapTask != null) {
+                decryptedBytes = awaitUnwrap();
+                if (decryptedBytes == null) {
+                    decryptedBytes = getRandomKey(refList, data.getWsDocInfo());
+                }
+            } else if (decryptedBytes == null) {
+                // The (synchronous) asymmetric unwrap failed
+                decryptedBytes = getRandomKey(refList, data.getWsDocInfo());
+            }
+
+            List<WSDataRef> dataRefs = decryptDataRefs(refList, data.getWsDocInfo(), decryptedBytes, data);
+
+            WSSecurityEngineResult result = new WSSecurityEngineResult(
+                    WSConstants.ENCR,
+                    decryptedBytes,
+                    encryptedEphemeralKey,
+                    dataRefs,
+                    certs
+                );
+            result.put(
+                WSSecurityEngineResult.TAG_ENCRYPTED_KEY_TRANSPORT_METHOD,
+                encryptedKeyTransportMethod
+            );
+            result.put(WSSecurityEngineResult.TAG_TOKEN_ELEMENT, elem);
+            String tokenId = elem.getAttributeNS(null, "Id");
+            if (tokenId.length() != 0) {
+                result.put(WSSecurityEngineResult.TAG_ID, tokenId);
+            }
+            if (referenceType != null) {
+                result.put(WSSecurityEngineResult.TAG_X509_REFERENCE_TYPE, referenceType);
+            }
+            if (publicKey != null) {
+                result.put(WSSecurityEngineResult.TAG_PUBLIC_KEY, publicKey);
+            }
+            data.getWsDocInfo().addResult(result);
+            data.getWsDocInfo().addTokenElement(elem);
+            return Collections.singletonList(result);
+        }
+
+        @Override
+        public void cancel() {
+            if (unwrapTask != null) {
+                unwrapTask.cancel(true);
+            }
+        }
+
+        private byte[] awaitUnwrap() throws WSSecurityException {
+            try {
+                return unwrapTask.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof WSSecurityException) {
+                    throw (WSSecurityException)ex.getCause();
+                }
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
+            }
+        }
+    }
+
+    private static final class CompletedResults implements PendingResults {
+        private final List<WSSecurityEngineResult> results;
+
+        CompletedResults(List<WSSecurityEngineResult> results) {
+            this.results = results;
+        }
+
+        @Override
+        public Collection<String> getDependentIds() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<WSSecurityEngineResult> complete() {
+            return results;
+        }
+    }
 }
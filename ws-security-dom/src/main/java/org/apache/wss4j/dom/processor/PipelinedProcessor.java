@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.processor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.w3c.dom.Element;
+
+/**
+ * A Processor that can split the handling of a token into two stages, for use by the pipelined
+ * mode of the WSSecurityEngine. The first stage runs on the calling thread and does all of the DOM
+ * work needed to start processing the token. Expensive work that does not touch the DOM (for example
+ * an RSA key unwrap) may be submitted to the given Executor. The second stage is run on the calling
+ * thread again, once the engine reaches a token that depends on this one, or the end of the header.
+ */
+public interface PipelinedProcessor extends Processor {
+
+    /**
+     * Start processing the given token.
+     * @param elem the token element
+     * @param request the RequestData associated with the request
+     * @param executor the Executor to use for work that does not touch the DOM
+     * @return a PendingResults object used to complete the processing of the token
+     * @throws WSSecurityException
+     */
+    PendingResults startToken(
+        Element elem,
+        RequestData request,
+        Executor executor
+    ) throws WSSecurityException;
+
+    /**
+     * The outstanding part of the processing of a token.
+     */
+    interface PendingResults {
+
+        /**
+         * Get the (wsu/xenc) Ids of the elements that this token still has to process or produce.
+         * Any token that refers to one of these Ids, or to an element that contains one of them, must
+         * not be processed before {@link #complete()} is called.
+         */
+        Collection<String> getDependentIds();
+
+        /**
+         * Complete the processing of the token. This must be called on the thread that called
+         * {@link PipelinedProcessor#startToken}.
+         * @return the results of processing the token
+         * @throws WSSecurityException
+         */
+        List<WSSecurityEngineResult> complete() throws WSSecurityException;
+
+        /**
+         * Cancel any work of the token that is still outstanding on the Executor, as the processing of
+         * the security header has failed. {@link #complete()} is not called afterwards.
+         */
+        default void cancel() {
+            // No work is outstanding by default
+        }
+    }
+
+}
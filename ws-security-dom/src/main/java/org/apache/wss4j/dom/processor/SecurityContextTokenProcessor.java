@@ -21,6 +21,8 @@ package org.apache.wss4j.dom.processor;
 
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.common.cache.SecurityContextSession;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.XMLUtils;
@@ -70,14 +72,28 @@ public class SecurityContextTokenProcessor implements Processor {
             String id = sct.getID();
             id = XMLUtils.getIDFromReference(id);
 
-            byte[] secret = null;
-            try {
-                secret = getSecret(data.getCallbackHandler(), sct.getIdentifier());
-            } catch (WSSecurityException ex) {
-                secret = getSecret(data.getCallbackHandler(), id);
+            // The secret of a known session is not requested from the CallbackHandler again
+            SecurityContextStore securityContextStore = data.getSecurityContextStore();
+            SecurityContextSession session = null;
+            if (securityContextStore != null) {
+                session = securityContextStore.getSession(sct.getIdentifier());
             }
-            if (secret == null || secret.length == 0) {
-                secret = getSecret(data.getCallbackHandler(), id);
+
+            byte[] secret = null;
+            if (session != null) {
+                secret = session.getSecret();
+            } else {
+                try {
+                    secret = getSecret(data.getCallbackHandler(), sct.getIdentifier());
+                } catch (WSSecurityException ex) {
+                    secret = getSecret(data.getCallbackHandler(), id);
+                }
+                if (secret == null || secret.length == 0) {
+                    secret = getSecret(data.getCallbackHandler(), id);
+                }
+                if (securityContextStore != null && secret != null && secret.length != 0) {
+                    securityContextStore.addSession(sct.getIdentifier(), secret);
+                }
             }
             result.put(WSSecurityEngineResult.TAG_ID, sct.getID());
             result.put(WSSecurityEngineResult.TAG_SECRET, secret);
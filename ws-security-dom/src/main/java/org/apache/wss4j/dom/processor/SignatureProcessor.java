@@ -19,8 +19,9 @@
 
 package org.apache.wss4j.dom.processor;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.Key;
-import java.security.NoSuchProviderException;
 import java.security.Principal;
 import java.security.Provider;
 import java.security.PublicKey;
@@ -68,6 +69,7 @@ import org.apache.wss4j.dom.callback.CallbackLookup;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.Timestamp;
+import org.apache.wss4j.dom.metrics.SecurityHeaderMetrics;
 import org.apache.wss4j.dom.str.STRParser;
 import org.apache.wss4j.dom.str.STRParser.REFERENCE_TYPE;
 import org.apache.wss4j.dom.str.STRParserParameters;
@@ -79,6 +81,7 @@ import org.apache.wss4j.dom.transform.STRTransformUtil;
 import org.apache.wss4j.dom.util.EncryptionUtils;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.wss4j.dom.util.X509Util;
+import org.apache.wss4j.dom.util.XMLSignatureFactoryRegistry;
 import org.apache.wss4j.dom.validate.Credential;
 import org.apache.wss4j.dom.validate.Validator;
 import org.w3c.dom.Document;
@@ -100,17 +103,7 @@ public class SignatureProcessor implements Processor {
     }
 
     private void init(Provider provider) {
-        if (provider == null) {
-            // Try to install the Santuario Provider - fall back to the JDK provider if this does
-            // not work
-            try {
-                signatureFactory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
-            } catch (NoSuchProviderException ex) {
-                signatureFactory = XMLSignatureFactory.getInstance("DOM");
-            }
-        } else {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", provider);
-        }
+        signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(provider);
     }
 
     public List<WSSecurityEngineResult> handleToken(
@@ -378,7 +371,12 @@ public class SignatureProcessor implements Processor {
 
             setElementsOnContext(xmlSignature, (DOMValidateContext)context, data, wsDocInfo);
 
+            SecurityHeaderMetrics metrics = data.getSecurityHeaderMetrics();
+            long start = metrics != null ? System.nanoTime() : 0L;
             boolean signatureOk = xmlSignature.validate(context);
+            if (metrics != null) {
+                recordSignatureMetrics(xmlSignature, metrics, System.nanoTime() - start);
+            }
             if (signatureOk) {
                 return xmlSignature;
             }
@@ -412,6 +410,29 @@ public class SignatureProcessor implements Processor {
         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
     }
 
+    /**
+     * Record the number of References and the number of canonicalized bytes of the verified Signature.
+     * These are available as the digest input of the References and the canonicalized SignedInfo are
+     * cached on the ValidateContext.
+     */
+    private static void recordSignatureMetrics(
+        XMLSignature xmlSignature, SecurityHeaderMetrics metrics, long nanos
+    ) throws IOException {
+        SignedInfo signedInfo = xmlSignature.getSignedInfo();
+        long bytes = 0;
+        InputStream canonicalizedData = signedInfo.getCanonicalizedData();
+        if (canonicalizedData != null) {
+            bytes += canonicalizedData.available();
+        }
+        for (Object reference : signedInfo.getReferences()) {
+            InputStream digestInput = ((Reference)reference).getDigestInputStream();
+            if (digestInput != null) {
+                bytes += digestInput.available();
+            }
+        }
+        metrics.recordSignature(signedInfo.getReferences().size(), bytes, nanos);
+    }
+
     /**
      * Retrieve the Reference elements and set them on the ValidateContext
      * @param xmlSignature the XMLSignature object to get the references from
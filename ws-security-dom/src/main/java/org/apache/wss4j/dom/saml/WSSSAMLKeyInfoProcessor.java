@@ -34,6 +34,7 @@ import org.apache.wss4j.common.principal.WSDerivedKeyTokenPrincipal;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SAMLKeyInfoProcessor;
 import org.apache.wss4j.common.token.SecurityTokenReference;
+import org.apache.wss4j.common.util.Base64Codec;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
@@ -42,7 +43,6 @@ import org.apache.wss4j.dom.str.STRParser;
 import org.apache.wss4j.dom.str.STRParserParameters;
 import org.apache.wss4j.dom.str.STRParserResult;
 import org.apache.wss4j.dom.str.SignatureSTRParser;
-import org.apache.xml.security.utils.XMLUtils;
 
 /**
  * This interface allows the user to plug in custom ways of processing a SAML KeyInfo.
@@ -87,7 +87,7 @@ public class WSSSAMLKeyInfoProcessor implements SAMLKeyInfoProcessor {
                     return new SAMLKeyInfo(secret);
                 } else if (el.equals(BINARY_SECRET) || el.equals(BINARY_SECRET_05_12)) {
                     Text txt = (Text)node.getFirstChild();
-                    return new SAMLKeyInfo(XMLUtils.decode(txt.getData()));
+                    return new SAMLKeyInfo(Base64Codec.decode(txt.getData()));
                 } else if (SecurityTokenReference.STR_QNAME.equals(el)) {
                     STRParserParameters parameters = new STRParserParameters();
                     parameters.setData(data);
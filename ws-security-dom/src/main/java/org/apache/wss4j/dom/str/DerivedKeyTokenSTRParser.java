@@ -23,6 +23,8 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.wss4j.common.cache.SecurityContextSession;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -36,6 +38,7 @@ import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.message.token.SecurityContextToken;
 import org.apache.wss4j.dom.saml.WSSSAMLKeyInfoProcessor;
 
 /**
@@ -100,7 +103,17 @@ public class DerivedKeyTokenSTRParser implements STRParser {
             STRParserUtil.checkEncryptedKeyBSPCompliance(secRef, data.getBSPEnforcer());
             byte[] secretKey = (byte[])result.get(WSSecurityEngineResult.TAG_SECRET);
             parserResult.setSecretKey(secretKey);
-        } else if (action != null && (WSConstants.SCT == action.intValue() || WSConstants.BST == action.intValue())) {
+        } else if (action != null && WSConstants.SCT == action.intValue()) {
+            byte[] secretKey = (byte[])result.get(WSSecurityEngineResult.TAG_SECRET);
+            parserResult.setSecretKey(secretKey);
+            SecurityContextToken sct =
+                (SecurityContextToken)result.get(WSSecurityEngineResult.TAG_SECURITY_CONTEXT_TOKEN);
+            if (sct != null) {
+                parserResult.setSecurityContextSession(
+                    getSecurityContextSession(sct.getIdentifier(), secretKey, data)
+                );
+            }
+        } else if (action != null && WSConstants.BST == action.intValue()) {
             byte[] secretKey = (byte[])result.get(WSSecurityEngineResult.TAG_SECRET);
             parserResult.setSecretKey(secretKey);
         } else if (action != null
@@ -133,6 +146,23 @@ public class DerivedKeyTokenSTRParser implements STRParser {
         RequestData data = parameters.getData();
 
         if (secRef.containsReference()) {
+            // The sessions are stored by the SecurityContextToken identifier, which is referred to by
+            // an absolute URI. A local reference refers to the wsu:Id of a token instead.
+            SecurityContextStore securityContextStore = null;
+            String referenceURI = secRef.getReference().getURI();
+            if (referenceURI != null && !referenceURI.startsWith("#")) {
+                securityContextStore = data.getSecurityContextStore();
+            }
+            SecurityContextSession session = null;
+            if (securityContextStore != null) {
+                session = securityContextStore.getSession(uri);
+            }
+            if (session != null) {
+                parserResult.setSecretKey(session.getSecret());
+                parserResult.setSecurityContextSession(session);
+                return parserResult;
+            }
+
             // Now use the callback and get it
             byte[] secretKey =
                 STRParserUtil.getSecretKeyFromToken(uri, null, WSPasswordCallback.SECURITY_CONTEXT_TOKEN, data);
@@ -142,6 +172,9 @@ public class DerivedKeyTokenSTRParser implements STRParser {
                     new Object[] {uri});
             }
             parserResult.setSecretKey(secretKey);
+            if (securityContextStore != null) {
+                parserResult.setSecurityContextSession(securityContextStore.addSession(uri, secretKey));
+            }
         } else if (secRef.containsKeyIdentifier()) {
             String keyIdentifierValueType = secRef.getKeyIdentifierValueType();
             if (WSConstants.WSS_KRB_KI_VALUE_TYPE.equals(keyIdentifierValueType)) {
@@ -202,4 +235,23 @@ public class DerivedKeyTokenSTRParser implements STRParser {
         return parserResult;
     }
 
+    /**
+     * Get the stored session of a SecurityContextToken, if the session has the given secret
+     */
+    private SecurityContextSession getSecurityContextSession(
+        String identifier,
+        byte[] secretKey,
+        RequestData data
+    ) {
+        SecurityContextStore securityContextStore = data.getSecurityContextStore();
+        if (securityContextStore == null) {
+            return null;
+        }
+        SecurityContextSession session = securityContextStore.getSession(identifier);
+        if (session != null && session.hasSecret(secretKey)) {
+            return session;
+        }
+        return null;
+    }
+
 }
@@ -23,6 +23,7 @@ import java.security.Principal;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 
+import org.apache.wss4j.common.cache.SecurityContextSession;
 import org.apache.wss4j.dom.str.STRParser.REFERENCE_TYPE;
 
 /**
@@ -42,6 +43,8 @@ public class STRParserResult {
 
     private REFERENCE_TYPE referenceType;
 
+    private SecurityContextSession securityContextSession;
+
     /**
      * Get the X509Certificates associated with this SecurityTokenReference
      * @return the X509Certificates associated with this SecurityTokenReference
@@ -97,6 +100,14 @@ public class STRParserResult {
         return referenceType;
     }
 
+    /**
+     * Get the stored SecureConversation session of the referenced SecurityContextToken
+     * @return the stored SecureConversation session, or null if there is none
+     */
+    public SecurityContextSession getSecurityContextSession() {
+        return securityContextSession;
+    }
+
     public void setCerts(X509Certificate[] certs) {
         this.certs = certs;
     }
@@ -121,5 +132,9 @@ public class STRParserResult {
         this.referenceType = referenceType;
     }
 
+    public void setSecurityContextSession(SecurityContextSession securityContextSession) {
+        this.securityContextSession = securityContextSession;
+    }
+
 
 }
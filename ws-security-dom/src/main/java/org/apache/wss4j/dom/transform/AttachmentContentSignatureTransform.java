@@ -25,6 +25,7 @@ import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.CRLFOutputStream;
+import org.apache.wss4j.common.util.ReplayableInputStream;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
@@ -44,7 +45,6 @@ import javax.xml.crypto.dsig.TransformException;
 import javax.xml.crypto.dsig.TransformService;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FilterInputStream;
@@ -163,14 +163,10 @@ public class AttachmentContentSignatureTransform extends TransformService {
     @SuppressWarnings("resource")
     protected Data processAttachment(XMLCryptoContext context, OutputStream os, String attachmentUri,
                                      Attachment attachment) throws TransformException {
-        try {
-            //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage
-            InputStream inputStream = attachment.getSourceStream(); //NOPMD
-            if (!inputStream.markSupported()) {
-                inputStream = new BufferedInputStream(inputStream);
-            }
-            inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-            inputStream = new FilterInputStream(inputStream) {
+        //the attachment content is cached while it is digested, spilling to disk for large attachments
+        try (ReplayableInputStream replayableInputStream =
+                new ReplayableInputStream(attachment.getSourceStream())) {
+            InputStream inputStream = new FilterInputStream(replayableInputStream) {
                 @Override
                 public void close() throws IOException {
                     //I hate stuff which are closing _my_ streams!
@@ -219,15 +215,15 @@ public class AttachmentContentSignatureTransform extends TransformService {
                 }
             }
 
-            //reset the inputStream to be able to reuse it
-            inputStream.reset();
+            //replay the inputStream to be able to reuse it
+            InputStream resultInputStream = replayableInputStream.replay();
 
             //create a new attachment and do the result callback
             final Attachment resultAttachment = new Attachment();
             resultAttachment.setId(attachment.getId());
             resultAttachment.setMimeType(mimeType);
             resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(inputStream);
+            resultAttachment.setSourceStream(resultInputStream);
             attachmentResultCallback(context, resultAttachment);
 
             if (os == null) {
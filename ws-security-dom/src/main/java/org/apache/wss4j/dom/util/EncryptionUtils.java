@@ -547,10 +547,10 @@ public final class EncryptionUtils {
      * @throws WSSecurityException
      */
     public static byte[] getDecodedBase64EncodedData(Element element) throws WSSecurityException {
-        String text = XMLUtils.getElementText(element);
-        if (text == null) {
+        byte[] decodedData = XMLUtils.getDecodedElementText(element);
+        if (decodedData == null) {
             return new byte[0];
         }
-        return org.apache.xml.security.utils.XMLUtils.decode(text);
+        return decodedData;
     }
 }
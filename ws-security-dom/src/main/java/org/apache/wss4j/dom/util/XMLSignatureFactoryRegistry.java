@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.util;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+
+/**
+ * A registry of the JSR-105 "DOM" XMLSignatureFactory and KeyInfoFactory for each Provider, so that
+ * the Provider lookup is not repeated for every message. The DigestMethods created by a registered
+ * XMLSignatureFactory are immutable, and are cached by algorithm.
+ *
+ * JSR-105 does not require an XMLSignatureFactory or KeyInfoFactory to be thread-safe. The factories
+ * of the Apache Santuario ("ApacheXMLDSig") Provider keep no state besides the Provider, and so they
+ * are shared between threads. The factories of any other Provider are only reused by the thread
+ * that created them, which keeps the factories of the Provider it used last.
+ *
+ * SignatureMethods and CanonicalizationMethods are not cached, as the Apache Santuario
+ * implementations keep a Signature or Canonicalizer instance, and so cannot be shared between
+ * threads.
+ */
+public final class XMLSignatureFactoryRegistry {
+
+    private static final int MAX_DIGEST_METHODS = 64;
+    private static final String SHARED_PROVIDER_NAME = "ApacheXMLDSig";
+
+    private static final Object LOCK = new Object();
+    private static volatile Factories defaultFactories;
+    private static volatile Map<Provider, Factories> factories = Collections.emptyMap();
+    private static final ThreadLocal<Factories> THREAD_FACTORIES = new ThreadLocal<>();
+
+    private XMLSignatureFactoryRegistry() {
+        // Complete
+    }
+
+    /**
+     * Get the XMLSignatureFactory of the given Provider. If the Provider is null, the Apache Santuario
+     * Provider is used if it is installed, and the default JDK Provider otherwise.
+     */
+    public static XMLSignatureFactory getSignatureFactory(Provider provider) {
+        return getFactories(provider).signatureFactory;
+    }
+
+    /**
+     * Get the KeyInfoFactory of the given XMLSignatureFactory
+     */
+    public static KeyInfoFactory getKeyInfoFactory(XMLSignatureFactory signatureFactory) {
+        Factories registered = getRegisteredFactories(signatureFactory);
+        if (registered != null) {
+            return registered.keyInfoFactory;
+        }
+        return signatureFactory.getKeyInfoFactory();
+    }
+
+    /**
+     * Get a DigestMethod without parameters for the given algorithm from the given XMLSignatureFactory
+     */
+    public static DigestMethod getDigestMethod(XMLSignatureFactory signatureFactory, String algorithm)
+        throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+        Factories registered = getRegisteredFactories(signatureFactory);
+        if (registered == null) {
+            return signatureFactory.newDigestMethod(algorithm, null);
+        }
+
+        DigestMethod digestMethod = registered.digestMethods.get(algorithm);
+        if (digestMethod == null) {
+            digestMethod = signatureFactory.newDigestMethod(algorithm, null);
+            if (registered.digestMethods.size() < MAX_DIGEST_METHODS) {
+                registered.digestMethods.putIfAbsent(algorithm, digestMethod);
+            }
+        }
+        return digestMethod;
+    }
+
+    private static Factories getFactories(Provider provider) {
+        Factories result = provider == null ? defaultFactories : factories.get(provider);
+        if (result != null) {
+            return result;
+        }
+        result = THREAD_FACTORIES.get();
+        if (result != null && result.requestedProvider == provider) {
+            return result;
+        }
+
+        XMLSignatureFactory signatureFactory;
+        if (provider == null) {
+            // Try to install the Santuario Provider - fall back to the JDK provider if this does
+            // not work
+            try {
+                signatureFactory = XMLSignatureFactory.getInstance("DOM", SHARED_PROVIDER_NAME);
+            } catch (NoSuchProviderException ex) {
+                signatureFactory = XMLSignatureFactory.getInstance("DOM");
+            }
+        } else {
+            signatureFactory = XMLSignatureFactory.getInstance("DOM", provider);
+        }
+
+        if (SHARED_PROVIDER_NAME.equals(signatureFactory.getProvider().getName())) {
+            result = register(signatureFactory.getProvider(), signatureFactory);
+            if (provider == null) {
+                defaultFactories = result;
+            }
+        } else {
+            result = new Factories(provider, signatureFactory);
+            THREAD_FACTORIES.set(result);
+        }
+        return result;
+    }
+
+    private static Factories register(Provider provider, XMLSignatureFactory signatureFactory) {
+        synchronized (LOCK) {
+            Factories result = factories.get(provider);
+            if (result == null) {
+                result = new Factories(provider, signatureFactory);
+                // Copy-on-write, as new Providers are only seen rarely
+                Map<Provider, Factories> newFactories = new IdentityHashMap<>(factories);
+                newFactories.put(provider, result);
+                factories = newFactories;
+            }
+            return result;
+        }
+    }
+
+    private static Factories getRegisteredFactories(XMLSignatureFactory signatureFactory) {
+        Factories registered = factories.get(signatureFactory.getProvider());
+        if (registered != null && registered.signatureFactory == signatureFactory) {
+            return registered;
+        }
+        registered = THREAD_FACTORIES.get();
+        if (registered != null && registered.signatureFactory == signatureFactory) {
+            return registered;
+        }
+        return null;
+    }
+
+    private static final class Factories {
+        private final Provider requestedProvider;
+        private final XMLSignatureFactory signatureFactory;
+        private final KeyInfoFactory keyInfoFactory;
+        private final ConcurrentMap<String, DigestMethod> digestMethods = new ConcurrentHashMap<>();
+
+        Factories(Provider requestedProvider, XMLSignatureFactory signatureFactory) {
+            this.requestedProvider = requestedProvider;
+            this.signatureFactory = signatureFactory;
+            this.keyInfoFactory = signatureFactory.getKeyInfoFactory();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.message;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.AsyncCallbackHandler;
+import org.apache.wss4j.common.ext.ExecutorCallbackHandler;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.VirtualThreads;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test processing a security header asynchronously, where the passwords are retrieved by an
+ * AsyncCallbackHandler.
+ */
+public class AsyncProcessingTest {
+
+    private final Crypto crypto;
+
+    public AsyncProcessingTest() throws Exception {
+        crypto = CryptoFactory.getInstance("wss40.properties");
+        WSSConfig.init();
+    }
+
+    @Test
+    public void testAsyncDecryption() throws Exception {
+        AtomicInteger callbacks = new AtomicInteger();
+        RequestData data = createRequestData(createAsyncCallbackHandler(new KeystoreCallbackHandler(), callbacks));
+
+        WSHandlerResult results =
+            new WSSecurityEngine().processSecurityHeaderAsync(createEncryptedMessage(), data)
+                .get(30L, TimeUnit.SECONDS);
+        assertFalse(results.getActionResults().get(WSConstants.ENCR).isEmpty());
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    public void testAsyncPipelinedDecryption() throws Exception {
+        AtomicInteger callbacks = new AtomicInteger();
+        RequestData data = createRequestData(createAsyncCallbackHandler(new KeystoreCallbackHandler(), callbacks));
+        data.setHeaderProcessingExecutor(VirtualThreads.executor());
+
+        WSHandlerResult results =
+            new WSSecurityEngine().processSecurityHeaderAsync(createEncryptedMessage(), data)
+                .get(30L, TimeUnit.SECONDS);
+        assertFalse(results.getActionResults().get(WSConstants.ENCR).isEmpty());
+        assertEquals(1, callbacks.get());
+    }
+
+    /**
+     * A blocking CallbackHandler adapted by an ExecutorCallbackHandler runs on the Executor, also when the
+     * security header is processed synchronously.
+     */
+    @Test
+    public void testExecutorCallbackHandler() throws Exception {
+        AtomicReference<Thread> handlerThread = new AtomicReference<>();
+        CallbackHandler keystoreCallbackHandler = new KeystoreCallbackHandler();
+        CallbackHandler blockingCallbackHandler = callbacks -> {
+            handlerThread.set(Thread.currentThread());
+            keystoreCallbackHandler.handle(callbacks);
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "secret-store"));
+        try {
+            RequestData data = createRequestData(new ExecutorCallbackHandler(blockingCallbackHandler, executor));
+            WSHandlerResult results = new WSSecurityEngine().processSecurityHeader(createEncryptedMessage(), data);
+            assertFalse(results.getActionResults().get(WSConstants.ENCR).isEmpty());
+            assertEquals("secret-store", handlerThread.get().getName());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncFailure() throws Exception {
+        AtomicInteger callbacks = new AtomicInteger();
+        // No password is supplied for the decryption key
+        RequestData data = createRequestData(createAsyncCallbackHandler(c -> { }, callbacks));
+
+        CompletableFuture<WSHandlerResult> future =
+            new WSSecurityEngine().processSecurityHeaderAsync(createEncryptedMessage(), data);
+        ExecutionException ex =
+            assertThrows(ExecutionException.class, () -> future.get(30L, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof WSSecurityException);
+        assertEquals(1, callbacks.get());
+    }
+
+    private Document createEncryptedMessage() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+        return doc;
+    }
+
+    /**
+     * Handle the callbacks a little later on another thread, as a remote secret store would
+     */
+    private static AsyncCallbackHandler createAsyncCallbackHandler(
+        CallbackHandler callbackHandler, AtomicInteger count
+    ) {
+        return callbacks -> CompletableFuture.runAsync(() -> {
+            count.incrementAndGet();
+            try {
+                callbackHandler.handle(callbacks);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }, CompletableFuture.delayedExecutor(50L, TimeUnit.MILLISECONDS));
+    }
+
+    private RequestData createRequestData(CallbackHandler callbackHandler) {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setCallbackHandler(callbackHandler);
+        data.setDecCrypto(crypto);
+        return data;
+    }
+
+}
@@ -366,6 +366,60 @@ public class AttachmentTest {
         assertEquals("text/plain", responseAttachment.getMimeType());
     }
 
+    // Sign only one of two attachments, via its own "cid:" part
+    @Test
+    public void testSingleAttachmentContentSignature() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        final String attachment1Id = UUID.randomUUID().toString();
+        final Attachment[] attachment = new Attachment[2];
+        attachment[0] = new Attachment();
+        attachment[0].setMimeType("text/xml");
+        attachment[0].addHeaders(getHeaders(attachment1Id));
+        attachment[0].setId(attachment1Id);
+        attachment[0].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        final String attachment2Id = UUID.randomUUID().toString();
+        attachment[1] = new Attachment();
+        attachment[1].setMimeType("text/plain");
+        attachment[1].addHeaders(getHeaders(attachment2Id));
+        attachment[1].setId(attachment2Id);
+        attachment[1].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+
+        builder.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        builder.getParts().add(new WSEncryptionPart("cid:" + attachment2Id, "Content"));
+
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Arrays.asList(attachment));
+        builder.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+        Document signedDoc = builder.build(crypto);
+
+        String outputString = XMLUtils.prettyDocumentToString(signedDoc);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(outputString);
+        }
+
+        NodeList sigReferences = signedDoc.getElementsByTagNameNS(WSConstants.SIG_NS, "Reference");
+        assertEquals(2, sigReferences.getLength());
+        assertTrue(outputString.contains("URI=\"cid:" + attachment2Id + "\""));
+        assertFalse(outputString.contains("cid:" + attachment1Id));
+
+        attachmentCallbackHandler = new AttachmentCallbackHandler(Arrays.asList(attachment));
+        verify(signedDoc, attachmentCallbackHandler);
+
+        assertEquals(1, attachmentCallbackHandler.getResponseAttachments().size());
+        Attachment responseAttachment = attachmentCallbackHandler.getResponseAttachments().get(0);
+        assertEquals(attachment2Id, responseAttachment.getId());
+        byte[] attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+        assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+    }
+
     @Test
     public void testXMLAttachmentContentEncryption() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
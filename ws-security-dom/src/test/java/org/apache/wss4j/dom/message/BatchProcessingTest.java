@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.wss4j.common.crypto.BatchCrypto;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.engine.BatchProcessingResult;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.validate.Credential;
+import org.apache.wss4j.dom.validate.SignatureTrustValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test for processing the security headers of a batch of messages.
+ */
+public class BatchProcessingTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Crypto crypto;
+
+    public BatchProcessingTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBatchWithUntrustedSignature() throws Exception {
+        Crypto wss40Crypto = CryptoFactory.getInstance("wss40.properties");
+
+        List<Document> documents = new ArrayList<>();
+        List<RequestData> requestData = new ArrayList<>();
+        List<Crypto> usedCryptos = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 8; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature builder = new WSSecSignature(secHeader);
+            if (i == 5) {
+                // Not trusted by the verifying Crypto
+                builder.setUserInfo("wss40", "security");
+                builder.build(wss40Crypto);
+            } else {
+                builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+                builder.build(crypto);
+            }
+            documents.add(doc);
+
+            RequestData data = new RequestData();
+            WSSConfig wssConfig = WSSConfig.getNewInstance();
+            wssConfig.setValidator(WSConstants.SIGNATURE, new SignatureTrustValidator() {
+                @Override
+                public Credential validate(Credential credential, RequestData reqData) throws WSSecurityException {
+                    usedCryptos.add(reqData.getSigVerCrypto());
+                    return super.validate(credential, reqData);
+                }
+            });
+            data.setWssConfig(wssConfig);
+            data.setCallbackHandler(new KeystoreCallbackHandler());
+            data.setSigVerCrypto(crypto);
+            requestData.add(data);
+        }
+
+        List<BatchProcessingResult> results =
+            new WSSecurityEngine().processSecurityHeaders(documents, requestData, executor);
+
+        assertEquals(documents.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            BatchProcessingResult result = results.get(i);
+            assertSame(documents.get(i), result.getDocument());
+            if (i == 5) {
+                assertFalse(result.isSuccess());
+                assertEquals(WSSecurityException.ErrorCode.FAILED_CHECK, result.getException().getErrorCode());
+            } else {
+                assertTrue(result.isSuccess());
+                assertNotNull(result.getHandlerResult().getActionResults().get(WSConstants.SIGN));
+            }
+        }
+
+        // All of the messages of the batch share the same BatchCrypto
+        assertEquals(documents.size(), usedCryptos.size());
+        Crypto batchCrypto = usedCryptos.get(0);
+        assertTrue(batchCrypto instanceof BatchCrypto);
+        assertSame(crypto, ((BatchCrypto)batchCrypto).getCrypto());
+        for (Crypto usedCrypto : usedCryptos) {
+            assertSame(batchCrypto, usedCrypto);
+        }
+
+        // The original Crypto is restored once the batch is processed
+        for (RequestData data : requestData) {
+            assertSame(crypto, data.getSigVerCrypto());
+            assertNull(data.getDecCrypto());
+        }
+    }
+
+    @Test
+    public void testBatchCryptoIsNotWrappedAgain() throws Exception {
+        BatchCrypto batchCrypto = new BatchCrypto(crypto);
+        assertSame(crypto, new BatchCrypto(batchCrypto).getCrypto());
+    }
+
+}
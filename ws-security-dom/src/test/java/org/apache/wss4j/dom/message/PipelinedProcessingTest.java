@@ -0,0 +1,395 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.security.auth.callback.CallbackHandler;
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.VirtualThreads;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerConstants;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.processor.PipelinedProcessor;
+import org.apache.wss4j.dom.processor.Processor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that processing the security header in pipelined mode gives the same results as
+ * processing it sequentially.
+ */
+public class PipelinedProcessingTest {
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(PipelinedProcessingTest.class);
+
+    private static final QName MARKER = new QName("urn:wss4j:test", "Marker");
+    private static final QName PENDING = new QName("urn:wss4j:test", "Pending");
+
+    private final CallbackHandler callbackHandler = new KeystoreCallbackHandler();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Crypto crypto;
+
+    public PipelinedProcessingTest() throws Exception {
+        crypto = CryptoFactory.getInstance("wss40.properties");
+        WSSConfig.init();
+    }
+
+    private static Executor getHeaderProcessingExecutor(boolean pipeline, boolean useVirtualThreads)
+        throws WSSecurityException {
+        Map<String, Object> messageContext = new TreeMap<>();
+        messageContext.put(WSHandlerConstants.PIPELINE_SECURITY_HEADER, Boolean.toString(pipeline));
+        messageContext.put(WSHandlerConstants.USE_VIRTUAL_THREADS, Boolean.toString(useVirtualThreads));
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(messageContext);
+        new CustomHandler().receive(Collections.singletonList(WSConstants.TS), reqData);
+        return reqData.getHeaderProcessingExecutor();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Pipelined mode is only used if it is configured, the "useVirtualThreads" option only selects
+     * the threads on which the EncryptedKeys are unwrapped.
+     */
+    @Test
+    public void testPipelineSecurityHeaderOption() throws Exception {
+        assertNull(getHeaderProcessingExecutor(false, false));
+        assertNull(getHeaderProcessingExecutor(false, true));
+        assertSame(VirtualThreads.platformExecutor(), getHeaderProcessingExecutor(true, false));
+        assertSame(VirtualThreads.executor(), getHeaderProcessingExecutor(true, true));
+    }
+
+    /**
+     * The Signature only covers the Timestamp, and so it can be verified while the EncryptedKey
+     * that decrypts the SOAP Body is unwrapped.
+     */
+    @Test
+    public void testIndependentSignature() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.build();
+
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        sign.setUserInfo("wss40", "security");
+        sign.getParts().add(new WSEncryptionPart("Timestamp", WSConstants.WSU_NS, ""));
+        sign.build(crypto);
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(XMLUtils.prettyDocumentToString(doc));
+        }
+
+        verifyAndCompare(doc);
+    }
+
+    /**
+     * The Signature covers the encrypted SOAP Body, and so it must wait for the EncryptedKey.
+     */
+    @Test
+    public void testDependentSignature() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        sign.setUserInfo("wss40", "security");
+        sign.build(crypto);
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+
+        verifyAndCompare(doc);
+    }
+
+    /**
+     * The Signature itself is encrypted, and so is only processed once the EncryptedKey is complete.
+     */
+    @Test
+    public void testEncryptedSignature() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        sign.setUserInfo("wss40", "security");
+        sign.build(crypto);
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        encrypt.getParts().add(new WSEncryptionPart("Signature", WSConstants.SIG_NS, "Element"));
+        encrypt.getParts().add(new WSEncryptionPart(WSConstants.ELEM_BODY,
+                                                    WSConstants.URI_SOAP11_ENV, "Content"));
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+
+        verifyAndCompare(doc);
+    }
+
+    /**
+     * The Signature and Timestamp are processed while the EncryptedKey is outstanding, but the results
+     * stored on the WSDocInfo are still in header order once the EncryptedKey is complete.
+     */
+    @Test
+    public void testStoredResultsInHeaderOrder() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.build();
+
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        sign.setUserInfo("wss40", "security");
+        sign.getParts().add(new WSEncryptionPart("Timestamp", WSConstants.WSU_NS, ""));
+        sign.build(crypto);
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+
+        // A last token that depends on everything before it, and records the stored results
+        Element marker = doc.createElementNS(MARKER.getNamespaceURI(), "ns:" + MARKER.getLocalPart());
+        secHeader.getSecurityHeaderElement().appendChild(marker);
+        Document pipelinedDoc = SOAPUtil.toSOAPPart(XMLUtils.prettyDocumentToString(doc));
+
+        List<Integer> sequentialActions = new ArrayList<>();
+        RequestData data = createRequestData(crypto);
+        data.getWssConfig().setProcessor(MARKER, createRecordingProcessor(sequentialActions));
+        new WSSecurityEngine().processSecurityHeader(doc, data);
+
+        List<Integer> pipelinedActions = new ArrayList<>();
+        RequestData pipelinedData = createRequestData(crypto);
+        pipelinedData.setHeaderProcessingExecutor(executor);
+        pipelinedData.getWssConfig().setProcessor(MARKER, createRecordingProcessor(pipelinedActions));
+        new WSSecurityEngine().processSecurityHeader(pipelinedDoc, pipelinedData);
+
+        assertEquals(Arrays.asList(WSConstants.ENCR, WSConstants.SIGN, WSConstants.TS), sequentialActions);
+        assertEquals(sequentialActions, pipelinedActions);
+    }
+
+    /**
+     * An error in an outstanding EncryptedKey is reported as in sequential mode.
+     */
+    @Test
+    public void testUnknownDecryptionKey() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+
+        Document pipelinedDoc = SOAPUtil.toSOAPPart(XMLUtils.prettyDocumentToString(doc));
+        Crypto otherCrypto = CryptoFactory.getInstance("wss40badcatrust.properties");
+
+        RequestData data = createRequestData(otherCrypto);
+        WSSecurityException sequentialEx = assertThrows(WSSecurityException.class, () ->
+            new WSSecurityEngine().processSecurityHeader(doc, data));
+
+        RequestData pipelinedData = createRequestData(otherCrypto);
+        pipelinedData.setHeaderProcessingExecutor(executor);
+        WSSecurityException pipelinedEx = assertThrows(WSSecurityException.class, () ->
+            new WSSecurityEngine().processSecurityHeader(pipelinedDoc, pipelinedData));
+        assertEquals(sequentialEx.getErrorCode(), pipelinedEx.getErrorCode());
+    }
+
+    /**
+     * The key is unwrapped on the calling thread if the Executor rejects it.
+     */
+    @Test
+    public void testRejectedUnwrap() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+
+        Executor rejectingExecutor = task -> {
+            throw new RejectedExecutionException("The Executor is saturated");
+        };
+        RequestData data = createRequestData(crypto);
+        data.setHeaderProcessingExecutor(rejectingExecutor);
+        WSHandlerResult results = new WSSecurityEngine().processSecurityHeader(doc, data);
+        assertEquals(Collections.singletonList(WSConstants.ENCR), getActions(results));
+    }
+
+    /**
+     * An outstanding token is cancelled, and not completed, if the processing of the header fails.
+     */
+    @Test
+    public void testOutstandingTokenCancelledOnFailure() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        // Two Timestamps are rejected (BSP R3227) while the first token is outstanding
+        new WSSecTimestamp(secHeader).build();
+        new WSSecTimestamp(secHeader).build();
+        Element securityHeader = secHeader.getSecurityHeaderElement();
+        Element pending = doc.createElementNS(PENDING.getNamespaceURI(), "ns:" + PENDING.getLocalPart());
+        securityHeader.insertBefore(pending, securityHeader.getFirstChild());
+
+        AtomicBoolean completed = new AtomicBoolean();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        RequestData data = createRequestData(crypto);
+        data.setHeaderProcessingExecutor(executor);
+        data.getWssConfig().setProcessor(PENDING, createPendingProcessor(completed, cancelled));
+
+        assertThrows(WSSecurityException.class, () ->
+            new WSSecurityEngine().processSecurityHeader(doc, data));
+        assertTrue(cancelled.get());
+        assertFalse(completed.get());
+    }
+
+    private void verifyAndCompare(Document doc) throws Exception {
+        Document pipelinedDoc = SOAPUtil.toSOAPPart(XMLUtils.prettyDocumentToString(doc));
+
+        RequestData data = createRequestData(crypto);
+        WSHandlerResult sequentialResults = new WSSecurityEngine().processSecurityHeader(doc, data);
+
+        RequestData pipelinedData = createRequestData(crypto);
+        pipelinedData.setHeaderProcessingExecutor(executor);
+        WSHandlerResult pipelinedResults =
+            new WSSecurityEngine().processSecurityHeader(pipelinedDoc, pipelinedData);
+
+        assertEquals(getActions(sequentialResults), getActions(pipelinedResults));
+        assertEquals(sequentialResults.getActionResults().keySet(),
+                     pipelinedResults.getActionResults().keySet());
+        assertEquals(XMLUtils.prettyDocumentToString(doc), XMLUtils.prettyDocumentToString(pipelinedDoc));
+    }
+
+    private RequestData createRequestData(Crypto requestCrypto) {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setCallbackHandler(callbackHandler);
+        data.setSigVerCrypto(requestCrypto);
+        data.setDecCrypto(requestCrypto);
+        return data;
+    }
+
+    private static Processor createRecordingProcessor(List<Integer> actions) {
+        return (elem, request) -> {
+            for (WSSecurityEngineResult result : request.getWsDocInfo().getResults()) {
+                actions.add((Integer)result.get(WSSecurityEngineResult.TAG_ACTION));
+            }
+            return Collections.emptyList();
+        };
+    }
+
+    private static PipelinedProcessor createPendingProcessor(AtomicBoolean completed, AtomicBoolean cancelled) {
+        return new PipelinedProcessor() {
+            @Override
+            public List<WSSecurityEngineResult> handleToken(Element elem, RequestData request) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public PendingResults startToken(Element elem, RequestData request, Executor tokenExecutor) {
+                return new PendingResults() {
+                    @Override
+                    public Collection<String> getDependentIds() {
+                        return Collections.emptyList();
+                    }
+
+                    @Override
+                    public List<WSSecurityEngineResult> complete() {
+                        completed.set(true);
+                        return Collections.emptyList();
+                    }
+
+                    @Override
+                    public void cancel() {
+                        cancelled.set(true);
+                    }
+                };
+            }
+        };
+    }
+
+    private static List<Integer> getActions(WSHandlerResult handlerResult) {
+        List<Integer> actions = new ArrayList<>();
+        for (WSSecurityEngineResult result : handlerResult.getResults()) {
+            actions.add((Integer)result.get(WSSecurityEngineResult.TAG_ACTION));
+        }
+        return actions;
+    }
+
+}
@@ -19,14 +19,19 @@
 
 package org.apache.wss4j.dom.message;
 
+import javax.security.auth.callback.CallbackHandler;
 import javax.xml.crypto.dsig.SignatureMethod;
 
+import org.apache.wss4j.common.cache.MemorySecurityContextStore;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.util.SOAPUtil;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.common.SecretKeyCallbackHandler;
 
+import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
@@ -41,6 +46,7 @@ import org.w3c.dom.Document;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -239,6 +245,61 @@ public class SecurityContextTokenTest {
         }
     }
 
+    @Test
+    public void testSCTKDKTSignWithSecurityContextStore() throws Exception {
+        SecurityContextStore securityContextStore = new MemorySecurityContextStore();
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSecurityContextToken sctBuilder = new WSSecSecurityContextToken(secHeader, null);
+        sctBuilder.prepare(crypto);
+
+        byte[] tempSecret = new byte[16];
+        new Random().nextBytes(tempSecret);
+        SecretKeyCallbackHandler secretKeyCallbackHandler = new SecretKeyCallbackHandler();
+        secretKeyCallbackHandler.addSecretKey(sctBuilder.getIdentifier(), tempSecret);
+
+        WSSecDKSign sigBuilder = new WSSecDKSign(secHeader);
+        sigBuilder.setTokenIdentifier(sctBuilder.getSctId());
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA1);
+        sigBuilder.build(tempSecret);
+        sctBuilder.prependSCTElementToHeader();
+
+        // The session is stored by the SCT identifier, not by the wsu:Id of the SCT
+        verify(doc, secretKeyCallbackHandler, securityContextStore);
+        assertNotNull(securityContextStore.getSession(sctBuilder.getIdentifier()));
+        assertNull(securityContextStore.getSession(sctBuilder.getSctId()));
+
+        // A following message only refers to the SCT identifier, whose secret is taken from the store
+        doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        sigBuilder = new WSSecDKSign(secHeader);
+        sigBuilder.setTokenIdentifier(sctBuilder.getIdentifier());
+        sigBuilder.setTokenIdDirectId(true);
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA1);
+        sigBuilder.build(tempSecret);
+
+        verify(doc, new SecretKeyCallbackHandler(), securityContextStore);
+
+        // A local reference to a token that is not in the message is not stored
+        doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        sigBuilder = new WSSecDKSign(secHeader);
+        sigBuilder.setTokenIdentifier("sct-local");
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA1);
+        sigBuilder.build(tempSecret);
+
+        secretKeyCallbackHandler.addSecretKey("sct-local", tempSecret);
+        verify(doc, secretKeyCallbackHandler, securityContextStore);
+        assertNull(securityContextStore.getSession("sct-local"));
+    }
+
     @Test
     public void testSCTKDKTSignEncrypt() {
         try {
@@ -393,5 +454,16 @@ public class SecurityContextTokenTest {
         return results;
     }
 
+    private WSHandlerResult verify(
+        Document doc, CallbackHandler handler, SecurityContextStore securityContextStore
+    ) throws Exception {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setCallbackHandler(handler);
+        data.setSigVerCrypto(crypto);
+        data.setSecurityContextStore(securityContextStore);
+        return secEngine.processSecurityHeader(doc, data);
+    }
+
 
 }
\ No newline at end of file
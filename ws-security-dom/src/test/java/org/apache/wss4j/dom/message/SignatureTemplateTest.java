@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.message;
+
+import java.security.cert.X509Certificate;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.token.SecurityTokenReference;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A set of test-cases for signing SOAP requests with a WSSecSignatureTemplate that is shared
+ * between several messages.
+ */
+public class SignatureTemplateTest {
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SignatureTemplateTest.class);
+    private static final String USER = "16c73ab6-b892-458f-abf5-2f875f74882e";
+
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private Crypto crypto;
+
+    public SignatureTemplateTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        WSSecSignatureTemplate template = new WSSecSignatureTemplate(crypto, USER);
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(USER);
+        X509Certificate cert = crypto.getX509Certificates(cryptoType)[0];
+        assertEquals(cert, template.getCertificates()[0]);
+        assertEquals(WSConstants.RSA, template.getSignatureAlgorithm());
+        assertNotNull(template.getSubjectKeyIdentifier());
+    }
+
+    @Test
+    public void testUnknownAlias() throws Exception {
+        assertThrows(WSSecurityException.class, () -> new WSSecSignatureTemplate(crypto, "unknown"));
+    }
+
+    @Test
+    public void testBSTDirectReference() throws Exception {
+        signAndVerify(WSConstants.BST_DIRECT_REFERENCE, false);
+    }
+
+    @Test
+    public void testBSTPKIPathReference() throws Exception {
+        signAndVerify(WSConstants.BST_DIRECT_REFERENCE, true);
+    }
+
+    @Test
+    public void testX509KeyIdentifier() throws Exception {
+        signAndVerify(WSConstants.X509_KEY_IDENTIFIER, false);
+    }
+
+    @Test
+    public void testSKIKeyIdentifier() throws Exception {
+        signAndVerify(WSConstants.SKI_KEY_IDENTIFIER, false);
+    }
+
+    @Test
+    public void testThumbprintKeyIdentifier() throws Exception {
+        signAndVerify(WSConstants.THUMBPRINT_IDENTIFIER, false);
+    }
+
+    /**
+     * A template created for the certificates, rather than the alias, of the user
+     */
+    @Test
+    public void testCertificateTemplate() throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(USER);
+        WSSecSignatureTemplate template =
+            new WSSecSignatureTemplate(crypto, crypto.getX509Certificates(cryptoType));
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo(USER, "security");
+        builder.setSignatureTemplate(template);
+        Document signedDoc = builder.build(crypto);
+
+        WSHandlerResult results = secEngine.processSecurityHeader(signedDoc, null, null, crypto);
+        assertEquals(
+            template.getCertificates()[0],
+            results.getActionResults().get(WSConstants.SIGN).get(0).get(WSSecurityEngineResult.TAG_X509_CERTIFICATE)
+        );
+    }
+
+    /**
+     * The template must not override the signing certificate of another user
+     */
+    @Test
+    public void testTemplateForOtherUser() throws Exception {
+        Crypto wss40Crypto = CryptoFactory.getInstance("wss40.properties");
+        WSSecSignatureTemplate template = new WSSecSignatureTemplate(wss40Crypto, "wss40");
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo(USER, "security");
+        builder.setSignatureTemplate(template);
+        assertThrows(WSSecurityException.class, () -> builder.build(crypto));
+    }
+
+    /**
+     * The template must not override a certificate set with setX509Certificate
+     */
+    @Test
+    public void testTemplateForOtherCertificate() throws Exception {
+        WSSecSignatureTemplate template = new WSSecSignatureTemplate(crypto, USER);
+
+        Crypto wss40Crypto = CryptoFactory.getInstance("wss40.properties");
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        X509Certificate otherCert = wss40Crypto.getX509Certificates(cryptoType)[0];
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo(USER, "security");
+        builder.setX509Certificate(otherCert);
+        builder.setSignatureTemplate(template);
+        assertThrows(WSSecurityException.class, () -> builder.build(crypto));
+    }
+
+    /**
+     * The key identifiers created from the template are the same as the ones created from the certificate
+     */
+    @Test
+    public void testSameKeyIdentifiers() throws Exception {
+        WSSecSignatureTemplate template = new WSSecSignatureTemplate(crypto, USER);
+        X509Certificate cert = template.getCertificates()[0];
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+
+        SecurityTokenReference secRef = new SecurityTokenReference(doc);
+        secRef.setKeyIdentifierSKI(cert, crypto);
+        assertEquals(template.getSubjectKeyIdentifier(), secRef.getKeyIdentifierValue());
+
+        secRef = new SecurityTokenReference(doc);
+        secRef.setKeyIdentifierThumb(cert);
+        assertEquals(template.getThumbprint(), secRef.getKeyIdentifierValue());
+
+        secRef = new SecurityTokenReference(doc);
+        secRef.setKeyIdentifier(cert);
+        assertEquals(template.getEncodedCertificate(), secRef.getKeyIdentifierValue());
+    }
+
+    private void signAndVerify(int keyIdentifierType, boolean pkiPath) throws Exception {
+        WSSecSignatureTemplate template = new WSSecSignatureTemplate(crypto, USER);
+
+        // The same template is used for several messages
+        for (int i = 0; i < 2; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature builder = new WSSecSignature(secHeader);
+            builder.setUserInfo(USER, "security");
+            builder.setKeyIdentifierType(keyIdentifierType);
+            builder.setUseSingleCertificate(!pkiPath);
+            builder.setSignatureTemplate(template);
+
+            Document signedDoc = builder.build(crypto);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(XMLUtils.prettyDocumentToString(signedDoc));
+            }
+
+            WSHandlerResult results = secEngine.processSecurityHeader(signedDoc, null, null, crypto);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.SIGN).get(0);
+            assertEquals(
+                template.getCertificates()[0], actionResult.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE)
+            );
+            assertEquals(template.getSignatureAlgorithm(), builder.getSignatureAlgorithm());
+        }
+    }
+}
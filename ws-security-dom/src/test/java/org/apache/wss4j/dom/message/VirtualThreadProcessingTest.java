@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.VirtualThreads;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Processes a batch of concurrent inbound messages on virtual threads and on a pool of platform
+ * threads, and logs the time taken for each. The decryption password is retrieved by a
+ * CallbackHandler that blocks for a few milliseconds, as a remote secret store would. The number of
+ * messages can be set with the "wss4j.concurrentMessages" system property.
+ *
+ * The security header is processed in pipelined mode in both cases, as with the "pipelineSecurityHeader"
+ * option, and the EncryptedKeys are unwrapped on virtual threads or on platform threads, as selected by
+ * the "useVirtualThreads" option. WSS4J does not run the message itself on another thread, so the test
+ * runs each message on a virtual thread, as a container with virtual threads would.
+ *
+ * The comparison is only made if the JVM supports virtual threads (Java 21 or later). To run it as a
+ * benchmark with 10000 messages, use the "virtual-threads-benchmark" profile on such a JVM:
+ * mvn test -Pvirtual-threads-benchmark -pl ws-security-dom
+ * The benchmark fails rather than being skipped if the JVM does not support virtual threads.
+ */
+public class VirtualThreadProcessingTest {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(VirtualThreadProcessingTest.class);
+
+    private static final String MESSAGES_PROPERTY = "wss4j.concurrentMessages";
+    private static final int MESSAGES = Integer.getInteger(MESSAGES_PROPERTY, 500);
+    private static final int PLATFORM_THREADS = 16;
+    private static final long CALLBACK_LATENCY = 5L;
+
+    private final Crypto crypto;
+
+    public VirtualThreadProcessingTest() throws Exception {
+        crypto = CryptoFactory.getInstance("wss40.properties");
+        WSSConfig.init();
+    }
+
+    @Test
+    public void testVirtualAndPlatformThreads() throws Exception {
+        if (System.getProperty(MESSAGES_PROPERTY) != null) {
+            // The benchmark was asked for explicitly
+            assertTrue(VirtualThreads.isSupported(), "The benchmark requires Java 21 or later");
+        }
+        assumeTrue(VirtualThreads.isSupported(), "Virtual threads are not supported by this JVM");
+        String message = createMessage();
+
+        // As with the "pipelineSecurityHeader" and "useVirtualThreads" options
+        long virtualTime = processMessages(message, VirtualThreads.executor(), VirtualThreads.executor());
+
+        // As with the "pipelineSecurityHeader" option only
+        ExecutorService platformExecutor = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        long platformTime;
+        try {
+            platformTime = processMessages(message, platformExecutor, VirtualThreads.platformExecutor());
+        } finally {
+            platformExecutor.shutdown();
+        }
+
+        LOG.info("Processed {} messages in {} ms on virtual threads, and in {} ms on {} platform threads",
+                 MESSAGES, TimeUnit.NANOSECONDS.toMillis(virtualTime),
+                 TimeUnit.NANOSECONDS.toMillis(platformTime), PLATFORM_THREADS);
+    }
+
+    private long processMessages(
+        String message, Executor executor, Executor headerProcessingExecutor
+    ) throws Exception {
+        CallbackHandler callbackHandler = createBlockingCallbackHandler();
+        List<CompletableFuture<WSHandlerResult>> results = new ArrayList<>(MESSAGES);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    Document doc = SOAPUtil.toSOAPPart(message);
+                    RequestData data = new RequestData();
+                    data.setWssConfig(WSSConfig.getNewInstance());
+                    data.setCallbackHandler(callbackHandler);
+                    data.setDecCrypto(crypto);
+                    data.setHeaderProcessingExecutor(headerProcessingExecutor);
+                    return new WSSecurityEngine().processSecurityHeader(doc, data);
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10L, TimeUnit.MINUTES);
+        long time = System.nanoTime() - start;
+
+        for (CompletableFuture<WSHandlerResult> result : results) {
+            WSHandlerResult handlerResult = result.get();
+            assertFalse(handlerResult.getActionResults().get(WSConstants.ENCR).isEmpty());
+            assertEquals(1, handlerResult.getActionResults().get(WSConstants.TS).size());
+        }
+        return time;
+    }
+
+    private String createMessage() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.setTimeToLive(600);
+        timestamp.build();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        encrypt.build(crypto, symmetricKey);
+        return XMLUtils.prettyDocumentToString(doc);
+    }
+
+    private static CallbackHandler createBlockingCallbackHandler() {
+        CallbackHandler callbackHandler = new KeystoreCallbackHandler();
+        return callbacks -> {
+            try {
+                Thread.sleep(CALLBACK_LATENCY);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            callbackHandler.handle(callbacks);
+        };
+    }
+
+}
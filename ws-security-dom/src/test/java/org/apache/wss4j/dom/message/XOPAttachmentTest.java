@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
@@ -57,6 +58,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -736,6 +739,163 @@ public class XOPAttachmentTest {
         verify(signedDoc, inboundAttachmentCallback);
     }
 
+    // Sign a SOAP Body containing a xop:Include, keeping the attachment out-of-line
+    @Test
+    public void testStreamedXopSignedSOAPBody() throws Exception {
+        String attachmentId = UUID.randomUUID().toString();
+        Document doc = SOAPUtil.toSOAPPart(getXopMessage(attachmentId));
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+
+        AttachmentCallbackHandler outboundAttachmentCallback =
+            new AttachmentCallbackHandler(Collections.singletonList(createAttachment(attachmentId)));
+        builder.setAttachmentCallbackHandler(outboundAttachmentCallback);
+        builder.setStreamXopAttachments(true);
+
+        Document signedDoc = builder.build(crypto);
+
+        if (LOG.isDebugEnabled()) {
+            String outputString = XMLUtils.prettyDocumentToString(signedDoc);
+            LOG.debug(outputString);
+        }
+
+        // The xop:Include is signed as it is, and the attachment via a separate Reference
+        assertEquals(1, signedDoc.getElementsByTagNameNS(WSConstants.XOP_NS, "Include").getLength());
+        String outputString = XMLUtils.prettyDocumentToString(signedDoc);
+        assertTrue(outputString.contains("URI=\"cid:" + attachmentId + "\""));
+        assertFalse(outputString.contains(Base64.getEncoder().encodeToString(SOAP_BODY.getBytes(StandardCharsets.UTF_8))));
+
+        List<Attachment> signedAttachments = outboundAttachmentCallback.getResponseAttachments();
+        assertEquals(1, signedAttachments.size());
+
+        AttachmentCallbackHandler inboundAttachmentCallback =
+            new AttachmentCallbackHandler(signedAttachments);
+        verifyOutOfLine(signedDoc, inboundAttachmentCallback);
+    }
+
+    // Sign one explicit SwA attachment, in a message that also has a xop:Include attachment
+    @Test
+    public void testStreamedXopSignedWithExplicitAttachment() throws Exception {
+        String xopAttachmentId = UUID.randomUUID().toString();
+        String swaAttachmentId = UUID.randomUUID().toString();
+        Document doc = SOAPUtil.toSOAPPart(getXopMessage(xopAttachmentId));
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        builder.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        builder.getParts().add(new WSEncryptionPart("cid:" + swaAttachmentId, "Content"));
+
+        AttachmentCallbackHandler outboundAttachmentCallback =
+            new AttachmentCallbackHandler(
+                Arrays.asList(createAttachment(xopAttachmentId), createAttachment(swaAttachmentId))
+            );
+        builder.setAttachmentCallbackHandler(outboundAttachmentCallback);
+        builder.setStreamXopAttachments(true);
+
+        Document signedDoc = builder.build(crypto);
+
+        if (LOG.isDebugEnabled()) {
+            String outputString = XMLUtils.prettyDocumentToString(signedDoc);
+            LOG.debug(outputString);
+        }
+
+        // Both the explicit attachment and the xop:Include attachment are signed
+        String outputString = XMLUtils.prettyDocumentToString(signedDoc);
+        assertTrue(outputString.contains("URI=\"cid:" + swaAttachmentId + "\""));
+        assertTrue(outputString.contains("URI=\"cid:" + xopAttachmentId + "\""));
+
+        List<Attachment> signedAttachments = outboundAttachmentCallback.getResponseAttachments();
+        assertEquals(2, signedAttachments.size());
+
+        AttachmentCallbackHandler inboundAttachmentCallback =
+            new AttachmentCallbackHandler(signedAttachments);
+        verifyOutOfLine(signedDoc, inboundAttachmentCallback);
+    }
+
+    // Encrypt a SOAP Body containing a xop:Include, encrypting the attachment out-of-line
+    @Test
+    public void testStreamedXopEncryptedSOAPBody() throws Exception {
+        String attachmentId = UUID.randomUUID().toString();
+        Document doc = SOAPUtil.toSOAPPart(getXopMessage(attachmentId));
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+
+        AttachmentCallbackHandler outboundAttachmentCallback =
+            new AttachmentCallbackHandler(Collections.singletonList(createAttachment(attachmentId)));
+        encrypt.setAttachmentCallbackHandler(outboundAttachmentCallback);
+        encrypt.setStreamXopAttachments(true);
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        Document encryptedDoc = encrypt.build(crypto, symmetricKey);
+
+        if (LOG.isDebugEnabled()) {
+            String outputString = XMLUtils.prettyDocumentToString(encryptedDoc);
+            LOG.debug(outputString);
+        }
+
+        // The xop:Include is encrypted with the SOAP Body, and the attachment is encrypted separately
+        assertEquals(0, encryptedDoc.getElementsByTagNameNS(WSConstants.XOP_NS, "Include").getLength());
+        assertEquals(1, encryptedDoc.getElementsByTagNameNS(WSConstants.ENC_NS, "CipherReference").getLength());
+
+        List<Attachment> encryptedAttachments = outboundAttachmentCallback.getResponseAttachments();
+        assertEquals(1, encryptedAttachments.size());
+        assertEquals(attachmentId, encryptedAttachments.get(0).getId());
+
+        AttachmentCallbackHandler inboundAttachmentCallback =
+            new AttachmentCallbackHandler(encryptedAttachments);
+        verifyOutOfLine(encryptedDoc, inboundAttachmentCallback);
+
+        // The xop:Include is restored, and the decrypted attachment is returned out-of-line
+        assertEquals(1, encryptedDoc.getElementsByTagNameNS(WSConstants.XOP_NS, "Include").getLength());
+        List<Attachment> decryptedAttachments = inboundAttachmentCallback.getResponseAttachments();
+        assertEquals(1, decryptedAttachments.size());
+        byte[] attachmentBytes = readInputStream(decryptedAttachments.get(0).getSourceStream());
+        assertTrue(Arrays.equals(SOAP_BODY.getBytes(StandardCharsets.UTF_8), attachmentBytes));
+    }
+
+    private static String getXopMessage(String attachmentId) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<soapenv:Body>"
+            + "<add xmlns=\"http://ws.apache.org/counter/counter_port_type\">"
+            + "<value xmlns=\"\"><xop:Include xmlns:xop=\"" + WSConstants.XOP_NS + "\" href=\"cid:" + attachmentId
+            + "\"/></value>"
+            + "</add>"
+            + "</soapenv:Body>"
+            + "</soapenv:Envelope>";
+    }
+
+    private static Attachment createAttachment(String attachmentId) {
+        Attachment attachment = new Attachment();
+        attachment.setId(attachmentId);
+        attachment.setMimeType("text/xml");
+        attachment.setSourceStream(new ByteArrayInputStream(SOAP_BODY.getBytes(StandardCharsets.UTF_8)));
+        return attachment;
+    }
+
+    private WSHandlerResult verifyOutOfLine(Document doc, CallbackHandler attachmentCallbackHandler) throws Exception {
+        RequestData requestData = new RequestData();
+        requestData.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        requestData.setSigVerCrypto(crypto);
+        requestData.setDecCrypto(crypto);
+        requestData.setCallbackHandler(new KeystoreCallbackHandler());
+        requestData.setExpandXopInclude(false);
+        return secEngine.processSecurityHeader(doc, requestData);
+    }
+
     /**
      * Verifies the soap envelope.
      * This method verifies all the signature generated.
@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.metrics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.message.WSSecTimestamp;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the metrics that are recorded while processing a security header.
+ */
+public class SecurityMetricsTest {
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SecurityMetricsTest.class);
+
+    private final Crypto crypto;
+
+    public SecurityMetricsTest() throws Exception {
+        crypto = CryptoFactory.getInstance("wss40.properties");
+        WSSConfig.init();
+    }
+
+    @Test
+    public void testSignedMessage() throws Exception {
+        Document doc = createSignedMessage();
+
+        HistogramSecurityMetrics histograms = new HistogramSecurityMetrics();
+        RequestData data = createRequestData(crypto);
+        data.setSecurityMetrics(histograms);
+        new WSSecurityEngine().processSecurityHeader(doc, data);
+
+        SecurityHeaderMetrics metrics = data.getSecurityHeaderMetrics();
+        assertNotNull(metrics);
+        assertTrue(metrics.isSuccessful());
+        assertTrue(metrics.getDurationNanos() >= 0);
+        assertEquals(1, metrics.getSignatureCount());
+        assertEquals(2, metrics.getReferenceCount());
+        assertTrue(metrics.getCanonicalizedBytes() > 0);
+        assertEquals(1, metrics.getProcessorTimings().get(WSConstants.SIGNATURE).getCount());
+        assertEquals(1, metrics.getProcessorTimings().get(WSConstants.TIMESTAMP).getCount());
+        assertEquals(1, metrics.getValidatorTimings().get(WSConstants.SIGNATURE).getCount());
+        assertEquals(1, metrics.getValidatorTimings().get(WSConstants.TIMESTAMP).getCount());
+        // The Validator runs as part of the Processor
+        assertTrue(metrics.getProcessorTimings().get(WSConstants.SIGNATURE).getTotalNanos()
+                   >= metrics.getValidatorTimings().get(WSConstants.SIGNATURE).getTotalNanos());
+
+        assertEquals(1, histograms.getProcessorHistogram(WSConstants.SIGNATURE).getCount());
+        assertEquals(1, histograms.getValidatorHistogram(WSConstants.TIMESTAMP).getCount());
+        assertEquals(2, histograms.getHistogram(HistogramSecurityMetrics.SIGNATURE_REFERENCES).getMax());
+        assertEquals(metrics.getCanonicalizedBytes(),
+                     histograms.getHistogram(HistogramSecurityMetrics.CANONICALIZED_BYTES).getSum());
+        assertEquals(1, histograms.getHistogram(HistogramSecurityMetrics.SECURITY_HEADER).getCount());
+        assertNull(histograms.getHistogram(HistogramSecurityMetrics.SECURITY_HEADER_FAILED));
+        LOG.debug("Security header processed in " + metrics.getDurationNanos() + " ns");
+    }
+
+    @Test
+    public void testFailedMessage() throws Exception {
+        Document doc = createSignedMessage();
+
+        HistogramSecurityMetrics histograms = new HistogramSecurityMetrics();
+        RequestData data = createRequestData(CryptoFactory.getInstance("wss40badcatrust.properties"));
+        data.setSecurityMetrics(histograms);
+        assertThrows(WSSecurityException.class, () ->
+            new WSSecurityEngine().processSecurityHeader(doc, data));
+
+        assertFalse(data.getSecurityHeaderMetrics().isSuccessful());
+        assertNull(histograms.getHistogram(HistogramSecurityMetrics.SECURITY_HEADER));
+        assertEquals(1, histograms.getHistogram(HistogramSecurityMetrics.SECURITY_HEADER_FAILED).getCount());
+        // The Validator that rejected the Signature is still timed
+        assertEquals(1, histograms.getValidatorHistogram(WSConstants.SIGNATURE).getCount());
+    }
+
+    @Test
+    public void testNoMetrics() throws Exception {
+        Document doc = createSignedMessage();
+
+        RequestData data = createRequestData(crypto);
+        new WSSecurityEngine().processSecurityHeader(doc, data);
+
+        assertNull(data.getSecurityHeaderMetrics());
+        assertSame(data.getWssConfig().getValidator(WSConstants.SIGNATURE),
+                   data.getValidator(WSConstants.SIGNATURE));
+    }
+
+    /**
+     * The time recorded for a pipelined EncryptedKey includes the unwrapping of the key on the Executor
+     */
+    @Test
+    public void testPipelinedEncryptedKey() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        encrypt.build(crypto, keyGen.generateKey());
+
+        long delay = 200L;
+        Executor delayingExecutor = task -> new Thread(() -> {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            task.run();
+        }).start();
+
+        RequestData data = createRequestData(crypto);
+        data.setDecCrypto(crypto);
+        data.setHeaderProcessingExecutor(delayingExecutor);
+        data.setSecurityMetrics(new HistogramSecurityMetrics());
+        new WSSecurityEngine().processSecurityHeader(doc, data);
+
+        SecurityHeaderMetrics.Timing timing =
+            data.getSecurityHeaderMetrics().getProcessorTimings().get(WSConstants.ENCRYPTED_KEY);
+        assertEquals(1, timing.getCount());
+        assertTrue(timing.getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(delay));
+    }
+
+    @Test
+    public void testJfrEvents() throws Exception {
+        Document doc = createSignedMessage();
+
+        RequestData data = createRequestData(crypto);
+        data.setSecurityMetrics(new JfrSecurityMetrics());
+
+        Path dump = Files.createTempFile("wss4j", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.apache.wss4j.Processor");
+            recording.enable("org.apache.wss4j.Signature");
+            recording.enable("org.apache.wss4j.SecurityHeader");
+            recording.start();
+            new WSSecurityEngine().processSecurityHeader(doc, data);
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            // Timestamp, BinarySecurityToken and Signature
+            assertEquals(3, events.stream()
+                .filter(e -> "org.apache.wss4j.Processor".equals(e.getEventType().getName())).count());
+
+            RecordedEvent signatureEvent = events.stream()
+                .filter(e -> "org.apache.wss4j.Signature".equals(e.getEventType().getName()))
+                .findFirst().orElseThrow();
+            assertEquals(2, signatureEvent.getInt("references"));
+            assertEquals(data.getSecurityHeaderMetrics().getCanonicalizedBytes(),
+                         signatureEvent.getLong("canonicalizedBytes"));
+
+            RecordedEvent headerEvent = events.stream()
+                .filter(e -> "org.apache.wss4j.SecurityHeader".equals(e.getEventType().getName()))
+                .findFirst().orElseThrow();
+            assertTrue(headerEvent.getBoolean("successful"));
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    public void testHistogram() {
+        HistogramSecurityMetrics.Histogram histogram = new HistogramSecurityMetrics.Histogram();
+        assertEquals(0, histogram.getPercentile(99.0));
+        for (long i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050000L, histogram.getSum());
+        assertEquals(100000L, histogram.getMax());
+
+        // Percentiles are accurate to a factor of two
+        long median = histogram.getPercentile(50.0);
+        assertTrue(median >= 50000L && median < 100000L);
+        assertEquals(100000L, histogram.getPercentile(100.0));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101.0));
+    }
+
+    private Document createSignedMessage() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.build();
+
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        sign.setUserInfo("wss40", "security");
+        sign.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        sign.getParts().add(new WSEncryptionPart("Timestamp", WSConstants.WSU_NS, ""));
+        sign.getParts().add(new WSEncryptionPart(WSConstants.ELEM_BODY, WSConstants.URI_SOAP11_ENV, ""));
+        sign.build(crypto);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(XMLUtils.prettyDocumentToString(doc));
+        }
+        return doc;
+    }
+
+    private RequestData createRequestData(Crypto requestCrypto) {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setCallbackHandler(new KeystoreCallbackHandler());
+        data.setSigVerCrypto(requestCrypto);
+        return data;
+    }
+
+}
@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.saml;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.bean.ProxyRestrictionBean;
+import org.apache.wss4j.common.saml.bean.SubjectConfirmationDataBean;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.common.CustomSamlAssertionValidator;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.common.SAML2CallbackHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.HandlerAction;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerConstants;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.xml.security.signature.XMLSignature;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * Some tests for reusing outbound SAML assertions with a SamlAssertionCache.
+ */
+public class SamlAssertionCacheTest {
+
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private Crypto crypto;
+
+    public SamlAssertionCacheTest() throws Exception {
+        WSSConfig config = WSSConfig.getNewInstance();
+        crypto = CryptoFactory.getInstance("wss40.properties");
+        config.setValidator(WSConstants.SAML_TOKEN, new CustomSamlAssertionValidator());
+        config.setValidator(WSConstants.SAML2_TOKEN, new CustomSamlAssertionValidator());
+        secEngine.setWssConfig(config);
+    }
+
+    @Test
+    public void testSenderVouchesAssertionIsCached() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setIssuer("www.example.com");
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        List<SamlAssertionWrapper> issued = new ArrayList<>();
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, samlCallback -> {
+            SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+            issued.add(samlAssertion);
+            return samlAssertion;
+        });
+        SamlAssertionWrapper assertion2 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, samlCallback -> {
+            SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+            issued.add(samlAssertion);
+            return samlAssertion;
+        });
+
+        assertEquals(1, issued.size());
+        assertEquals(1, cache.getCacheSize());
+        assertEquals(issued.get(0).getId(), assertion1.getId());
+        assertEquals(assertion1.getId(), assertion2.getId());
+        // Every message gets its own copy of the assertion
+        assertNotSame(assertion1.getElement(), assertion2.getElement());
+
+        // Another subject gets another assertion
+        callbackHandler.setSubjectName("uid=jane,ou=people,ou=saml-demo,o=example.com");
+        SamlAssertionWrapper assertion3 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        assertNotEquals(assertion1.getId(), assertion3.getId());
+        assertEquals(2, cache.getCacheSize());
+    }
+
+    @Test
+    public void testHolderOfKeyAssertionIsNotCached() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+        callbackHandler.setIssuer("www.example.com");
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        SamlAssertionWrapper assertion2 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+
+        assertNotEquals(assertion1.getId(), assertion2.getId());
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void testOneTimeUseAssertionIsNotCached() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setIssuer("www.example.com");
+        ConditionsBean conditions = new ConditionsBean();
+        conditions.setOneTimeUse(true);
+        callbackHandler.setConditions(conditions);
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        SamlAssertionWrapper assertion2 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+
+        assertNotEquals(assertion1.getId(), assertion2.getId());
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void testProxyRestrictedAssertionIsNotCached() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setIssuer("www.example.com");
+        ConditionsBean conditions = new ConditionsBean();
+        ProxyRestrictionBean proxyRestriction = new ProxyRestrictionBean();
+        proxyRestriction.setCount(1);
+        conditions.setProxyRestriction(proxyRestriction);
+        callbackHandler.setConditions(conditions);
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        SamlAssertionWrapper assertion2 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+
+        assertNotEquals(assertion1.getId(), assertion2.getId());
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void testOtherAttributesGetAnotherAssertion() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.ATTR);
+        callbackHandler.setIssuer("www.example.com");
+        callbackHandler.setCustomAttributeValues(Collections.singletonList("user"));
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        SamlAssertionWrapper assertion2 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        assertEquals(assertion1.getId(), assertion2.getId());
+
+        callbackHandler.setCustomAttributeValues(Collections.singletonList("admin"));
+        SamlAssertionWrapper assertion3 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        assertNotEquals(assertion1.getId(), assertion3.getId());
+        assertEquals(2, cache.getCacheSize());
+    }
+
+    @Test
+    public void testOtherRecipientGetsAnotherAssertion() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+        callbackHandler.setIssuer("www.example.com");
+        SubjectConfirmationDataBean subjectConfirmationData = new SubjectConfirmationDataBean();
+        subjectConfirmationData.setRecipient("http://service1.apache.org");
+        callbackHandler.setSubjectConfirmationData(subjectConfirmationData);
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        SamlAssertionWrapper assertion2 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        assertEquals(assertion1.getId(), assertion2.getId());
+
+        subjectConfirmationData = new SubjectConfirmationDataBean();
+        subjectConfirmationData.setRecipient("http://service2.apache.org");
+        callbackHandler.setSubjectConfirmationData(subjectConfirmationData);
+        SamlAssertionWrapper assertion3 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, SamlAssertionWrapper::new);
+        assertNotEquals(assertion1.getId(), assertion3.getId());
+        assertEquals(2, cache.getCacheSize());
+    }
+
+    @Test
+    public void testOtherSignatureAlgorithmGetsAnotherAssertion() throws Exception {
+        SAML2CallbackHandler samlCallbackHandler = new SAML2CallbackHandler();
+        samlCallbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        samlCallbackHandler.setIssuer("www.example.com");
+        samlCallbackHandler.setIssuerCrypto(crypto);
+        samlCallbackHandler.setIssuerName("wss40");
+        samlCallbackHandler.setIssuerPassword("security");
+        samlCallbackHandler.setSignAssertion(true);
+        String[] signatureAlgorithm = {XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256};
+        CallbackHandler callbackHandler = callbacks -> {
+            samlCallbackHandler.handle(callbacks);
+            ((SAMLCallback) callbacks[0]).setSignatureAlgorithm(signatureAlgorithm[0]);
+        };
+
+        SamlAssertionCache.Issuer issuer = samlCallback -> {
+            SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+            samlAssertion.signAssertion(samlCallback.getIssuerKeyName(), samlCallback.getIssuerKeyPassword(),
+                samlCallback.getIssuerCrypto(), samlCallback.isSendKeyValue(),
+                WSConstants.C14N_EXCL_OMIT_COMMENTS, samlCallback.getSignatureAlgorithm());
+            return samlAssertion;
+        };
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, issuer);
+        SamlAssertionWrapper assertion2 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, issuer);
+        assertEquals(assertion1.getId(), assertion2.getId());
+
+        signatureAlgorithm[0] = XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA512;
+        SamlAssertionWrapper assertion3 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, issuer);
+        assertNotEquals(assertion1.getId(), assertion3.getId());
+        assertEquals(2, cache.getCacheSize());
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setIssuer("www.example.com");
+        // 80% of the validity period has elapsed
+        ConditionsBean conditions = new ConditionsBean();
+        Instant now = Instant.now();
+        conditions.setNotBefore(now.minus(Duration.ofMinutes(8)));
+        conditions.setNotAfter(now.plus(Duration.ofMinutes(2)));
+        callbackHandler.setConditions(conditions);
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        // Issue new assertions in the calling thread
+        cache.setExecutor(Runnable::run);
+        List<SamlAssertionWrapper> issued = new ArrayList<>();
+        List<SAMLCallback> issuedCallbacks = new ArrayList<>();
+        SamlAssertionCache.Issuer issuer = samlCallback -> {
+            SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+            issued.add(samlAssertion);
+            issuedCallbacks.add(samlCallback);
+            return samlAssertion;
+        };
+
+        SamlAssertionWrapper assertion1 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, issuer);
+        assertEquals(1, issued.size());
+
+        // The cached assertion is still used, but a new one is issued
+        SAMLCallback samlCallback = doSAMLCallback(callbackHandler);
+        SamlAssertionWrapper assertion2 = cache.getAssertion(samlCallback, callbackHandler, issuer);
+        assertEquals(assertion1.getId(), assertion2.getId());
+        assertEquals(2, issued.size());
+        // The SAMLCallback of the message is not used for the refresh
+        assertNotSame(samlCallback, issuedCallbacks.get(1));
+
+        SamlAssertionWrapper assertion3 = cache.getAssertion(doSAMLCallback(callbackHandler), callbackHandler, issuer);
+        assertEquals(issued.get(1).getId(), assertion3.getId());
+        assertEquals(1, cache.getCacheSize());
+    }
+
+    @Test
+    public void testAssertionAction() throws Exception {
+        CallbackHandler callbackHandler = new KeystoreCallbackHandler();
+
+        SAML2CallbackHandler samlCallbackHandler = new SAML2CallbackHandler();
+        samlCallbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        samlCallbackHandler.setIssuer("www.example.com");
+
+        SamlAssertionCache cache = new SamlAssertionCache();
+        String assertionId = null;
+        for (int i = 0; i < 2; i++) {
+            RequestData reqData = new RequestData();
+            reqData.setWssConfig(WSSConfig.getNewInstance());
+            reqData.setUsername("wss40");
+            reqData.setSamlAssertionCache(cache);
+
+            Map<String, Object> config = new TreeMap<>();
+            config.put(WSHandlerConstants.SIG_PROP_FILE, "wss40.properties");
+            config.put(WSHandlerConstants.PW_CALLBACK_REF, callbackHandler);
+            config.put(WSHandlerConstants.SAML_CALLBACK_REF, samlCallbackHandler);
+            reqData.setMsgContext(config);
+
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            CustomHandler handler = new CustomHandler();
+            HandlerAction action = new HandlerAction(WSConstants.ST_UNSIGNED);
+            handler.send(doc, reqData, Collections.singletonList(action), true);
+
+            RequestData requestData = new RequestData();
+            requestData.setCallbackHandler(callbackHandler);
+            requestData.setSigVerCrypto(crypto);
+            requestData.setValidateSamlSubjectConfirmation(false);
+            WSHandlerResult results = secEngine.processSecurityHeader(doc, requestData);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.ST_UNSIGNED).get(0);
+            SamlAssertionWrapper receivedSamlAssertion =
+                (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+            assertNotNull(receivedSamlAssertion);
+            if (assertionId != null) {
+                assertEquals(assertionId, receivedSamlAssertion.getId());
+            }
+            assertionId = receivedSamlAssertion.getId();
+        }
+        assertEquals(1, cache.getCacheSize());
+    }
+
+    private static SAMLCallback doSAMLCallback(CallbackHandler callbackHandler) throws Exception {
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        return samlCallback;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.util;
+
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.CompletableFuture;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class XMLSignatureFactoryRegistryTest {
+
+    @BeforeAll
+    public static void setup() {
+        WSSConfig.init();
+    }
+
+    @Test
+    public void testDefaultProvider() throws Exception {
+        XMLSignatureFactory signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(null);
+        assertSame(signatureFactory, XMLSignatureFactoryRegistry.getSignatureFactory(null));
+        assertSame(signatureFactory, XMLSignatureFactoryRegistry.getSignatureFactory(signatureFactory.getProvider()));
+
+        assertSame(
+            XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory),
+            XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory)
+        );
+
+        DigestMethod digestMethod = XMLSignatureFactoryRegistry.getDigestMethod(signatureFactory, DigestMethod.SHA256);
+        assertEquals(DigestMethod.SHA256, digestMethod.getAlgorithm());
+        assertSame(digestMethod, XMLSignatureFactoryRegistry.getDigestMethod(signatureFactory, DigestMethod.SHA256));
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        XMLSignatureFactory signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(null);
+        assertEquals("ApacheXMLDSig", signatureFactory.getProvider().getName());
+        assertSame(
+            signatureFactory,
+            CompletableFuture.supplyAsync(() -> XMLSignatureFactoryRegistry.getSignatureFactory(null)).get()
+        );
+    }
+
+    @Test
+    public void testOtherProviderPerThread() throws Exception {
+        Provider provider = Security.getProvider("XMLDSig");
+        assertNotNull(provider);
+
+        XMLSignatureFactory signatureFactory = XMLSignatureFactoryRegistry.getSignatureFactory(provider);
+        assertSame(signatureFactory, XMLSignatureFactoryRegistry.getSignatureFactory(provider));
+        assertSame(
+            XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory),
+            XMLSignatureFactoryRegistry.getKeyInfoFactory(signatureFactory)
+        );
+
+        XMLSignatureFactory otherThreadFactory =
+            CompletableFuture.supplyAsync(() -> XMLSignatureFactoryRegistry.getSignatureFactory(provider)).get();
+        assertNotSame(signatureFactory, otherThreadFactory);
+        assertSame(provider, otherThreadFactory.getProvider());
+    }
+
+    @Test
+    public void testUnregisteredFactory() throws Exception {
+        XMLSignatureFactory signatureFactory = XMLSignatureFactory.getInstance("DOM");
+        assertNotSame(
+            XMLSignatureFactoryRegistry.getDigestMethod(signatureFactory, DigestMethod.SHA256),
+            XMLSignatureFactoryRegistry.getDigestMethod(signatureFactory, DigestMethod.SHA256)
+        );
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.policy.stax;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.policy.model.XPath;
+
+/**
+ * Matches the element paths of security events against the element paths of the XPaths of a policy
+ * assertion, e.g. of a SignedElements assertion. The paths are compiled into a trie keyed by the QNames
+ * of their elements, so that an element path is matched in the time of its depth, however many XPaths
+ * the assertion has. An element "*" of an XPath matches any element, and "prefix:*" any element in the
+ * namespace of the prefix.
+ *
+ * A matcher is immutable. The matchers of the XPaths of the policy are compiled once, and are shared by
+ * the PolicyEnforcers of all messages. They are cached by the resolved element paths, as the same XPath
+ * expression may bind its prefixes to other namespaces in another policy.
+ */
+public final class ElementPathMatcher {
+
+    private static final String WILDCARD = "*";
+    private static final int MAX_CACHE_SIZE = 1024;
+    private static final Map<List<List<QName>>, ElementPathMatcher> CACHE = new ConcurrentHashMap<>();
+    private static final ElementPathMatcher EMPTY = new ElementPathMatcher(Collections.emptyList());
+
+    private final List<List<QName>> paths;
+    private final Node root = new Node();
+
+    private ElementPathMatcher(List<List<QName>> paths) {
+        this.paths = paths;
+        for (int i = 0; i < paths.size(); i++) {
+            Node node = root;
+            for (QName qName : paths.get(i)) {
+                node = node.getOrAddChild(qName);
+            }
+            node.addPathIndex(i);
+        }
+    }
+
+    /**
+     * Get the matcher for the element paths of the given XPaths
+     * @throws IllegalArgumentException if an XPath uses a prefix that is not declared
+     */
+    public static ElementPathMatcher getInstance(List<XPath> xPaths) {
+        if (xPaths.isEmpty()) {
+            return EMPTY;
+        }
+        List<List<QName>> elementPaths = new ArrayList<>(xPaths.size());
+        for (XPath xPath : xPaths) {
+            elementPaths.add(PolicyUtils.getElementPath(xPath));
+        }
+        ElementPathMatcher matcher = CACHE.get(elementPaths);
+        if (matcher == null) {
+            matcher = compile(elementPaths);
+            if (CACHE.size() < MAX_CACHE_SIZE) {
+                CACHE.putIfAbsent(elementPaths, matcher);
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Compile a matcher for the given element paths
+     */
+    public static ElementPathMatcher compile(List<List<QName>> elementPaths) {
+        if (elementPaths.isEmpty()) {
+            return EMPTY;
+        }
+        List<List<QName>> paths = new ArrayList<>(elementPaths.size());
+        for (List<QName> path : new LinkedHashSet<>(elementPaths)) {
+            paths.add(Collections.unmodifiableList(new ArrayList<>(path)));
+        }
+        return new ElementPathMatcher(Collections.unmodifiableList(paths));
+    }
+
+    /**
+     * @return a matcher for the element paths of this matcher, and the given element path
+     */
+    public ElementPathMatcher withPath(List<QName> elementPath) {
+        List<List<QName>> elementPaths = new ArrayList<>(paths.size() + 1);
+        elementPaths.addAll(paths);
+        elementPaths.add(elementPath);
+        return compile(elementPaths);
+    }
+
+    /**
+     * @return the distinct element paths of this matcher, in the order they were given
+     */
+    public List<List<QName>> getPaths() {
+        return paths;
+    }
+
+    /**
+     * @return whether the given element path matches one of the element paths of this matcher
+     */
+    public boolean matches(List<QName> elementPath) {
+        return elementPath != null && matches(root, elementPath, 0);
+    }
+
+    /**
+     * Set the bits of the indexes (in {@link #getPaths()}) of the element paths that match the given
+     * element path
+     */
+    public void getMatches(List<QName> elementPath, BitSet matches) {
+        if (elementPath != null) {
+            getMatches(root, elementPath, 0, matches);
+        }
+    }
+
+    private static boolean matches(Node node, List<QName> elementPath, int depth) {
+        if (depth == elementPath.size()) {
+            return node.pathIndexes.length > 0;
+        }
+        QName qName = elementPath.get(depth);
+        Node child = node.children.get(qName);
+        if (child != null && matches(child, elementPath, depth + 1)) {
+            return true;
+        }
+        child = node.namespaceWildcards.get(qName.getNamespaceURI());
+        if (child != null && matches(child, elementPath, depth + 1)) {
+            return true;
+        }
+        return node.wildcard != null && matches(node.wildcard, elementPath, depth + 1);
+    }
+
+    private static void getMatches(Node node, List<QName> elementPath, int depth, BitSet matches) {
+        if (depth == elementPath.size()) {
+            for (int pathIndex : node.pathIndexes) {
+                matches.set(pathIndex);
+            }
+            return;
+        }
+        QName qName = elementPath.get(depth);
+        Node child = node.children.get(qName);
+        if (child != null) {
+            getMatches(child, elementPath, depth + 1, matches);
+        }
+        child = node.namespaceWildcards.get(qName.getNamespaceURI());
+        if (child != null) {
+            getMatches(child, elementPath, depth + 1, matches);
+        }
+        if (node.wildcard != null) {
+            getMatches(node.wildcard, elementPath, depth + 1, matches);
+        }
+    }
+
+    private static final class Node {
+        private Map<QName, Node> children = Collections.emptyMap();
+        private Map<String, Node> namespaceWildcards = Collections.emptyMap();
+        private Node wildcard;
+        private int[] pathIndexes = new int[0];
+
+        Node getOrAddChild(QName qName) {
+            if (WILDCARD.equals(qName.getLocalPart())) {
+                if (qName.getNamespaceURI().isEmpty()) {
+                    if (wildcard == null) {
+                        wildcard = new Node();
+                    }
+                    return wildcard;
+                }
+                if (namespaceWildcards.isEmpty()) {
+                    namespaceWildcards = new HashMap<>();
+                }
+                return namespaceWildcards.computeIfAbsent(qName.getNamespaceURI(), k -> new Node());
+            }
+            if (children.isEmpty()) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(qName, k -> new Node());
+        }
+
+        void addPathIndex(int pathIndex) {
+            int[] newPathIndexes = new int[pathIndexes.length + 1];
+            System.arraycopy(pathIndexes, 0, newPathIndexes, 0, pathIndexes.length);
+            newPathIndexes[pathIndexes.length] = pathIndex;
+            pathIndexes = newPathIndexes;
+        }
+    }
+}
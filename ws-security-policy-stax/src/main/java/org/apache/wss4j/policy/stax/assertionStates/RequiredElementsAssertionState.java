@@ -22,30 +22,29 @@ import org.apache.wss4j.policy.AssertionState;
 import org.apache.wss4j.common.WSSPolicyException;
 import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
 import org.apache.wss4j.policy.model.RequiredElements;
-import org.apache.wss4j.policy.model.XPath;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
 import org.apache.wss4j.policy.stax.Assertable;
 import org.apache.wss4j.policy.stax.DummyPolicyAsserter;
+import org.apache.wss4j.policy.stax.ElementPathMatcher;
 import org.apache.wss4j.policy.stax.PolicyAsserter;
-import org.apache.wss4j.policy.stax.PolicyUtils;
 import org.apache.wss4j.stax.securityEvent.RequiredElementSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.wss4j.stax.utils.WSSUtils;
 
 import javax.xml.namespace.QName;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /**
  * WSP1.3, 4.3.1 RequiredElements Assertion
  */
 public class RequiredElementsAssertionState extends AssertionState implements Assertable {
 
-    private final Map<List<QName>, Boolean> pathElements = new HashMap<>();
+    private ElementPathMatcher pathMatcher = ElementPathMatcher.compile(Collections.emptyList());
+    private final BitSet presentPaths = new BitSet();
     private PolicyAsserter policyAsserter;
 
     public RequiredElementsAssertionState(AbstractSecurityAssertion assertion,
@@ -55,11 +54,7 @@ public class RequiredElementsAssertionState extends AssertionState implements As
 
         if (assertion instanceof RequiredElements) {
             RequiredElements requiredElements = (RequiredElements) assertion;
-            for (int i = 0; i < requiredElements.getXPaths().size(); i++) {
-                XPath xPath = requiredElements.getXPaths().get(i);
-                List<QName> elements = PolicyUtils.getElementPath(xPath);
-                pathElements.put(elements, Boolean.FALSE);
-            }
+            pathMatcher = ElementPathMatcher.getInstance(requiredElements.getXPaths());
         }
 
         this.policyAsserter = policyAsserter;
@@ -73,7 +68,7 @@ public class RequiredElementsAssertionState extends AssertionState implements As
     }
 
     public void addElement(List<QName> pathElement) {
-        this.pathElements.put(pathElement, Boolean.FALSE);
+        this.pathMatcher = pathMatcher.withPath(pathElement);
     }
 
     @Override
@@ -87,15 +82,7 @@ public class RequiredElementsAssertionState extends AssertionState implements As
     public boolean assertEvent(SecurityEvent securityEvent) throws WSSPolicyException {
         RequiredElementSecurityEvent requiredElementSecurityEvent = (RequiredElementSecurityEvent) securityEvent;
 
-        Iterator<Map.Entry<List<QName>, Boolean>> elementMapIterator = pathElements.entrySet().iterator();
-        while (elementMapIterator.hasNext()) {
-            Map.Entry<List<QName>, Boolean> next = elementMapIterator.next();
-            List<QName> qNameList = next.getKey();
-            if (WSSUtils.pathMatches(qNameList, requiredElementSecurityEvent.getElementPath())) {
-                next.setValue(Boolean.TRUE);
-                break;
-            }
-        }
+        pathMatcher.getMatches(requiredElementSecurityEvent.getElementPath(), presentPaths);
         //if we return false here other required elements will trigger a PolicyViolationException
         policyAsserter.assertPolicy(getAssertion());
         return true;
@@ -104,14 +91,11 @@ public class RequiredElementsAssertionState extends AssertionState implements As
     @Override
     public boolean isAsserted() {
         clearErrorMessage();
-        Iterator<Map.Entry<List<QName>, Boolean>> elementMapIterator = pathElements.entrySet().iterator();
-        while (elementMapIterator.hasNext()) {
-            Map.Entry<List<QName>, Boolean> next = elementMapIterator.next();
-            if (Boolean.FALSE.equals(next.getValue())) {
-                setErrorMessage("Element " + WSSUtils.pathAsString(next.getKey()) + " must be present");
-                policyAsserter.unassertPolicy(getAssertion(), getErrorMessage());
-                return false;
-            }
+        int missingPath = presentPaths.nextClearBit(0);
+        if (missingPath < pathMatcher.getPaths().size()) {
+            setErrorMessage("Element " + WSSUtils.pathAsString(pathMatcher.getPaths().get(missingPath)) + " must be present");
+            policyAsserter.unassertPolicy(getAssertion(), getErrorMessage());
+            return false;
         }
         policyAsserter.assertPolicy(getAssertion());
         return true;
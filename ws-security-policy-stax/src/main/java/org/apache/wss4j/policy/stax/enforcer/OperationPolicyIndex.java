@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.neethi.ExactlyOne;
+import org.apache.neethi.Policy;
+import org.apache.neethi.PolicyComponent;
+import org.apache.neethi.PolicyContainingAssertion;
+import org.apache.neethi.PolicyOperator;
+import org.apache.neethi.builders.PrimitiveAssertion;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+
+/**
+ * An index of the OperationPolicies of a WSDL, by SOAP action and by operation name. It also holds
+ * the alternatives of every (normalized) operation policy, as the list of the security assertions
+ * of each alternative, so that a PolicyEnforcer does not have to walk the policy again for each
+ * message.
+ */
+final class OperationPolicyIndex {
+
+    private final Map<String, OperationPolicy> policiesBySOAPAction = new HashMap<>();
+    private final Map<QName, OperationPolicy> policiesByOperationName = new HashMap<>();
+    private final Map<String, OperationPolicy> noNamespacePoliciesByLocalPart = new HashMap<>();
+    private final Map<OperationPolicy, Alternatives> alternatives = new IdentityHashMap<>();
+
+    OperationPolicyIndex(List<OperationPolicy> operationPolicies, boolean precomputeAlternatives) {
+        for (OperationPolicy operationPolicy : operationPolicies) {
+            // The first operation with a given SOAP action or name wins, as with a linear search...
+            String operationAction = operationPolicy.getOperationAction();
+            if (operationAction != null) {
+                policiesBySOAPAction.putIfAbsent(operationAction, operationPolicy);
+            }
+            QName operationName = operationPolicy.getOperationName();
+            if (operationName != null) {
+                policiesByOperationName.putIfAbsent(operationName, operationPolicy);
+                // ...except for the fallback to an operation without a namespace, where the last one wins
+                if (operationName.getNamespaceURI() == null || operationName.getNamespaceURI().length() == 0) {
+                    noNamespacePoliciesByLocalPart.put(operationName.getLocalPart(), operationPolicy);
+                }
+            }
+
+            if (precomputeAlternatives && operationPolicy.getPolicy() != null) {
+                try {
+                    Policy policy = operationPolicy.getPolicy();
+                    alternatives.put(operationPolicy, new Alternatives(policy, getAlternatives(policy)));
+                } catch (WSSPolicyException e) {
+                    // The PolicyEnforcer reports an invalid policy when the operation is invoked
+                }
+            }
+        }
+    }
+
+    OperationPolicy findPolicyBySOAPAction(String soapAction) {
+        return policiesBySOAPAction.get(soapAction);
+    }
+
+    OperationPolicy findPolicyBySOAPOperationName(QName soapOperationName) {
+        OperationPolicy operationPolicy = policiesByOperationName.get(soapOperationName);
+        if (operationPolicy == null) {
+            operationPolicy = noNamespacePoliciesByLocalPart.get(soapOperationName.getLocalPart());
+        }
+        return operationPolicy;
+    }
+
+    /**
+     * Return the security assertions of each alternative of the policy of the given operation,
+     * or null if they are not precomputed
+     */
+    List<List<AbstractSecurityAssertion>> getAlternatives(OperationPolicy operationPolicy) {
+        Alternatives operationAlternatives = alternatives.get(operationPolicy);
+        if (operationAlternatives == null || operationAlternatives.policy != operationPolicy.getPolicy()) {
+            return null;
+        }
+        return operationAlternatives.alternatives;
+    }
+
+    /**
+     * Precondition: Policy _must_ be normalized!
+     */
+    private static List<List<AbstractSecurityAssertion>> getAlternatives(PolicyComponent policyComponent)
+        throws WSSPolicyException {
+        if (!(policyComponent instanceof PolicyOperator)) {
+            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
+                                         + " " + policyComponent.getType());
+        }
+        PolicyOperator policyOperator = (PolicyOperator) policyComponent;
+        List<List<AbstractSecurityAssertion>> alternatives = new ArrayList<>();
+        for (PolicyComponent curPolicyComponent : policyOperator.getPolicyComponents()) {
+            if (policyOperator instanceof ExactlyOne) {
+                List<AbstractSecurityAssertion> alternative = new ArrayList<>();
+                addAssertions(curPolicyComponent, alternative);
+                alternatives.add(Collections.unmodifiableList(alternative));
+            } else {
+                alternatives.addAll(getAlternatives(curPolicyComponent));
+            }
+        }
+        return Collections.unmodifiableList(alternatives);
+    }
+
+    private static void addAssertions(PolicyComponent policyComponent, List<AbstractSecurityAssertion> alternative)
+        throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            for (PolicyComponent curPolicyComponent : ((PolicyOperator) policyComponent).getPolicyComponents()) {
+                addAssertions(curPolicyComponent, alternative);
+            }
+        } else if (policyComponent instanceof AbstractSecurityAssertion) {
+            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
+            alternative.add(abstractSecurityAssertion);
+            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
+                addAssertions(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(), alternative);
+            }
+        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
+            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
+                                         + " type: " + policyComponent.getType());
+        }
+    }
+
+    private static final class Alternatives {
+        private final Policy policy;
+        private final List<List<AbstractSecurityAssertion>> alternatives;
+
+        Alternatives(Policy policy, List<List<AbstractSecurityAssertion>> alternatives) {
+            this.policy = policy;
+            this.alternatives = alternatives;
+        }
+    }
+}
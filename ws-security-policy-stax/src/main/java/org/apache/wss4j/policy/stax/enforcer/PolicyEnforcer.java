@@ -25,6 +25,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.xml.namespace.QName;
 
@@ -130,11 +131,12 @@ public class PolicyEnforcer implements SecurityEventListener {
     private static final QName SOAP11_FAULT = new QName(WSSConstants.NS_SOAP11, "Fault");
     private static final QName SOAP12_FAULT = new QName(WSSConstants.NS_SOAP12, "Fault");
 
-    private final List<OperationPolicy> operationPolicies;
+    private final OperationPolicyIndex operationPolicyIndex;
     private OperationPolicy effectivePolicy;
     private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap;
     private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> failedAssertionStateMap;
 
+    private final ReentrantLock lock = new ReentrantLock();
     private final Deque<SecurityEvent> securityEventQueue = new LinkedList<>();
     private boolean operationSecurityEventOccured = false;
     private boolean initiator;
@@ -148,7 +150,14 @@ public class PolicyEnforcer implements SecurityEventListener {
     public PolicyEnforcer(List<OperationPolicy> operationPolicies, String soapAction, boolean initiator,
                           String actorOrRole, int attachmentCount, PolicyAsserter policyAsserter, boolean soap12
     ) throws WSSPolicyException {
-        this.operationPolicies = operationPolicies;
+        this(new OperationPolicyIndex(operationPolicies, false), soapAction, initiator, actorOrRole,
+             attachmentCount, policyAsserter, soap12);
+    }
+
+    PolicyEnforcer(OperationPolicyIndex operationPolicyIndex, String soapAction, boolean initiator,
+                   String actorOrRole, int attachmentCount, PolicyAsserter policyAsserter, boolean soap12
+    ) throws WSSPolicyException {
+        this.operationPolicyIndex = operationPolicyIndex;
         this.initiator = initiator;
         this.actorOrRole = actorOrRole;
         this.attachmentCount = attachmentCount;
@@ -163,43 +172,29 @@ public class PolicyEnforcer implements SecurityEventListener {
         }
 
         if (soapAction != null && !soapAction.isEmpty()) {
-            effectivePolicy = findPolicyBySOAPAction(operationPolicies, soapAction);
+            effectivePolicy = operationPolicyIndex.findPolicyBySOAPAction(soapAction);
             if (effectivePolicy != null) {
-                buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
+                buildAssertionStateMap(effectivePolicy, assertionStateMap);
             }
         }
     }
 
-    private OperationPolicy findPolicyBySOAPAction(List<OperationPolicy> operationPolicies, String soapAction) {
-        Iterator<OperationPolicy> operationPolicyIterator = operationPolicies.iterator();
-        while (operationPolicyIterator.hasNext()) {
-            OperationPolicy operationPolicy = operationPolicyIterator.next();
-            if (soapAction.equals(operationPolicy.getOperationAction())) {
-                return operationPolicy;
-            }
+    private void buildAssertionStateMap(
+            OperationPolicy operationPolicy,
+            List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap
+    ) throws WSSPolicyException {
+        List<List<AbstractSecurityAssertion>> alternatives = operationPolicyIndex.getAlternatives(operationPolicy);
+        if (alternatives == null) {
+            buildAssertionStateMap(operationPolicy.getPolicy(), assertionStateMap);
+            return;
         }
-        return null;
-    }
-
-    private OperationPolicy findPolicyBySOAPOperationName(List<OperationPolicy> operationPolicies,
-                                                          QName soapOperationName) {
-        Iterator<OperationPolicy> operationPolicyIterator = operationPolicies.iterator();
-        OperationPolicy noNamespaceOperation = null;
-
-        while (operationPolicyIterator.hasNext()) {
-            OperationPolicy operationPolicy = operationPolicyIterator.next();
-            QName operationName = operationPolicy.getOperationName();
-            if (operationName != null) {
-                if (soapOperationName.equals(operationName)) {
-                    return operationPolicy;
-                } else if ((operationName.getNamespaceURI() == null || operationName.getNamespaceURI().length() == 0)
-                    && soapOperationName.getLocalPart().equals(operationName.getLocalPart())) {
-                    noNamespaceOperation = operationPolicy;
-                }
+        for (List<AbstractSecurityAssertion> alternative : alternatives) {
+            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map = new HashMap<>();
+            assertionStateMap.add(map);
+            for (AbstractSecurityAssertion abstractSecurityAssertion : alternative) {
+                addAssertables(abstractSecurityAssertion, map);
             }
         }
-
-        return noNamespaceOperation;
     }
 
     /**
@@ -246,24 +241,7 @@ public class PolicyEnforcer implements SecurityEventListener {
             }
         } else if (policyComponent instanceof AbstractSecurityAssertion) {
             AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
-
-            List<Assertable> assertablesList = getAssertableForAssertion(abstractSecurityAssertion);
-            Iterator<Assertable> assertableIterator = assertablesList.iterator();
-            while (assertableIterator.hasNext()) {
-                Assertable assertable = assertableIterator.next();
-                final Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                    assertionStateMap.get(alternative);
-                final SecurityEventConstants.Event[] securityEventType = assertable.getSecurityEventType();
-                for (int j = 0; j < securityEventType.length; j++) {
-                    SecurityEventConstants.Event event = securityEventType[j];
-                    Map<Assertion, List<Assertable>> assertables = map.get(event);
-                    if (assertables == null) {
-                        assertables = new HashMap<>();
-                        map.put(event, assertables);
-                    }
-                    addAssertionState(assertables, abstractSecurityAssertion, assertable);
-                }
-            }
+            addAssertables(abstractSecurityAssertion, assertionStateMap.get(alternative));
             if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
                 buildAssertionStateMap(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(),
                                        assertionStateMap, alternative);
@@ -274,6 +252,27 @@ public class PolicyEnforcer implements SecurityEventListener {
         }
     }
 
+    private void addAssertables(
+            AbstractSecurityAssertion abstractSecurityAssertion,
+            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map
+    ) throws WSSPolicyException {
+        List<Assertable> assertablesList = getAssertableForAssertion(abstractSecurityAssertion);
+        Iterator<Assertable> assertableIterator = assertablesList.iterator();
+        while (assertableIterator.hasNext()) {
+            Assertable assertable = assertableIterator.next();
+            final SecurityEventConstants.Event[] securityEventType = assertable.getSecurityEventType();
+            for (int j = 0; j < securityEventType.length; j++) {
+                SecurityEventConstants.Event event = securityEventType[j];
+                Map<Assertion, List<Assertable>> assertables = map.get(event);
+                if (assertables == null) {
+                    assertables = new HashMap<>();
+                    map.put(event, assertables);
+                }
+                addAssertionState(assertables, abstractSecurityAssertion, assertable);
+            }
+        }
+    }
+
     private void addAssertionState(Map<Assertion, List<Assertable>> assertables,
                                    Assertion keyAssertion,
                                    Assertable assertable) {
@@ -627,10 +626,12 @@ public class PolicyEnforcer implements SecurityEventListener {
      * verifies the policy after the OperationSecurityEvent occurred. This allows to
      * stop further processing after the header is processed when the policy is not fulfilled.
      *
+     * @param soapHeaderProcessed true if all the SOAP headers are processed. Otherwise the
+     *                            RequiredParts assertions are not verified.
      * @throws WSSPolicyException       throws when the policy is invalid
      * @throws PolicyViolationException thrown when no alternative could be satisfied
      */
-    private void verifyPolicyAfterOperationSecurityEvent() throws WSSPolicyException {
+    private void verifyPolicyAfterOperationSecurityEvent(boolean soapHeaderProcessed) throws WSSPolicyException {
         String assertionMessage = null;
         Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
             this.assertionStateMap.iterator();
@@ -669,9 +670,10 @@ public class PolicyEnforcer implements SecurityEventListener {
                         } else if (assertable instanceof TokenProtectionAssertionState
                             || assertable instanceof SignatureConfirmationAssertionState
                             || assertable instanceof IncludeTimeStampAssertionState
-                            || assertable instanceof RequiredPartsAssertionState
                             || assertable instanceof SignatureProtectionAssertionState) {
                             doAssert = true;
+                        } else if (assertable instanceof RequiredPartsAssertionState) {
+                            doAssert = soapHeaderProcessed;
                         }
 
                         if ((doAssert || assertable.isHardFailure()) && !assertable.isAsserted()) {
@@ -725,9 +727,19 @@ public class PolicyEnforcer implements SecurityEventListener {
         }
     }
 
-    //multiple threads can call this method concurrently -> synchronize access
+    //multiple threads can call this method concurrently -> synchronize access. A ReentrantLock is used
+    //rather than a monitor so that a virtual thread blocked here does not pin its carrier thread
     @Override
-    public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+    public void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+        lock.lock();
+        try {
+            doRegisterSecurityEvent(securityEvent);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doRegisterSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
 
         if (!noSecurityHeader && securityEvent instanceof NoSecuritySecurityEvent) {
             noSecurityHeader = true;
@@ -750,15 +762,15 @@ public class PolicyEnforcer implements SecurityEventListener {
             }
 
             if (effectivePolicy == null) {
-                effectivePolicy = findPolicyBySOAPOperationName(operationPolicies,
-                                                                operationSecurityEvent.getOperation());
+                effectivePolicy =
+                    operationPolicyIndex.findPolicyBySOAPOperationName(operationSecurityEvent.getOperation());
                 if (effectivePolicy == null) {
                     //no policy to the operation given
                     effectivePolicy = new OperationPolicy(new QName(null, "NoPolicyFoundForOperation"));
                     effectivePolicy.setPolicy(new Policy());
                 }
                 try {
-                    buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
+                    buildAssertionStateMap(effectivePolicy, assertionStateMap);
                 } catch (WSSPolicyException e) {
                     throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
                 }
@@ -772,7 +784,7 @@ public class PolicyEnforcer implements SecurityEventListener {
 
                 verifyPolicy(securityEvent);
 
-                verifyPolicyAfterOperationSecurityEvent();
+                verifyPolicyAfterOperationSecurityEvent(true);
             } catch (WSSPolicyException | XMLSecurityException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
@@ -784,6 +796,36 @@ public class PolicyEnforcer implements SecurityEventListener {
         }
     }
 
+    /**
+     * Verifies the policy as soon as the security header is processed, without waiting for the
+     * OperationSecurityEvent. The queued SecurityEvents are verified and the assertions which only
+     * depend on the security header are checked, so that a message that cannot satisfy any
+     * alternative is rejected before its body is processed. This is only possible when the
+     * effective policy is already known from the SOAP action, otherwise nothing is done here.
+     *
+     * @throws WSSecurityException if no alternative could be satisfied
+     */
+    public void verifyPolicyAfterSecurityHeader() throws WSSecurityException {
+        lock.lock();
+        try {
+            if (operationSecurityEventOccured || effectivePolicy == null) {
+                return;
+            }
+            Iterator<SecurityEvent> securityEventIterator = securityEventQueue.descendingIterator();
+            while (securityEventIterator.hasNext()) {
+                SecurityEvent prevSecurityEvent = securityEventIterator.next();
+                verifyPolicy(prevSecurityEvent);
+            }
+            securityEventQueue.clear();
+
+            verifyPolicyAfterOperationSecurityEvent(false);
+        } catch (WSSPolicyException | XMLSecurityException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * the final Policy validation to find a satisfied alternative
      *
@@ -104,7 +104,7 @@ public class PolicyEnforcerFactory {
     private final List<AssertionBuilder<Element>> assertionBuilders;
 
     private Definition wsdlDefinition;
-    private List<OperationPolicy> operationPolicies;
+    private OperationPolicyIndex operationPolicyIndex;
     private final Map<Element, Policy> elementPolicyCache;
 
     protected PolicyEnforcerFactory(List<AssertionBuilder<Element>> customAssertionBuilders) {
@@ -192,7 +192,7 @@ public class PolicyEnforcerFactory {
             WSDLReader reader = wsdlFactory.newWSDLReader();
             reader.setFeature("javax.wsdl.verbose", false);
             wsdlDefinition = reader.readWSDL(wsdlUrl.toString());
-            operationPolicies = findPoliciesByOperation(wsdlDefinition);
+            operationPolicyIndex = new OperationPolicyIndex(findPoliciesByOperation(wsdlDefinition), true);
         } catch (WSDLException e) {
             throw new WSSPolicyException(e.getMessage(), e);
         }
@@ -205,7 +205,7 @@ public class PolicyEnforcerFactory {
             WSDLReader reader = wsdlFactory.newWSDLReader();
             reader.setFeature("javax.wsdl.verbose", false);
             wsdlDefinition = reader.readWSDL(document.getDocumentURI(), document);
-            operationPolicies = findPoliciesByOperation(wsdlDefinition);
+            operationPolicyIndex = new OperationPolicyIndex(findPoliciesByOperation(wsdlDefinition), true);
         } catch (WSDLException e) {
             throw new WSSPolicyException(e.getMessage(), e);
         }
@@ -438,6 +438,6 @@ public class PolicyEnforcerFactory {
     public PolicyEnforcer newPolicyEnforcer(String soapAction, boolean initiator,
                                             String roleOrActor, int attachmentCount,
                                             boolean soap12) throws WSSPolicyException {
-        return new PolicyEnforcer(this.operationPolicies, soapAction, initiator, roleOrActor, attachmentCount, null, soap12);
+        return new PolicyEnforcer(this.operationPolicyIndex, soapAction, initiator, roleOrActor, attachmentCount, null, soap12);
     }
 }
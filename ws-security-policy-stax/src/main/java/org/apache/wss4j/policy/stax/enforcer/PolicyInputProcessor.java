@@ -30,6 +30,7 @@ import org.apache.wss4j.stax.securityEvent.SignedPartSecurityEvent;
 import org.apache.wss4j.stax.utils.WSSUtils;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.*;
+import org.apache.xml.security.stax.ext.stax.XMLSecEndElement;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
@@ -51,6 +52,7 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
     private final PolicyEnforcer policyEnforcer;
     private boolean initDone = false;
     private boolean transportSecurityActive = false;
+    private boolean failFast = false;
 
     public PolicyInputProcessor(PolicyEnforcer policyEnforcer, XMLSecurityProperties securityProperties) {
         super(securityProperties);
@@ -59,6 +61,21 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
         this.policyEnforcer = policyEnforcer;
     }
 
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * If set to true, the policy is verified at the end of the security header, and the message
+     * is rejected there if it cannot satisfy any policy alternative. Otherwise the message is
+     * rejected at the latest with the OperationSecurityEvent of its first body element.
+     * This only takes effect when the PolicyEnforcer knows the policy from the SOAP action.
+     * The default is false.
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
     @Override
     public XMLSecEvent processHeaderEvent(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
         XMLSecEvent xmlSecEvent = inputProcessorChain.processHeaderEvent();
@@ -140,6 +157,17 @@ public class PolicyInputProcessor extends AbstractInputProcessor {
                 }
             }
         }
+
+        //reject the message at the end of the security header when no alternative can be satisfied anymore
+        if (failFast && XMLStreamConstants.END_ELEMENT == xmlSecEvent.getEventType()) {
+            XMLSecEndElement xmlSecEndElement = xmlSecEvent.asEndElement();
+            if (xmlSecEndElement.getDocumentLevel() == 3
+                    && WSSConstants.TAG_WSSE_SECURITY.equals(xmlSecEndElement.getName())
+                    && WSSUtils.isInSecurityHeader(xmlSecEvent, xmlSecEndElement.getElementPath(),
+                    ((WSSSecurityProperties) getSecurityProperties()).getActor())) {
+                policyEnforcer.verifyPolicyAfterSecurityHeader();
+            }
+        }
         return xmlSecEvent;
     }
 
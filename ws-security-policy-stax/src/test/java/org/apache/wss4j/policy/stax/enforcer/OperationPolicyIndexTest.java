@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.neethi.All;
+import org.apache.neethi.ExactlyOne;
+import org.apache.neethi.Policy;
+import org.apache.wss4j.policy.SPConstants;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.model.Header;
+import org.apache.wss4j.policy.model.RequiredParts;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class OperationPolicyIndexTest {
+
+    @Test
+    public void testFindPolicy() throws Exception {
+        OperationPolicy operationA = createOperationPolicy(new QName("urn:a", "op"), "urn:op");
+        OperationPolicy operationB = createOperationPolicy(new QName("urn:b", "op"), "urn:op");
+        OperationPolicy operationC = createOperationPolicy(new QName(null, "other"), null);
+        OperationPolicy operationD = createOperationPolicy(new QName(null, "other"), "urn:other");
+        OperationPolicyIndex operationPolicyIndex =
+            new OperationPolicyIndex(Arrays.asList(operationA, operationB, operationC, operationD), true);
+
+        // The first operation with a SOAP action or name is found...
+        assertSame(operationA, operationPolicyIndex.findPolicyBySOAPAction("urn:op"));
+        assertSame(operationD, operationPolicyIndex.findPolicyBySOAPAction("urn:other"));
+        assertNull(operationPolicyIndex.findPolicyBySOAPAction("urn:unknown"));
+
+        assertSame(operationA, operationPolicyIndex.findPolicyBySOAPOperationName(new QName("urn:a", "op")));
+        assertSame(operationB, operationPolicyIndex.findPolicyBySOAPOperationName(new QName("urn:b", "op")));
+        assertSame(operationC, operationPolicyIndex.findPolicyBySOAPOperationName(new QName("other")));
+        // ...but the last operation without a namespace is used for an operation name with an unknown namespace
+        assertSame(operationD, operationPolicyIndex.findPolicyBySOAPOperationName(new QName("urn:c", "other")));
+        assertNull(operationPolicyIndex.findPolicyBySOAPOperationName(new QName("urn:c", "op")));
+    }
+
+    @Test
+    public void testAlternatives() throws Exception {
+        RequiredParts requiredParts = new RequiredParts(
+            SPConstants.SPVersion.SP12, Collections.singletonList(new Header("To", "urn:header"))
+        );
+        All firstAlternative = new All();
+        firstAlternative.addPolicyComponent(requiredParts);
+        ExactlyOne exactlyOne = new ExactlyOne();
+        exactlyOne.addPolicyComponent(firstAlternative);
+        exactlyOne.addPolicyComponent(new All());
+        Policy policy = new Policy();
+        policy.addPolicyComponent(exactlyOne);
+
+        OperationPolicy operationPolicy = new OperationPolicy(new QName("urn:a", "op"));
+        operationPolicy.setPolicy(policy);
+
+        OperationPolicyIndex operationPolicyIndex =
+            new OperationPolicyIndex(Collections.singletonList(operationPolicy), true);
+        List<List<AbstractSecurityAssertion>> alternatives = operationPolicyIndex.getAlternatives(operationPolicy);
+        assertEquals(2, alternatives.size());
+        assertEquals(Collections.singletonList(requiredParts), alternatives.get(0));
+        assertEquals(Collections.emptyList(), alternatives.get(1));
+
+        // The alternatives are not used anymore once the policy is replaced
+        operationPolicy.setPolicy(new Policy());
+        assertNull(operationPolicyIndex.getAlternatives(operationPolicy));
+
+        operationPolicy.setPolicy(policy);
+        assertNull(new OperationPolicyIndex(Collections.singletonList(operationPolicy), false)
+                       .getAlternatives(operationPolicy));
+    }
+
+    private static OperationPolicy createOperationPolicy(QName operationName, String operationAction) {
+        OperationPolicy operationPolicy = new OperationPolicy(operationName);
+        operationPolicy.setOperationAction(operationAction);
+        operationPolicy.setPolicy(new Policy());
+        return operationPolicy;
+    }
+}
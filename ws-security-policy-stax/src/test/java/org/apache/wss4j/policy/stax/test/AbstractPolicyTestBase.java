@@ -82,6 +82,12 @@ public class AbstractPolicyTestBase extends AbstractTestBase {
     protected PolicyEnforcer buildAndStartPolicyEngine(
             String policyString, boolean replacePolicyElement, List<AssertionBuilder<Element>> customAssertionBuilders)
             throws ParserConfigurationException, SAXException, IOException, WSSPolicyException {
+        return buildAndStartPolicyEngine(policyString, replacePolicyElement, customAssertionBuilders, "");
+    }
+
+    protected PolicyEnforcer buildAndStartPolicyEngine(
+            String policyString, boolean replacePolicyElement, List<AssertionBuilder<Element>> customAssertionBuilders,
+            String soapAction) throws ParserConfigurationException, SAXException, IOException, WSSPolicyException {
         DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
         documentBuilderFactory.setNamespaceAware(true);
         documentBuilderFactory.setValidating(false);
@@ -98,8 +104,12 @@ public class AbstractPolicyTestBase extends AbstractTestBase {
         } else {
             element.appendChild(policyNode);
         }
+        NodeList soapOperations = document.getElementsByTagNameNS("http://schemas.xmlsoap.org/wsdl/soap/", "operation");
+        for (int i = 0; i < soapOperations.getLength(); i++) {
+            ((Element) soapOperations.item(i)).setAttributeNS(null, "soapAction", soapAction);
+        }
         PolicyEnforcerFactory policyEnforcerFactory = PolicyEnforcerFactory.newInstance(document, customAssertionBuilders);
-        PolicyEnforcer policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
+        PolicyEnforcer policyEnforcer = policyEnforcerFactory.newPolicyEnforcer(soapAction, false, null, 0, false);
 
         return policyEnforcer;
     }
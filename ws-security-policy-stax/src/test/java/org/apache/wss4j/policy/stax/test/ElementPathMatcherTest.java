@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.policy.stax.test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.policy.model.XPath;
+import org.apache.wss4j.policy.stax.ElementPathMatcher;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ElementPathMatcherTest {
+
+    private static final String NS = "http://example.org";
+    private static final String NS2 = "http://example.org/2";
+    private static final QName ENVELOPE = new QName("http://schemas.xmlsoap.org/soap/envelope/", "Envelope");
+    private static final QName HEADER = new QName("http://schemas.xmlsoap.org/soap/envelope/", "Header");
+
+    @Test
+    public void testExactPaths() throws Exception {
+        ElementPathMatcher matcher = ElementPathMatcher.getInstance(Arrays.asList(
+            xPath("/soap:Envelope/soap:Header/b:a"), xPath("/soap:Envelope/soap:Header/b:b"), xPath("/b:a")
+        ));
+        assertEquals(3, matcher.getPaths().size());
+
+        assertTrue(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS, "a"))));
+        assertTrue(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS, "b"))));
+        assertTrue(matcher.matches(Collections.singletonList(new QName(NS, "a"))));
+
+        assertFalse(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS, "c"))));
+        assertFalse(matcher.matches(Arrays.asList(ENVELOPE, HEADER)));
+        assertFalse(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS, "a"), new QName(NS, "a"))));
+        assertFalse(matcher.matches(Collections.singletonList(new QName(NS2, "a"))));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void testWildcards() throws Exception {
+        ElementPathMatcher matcher = ElementPathMatcher.getInstance(Arrays.asList(
+            xPath("/soap:Envelope/soap:Header/b:*"), xPath("/soap:Envelope/*/c:x")
+        ));
+
+        assertTrue(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS, "a"))));
+        assertTrue(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS, "b"))));
+        assertFalse(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS2, "a"))));
+
+        assertTrue(matcher.matches(Arrays.asList(ENVELOPE, HEADER, new QName(NS2, "x"))));
+        assertTrue(matcher.matches(Arrays.asList(ENVELOPE, new QName(NS, "y"), new QName(NS2, "x"))));
+        assertFalse(matcher.matches(Arrays.asList(ENVELOPE, new QName(NS, "y"), new QName(NS2, "z"))));
+
+        BitSet matches = new BitSet();
+        matcher.getMatches(Arrays.asList(ENVELOPE, HEADER, new QName(NS, "x")), matches);
+        assertEquals(1, matches.cardinality());
+        assertTrue(matches.get(0));
+        matches.clear();
+        matcher.getMatches(Arrays.asList(ENVELOPE, HEADER, new QName(NS2, "x")), matches);
+        assertEquals(1, matches.cardinality());
+        assertTrue(matches.get(1));
+    }
+
+    @Test
+    public void testDuplicateAndAddedPaths() throws Exception {
+        List<XPath> xPaths = Arrays.asList(xPath("/b:a"), xPath("/b:a"));
+        ElementPathMatcher matcher = ElementPathMatcher.getInstance(xPaths);
+        assertEquals(1, matcher.getPaths().size());
+        // The matcher is compiled once for the same XPaths
+        assertSame(matcher, ElementPathMatcher.getInstance(Arrays.asList(xPath("/b:a"), xPath("/b:a"))));
+
+        ElementPathMatcher extendedMatcher = matcher.withPath(Arrays.asList(ENVELOPE, HEADER));
+        assertEquals(2, extendedMatcher.getPaths().size());
+        assertTrue(extendedMatcher.matches(Arrays.asList(ENVELOPE, HEADER)));
+        assertTrue(extendedMatcher.matches(Collections.singletonList(new QName(NS, "a"))));
+        // The shared matcher is not changed
+        assertFalse(matcher.matches(Arrays.asList(ENVELOPE, HEADER)));
+    }
+
+    /**
+     * Two policies bind the same prefix to different namespaces
+     */
+    @Test
+    public void testSamePrefixOtherNamespace() throws Exception {
+        ElementPathMatcher matcher = ElementPathMatcher.getInstance(Collections.singletonList(xPath("/b:a")));
+        Map<String, String> prefixes = Collections.singletonMap("b", NS2);
+        ElementPathMatcher otherMatcher = ElementPathMatcher.getInstance(
+            Collections.singletonList(new XPath("/b:a", XPath.Version.V1, null, prefixes))
+        );
+        assertNotSame(matcher, otherMatcher);
+
+        assertTrue(matcher.matches(Collections.singletonList(new QName(NS, "a"))));
+        assertFalse(matcher.matches(Collections.singletonList(new QName(NS2, "a"))));
+        assertTrue(otherMatcher.matches(Collections.singletonList(new QName(NS2, "a"))));
+        assertFalse(otherMatcher.matches(Collections.singletonList(new QName(NS, "a"))));
+    }
+
+    /**
+     * An undeclared prefix is rejected, also when the matcher for the expression is cached
+     */
+    @Test
+    public void testUndeclaredPrefix() throws Exception {
+        ElementPathMatcher.getInstance(Collections.singletonList(xPath("/b:a/c:b")));
+        XPath undeclared = new XPath("/b:a/c:b", XPath.Version.V1, null, Collections.singletonMap("b", NS));
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ElementPathMatcher.getInstance(Collections.singletonList(undeclared))
+        );
+    }
+
+    private static XPath xPath(String expression) {
+        Map<String, String> prefixes = new HashMap<>();
+        prefixes.put("soap", ENVELOPE.getNamespaceURI());
+        prefixes.put("b", NS);
+        prefixes.put("c", NS2);
+        return new XPath(expression, XPath.Version.V1, null, prefixes);
+    }
+}
@@ -23,6 +23,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -49,6 +50,7 @@ import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -1555,4 +1557,138 @@ public class TransportBindingIntegrationTest extends AbstractPolicyTestBase {
                     "Policy enforces LaxTsFirst but X509Token occured first");
         }
     }*/
+
+    /**
+     * With fail fast, a message that violates the policy in its security header is rejected at the
+     * end of the security header, before its body is read. The message is cut off after the start of
+     * the SOAP Body, so that only the security header can be verified.
+     */
+    @Test
+    public void testFailFastAtEndOfSecurityHeader() throws Exception {
+
+        String policyString =
+                "<wsp:ExactlyOne xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\" " +
+                        "xmlns:sp=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200702\">\n" +
+                        "            <wsp:All>\n" +
+                        "                <sp:TransportBinding>\n" +
+                        "                    <wsp:Policy>\n" +
+                        "                        <sp:AlgorithmSuite>\n" +
+                        "                            <wsp:Policy>\n" +
+                        "                                <sp:Basic256/>\n" +
+                        "                            </wsp:Policy>\n" +
+                        "                        </sp:AlgorithmSuite>\n" +
+                        "                    </wsp:Policy>\n" +
+                        "                </sp:TransportBinding>\n" +
+                        "            </wsp:All>\n" +
+                        "        </wsp:ExactlyOne>";
+
+        ByteArrayOutputStream baos = createTimestampedMessage();
+
+        try {
+            doInboundSecurityFailFast(policyString, truncateAfterStartElement(baos, "<env:Body"), true);
+            fail("Exception expected");
+        } catch (XMLStreamException e) {
+            assertTrue(e.getCause() instanceof WSSecurityException);
+            assertEquals(e.getCause().getMessage(), "Timestamp must not be present");
+            assertEquals(((WSSecurityException) e.getCause()).getFaultCode(), WSSecurityException.INVALID_SECURITY);
+        }
+
+        //without fail fast the policy is not verified before the first body element
+        try {
+            doInboundSecurityFailFast(policyString, truncateAfterStartElement(baos, "<env:Body"), false);
+            fail("Exception expected");
+        } catch (XMLStreamException e) {
+            assertFalse(e.getCause() instanceof WSSecurityException);
+        }
+    }
+
+    /**
+     * RequiredParts are not verified at the end of the security header, as other SOAP headers can follow it.
+     * A message without a required header is rejected at the first element of the SOAP Body instead.
+     */
+    @Test
+    public void testFailFastRequiredPartsAtFirstBodyElement() throws Exception {
+
+        String policyString =
+                "<wsp:ExactlyOne xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\" " +
+                        "xmlns:sp=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200702\">\n" +
+                        "            <wsp:All>\n" +
+                        "                <sp:TransportBinding>\n" +
+                        "                    <wsp:Policy>\n" +
+                        "                        <sp:AlgorithmSuite>\n" +
+                        "                            <wsp:Policy>\n" +
+                        "                                <sp:Basic256/>\n" +
+                        "                            </wsp:Policy>\n" +
+                        "                        </sp:AlgorithmSuite>\n" +
+                        "                        <sp:IncludeTimestamp/>\n" +
+                        "                    </wsp:Policy>\n" +
+                        "                </sp:TransportBinding>\n" +
+                        "                <sp:RequiredParts>\n" +
+                        "                    <sp:Header Name=\"a\" Namespace=\"http://example.org\"/>\n" +
+                        "                </sp:RequiredParts>\n" +
+                        "            </wsp:All>\n" +
+                        "        </wsp:ExactlyOne>";
+
+        ByteArrayOutputStream baos = createTimestampedMessage();
+
+        //the end of the security header is passed without a policy violation
+        try {
+            doInboundSecurityFailFast(policyString, truncateAfterStartElement(baos, "<env:Body"), true);
+            fail("Exception expected");
+        } catch (XMLStreamException e) {
+            assertFalse(e.getCause() instanceof WSSecurityException);
+        }
+
+        //the message is rejected at the first body element
+        try {
+            doInboundSecurityFailFast(policyString, truncateAfterStartElement(baos, "<definitions"), true);
+            fail("Exception expected");
+        } catch (XMLStreamException e) {
+            assertTrue(e.getCause() instanceof WSSecurityException);
+            assertEquals(e.getCause().getMessage(), "Element {http://example.org}a must be present");
+            assertEquals(((WSSecurityException) e.getCause()).getFaultCode(), WSSecurityException.INVALID_SECURITY);
+        }
+    }
+
+    private ByteArrayOutputStream createTimestampedMessage() throws Exception {
+        WSSSecurityProperties outSecurityProperties = new WSSSecurityProperties();
+        List<WSSConstants.Action> actions = new ArrayList<>();
+        actions.add(WSSConstants.TIMESTAMP);
+        outSecurityProperties.setActions(actions);
+
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        return doOutboundSecurity(outSecurityProperties, sourceDocument);
+    }
+
+    private void doInboundSecurityFailFast(String policyString, InputStream message, boolean failFast) throws Exception {
+        WSSSecurityProperties inSecurityProperties = new WSSSecurityProperties();
+        inSecurityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+        //the effective policy must be known from the SOAP action to verify it at the end of the security header
+        PolicyEnforcer policyEnforcer = buildAndStartPolicyEngine(policyString, false, null, "urn:definitions");
+        PolicyInputProcessor policyInputProcessor = new PolicyInputProcessor(policyEnforcer, inSecurityProperties);
+        policyInputProcessor.setFailFast(failFast);
+        inSecurityProperties.addInputProcessor(policyInputProcessor);
+
+        HttpsTokenSecurityEvent httpsTokenSecurityEvent = new HttpsTokenSecurityEvent();
+        HttpsSecurityTokenImpl httpsSecurityToken = new HttpsSecurityTokenImpl(true, "transmitter");
+        httpsSecurityToken.addTokenUsage(WSSecurityTokenConstants.TOKENUSAGE_MAIN_SIGNATURE);
+        httpsTokenSecurityEvent.setSecurityToken(httpsSecurityToken);
+
+        List<SecurityEvent> securityEventList = new ArrayList<>();
+        securityEventList.add(httpsTokenSecurityEvent);
+
+        doInboundSecurity(inSecurityProperties, message, securityEventList, policyEnforcer);
+    }
+
+    /**
+     * Cut the message off after the given start tag in the SOAP Body, or after the start tag of the SOAP Body itself
+     */
+    private static InputStream truncateAfterStartElement(ByteArrayOutputStream message, String startTag) {
+        String document = new String(message.toByteArray(), StandardCharsets.UTF_8);
+        int index = document.indexOf(startTag, document.indexOf("<env:Body"));
+        assertTrue(index > 0);
+        int end = document.indexOf('>', index) + 1;
+        return new ByteArrayInputStream(document.substring(0, end).getBytes(StandardCharsets.UTF_8));
+    }
 }
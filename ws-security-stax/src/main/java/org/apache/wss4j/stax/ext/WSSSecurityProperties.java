@@ -32,6 +32,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
@@ -39,10 +40,12 @@ import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.validate.Validator;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -108,6 +111,8 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private SecurityContextStore securityContextStore;
+    private SamlAssertionCache samlAssertionCache;
     private boolean validateSamlSubjectConfirmation = true;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
@@ -115,6 +120,7 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private boolean requireTimestampExpires;
 
     private CallbackHandler attachmentCallbackHandler;
+    private Executor attachmentProcessingExecutor;
     private Object msgContext;
     private boolean soap12;
     private DocumentCreator documentCreator;
@@ -164,6 +170,8 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.timestampReplayCache = wssSecurityProperties.timestampReplayCache;
         this.nonceReplayCache = wssSecurityProperties.nonceReplayCache;
         this.samlOneTimeUseReplayCache = wssSecurityProperties.samlOneTimeUseReplayCache;
+        this.securityContextStore = wssSecurityProperties.securityContextStore;
+        this.samlAssertionCache = wssSecurityProperties.samlAssertionCache;
         this.allowRSA15KeyTransportAlgorithm = wssSecurityProperties.allowRSA15KeyTransportAlgorithm;
         this.derivedKeyIterations = wssSecurityProperties.derivedKeyIterations;
         this.useDerivedKeyForMAC = wssSecurityProperties.useDerivedKeyForMAC;
@@ -174,6 +182,7 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.subjectDNPatterns = wssSecurityProperties.subjectDNPatterns;
         this.issuerDNPatterns = wssSecurityProperties.issuerDNPatterns;
         this.attachmentCallbackHandler = wssSecurityProperties.attachmentCallbackHandler;
+        this.attachmentProcessingExecutor = wssSecurityProperties.attachmentProcessingExecutor;
         this.msgContext = wssSecurityProperties.msgContext;
         this.audienceRestrictions = wssSecurityProperties.audienceRestrictions;
         this.requireTimestampExpires = wssSecurityProperties.requireTimestampExpires;
@@ -764,6 +773,35 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the store for SecureConversation sessions. The secret of a stored session is not requested
+     * from the CallbackHandler again until the session expires or is removed from the store.
+     */
+    public void setSecurityContextStore(SecurityContextStore securityContextStore) {
+        this.securityContextStore = securityContextStore;
+    }
+
+    /**
+     * Get the store for SecureConversation sessions
+     */
+    public SecurityContextStore getSecurityContextStore() {
+        return securityContextStore;
+    }
+
+    /**
+     * Set the cache of outbound SAML assertions
+     */
+    public void setSamlAssertionCache(SamlAssertionCache samlAssertionCache) {
+        this.samlAssertionCache = samlAssertionCache;
+    }
+
+    /**
+     * Get the cache of outbound SAML assertions
+     */
+    public SamlAssertionCache getSamlAssertionCache() {
+        return samlAssertionCache;
+    }
+
     public boolean isDisableBSPEnforcement() {
         return disableBSPEnforcement;
     }
@@ -938,6 +976,21 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    public Executor getAttachmentProcessingExecutor() {
+        return attachmentProcessingExecutor;
+    }
+
+    /**
+     * Set the Executor that is used to digest signed attachments of an inbound message concurrently.
+     * The attachments are still requested, and the results delivered to the attachment CallbackHandler,
+     * one after another in the order of the message. Encrypted attachments are not processed on the
+     * Executor: they are decrypted as the delivered stream is read, so that decrypted content is never
+     * buffered. The default is null, which means that attachments are processed one after another.
+     */
+    public void setAttachmentProcessingExecutor(Executor attachmentProcessingExecutor) {
+        this.attachmentProcessingExecutor = attachmentProcessingExecutor;
+    }
+
     public Object getMsgContext() {
         return msgContext;
     }
@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.xml.namespace.QName;
 
@@ -56,6 +57,7 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     private static final org.slf4j.Logger LOG =
             org.slf4j.LoggerFactory.getLogger(InboundWSSecurityContextImpl.class);
 
+    private final ReentrantLock lock = new ReentrantLock();
     private final Deque<SecurityEvent> securityEventQueue = new ArrayDeque<>();
     private boolean operationSecurityEventOccured = false;
     private boolean messageEncryptionTokenOccured = false;
@@ -66,7 +68,18 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     private List<BSPRule> ignoredBSPRules = Collections.emptyList();
 
     @Override
-    public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+    public void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+        // The listeners (e.g. the PolicyEnforcer) are called while the lock is held, so use a
+        // ReentrantLock rather than a monitor to avoid pinning the carrier of a virtual thread
+        lock.lock();
+        try {
+            doRegisterSecurityEvent(securityEvent);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doRegisterSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
 
         if (WSSecurityEventConstants.AlgorithmSuite.equals(securityEvent.getSecurityEventType())) {
             //do not cache AlgorithmSuite securityEvents and forward them directly to allow
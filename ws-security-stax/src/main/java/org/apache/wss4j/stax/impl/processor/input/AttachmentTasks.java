@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+
+/**
+ * Runs the processing of attachments on the configured attachment processing Executor. The
+ * results are collected by the calling thread in the order of the message, so that the
+ * attachment callbacks and security events are in the same order as when the attachments are
+ * processed one after another.
+ */
+final class AttachmentTasks {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(AttachmentTasks.class);
+
+    private AttachmentTasks() {
+        // complete
+    }
+
+    /**
+     * Start the given task on the Executor, or run it in the calling thread if the Executor does
+     * not accept it
+     */
+    static <T> Future<T> submit(Executor executor, Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<>(callable);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Attachment processing task rejected, running it in the calling thread", e);
+            task.run();
+        }
+        return task;
+    }
+
+    /**
+     * Wait for the result of the given task, rethrowing the exception it failed with
+     */
+    static <T> T get(Future<T> future) throws XMLSecurityException, XMLStreamException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XMLSecurityException) {
+                throw (XMLSecurityException) cause;
+            } else if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            } else if (cause instanceof IOException) {
+                throw new XMLSecurityException((IOException) cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+    }
+
+    /**
+     * Wait for the given task to complete and close its result, as it is not needed any more
+     */
+    static void discard(Future<? extends Closeable> future) {
+        try {
+            close(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.debug(e.getMessage(), e);
+        }
+    }
+
+    static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -314,81 +314,97 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         }
         super.doFinal(inputProcessorChain);
 
-        //now process the (deferred-) attachments:
+        //now process the (deferred-) attachments. They are decrypted as the delivered stream is read,
+        //so the decrypted content is never buffered (and never written to disk) by WSS4J
         for (int i = 0; i < attachmentReferences.size(); i++) {
             DeferredAttachment deferredAttachment = attachmentReferences.get(i);
+            InputStream attachmentInputStream = setupAttachmentDecryption(deferredAttachment); //NOPMD
+            handleDecryptedAttachment(inputProcessorChain, deferredAttachment, attachmentInputStream);
+        }
+    }
 
-            final EncryptedDataType encryptedDataType = deferredAttachment.getEncryptedDataType();
-            final InboundSecurityToken inboundSecurityToken = deferredAttachment.getInboundSecurityToken();
-            final Cipher cipher = deferredAttachment.getCipher();
-            final String uri = encryptedDataType.getCipherData().getCipherReference().getURI();
-            final String attachmentId = AttachmentUtils.getAttachmentId(uri);
-
-            CallbackHandler attachmentCallbackHandler =
-                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
-            if (attachmentCallbackHandler == null) {
-                throw new WSSecurityException(
-                    WSSecurityException.ErrorCode.INVALID_SECURITY,
-                    "empty", new Object[] {"no attachment callbackhandler supplied"}
-                );
-            }
+    private InputStream setupAttachmentDecryption(DeferredAttachment deferredAttachment) throws XMLSecurityException {
+        final EncryptedDataType encryptedDataType = deferredAttachment.getEncryptedDataType();
+        final InboundSecurityToken inboundSecurityToken = deferredAttachment.getInboundSecurityToken();
+        final Cipher cipher = deferredAttachment.getCipher();
+        final String uri = encryptedDataType.getCipherData().getCipherReference().getURI();
+        final String attachmentId = AttachmentUtils.getAttachmentId(uri);
 
-            AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
-            attachmentRequestCallback.setAttachmentId(attachmentId);
-            try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
-            } catch (Exception e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-            }
-            List<Attachment> attachments = attachmentRequestCallback.getAttachments();
-            if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
-                throw new WSSecurityException(
-                    WSSecurityException.ErrorCode.INVALID_SECURITY,
-                    "empty", new Object[] {"Attachment not found"}
-                );
-            }
+        CallbackHandler attachmentCallbackHandler =
+            ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
+        if (attachmentCallbackHandler == null) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY,
+                "empty", new Object[] {"no attachment callbackhandler supplied"}
+            );
+        }
 
-            final Attachment attachment = attachments.get(0);
+        AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
+        attachmentRequestCallback.setAttachmentId(attachmentId);
+        try {
+            attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+        List<Attachment> attachments = attachmentRequestCallback.getAttachments();
+        if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY,
+                "empty", new Object[] {"Attachment not found"}
+            );
+        }
 
-            final String encAlgo = encryptedDataType.getEncryptionMethod().getAlgorithm();
-            final Key symmetricKey =
-                inboundSecurityToken.getSecretKey(encAlgo, XMLSecurityConstants.Enc, encryptedDataType.getId());
+        final Attachment attachment = attachments.get(0);
+        deferredAttachment.setAttachment(attachment);
+
+        final String encAlgo = encryptedDataType.getEncryptionMethod().getAlgorithm();
+        final Key symmetricKey =
+            inboundSecurityToken.getSecretKey(encAlgo, XMLSecurityConstants.Enc, encryptedDataType.getId());
+
+        return
+            AttachmentUtils.setupAttachmentDecryptionStream(encAlgo, cipher, symmetricKey, attachment.getSourceStream());
+    }
 
-            InputStream attachmentInputStream = //NOPMD
-                AttachmentUtils.setupAttachmentDecryptionStream(encAlgo, cipher, symmetricKey, attachment.getSourceStream());
+    private void handleDecryptedAttachment(InputProcessorChain inputProcessorChain, DeferredAttachment deferredAttachment,
+                                           InputStream attachmentInputStream) throws XMLSecurityException {
+        final EncryptedDataType encryptedDataType = deferredAttachment.getEncryptedDataType();
+        final Attachment attachment = deferredAttachment.getAttachment();
 
-            Attachment resultAttachment = new Attachment();
-            resultAttachment.setId(attachment.getId());
-            resultAttachment.setMimeType(encryptedDataType.getMimeType());
-            resultAttachment.setSourceStream(attachmentInputStream);
-            resultAttachment.addHeaders(attachment.getHeaders());
+        CallbackHandler attachmentCallbackHandler =
+            ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
 
-            if (WSSConstants.SWA_ATTACHMENT_ENCRYPTED_DATA_TYPE_COMPLETE.equals(encryptedDataType.getType())) {
-                try {
-                    AttachmentUtils.readAndReplaceEncryptedAttachmentHeaders(
-                        resultAttachment.getHeaders(), attachmentInputStream);
-                } catch (IOException e) {
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-                }
-            }
+        Attachment resultAttachment = new Attachment();
+        resultAttachment.setId(attachment.getId());
+        resultAttachment.setMimeType(encryptedDataType.getMimeType());
+        resultAttachment.setSourceStream(attachmentInputStream);
+        resultAttachment.addHeaders(attachment.getHeaders());
 
-            AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
-            attachmentResultCallback.setAttachment(resultAttachment);
-            attachmentResultCallback.setAttachmentId(resultAttachment.getId());
+        if (WSSConstants.SWA_ATTACHMENT_ENCRYPTED_DATA_TYPE_COMPLETE.equals(encryptedDataType.getType())) {
             try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentResultCallback});
-            } catch (Exception e) {
+                AttachmentUtils.readAndReplaceEncryptedAttachmentHeaders(
+                    resultAttachment.getHeaders(), attachmentInputStream);
+            } catch (IOException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
+        }
 
-            // Create a security event for this encrypted Attachment
-            final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
-            EncryptedPartSecurityEvent encryptedPartSecurityEvent =
-                new EncryptedPartSecurityEvent(inboundSecurityToken, true, documentContext.getProtectionOrder());
-            encryptedPartSecurityEvent.setAttachment(true);
-            encryptedPartSecurityEvent.setCorrelationID(encryptedDataType.getId());
-            inputProcessorChain.getSecurityContext().registerSecurityEvent(encryptedPartSecurityEvent);
+        AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
+        attachmentResultCallback.setAttachment(resultAttachment);
+        attachmentResultCallback.setAttachmentId(resultAttachment.getId());
+        try {
+            attachmentCallbackHandler.handle(new Callback[]{attachmentResultCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
         }
+
+        // Create a security event for this encrypted Attachment
+        final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
+        EncryptedPartSecurityEvent encryptedPartSecurityEvent =
+            new EncryptedPartSecurityEvent(
+                deferredAttachment.getInboundSecurityToken(), true, documentContext.getProtectionOrder());
+        encryptedPartSecurityEvent.setAttachment(true);
+        encryptedPartSecurityEvent.setCorrelationID(encryptedDataType.getId());
+        inputProcessorChain.getSecurityContext().registerSecurityEvent(encryptedPartSecurityEvent);
     }
 
     private static final class DeferredAttachment {
@@ -396,6 +412,7 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         private EncryptedDataType encryptedDataType;
         private Cipher cipher;
         private InboundSecurityToken inboundSecurityToken;
+        private Attachment attachment;
 
         private DeferredAttachment(
             EncryptedDataType encryptedDataType, Cipher cipher,
@@ -417,6 +434,14 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         private InboundSecurityToken getInboundSecurityToken() {
             return inboundSecurityToken;
         }
+
+        private Attachment getAttachment() {
+            return attachment;
+        }
+
+        private void setAttachment(Attachment attachment) {
+            this.attachment = attachment;
+        }
     }
 
     /**
@@ -27,6 +27,8 @@ import jakarta.xml.bind.JAXBElement;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.binding.wssc.AbstractDerivedKeyTokenType;
+import org.apache.wss4j.common.cache.SecurityContextSession;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
@@ -130,14 +132,27 @@ public class DerivedKeyTokenInputHandler extends AbstractInputSecurityHeaderHand
                         if (derivedKeyAlgorithm == null) {
                             derivedKeyAlgorithm = WSSConstants.P_SHA_1;
                         }
-                        byte[] keyBytes = DerivedKeyUtils.deriveKey(
-                                derivedKeyAlgorithm,
-                                derivedKeyTokenType.getLabel(),
-                                derivedKeyTokenType.getLength().intValue(),
-                                secret,
-                                nonce,
-                                derivedKeyTokenType.getOffset().intValue()
-                        );
+                        byte[] keyBytes;
+                        SecurityContextSession session = getSecurityContextSession(referencedSecurityToken, secret);
+                        if (session != null) {
+                            // Use the keys memoized for the SecureConversation session
+                            keyBytes = session.deriveKey(
+                                    derivedKeyAlgorithm,
+                                    derivedKeyTokenType.getLabel(),
+                                    derivedKeyTokenType.getLength().intValue(),
+                                    nonce,
+                                    derivedKeyTokenType.getOffset().intValue()
+                            );
+                        } else {
+                            keyBytes = DerivedKeyUtils.deriveKey(
+                                    derivedKeyAlgorithm,
+                                    derivedKeyTokenType.getLabel(),
+                                    derivedKeyTokenType.getLength().intValue(),
+                                    secret,
+                                    nonce,
+                                    derivedKeyTokenType.getOffset().intValue()
+                            );
+                        }
                         XMLSecurityConstants.AlgorithmUsage derivedKeyAlgorithmUsage;
                         if (WSSConstants.Enc.equals(algorithmUsage)) {
                             derivedKeyAlgorithmUsage = WSSConstants.ENC_KD;
@@ -155,6 +170,21 @@ public class DerivedKeyTokenInputHandler extends AbstractInputSecurityHeaderHand
                         return new SecretKeySpec(keyBytes, algo);
                     }
 
+                    private SecurityContextSession getSecurityContextSession(
+                            InboundSecurityToken referencedSecurityToken, byte[] secret) throws XMLSecurityException {
+                        SecurityContextStore securityContextStore =
+                                ((WSSSecurityProperties) securityProperties).getSecurityContextStore();
+                        if (securityContextStore == null
+                                || !WSSecurityTokenConstants.SECURITY_CONTEXT_TOKEN.equals(referencedSecurityToken.getTokenType())) {
+                            return null;
+                        }
+                        SecurityContextSession session = securityContextStore.getSession(referencedSecurityToken.getId());
+                        if (session != null && session.hasSecret(secret)) {
+                            return session;
+                        }
+                        return null;
+                    }
+
                     @Override
                     public InboundSecurityToken getKeyWrappingToken() throws XMLSecurityException {
                         return getReferencedSecurityToken();
@@ -45,6 +45,7 @@ import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.util.Base64Codec;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -81,7 +82,6 @@ import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants.TokenUsage;
-import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 import org.opensaml.security.credential.BasicCredential;
@@ -103,7 +103,8 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
                        Deque<XMLSecEvent> eventQueue, Integer index) throws XMLSecurityException {
 
-        final Document samlTokenDocument = (Document) parseStructure(eventQueue, index, securityProperties);
+        final SamlTokenStructure samlTokenStructure = parseSamlTokenStructure(eventQueue, index, securityProperties);
+        final Document samlTokenDocument = samlTokenStructure.document;
 
         final WSSSecurityProperties wssSecurityProperties = (WSSSecurityProperties) securityProperties;
         final WSInboundSecurityContext wsInboundSecurityContext = (WSInboundSecurityContext) inputProcessorChain.getSecurityContext();
@@ -124,7 +125,7 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
                         "empty", new Object[] {"no signature to validate"});
             }
 
-            int sigKeyInfoIdx = getSignatureKeyInfoIndex(eventQueue);
+            int sigKeyInfoIdx = samlTokenStructure.signatureKeyInfoIndex;
             if (sigKeyInfoIdx < 0) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
             }
@@ -169,7 +170,7 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
         }
 
         if (holderOfKey) {
-            int subjectKeyInfoIndex = getSubjectKeyInfoIndex(eventQueue);
+            int subjectKeyInfoIndex = samlTokenStructure.subjectKeyInfoIndex;
             if (subjectKeyInfoIndex < 0) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
             }
@@ -226,54 +227,30 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
         }
     }
 
-    private int getSubjectKeyInfoIndex(Deque<XMLSecEvent> eventQueue) {
-        int idx = -1;
-        Iterator<XMLSecEvent> xmlSecEventIterator = eventQueue.descendingIterator();
-        while (xmlSecEventIterator.hasNext()) {
-            XMLSecEvent xmlSecEvent = xmlSecEventIterator.next();
-            idx++;
-            if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
-                QName elementName = xmlSecEvent.asStartElement().getName();
-                if (WSSConstants.TAG_dsig_KeyInfo.equals(elementName)) {
-                    List<QName> elementPath = xmlSecEvent.asStartElement().getElementPath();
-                    if (elementPath.size() >= 4) {
-                        int lastIndex = elementPath.size() - 2;
-                        if ("SubjectConfirmationData".equals(elementPath.get(lastIndex).getLocalPart())
-                                && "SubjectConfirmation".equals(elementPath.get(lastIndex - 1).getLocalPart())
-                                && "Subject".equals(elementPath.get(lastIndex - 2).getLocalPart())) {
-                            return idx;
-                        } else if ("SubjectConfirmation".equals(elementPath.get(lastIndex).getLocalPart())
-                                && "Subject".equals(elementPath.get(lastIndex - 1).getLocalPart())) {
-                            return idx;
-                        }
-                    }
-                }
+    private static boolean isSubjectKeyInfo(List<QName> elementPath) {
+        if (elementPath.size() >= 4) {
+            int lastIndex = elementPath.size() - 2;
+            if ("SubjectConfirmationData".equals(elementPath.get(lastIndex).getLocalPart())
+                    && "SubjectConfirmation".equals(elementPath.get(lastIndex - 1).getLocalPart())
+                    && "Subject".equals(elementPath.get(lastIndex - 2).getLocalPart())) {
+                return true;
+            } else if ("SubjectConfirmation".equals(elementPath.get(lastIndex).getLocalPart())
+                    && "Subject".equals(elementPath.get(lastIndex - 1).getLocalPart())) {
+                return true;
             }
         }
-        return idx;
+        return false;
     }
 
-    private int getSignatureKeyInfoIndex(Deque<XMLSecEvent> eventQueue) {
-        int idx = -1;
-        Iterator<XMLSecEvent> xmlSecEventIterator = eventQueue.descendingIterator();
-        while (xmlSecEventIterator.hasNext()) {
-            XMLSecEvent xmlSecEvent = xmlSecEventIterator.next();
-            idx++;
-            if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
-                QName elementName = xmlSecEvent.asStartElement().getName();
-                if (WSSConstants.TAG_dsig_KeyInfo.equals(elementName)) {
-                    List<QName> elementPath = xmlSecEvent.asStartElement().getElementPath();
-                    if (elementPath.size() >= 4) {
-                        int lastIndex = elementPath.size() - 2;
-                        if ("Signature".equals(elementPath.get(lastIndex).getLocalPart())
-                                && "Assertion".equals(elementPath.get(lastIndex - 1).getLocalPart())) {
-                            return idx;
-                        }
-                    }
-                }
+    private static boolean isSignatureKeyInfo(List<QName> elementPath) {
+        if (elementPath.size() >= 4) {
+            int lastIndex = elementPath.size() - 2;
+            if ("Signature".equals(elementPath.get(lastIndex).getLocalPart())
+                    && "Assertion".equals(elementPath.get(lastIndex - 1).getLocalPart())) {
+                return true;
             }
         }
-        return idx;
+        return false;
     }
 
     private InboundSecurityToken parseKeyInfo(InputProcessorChain inputProcessorChain, XMLSecurityProperties securityProperties,
@@ -337,7 +314,7 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
                     Key key = super.getKey(algorithmURI, algorithmUsage, correlationID);
                     if (key == null) {
                         String algoFamily = JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(algorithmURI);
-                        key = new SecretKeySpec(XMLUtils.decode(stringBuilder.toString()), algoFamily);
+                        key = new SecretKeySpec(Base64Codec.decode(stringBuilder), algoFamily);
                         setSecretKey(algorithmURI, key);
                     }
                     return key;
@@ -402,25 +379,48 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
     @Override
     protected <T> T parseStructure(Deque<XMLSecEvent> eventDeque, int index, XMLSecurityProperties securityProperties)
             throws XMLSecurityException {
+        return (T) parseSamlTokenStructure(eventDeque, index, securityProperties).document;
+    }
+
+    /**
+     * Build the DOM of the assertion from the buffered events. The positions of the KeyInfo of the
+     * assertion signature and of the subject confirmation are recorded in the same pass over the
+     * events, so that they don't have to be searched for afterwards.
+     */
+    private SamlTokenStructure parseSamlTokenStructure(Deque<XMLSecEvent> eventDeque, int index,
+                                                       XMLSecurityProperties securityProperties)
+            throws XMLSecurityException {
         Document document = null;
         try {
             document = ((WSSSecurityProperties) securityProperties).getDocumentCreator().newDocument();
         } catch (ParserConfigurationException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, e);
         }
+        SamlTokenStructure samlTokenStructure = new SamlTokenStructure(document);
 
         Iterator<XMLSecEvent> xmlSecEventIterator = eventDeque.descendingIterator();
         int curIdx = 0;
-        while (curIdx++ < index) {
+        while (curIdx < index) {
             xmlSecEventIterator.next();
+            curIdx++;
         }
 
         Node currentNode = document;
         while (xmlSecEventIterator.hasNext()) {
             XMLSecEvent next = xmlSecEventIterator.next();
+            if (XMLStreamConstants.START_ELEMENT == next.getEventType()
+                && WSSConstants.TAG_dsig_KeyInfo.equals(next.asStartElement().getName())) {
+                List<QName> elementPath = next.asStartElement().getElementPath();
+                if (samlTokenStructure.signatureKeyInfoIndex < 0 && isSignatureKeyInfo(elementPath)) {
+                    samlTokenStructure.signatureKeyInfoIndex = curIdx;
+                } else if (samlTokenStructure.subjectKeyInfoIndex < 0 && isSubjectKeyInfo(elementPath)) {
+                    samlTokenStructure.subjectKeyInfoIndex = curIdx;
+                }
+            }
             currentNode = parseXMLEvent(next, currentNode, document);
+            curIdx++;
         }
-        return (T) document;
+        return samlTokenStructure;
     }
 
     //todo custom SAML unmarshaller directly to XMLObject?
@@ -520,6 +520,20 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
         return currentNode;
     }
 
+    /**
+     * The DOM of an assertion, together with the positions in the event queue of the KeyInfo
+     * Elements of the assertion signature and of the subject confirmation, or -1 if not present.
+     */
+    private static final class SamlTokenStructure {
+        private final Document document;
+        private int signatureKeyInfoIndex = -1;
+        private int subjectKeyInfoIndex = -1;
+
+        SamlTokenStructure(Document document) {
+            this.document = document;
+        }
+    }
+
     /**
      * Processor to check the holder-of-key or sender-vouches requirements against the received assertion
      * which can not be done until the whole soap-header is processed and we know that the whole soap-body
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.events.Attribute;
+
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.impl.resourceResolvers.WSS4JResolverSameDocument;
+import org.apache.wss4j.stax.impl.resourceResolvers.WSS4JResolverXPointer;
+import org.apache.xml.security.binding.xmldsig.ReferenceType;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.ResourceResolver;
+import org.apache.xml.security.stax.ext.ResourceResolverMapper;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+
+/**
+ * The same-document references of a Signature, indexed by the ID they refer to. The IDs are
+ * kept in an open-addressed hash table, so that finding the references that point to a start
+ * element is a constant time lookup of the values of its ID attributes. Elements without
+ * attributes are skipped without any lookup, and elements that are not referenced are matched
+ * without allocating.
+ *
+ * References that are not resolved by ID (e.g. "#xpointer(/)") are matched against every start
+ * element by their ResourceResolver, as before. A reference that was already resolved is still
+ * returned for any further element that it matches, so that the duplicate ID is rejected by
+ * AbstractSignatureReferenceVerifyInputProcessor ("signature.Verification.MultipleIDs"). This is the
+ * defense against signature wrapping through a second element with the same ID.
+ */
+final class SignatureReferenceIndex {
+
+    private static final QName[] ID_ATTRIBUTES = {
+        WSSConstants.ATT_WSU_ID,
+        XMLSecurityConstants.ATT_NULL_Id,
+        WSSConstants.ATT_NULL_ID,
+        WSSConstants.ATT_NULL_ASSERTION_ID,
+    };
+
+    private static final String XPOINTER_ID_PREFIX = "#xpointer(id(";
+
+    private final ReferenceType[] references;
+    private final ResourceResolver[] resolvers;
+
+    private final String[] slotIds;
+    private final int[] slotHashes;
+    private final int[] slotEntries;
+    private final int mask;
+    private int indexedCount;
+
+    private final int[] unindexedEntries;
+    private final int unindexedCount;
+
+    private final int[] matches;
+
+    SignatureReferenceIndex(List<ReferenceType> referenceTypes, String baseURI) throws XMLSecurityException {
+        int size = referenceTypes.size();
+        references = new ReferenceType[size];
+        resolvers = new ResourceResolver[size];
+        matches = new int[size];
+
+        // A load factor of at most 0.5 keeps the probe sequences short
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        slotIds = new String[capacity];
+        slotHashes = new int[capacity];
+        slotEntries = new int[capacity];
+        mask = capacity - 1;
+
+        int[] unindexed = new int[size];
+        int unindexedSize = 0;
+        for (int i = 0; i < size; i++) {
+            ReferenceType referenceType = referenceTypes.get(i);
+            ResourceResolver resolver = ResourceResolverMapper.getResourceResolver(referenceType.getURI(), baseURI);
+            references[i] = referenceType;
+            resolvers[i] = resolver;
+            if (!resolver.isSameDocumentReference()) {
+                // External references are verified in doFinal
+                continue;
+            }
+            String id = getIndexableId(resolver, referenceType.getURI());
+            if (id == null) {
+                unindexed[unindexedSize++] = i;
+            } else {
+                insert(id, i);
+            }
+        }
+        unindexedEntries = unindexed;
+        unindexedCount = unindexedSize;
+    }
+
+    /**
+     * Get the references that resolve to the given start element, in the order of the SignedInfo.
+     * The references are returned for every element that they match, including references that
+     * were already returned for a previous element.
+     */
+    List<ReferenceType> resolve(XMLSecStartElement xmlSecStartElement) {
+        int matchCount = 0;
+        if (indexedCount > 0 && !xmlSecStartElement.getOnElementDeclaredAttributes().isEmpty()) {
+            for (QName idAttribute : ID_ATTRIBUTES) {
+                Attribute attribute = xmlSecStartElement.getAttributeByName(idAttribute);
+                if (attribute != null) {
+                    matchCount = lookup(attribute.getValue(), xmlSecStartElement, matchCount);
+                }
+            }
+        }
+        for (int i = 0; i < unindexedCount; i++) {
+            int entry = unindexedEntries[i];
+            if (resolvers[entry].matches(xmlSecStartElement)) {
+                matches[matchCount++] = entry;
+            }
+        }
+
+        if (matchCount == 0) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(matches, 0, matchCount);
+        List<ReferenceType> referenceTypes = new ArrayList<>(matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            referenceTypes.add(references[matches[i]]);
+        }
+        return referenceTypes;
+    }
+
+    private int lookup(String id, XMLSecStartElement xmlSecStartElement, int matchCount) {
+        int hash = hash(id);
+        int count = matchCount;
+        for (int slot = hash & mask; slotIds[slot] != null; slot = (slot + 1) & mask) {
+            int entry = slotEntries[slot];
+            if (slotHashes[slot] == hash && slotIds[slot].equals(id)
+                && resolvers[entry].matches(xmlSecStartElement) && !contains(matches, count, entry)) {
+                matches[count++] = entry;
+            }
+        }
+        return count;
+    }
+
+    private void insert(String id, int entry) {
+        int hash = hash(id);
+        int slot = hash & mask;
+        while (slotIds[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        slotIds[slot] = id;
+        slotHashes[slot] = hash;
+        slotEntries[slot] = entry;
+        indexedCount++;
+    }
+
+    private static boolean contains(int[] entries, int count, int entry) {
+        for (int i = 0; i < count; i++) {
+            if (entries[i] == entry) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int hash(String id) {
+        int hash = id.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Get the ID that the given resolver matches elements by, or null if it does not match by ID
+     */
+    private static String getIndexableId(ResourceResolver resolver, String uri) {
+        if (uri == null || uri.length() < 2 || uri.charAt(0) != '#') {
+            return null;
+        }
+        if (resolver instanceof WSS4JResolverXPointer) {
+            // #xpointer(id('ID'))
+            if (!uri.startsWith(XPOINTER_ID_PREFIX) || !uri.endsWith("))")) {
+                return null;
+            }
+            String id = uri.substring(XPOINTER_ID_PREFIX.length(), uri.length() - 2);
+            if (id.length() < 3 || id.charAt(0) != id.charAt(id.length() - 1)
+                || id.charAt(0) != '\'' && id.charAt(0) != '"') {
+                return null;
+            }
+            return id.substring(1, id.length() - 1);
+        }
+        if (resolver instanceof WSS4JResolverSameDocument) {
+            return uri.substring(1);
+        }
+        return null;
+    }
+}
@@ -18,7 +18,6 @@
  */
 package org.apache.wss4j.stax.impl.processor.input;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -29,6 +28,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -43,6 +45,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.ReplayableInputStream;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -77,6 +80,8 @@ import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 
 public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignatureReferenceVerifyInputProcessor {
 
+    private final SignatureReferenceIndex signatureReferenceIndex;
+    private Map<ReferenceType, AttachmentDigest> pendingAttachmentDigests;
     private boolean replayChecked = false;
 
     public WSSSignatureReferenceVerifyInputProcessor(InputProcessorChain inputProcessorChain,
@@ -84,6 +89,8 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             XMLSecurityProperties securityProperties) throws XMLSecurityException {
         super(inputProcessorChain, signatureType, inboundSecurityToken, securityProperties);
         this.addAfterProcessor(WSSSignatureReferenceVerifyInputProcessor.class.getName());
+        this.signatureReferenceIndex = new SignatureReferenceIndex(
+                signatureType.getSignedInfo().getReference(), inputProcessorChain.getDocumentContext().getBaseURI());
 
         checkBSPCompliance((WSInboundSecurityContext)inputProcessorChain.getSecurityContext());
     }
@@ -94,105 +101,161 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             final ReferenceType referenceType) throws XMLSecurityException, XMLStreamException {
 
         if (referenceType.getURI().startsWith("cid:")) {
-
-            CallbackHandler attachmentCallbackHandler =
-                    ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
-            if (attachmentCallbackHandler == null) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY,
-                        "empty", new Object[] {"no attachment callbackhandler supplied"}
-                );
+            try {
+                verifyAttachmentReference(inputProcessorChain, referenceType);
+            } catch (XMLSecurityException | XMLStreamException | RuntimeException e) {
+                discardAttachmentDigests();
+                throw e;
             }
+        } else {
+            super.verifyExternalReference(
+                    inputProcessorChain, inputStream, referenceType);
+        }
+    }
 
-            String attachmentId = AttachmentUtils.getAttachmentId(referenceType.getURI());
+    private void verifyAttachmentReference(
+            InputProcessorChain inputProcessorChain, ReferenceType referenceType)
+            throws XMLSecurityException, XMLStreamException {
 
-            AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
-            attachmentRequestCallback.setAttachmentId(attachmentId);
-            try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
-            } catch (Exception e) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        Executor executor = ((WSSSecurityProperties) getSecurityProperties()).getAttachmentProcessingExecutor();
+        AttachmentDigest attachmentDigest = null;
+        if (executor != null) {
+            //the digests of all of the attachments are computed concurrently, when the first one is needed
+            if (pendingAttachmentDigests == null) {
+                startAttachmentDigests(inputProcessorChain, executor);
             }
-            List<Attachment> attachments = attachmentRequestCallback.getAttachments();
-            if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY,
-                        "empty", new Object[] {"Attachment not found"}
-                );
+            attachmentDigest = pendingAttachmentDigests.remove(referenceType);
+        }
+
+        InputStream attachmentInputStream;
+        if (attachmentDigest != null) {
+            attachmentInputStream = AttachmentTasks.get(attachmentDigest.getResult());
+        } else {
+            attachmentDigest = createAttachmentDigest(inputProcessorChain, referenceType);
+            try {
+                attachmentInputStream = attachmentDigest.call();
+            } catch (IOException e) {
+                throw new XMLSecurityException(e);
             }
+        }
 
-            final Attachment attachment = attachments.get(0);
+        try {
+            compareDigest(attachmentDigest.getDigestOutputStream().getDigestValue(), referenceType);
+        } catch (XMLSecurityException e) {
+            AttachmentTasks.close(attachmentInputStream);
+            throw e;
+        }
+
+        //create a new attachment and do the result callback
+        final Attachment attachment = attachmentDigest.getAttachment();
+        final Attachment resultAttachment = new Attachment();
+        resultAttachment.setId(attachmentDigest.getAttachmentId());
+        resultAttachment.setMimeType(attachment.getMimeType());
+        resultAttachment.addHeaders(attachment.getHeaders());
+        resultAttachment.setSourceStream(attachmentInputStream);
+
+        AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
+        attachmentResultCallback.setAttachmentId(attachmentDigest.getAttachmentId());
+        attachmentResultCallback.setAttachment(resultAttachment);
+        try {
+            ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler().handle(
+                    new Callback[]{attachmentResultCallback});
+        } catch (Exception e) {
+            AttachmentTasks.close(attachmentInputStream);
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+
+        // Create a security event for this signed Attachment
+        final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
+        SignedPartSecurityEvent signedPartSecurityEvent =
+            new SignedPartSecurityEvent(getInboundSecurityToken(), true, documentContext.getProtectionOrder());
+        signedPartSecurityEvent.setAttachment(true);
+        signedPartSecurityEvent.setCorrelationID(referenceType.getId());
+        inputProcessorChain.getSecurityContext().registerSecurityEvent(signedPartSecurityEvent);
+    }
 
-            InputStream attachmentInputStream = attachment.getSourceStream();   //NOPMD
-            if (!attachmentInputStream.markSupported()) {
-                attachmentInputStream = new BufferedInputStream(attachmentInputStream);
+    /**
+     * Request all of the attachments that are referenced by the SignedInfo, in order, and start
+     * digesting them on the given Executor
+     */
+    private void startAttachmentDigests(InputProcessorChain inputProcessorChain, Executor executor)
+            throws XMLSecurityException {
+        pendingAttachmentDigests = new HashMap<>();
+        List<ReferenceType> references = getSignatureType().getSignedInfo().getReference();
+        for (int i = 0; i < references.size(); i++) {
+            ReferenceType referenceType = references.get(i);
+            if (referenceType.getURI() != null && referenceType.getURI().startsWith("cid:")) {
+                AttachmentDigest attachmentDigest = createAttachmentDigest(inputProcessorChain, referenceType);
+                attachmentDigest.setResult(AttachmentTasks.submit(executor, attachmentDigest));
+                pendingAttachmentDigests.put(referenceType, attachmentDigest);
             }
-            //todo workaround 2GB limit somehow?
-            attachmentInputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
+        }
+    }
 
-            try {
-                DigestOutputStream digestOutputStream =
-                        createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
-                try (UnsyncBufferedOutputStream bufferedDigestOutputStream =
-                        new UnsyncBufferedOutputStream(digestOutputStream)) {
-                    if (referenceType.getTransforms() != null) {
-                        Transformer transformer =
-                                buildTransformerChain(referenceType, bufferedDigestOutputStream, inputProcessorChain, null);
-                        if (!(transformer instanceof AttachmentContentSignatureTransform)) {
-                            throw new WSSecurityException(
-                                    WSSecurityException.ErrorCode.INVALID_SECURITY,
-                                    "empty",
-                                    new Object[]{"First transform must be Attachment[Content|Complete]SignatureTransform"}
-                            );
-                        }
-                        Map<String, Object> transformerProperties = new HashMap<>(2);
-                        transformerProperties.put(
-                                AttachmentContentSignatureTransform.ATTACHMENT, attachment);
-                        transformer.setProperties(transformerProperties);
+    private void discardAttachmentDigests() {
+        if (pendingAttachmentDigests != null) {
+            for (AttachmentDigest attachmentDigest : pendingAttachmentDigests.values()) {
+                AttachmentTasks.discard(attachmentDigest.getResult());
+            }
+            pendingAttachmentDigests.clear();
+        }
+    }
 
-                        transformer.transform(attachmentInputStream);
-                    } else {
-                        XMLSecurityUtils.copy(attachmentInputStream, bufferedDigestOutputStream);
-                    }
-                }
-                compareDigest(digestOutputStream.getDigestValue(), referenceType);
+    private AttachmentDigest createAttachmentDigest(
+            InputProcessorChain inputProcessorChain, ReferenceType referenceType) throws XMLSecurityException {
 
-                //reset the inputStream to be able to reuse it
-                attachmentInputStream.reset();
+        CallbackHandler attachmentCallbackHandler =
+                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
+        if (attachmentCallbackHandler == null) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY,
+                    "empty", new Object[] {"no attachment callbackhandler supplied"}
+            );
+        }
 
-            } catch (IOException e) {
-                throw new XMLSecurityException(e);
-            }
+        String attachmentId = AttachmentUtils.getAttachmentId(referenceType.getURI());
 
-            //create a new attachment and do the result callback
-            final Attachment resultAttachment = new Attachment();
-            resultAttachment.setId(attachmentId);
-            resultAttachment.setMimeType(attachment.getMimeType());
-            resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(attachmentInputStream);
+        AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
+        attachmentRequestCallback.setAttachmentId(attachmentId);
+        try {
+            attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+        List<Attachment> attachments = attachmentRequestCallback.getAttachments();
+        if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY,
+                    "empty", new Object[] {"Attachment not found"}
+            );
+        }
 
-            AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
-            attachmentResultCallback.setAttachmentId(attachmentId);
-            attachmentResultCallback.setAttachment(resultAttachment);
-            try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentResultCallback});
-            } catch (Exception e) {
+        final Attachment attachment = attachments.get(0);
+
+        DigestOutputStream digestOutputStream =
+                createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
+        UnsyncBufferedOutputStream bufferedDigestOutputStream =
+                new UnsyncBufferedOutputStream(digestOutputStream);   //NOPMD
+        Transformer transformer = null;
+        if (referenceType.getTransforms() != null) {
+            transformer =
+                    buildTransformerChain(referenceType, bufferedDigestOutputStream, inputProcessorChain, null);
+            if (!(transformer instanceof AttachmentContentSignatureTransform)) {
                 throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+                        WSSecurityException.ErrorCode.INVALID_SECURITY,
+                        "empty",
+                        new Object[]{"First transform must be Attachment[Content|Complete]SignatureTransform"}
+                );
             }
-
-            // Create a security event for this signed Attachment
-            final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
-            SignedPartSecurityEvent signedPartSecurityEvent =
-                new SignedPartSecurityEvent(getInboundSecurityToken(), true, documentContext.getProtectionOrder());
-            signedPartSecurityEvent.setAttachment(true);
-            signedPartSecurityEvent.setCorrelationID(referenceType.getId());
-            inputProcessorChain.getSecurityContext().registerSecurityEvent(signedPartSecurityEvent);
-        } else {
-            super.verifyExternalReference(
-                    inputProcessorChain, inputStream, referenceType);
+            Map<String, Object> transformerProperties = new HashMap<>(2);
+            transformerProperties.put(
+                    AttachmentContentSignatureTransform.ATTACHMENT, attachment);
+            transformer.setProperties(transformerProperties);
         }
+        return new AttachmentDigest(
+                attachmentId, attachment, transformer, digestOutputStream, bufferedDigestOutputStream);
     }
 
     private void checkBSPCompliance(WSInboundSecurityContext securityContext) throws WSSecurityException {
@@ -269,7 +332,32 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             replayChecked = true;
             detectReplayAttack(inputProcessorChain);
         }
-        return super.processEvent(inputProcessorChain);
+        try {
+            return super.processEvent(inputProcessorChain);
+        } catch (XMLSecurityException | XMLStreamException | RuntimeException e) {
+            //the verification failed further down the chain, so the pending attachments are not needed any more
+            discardAttachmentDigests();
+            throw e;
+        }
+    }
+
+    @Override
+    public void doFinal(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        try {
+            super.doFinal(inputProcessorChain);
+        } finally {
+            //release the attachments whose references were not verified, e.g. as another reference failed
+            discardAttachmentDigests();
+        }
+    }
+
+    /**
+     * Every start element passes through here, and so the references are looked up by the ID
+     * of the element instead of asking the resolver of every reference whether it matches.
+     */
+    @Override
+    protected List<ReferenceType> resolvesResource(XMLSecStartElement xmlSecStartElement) {
+        return signatureReferenceIndex.resolve(xmlSecStartElement);
     }
 
     @Override
@@ -443,4 +531,63 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             this.addAfterProcessor(WSSSignatureReferenceVerifyInputProcessor.class.getName());
         }
     }
+
+    /**
+     * Digests the content of an attachment, and returns a stream to read the content again
+     */
+    private static final class AttachmentDigest implements Callable<InputStream> {
+
+        private final String attachmentId;
+        private final Attachment attachment;
+        private final Transformer transformer;
+        private final DigestOutputStream digestOutputStream;
+        private final OutputStream bufferedDigestOutputStream;
+        private Future<InputStream> result;
+
+        AttachmentDigest(String attachmentId, Attachment attachment, Transformer transformer,
+                         DigestOutputStream digestOutputStream, OutputStream bufferedDigestOutputStream) {
+            this.attachmentId = attachmentId;
+            this.attachment = attachment;
+            this.transformer = transformer;
+            this.digestOutputStream = digestOutputStream;
+            this.bufferedDigestOutputStream = bufferedDigestOutputStream;
+        }
+
+        @Override
+        public InputStream call() throws XMLStreamException, IOException {
+            //the attachment content is cached while it is digested, spilling to disk for large attachments
+            try (ReplayableInputStream attachmentInputStream =
+                    new ReplayableInputStream(attachment.getSourceStream())) {
+                try (OutputStream outputStream = bufferedDigestOutputStream) {
+                    if (transformer != null) {
+                        transformer.transform(attachmentInputStream);
+                    } else {
+                        XMLSecurityUtils.copy(attachmentInputStream, outputStream);
+                    }
+                }
+                //replay the inputStream to be able to reuse it
+                return attachmentInputStream.replay();
+            }
+        }
+
+        String getAttachmentId() {
+            return attachmentId;
+        }
+
+        Attachment getAttachment() {
+            return attachment;
+        }
+
+        DigestOutputStream getDigestOutputStream() {
+            return digestOutputStream;
+        }
+
+        Future<InputStream> getResult() {
+            return result;
+        }
+
+        void setResult(Future<InputStream> result) {
+            this.result = result;
+        }
+    }
 }
@@ -33,6 +33,7 @@ import org.apache.wss4j.common.derivedKey.DerivationAlgorithm;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.RandomUtils;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
@@ -106,7 +107,7 @@ public class DerivedKeyTokenOutputProcessor extends AbstractOutputProcessor {
                 WSSConstants.WS_SEC_CONV_DEFAULT_LABEL + WSSConstants.WS_SEC_CONV_DEFAULT_LABEL;
             byte[] label = defaultLabel.getBytes(StandardCharsets.UTF_8);
 
-            byte[] nonce = WSSConstants.generateBytes(16);
+            byte[] nonce = RandomUtils.generateBytes(16);
 
             byte[] seed = new byte[label.length + nonce.length];
             System.arraycopy(label, 0, seed, 0, label.length);
@@ -41,6 +41,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.RandomUtils;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
@@ -267,7 +268,7 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                     cipher = Cipher.getInstance(jceAlgorithm);
 
                     int ivLen = JCEMapper.getIVLengthFromURI(encryptionSymAlgorithm) / 8;
-                    byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
+                    byte[] iv = RandomUtils.generateBytes(ivLen);
                     AlgorithmParameterSpec paramSpec =
                         XMLCipherUtil.constructBlockCipherParameters(encryptionSymAlgorithm, iv);
                     cipher.init(Cipher.ENCRYPT_MODE, encryptionPartDef.getSymmetricKey(), paramSpec);
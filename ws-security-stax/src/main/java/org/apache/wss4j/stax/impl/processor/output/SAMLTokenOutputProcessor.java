@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLStreamException;
@@ -36,6 +37,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.bean.KeyInfoBean;
 import org.apache.wss4j.common.saml.bean.SubjectBean;
@@ -80,19 +82,18 @@ public class SAMLTokenOutputProcessor extends AbstractOutputProcessor {
 
         try {
             final SAMLCallback samlCallback = new SAMLCallback();
-            SAMLUtil.doSAMLCallback(((WSSSecurityProperties) getSecurityProperties()).getSamlCallbackHandler(), samlCallback);
-            SamlAssertionWrapper samlAssertionWrapper = new SamlAssertionWrapper(samlCallback);
-
-            if (samlCallback.isSignAssertion()) {
-                samlAssertionWrapper.signAssertion(
-                        samlCallback.getIssuerKeyName(),
-                        samlCallback.getIssuerKeyPassword(),
-                        samlCallback.getIssuerCrypto(),
-                        samlCallback.isSendKeyValue(),
-                        samlCallback.getCanonicalizationAlgorithm(),
-                        samlCallback.getSignatureAlgorithm(),
-                        samlCallback.getSignatureDigestAlgorithm()
-                );
+            CallbackHandler samlCallbackHandler = ((WSSSecurityProperties) getSecurityProperties()).getSamlCallbackHandler();
+            SAMLUtil.doSAMLCallback(samlCallbackHandler, samlCallback);
+            SamlAssertionCache samlAssertionCache =
+                ((WSSSecurityProperties) getSecurityProperties()).getSamlAssertionCache();
+            SamlAssertionWrapper samlAssertionWrapper;
+            if (samlAssertionCache != null) {
+                samlAssertionWrapper =
+                    samlAssertionCache.getAssertion(
+                        samlCallback, samlCallbackHandler, SAMLTokenOutputProcessor::createSamlAssertion
+                    );
+            } else {
+                samlAssertionWrapper = createSamlAssertion(samlCallback);
             }
 
             boolean senderVouches = false;
@@ -227,6 +228,22 @@ public class SAMLTokenOutputProcessor extends AbstractOutputProcessor {
         outputProcessorChain.processEvent(xmlSecEvent);
     }
 
+    private static SamlAssertionWrapper createSamlAssertion(SAMLCallback samlCallback) throws WSSecurityException {
+        SamlAssertionWrapper samlAssertionWrapper = new SamlAssertionWrapper(samlCallback);
+        if (samlCallback.isSignAssertion()) {
+            samlAssertionWrapper.signAssertion(
+                    samlCallback.getIssuerKeyName(),
+                    samlCallback.getIssuerKeyPassword(),
+                    samlCallback.getIssuerCrypto(),
+                    samlCallback.isSendKeyValue(),
+                    samlCallback.getCanonicalizationAlgorithm(),
+                    samlCallback.getSignatureAlgorithm(),
+                    samlCallback.getSignatureDigestAlgorithm()
+            );
+        }
+        return samlAssertionWrapper;
+    }
+
     private GenericOutboundSecurityToken getSecurityToken(SAMLCallback samlCallback,
                                               OutputProcessorChain outputProcessorChain) throws WSSecurityException {
         CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
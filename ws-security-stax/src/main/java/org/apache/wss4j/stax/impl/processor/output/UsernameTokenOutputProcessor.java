@@ -21,6 +21,7 @@ package org.apache.wss4j.stax.impl.processor.output;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.DateUtil;
+import org.apache.wss4j.common.util.RandomUtils;
 import org.apache.wss4j.common.util.UsernameTokenUtil;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -94,7 +95,7 @@ public class UsernameTokenOutputProcessor extends AbstractOutputProcessor {
             byte[] nonceValue = null;
             if (usernameTokenPasswordType == WSSConstants.UsernameTokenPasswordType.PASSWORD_DIGEST
                 || ((WSSSecurityProperties) getSecurityProperties()).isAddUsernameTokenNonce()) {
-                nonceValue = WSSConstants.generateBytes(16);
+                nonceValue = RandomUtils.generateBytes(16);
             }
 
             String createdStr = "";
@@ -18,7 +18,6 @@
  */
 package org.apache.wss4j.stax.impl.processor.output;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -37,6 +36,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.ReplayableInputStream;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurePart;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -199,13 +199,10 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     }
 
                     DigestOutputStream digestOutputStream = createMessageDigestOutputStream(signaturePartDef.getDigestAlgo());  //NOPMD
-                    InputStream inputStream = attachment.getSourceStream(); //NOPMD
-                    if (!inputStream.markSupported()) {
-                        inputStream = new BufferedInputStream(inputStream);
-                    }
-                    inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-
-                    try {
+                    //the attachment content is cached while it is digested, spilling to disk for large attachments
+                    InputStream resultInputStream;
+                    try (ReplayableInputStream inputStream =
+                            new ReplayableInputStream(attachment.getSourceStream())) {
                         Transformer transformer = buildTransformerChain(digestOutputStream, signaturePartDef, null);
 
                         Map<String, Object> transformerProperties = new HashMap<>(2);
@@ -217,8 +214,8 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
 
                         digestOutputStream.close();
 
-                        //reset the inputStream to be able to reuse it
-                        inputStream.reset();
+                        //replay the inputStream to be able to reuse it
+                        resultInputStream = inputStream.replay();
                     } catch (IOException | XMLStreamException e) {
                         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_SIGNATURE, e);
                     }
@@ -233,7 +230,7 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     resultAttachment.setId(attachment.getId());
                     resultAttachment.setMimeType(attachment.getMimeType());
                     resultAttachment.addHeaders(attachment.getHeaders());
-                    resultAttachment.setSourceStream(inputStream);
+                    resultAttachment.setSourceStream(resultInputStream);
 
                     AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
                     attachmentResultCallback.setAttachmentId(resultAttachment.getId());
@@ -32,12 +32,15 @@ import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.ConfigurationConstants;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.JasyptPasswordEncryptor;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.common.util.VirtualThreads;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSConstants.UsernameTokenPasswordType;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -467,6 +470,12 @@ public final class ConfigurationConverter {
         boolean requireTimestampExpires =
             decodeBooleanConfigValue(ConfigurationConstants.REQUIRE_TIMESTAMP_EXPIRES, false, config);
         properties.setRequireTimestampExpires(requireTimestampExpires);
+
+        boolean useVirtualThreads =
+            decodeBooleanConfigValue(ConfigurationConstants.USE_VIRTUAL_THREADS, false, config);
+        if (useVirtualThreads && properties.getAttachmentProcessingExecutor() == null) {
+            properties.setAttachmentProcessingExecutor(VirtualThreads.executor());
+        }
     }
 
     public static void parseNonBooleanProperties(
@@ -594,6 +603,18 @@ public final class ConfigurationConverter {
             properties.setSamlOneTimeUseReplayCache(samlOneTimeUseCache);
         }
 
+        SecurityContextStore securityContextStore =
+            (SecurityContextStore)config.get(ConfigurationConstants.SECURITY_CONTEXT_STORE_INSTANCE);
+        if (securityContextStore != null) {
+            properties.setSecurityContextStore(securityContextStore);
+        }
+
+        SamlAssertionCache samlAssertionCache =
+            (SamlAssertionCache)config.get(ConfigurationConstants.SAML_ASSERTION_CACHE_INSTANCE);
+        if (samlAssertionCache != null) {
+            properties.setSamlAssertionCache(samlAssertionCache);
+        }
+
         String derivedSignatureKeyLength = getString(ConfigurationConstants.DERIVED_SIGNATURE_KEY_LENGTH, config);
         if (derivedSignatureKeyLength != null) {
             int sigLength = Integer.parseInt(derivedSignatureKeyLength);
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.setup;
+
+import java.util.concurrent.Executor;
+
+import javax.xml.XMLConstants;
+import jakarta.xml.bind.JAXBContext;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.wss4j.common.crypto.WSProviderConfig;
+import org.apache.wss4j.common.util.StartupTasks;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.xml.security.stax.config.Init;
+import org.apache.xml.security.stax.impl.util.ConcreteLSInput;
+import org.apache.xml.security.utils.ClassLoaderUtils;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.SAXException;
+
+/**
+ * Initializes the streaming webservice-security framework. The security providers and the
+ * configuration of Santuario, the JAXBContext and the WS-Security schemas do not depend on each
+ * other, and can be set up in parallel.
+ *
+ * WSSec initializes the framework in the calling thread when it is first used. To set it up in
+ * parallel instead, call {@link #init(Executor)} with an Executor before WSSec is first used, e.g.
+ * with StartupTasks.getDefaultExecutor().
+ *
+ * This class must not refer to the static members of WSSec, as it runs in other threads while
+ * WSSec is initialized.
+ */
+public final class WSSecBootstrap {
+
+    private static boolean initialized;
+
+    private WSSecBootstrap() {
+        // Complete
+    }
+
+    /**
+     * Initialize the streaming webservice-security framework, if it is not initialized yet
+     *
+     * @param executor the Executor to run the independent parts of the initialization on, or null
+     *        to run them one after another in the calling thread
+     * @throws Exception if the initialization failed
+     */
+    public static synchronized void init(Executor executor) throws Exception {
+        if (initialized) {
+            return;
+        }
+
+        JAXBContext[] jaxbContext = new JAXBContext[1];
+        Schema[] schema = new Schema[1];
+        StartupTasks.runAll(executor,
+            () -> {
+                WSProviderConfig.init();
+                Init.init(ClassLoaderUtils.getResource("wss/wss-config.xml", WSSec.class).toURI(), WSSec.class);
+            },
+            () -> jaxbContext[0] = JAXBContext.newInstance(
+                    org.apache.wss4j.binding.wss10.ObjectFactory.class,
+                    org.apache.wss4j.binding.wss11.ObjectFactory.class,
+                    org.apache.wss4j.binding.wsu10.ObjectFactory.class,
+                    org.apache.wss4j.binding.wssc13.ObjectFactory.class,
+                    org.apache.wss4j.binding.wssc200502.ObjectFactory.class,
+                    org.apache.xml.security.binding.xmlenc.ObjectFactory.class,
+                    org.apache.xml.security.binding.xmlenc11.ObjectFactory.class,
+                    org.apache.xml.security.binding.xmldsig.ObjectFactory.class,
+                    org.apache.xml.security.binding.xmldsig11.ObjectFactory.class,
+                    org.apache.xml.security.binding.excc14n.ObjectFactory.class,
+                    org.apache.xml.security.binding.xop.ObjectFactory.class
+            ),
+            () -> schema[0] = loadWSSecuritySchemas()
+        );
+
+        WSSConstants.setJaxbContext(jaxbContext[0]);
+        WSSConstants.setJaxbSchemas(schema[0]);
+        initialized = true;
+    }
+
+    static Schema loadWSSecuritySchemas() throws SAXException {
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schemaFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
+        schemaFactory.setResourceResolver(new LSResourceResolver() {
+            @Override
+            public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+                if ("http://www.w3.org/2001/XMLSchema.dtd".equals(systemId)) {
+                    ConcreteLSInput concreteLSInput = new ConcreteLSInput();
+                    concreteLSInput.setByteStream(ClassLoaderUtils.getResourceAsStream("schemas/XMLSchema.dtd", WSSec.class));
+                    return concreteLSInput;
+                } else if ("XMLSchema.dtd".equals(systemId)) {
+                    ConcreteLSInput concreteLSInput = new ConcreteLSInput();
+                    concreteLSInput.setByteStream(ClassLoaderUtils.getResourceAsStream("schemas/XMLSchema.dtd", WSSec.class));
+                    return concreteLSInput;
+                } else if ("datatypes.dtd".equals(systemId)) {
+                    ConcreteLSInput concreteLSInput = new ConcreteLSInput();
+                    concreteLSInput.setByteStream(ClassLoaderUtils.getResourceAsStream("schemas/datatypes.dtd", WSSec.class));
+                    return concreteLSInput;
+                } else if ("http://www.w3.org/TR/2002/REC-xmldsig-core-20020212/xmldsig-core-schema.xsd".equals(systemId)) {
+                    ConcreteLSInput concreteLSInput = new ConcreteLSInput();
+                    concreteLSInput.setByteStream(ClassLoaderUtils.getResourceAsStream("schemas/xmldsig-core-schema.xsd", WSSec.class));
+                    return concreteLSInput;
+                } else if ("http://www.w3.org/2001/xml.xsd".equals(systemId)) {
+                    ConcreteLSInput concreteLSInput = new ConcreteLSInput();
+                    concreteLSInput.setByteStream(ClassLoaderUtils.getResourceAsStream("schemas/xml.xsd", WSSec.class));
+                    return concreteLSInput;
+                }
+                return null;
+            }
+        });
+
+        Schema schema = schemaFactory.newSchema(
+                new Source[] {
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/xml.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/soap-1.1.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/soap-1.2.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/exc-c14n.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/xmldsig-core-schema.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/xop-include.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/xenc-schema.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/xenc-schema-11.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/xmldsig11-schema.xsd", WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/oasis-200401-wss-wssecurity-utility-1.0.xsd",
+                                                                              WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/oasis-200401-wss-wssecurity-secext-1.0.xsd",
+                                                                              WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/oasis-wss-wssecurity-secext-1.1.xsd",
+                                                                              WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/ws-secureconversation-200502.xsd",
+                                                                              WSSec.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("schemas/ws-secureconversation-1.3.xsd",
+                                                                              WSSec.class)),
+                }
+        );
+        return schema;
+    }
+}
@@ -18,7 +18,8 @@
  */
 package org.apache.wss4j.stax.validate;
 
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
 
 import jakarta.xml.bind.JAXBElement;
 
@@ -26,6 +27,7 @@ import org.apache.wss4j.binding.wss10.BinarySecurityTokenType;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.Base64Codec;
 import org.apache.wss4j.stax.ext.WSSConfigurationException;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -108,11 +110,11 @@ public class BinarySecurityTokenValidatorImpl implements BinarySecurityTokenVali
     private byte[] getBinarySecurityTokenBytes(BinarySecurityTokenType binarySecurityTokenType,
                                                WSSSecurityProperties wssSecurityProperties) throws XMLSecurityException {
 
-        StringBuilder sb = new StringBuilder();
+        List<String> encodedParts = new ArrayList<>(1);
 
         for (Object obj : binarySecurityTokenType.getContent()) {
             if (obj instanceof String) {
-                sb.append((String)obj);
+                encodedParts.add((String)obj);
             } else if (obj instanceof JAXBElement<?>) {
                 JAXBElement<?> element = (JAXBElement<?>)obj;
                 if (XMLSecurityConstants.TAG_XOP_INCLUDE.equals(element.getName())) {
@@ -126,7 +128,7 @@ public class BinarySecurityTokenValidatorImpl implements BinarySecurityTokenVali
             }
         }
 
-        return Base64.getMimeDecoder().decode(sb.toString());
+        return Base64Codec.decode(encodedParts);
     }
 
     protected Crypto getCrypto(WSSSecurityProperties securityProperties) throws WSSConfigurationException {
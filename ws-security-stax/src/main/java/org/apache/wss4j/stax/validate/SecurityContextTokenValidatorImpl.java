@@ -19,6 +19,8 @@
 package org.apache.wss4j.stax.validate;
 
 import org.apache.wss4j.binding.wssc.AbstractSecurityContextTokenType;
+import org.apache.wss4j.common.cache.SecurityContextSession;
+import org.apache.wss4j.common.cache.SecurityContextStore;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
@@ -58,16 +60,33 @@ public class SecurityContextTokenValidatorImpl implements SecurityContextTokenVa
                     return key;
                 }
 
-                WSPasswordCallback passwordCallback = new WSPasswordCallback(
-                        identifier, WSPasswordCallback.SECURITY_CONTEXT_TOKEN);
-                WSSUtils.doSecretKeyCallback(
-                        tokenContext.getWssSecurityProperties().getCallbackHandler(), passwordCallback);
-                if (passwordCallback.getKey() == null) {
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE,
-                            "noKey", new Object[] {securityContextTokenType.getId()});
+                // The secret of a known session is not requested from the CallbackHandler again
+                SecurityContextStore securityContextStore =
+                        tokenContext.getWssSecurityProperties().getSecurityContextStore();
+                SecurityContextSession session = null;
+                if (securityContextStore != null) {
+                    session = securityContextStore.getSession(identifier);
+                }
+
+                byte[] secret = null;
+                if (session != null) {
+                    secret = session.getSecret();
+                } else {
+                    WSPasswordCallback passwordCallback = new WSPasswordCallback(
+                            identifier, WSPasswordCallback.SECURITY_CONTEXT_TOKEN);
+                    WSSUtils.doSecretKeyCallback(
+                            tokenContext.getWssSecurityProperties().getCallbackHandler(), passwordCallback);
+                    secret = passwordCallback.getKey();
+                    if (secret == null) {
+                        throw new WSSecurityException(WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE,
+                                "noKey", new Object[] {securityContextTokenType.getId()});
+                    }
+                    if (securityContextStore != null) {
+                        securityContextStore.addSession(identifier, secret);
+                    }
                 }
                 String keyAlgorithm = JCEMapper.getJCEKeyAlgorithmFromURI(algorithmURI);
-                key = new SecretKeySpec(passwordCallback.getKey(), keyAlgorithm);
+                key = new SecretKeySpec(secret, keyAlgorithm);
                 setSecretKey(algorithmURI, key);
                 return key;
             }
@@ -31,6 +31,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
@@ -420,6 +422,128 @@ public class AttachmentTest extends AbstractTestBase {
         assertEquals("text/xml", responseAttachment.getMimeType());
     }
 
+    @Test
+    public void testMultipleAttachmentSignatureConcurrent() throws Exception {
+
+        final Attachment[] attachment = createAttachments(4);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.SIGNATURE);
+            securityProperties.setActions(actions);
+            securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setSignatureUser("transmitter");
+            securityProperties.addSignaturePart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Element));
+            securityProperties.addSignaturePart(new SecurePart("cid:Attachments", SecurePart.Modifier.Content));
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+            AttachmentCallbackHandler attachmentCallbackHandler =
+                new AttachmentCallbackHandler(Arrays.asList(attachment));
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+            OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+            XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+        }
+
+        //done signature; now test sig-verification with the attachments digested concurrently:
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Arrays.asList(attachment));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+            securityProperties.setAttachmentProcessingExecutor(executor);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            NodeList sigReferences = document.getElementsByTagNameNS(WSConstants.SIG_NS, "Reference");
+            assertEquals(5, sigReferences.getLength());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verifyResponseAttachments(attachment, attachmentCallbackHandler.getResponseAttachments());
+    }
+
+    @Test
+    public void testMultipleAttachmentSignatureConcurrentFailure() throws Exception {
+
+        final Attachment[] attachment = createAttachments(4);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.SIGNATURE);
+            securityProperties.setActions(actions);
+            securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setSignatureUser("transmitter");
+            securityProperties.addSignaturePart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Element));
+            securityProperties.addSignaturePart(new SecurePart("cid:Attachments", SecurePart.Modifier.Content));
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+            AttachmentCallbackHandler attachmentCallbackHandler =
+                new AttachmentCallbackHandler(Arrays.asList(attachment));
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+            OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+            XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+        }
+
+        //modify the first attachment, and record which attachment streams are released
+        final List<String> closedAttachments = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < attachment.length; i++) {
+            String content = SOAPUtil.SAMPLE_SOAP_MSG;
+            if (i == 0) {
+                content = content.replace("15", "16");
+            }
+            final String attachmentId = attachment[i].getId();
+            attachment[i].setSourceStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public void close() throws IOException {
+                    closedAttachments.add(attachmentId);
+                    super.close();
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setAttachmentCallbackHandler(new AttachmentCallbackHandler(Arrays.asList(attachment)));
+            securityProperties.setAttachmentProcessingExecutor(executor);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("Exception expected");
+            } catch (XMLStreamException e) {
+                assertTrue(e.getCause() instanceof XMLSecurityException);
+                assertTrue(e.getCause().getMessage().startsWith("Invalid digest of reference cid:"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //the pending attachments are released as well as the one that failed
+        for (Attachment att : attachment) {
+            assertTrue(closedAttachments.contains(att.getId()));
+        }
+    }
+
     @Test
     public void testXMLAttachmentContentEncryption() throws Exception {
 
@@ -941,6 +1065,93 @@ public class AttachmentTest extends AbstractTestBase {
         assertEquals(6, att2Headers.size());
     }
 
+    @Test
+    public void testMultipleAttachmentEncryptionConcurrent() throws Exception {
+
+        final Attachment[] attachment = createAttachments(4);
+
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Arrays.asList(attachment));
+        List<Attachment> encryptedAttachments = attachmentCallbackHandler.getResponseAttachments();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.ENCRYPTION);
+            securityProperties.setActions(actions);
+            securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setEncryptionUser("receiver");
+            securityProperties.addEncryptionPart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Content));
+            securityProperties.addEncryptionPart(new SecurePart("cid:Attachments", SecurePart.Modifier.Content));
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+            OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+            XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+        }
+
+        //now decrypt the attachments with an attachment processing executor:
+        List<ByteArrayInputStream> encryptedStreams = new ArrayList<>();
+        for (Attachment encryptedAttachment : encryptedAttachments) {
+            ByteArrayInputStream encryptedStream =
+                new ByteArrayInputStream(readInputStream(encryptedAttachment.getSourceStream()));
+            encryptedAttachment.setSourceStream(encryptedStream);
+            encryptedStreams.add(encryptedStream);
+        }
+        attachmentCallbackHandler = new AttachmentCallbackHandler(encryptedAttachments);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+            securityProperties.setAttachmentProcessingExecutor(executor);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            //the attachments are only decrypted as the delivered streams are read
+            for (ByteArrayInputStream encryptedStream : encryptedStreams) {
+                assertTrue(encryptedStream.available() > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verifyResponseAttachments(attachment, attachmentCallbackHandler.getResponseAttachments());
+    }
+
+    private Attachment[] createAttachments(int count) {
+        Attachment[] attachments = new Attachment[count];
+        for (int i = 0; i < count; i++) {
+            String attachmentId = UUID.randomUUID().toString();
+            attachments[i] = new Attachment();
+            attachments[i].setMimeType(i % 2 == 0 ? "text/xml" : "text/plain");
+            attachments[i].addHeaders(getHeaders(attachmentId));
+            attachments[i].setId(attachmentId);
+            attachments[i].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        }
+        return attachments;
+    }
+
+    private void verifyResponseAttachments(Attachment[] attachments, List<Attachment> responseAttachments)
+        throws IOException {
+        // The result callbacks are made in the order of the attachments
+        assertEquals(attachments.length, responseAttachments.size());
+        for (int i = 0; i < attachments.length; i++) {
+            Attachment responseAttachment = responseAttachments.get(i);
+            assertEquals(attachments[i].getId(), responseAttachment.getId());
+            assertEquals(attachments[i].getMimeType(), responseAttachment.getMimeType());
+
+            byte[] attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+            assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
     @Test
     public void testXMLAttachmentCmplSignCmplEnc() throws Exception {
 
@@ -45,7 +45,9 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 
 import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -69,6 +71,7 @@ import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.SecurePart;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SignatureValueSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -1702,4 +1705,124 @@ public class SignatureTest extends AbstractTestBase {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A large body where only a few of the many elements with an ID are signed
+     */
+    @Test
+    public void testSignatureManyIdsInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+
+            Document doc = documentBuilderFactory.newDocumentBuilder().parse(sourceDocument);
+            Element body = (Element) doc.getElementsByTagNameNS(
+                    WSSConstants.TAG_SOAP11_BODY.getNamespaceURI(), WSSConstants.TAG_SOAP11_BODY.getLocalPart()).item(0);
+            Element container = doc.createElementNS("urn:test", "test:Container");
+            body.appendChild(container);
+            for (int i = 0; i < 2000; i++) {
+                Element element = doc.createElementNS("urn:test", "test:Item");
+                element.setAttributeNS(WSSConstants.NS_WSU10, "wsu:Id", "item-" + i);
+                element.setTextContent(Integer.toString(i));
+                container.appendChild(element);
+            }
+
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature sign = new WSSecSignature(secHeader);
+            sign.setUserInfo("transmitter", "default");
+            sign.getParts().add(new WSEncryptionPart("item-0"));
+            sign.getParts().add(new WSEncryptionPart("item-1000"));
+            sign.getParts().add(new WSEncryptionPart("item-1999"));
+
+            Crypto crypto = CryptoFactory.getInstance("transmitter-crypto.properties");
+            Document securedDocument = sign.build(crypto);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //done signature; now test sig-verification:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+
+            final List<String> signedIds = new ArrayList<>();
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(
+                    xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())), null,
+                    securityEvent -> {
+                        if (securityEvent instanceof SignedElementSecurityEvent) {
+                            SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
+                            signedIds.add(signedElementSecurityEvent.getXmlSecEvent().asStartElement()
+                                    .getAttributeByName(WSSConstants.ATT_WSU_ID).getValue());
+                        }
+                    });
+
+            StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            assertEquals(3, signedIds.size());
+            assertTrue(signedIds.contains("item-0"));
+            assertTrue(signedIds.contains("item-1000"));
+            assertTrue(signedIds.contains("item-1999"));
+        }
+    }
+
+    /**
+     * A second element with the ID of a signed element, after the signed element (which verifies).
+     * The duplicate ID must be rejected, as it is the basis of signature wrapping attacks.
+     */
+    @Test
+    public void testSignatureDuplicateIdInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+
+            Document doc = documentBuilderFactory.newDocumentBuilder().parse(sourceDocument);
+            Element body = (Element) doc.getElementsByTagNameNS(
+                    WSSConstants.TAG_SOAP11_BODY.getNamespaceURI(), WSSConstants.TAG_SOAP11_BODY.getLocalPart()).item(0);
+            Element container = doc.createElementNS("urn:test", "test:Container");
+            body.appendChild(container);
+            Element element = doc.createElementNS("urn:test", "test:Item");
+            element.setAttributeNS(WSSConstants.NS_WSU10, "wsu:Id", "item-0");
+            element.setTextContent("signed");
+            container.appendChild(element);
+
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature sign = new WSSecSignature(secHeader);
+            sign.setUserInfo("transmitter", "default");
+            sign.getParts().add(new WSEncryptionPart("item-0"));
+
+            Crypto crypto = CryptoFactory.getInstance("transmitter-crypto.properties");
+            Document securedDocument = sign.build(crypto);
+
+            Element duplicate = (Element) element.cloneNode(true);
+            duplicate.setTextContent("not signed");
+            container.appendChild(duplicate);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //done signature; now test sig-verification:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(
+                    xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("Exception expected on the duplicate ID");
+            } catch (XMLStreamException e) {
+                assertTrue(e.getCause() instanceof XMLSecurityException);
+            }
+        }
+    }
+}
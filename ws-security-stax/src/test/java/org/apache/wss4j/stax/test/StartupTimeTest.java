@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.wss4j.stax.test.utils.StAX2DOM;
+import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures the cold time to the first verified message: the initialization of WSSec, and the
+ * signing and verification of the first message. It does not extend AbstractTestBase, so that
+ * nothing is initialized before the measurement starts, and every test class runs in a new JVM.
+ */
+public class StartupTimeTest {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(StartupTimeTest.class);
+
+    @Test
+    public void testTimeToFirstVerifiedMessage() throws Exception {
+        long start = System.nanoTime();
+        WSSec.init();
+        long initialized = System.nanoTime();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WSSSecurityProperties outboundProperties = new WSSSecurityProperties();
+        outboundProperties.setActions(Collections.singletonList(WSSConstants.SIGNATURE));
+        outboundProperties.loadSignatureKeyStore(
+            this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray()
+        );
+        outboundProperties.setSignatureUser("transmitter");
+        outboundProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(outboundProperties);
+        XMLStreamWriter xmlStreamWriter =
+            wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(
+            this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml")
+        );
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+
+        WSSSecurityProperties inboundProperties = new WSSSecurityProperties();
+        inboundProperties.loadSignatureVerificationKeystore(
+            this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray()
+        );
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(inboundProperties);
+        xmlStreamReader = wsSecIn.processInMessage(
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()))
+        );
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+        long verified = System.nanoTime();
+
+        assertEquals(1, document.getElementsByTagNameNS(
+            WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart()
+        ).getLength());
+
+        LOG.info("Initialization of WSSec: {} ms, first verified message: {} ms, JVM uptime: {} ms",
+                 TimeUnit.NANOSECONDS.toMillis(initialized - start),
+                 TimeUnit.NANOSECONDS.toMillis(verified - start),
+                 ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+}